@@ -1,17 +1,34 @@
 package javault.controller;
 
 import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.file.Path;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Supplier;
 
 import javax.crypto.SecretKey;
 
 import javault.exception.InvalidPasswordException;
 import javault.exception.UnknownErrorException;
 import javault.exception.VaultException;
+import javault.model.CredentialReader;
 import javault.model.LoginEntry;
+import javault.model.PassphraseGenerator;
+import javault.model.PasswordVersion;
 import javault.model.PasswordGenerator;
+import javault.model.PasswordPolicy;
+import javault.model.VaultBatch;
 import javault.model.VaultData;
-import javault.utils.EncryptionUtils;
+import javault.utils.BreachedPasswords;
+import javault.utils.KdfHeader;
+import javault.utils.PasswordAudit;
+import javault.utils.StrengthEstimator;
+import javault.utils.VaultExporter;
+import javault.utils.VaultImporter;
+import javault.utils.VaultJournal;
+import javault.utils.VaultSaver;
 import javault.utils.VaultUtils;
 
 /**
@@ -19,12 +36,32 @@ import javault.utils.VaultUtils;
  * Si occupa dell'apertura, modifica, lettura e salvataggio delle credenziali utente.
  */
 public class JaVaultController {
+    private static final String LABEL_NAME = "Nome login: ";
+    private static final String LABEL_USERNAME = "\nUsername: ";
+    private static final String LABEL_PASSWORD = "\nPassword: ";
+    private static final int MAX_BREACHED_ATTEMPTS = 8;
+    /**
+     * Entropia minima perché una password generata venga confrontata con l'elenco delle password compromesse:
+     * con almeno 2^36 password possibili anche un elenco di un miliardo di password ne copre al più una su 64,
+     * mentre sotto questa soglia quasi tutte le password generate potrebbero risultare compromesse.
+     */
+    private static final double MIN_CHECKED_ENTROPY_BITS = 36;
+    private static final String UNCHECKED_WARNING =
+            "\nAttenzione: la password è troppo corta per essere confrontata con l'elenco delle password compromesse.";
+
     private SecretKey key;
     private VaultData vault;
+    private VaultSaver saver;
+    private PasswordAudit audit;
+    private final BreachedPasswords breached = BreachedPasswords.shared();
 
     /**
      * Apre il vault usando la master password fornita.
      * Se il vault è già in uso da un altro processo, lancia eccezione.
+     * I vault con parametri KDF storici vengono ricifrati in modo trasparente
+     * con un numero di iterazioni calibrato su questa macchina.
+     * Un nuovo vault viene salvato subito, insieme alla sua intestazione KDF: l'intestazione
+     * non esiste mai senza un file base, né il journal senza l'intestazione.
      *
      * @param masterPassword la password principale per derivare la chiave di cifratura
      * @throws InvalidPasswordException se la master password è errata
@@ -34,29 +71,99 @@ public class JaVaultController {
     public void openVault(char[] masterPassword) throws InvalidPasswordException, UnknownErrorException {
         try {
             VaultUtils.acquireVaultLock();
-            this.key = EncryptionUtils.getKeyFromPassword(masterPassword);
-            Arrays.fill(masterPassword, '\0');
-            this.vault = VaultUtils.loadVault(key);
+            KdfHeader header = KdfHeader.load();
+            boolean created = header == null;
+            if (created) {
+                header = KdfHeader.calibrate(KdfHeader.DEFAULT_TARGET_MILLIS);
+            }
+            this.key = header.deriveKey(masterPassword);
+            this.vault = loadVault(masterPassword);
+            if (created) {
+                VaultUtils.createVault(vault, key, header);
+            } else if (KdfHeader.load().needsUpgrade()) {
+                upgradeKdf(masterPassword);
+            }
+            this.saver = new VaultSaver(vault, key);
+            this.audit = new PasswordAudit(key);
         } catch (IOException e) {
             System.err.println("Un'altra istanza di JaVault è già in esecuzione");
             throw new IllegalStateException("Un'altra istanza di JaVault è già in esecuzione "+e);
         } catch (InvalidPasswordException e) {
 			System.err.println("Master password errata, controller");
 			throw new InvalidPasswordException("Master password errata");
+		} catch (VaultException e) {
+			System.err.println("Impossibile aprire il vault: " + e.getMessage());
+			throw new UnknownErrorException(e);
+		} finally {
+			Arrays.fill(masterPassword, '\0');
 		}
     }
+
+    /**
+     * Carica il vault con la chiave corrente. Se esiste un'intestazione KDF in attesa,
+     * l'ultimo aggiornamento della chiave si è interrotto: se il vault non si apre con la chiave
+     * corrente era già stato ricifrato, quindi riprova con quella in attesa e la rende effettiva.
+     * In entrambi i casi la cronologia, che può essere rimasta sull'altra chiave,
+     * viene riallineata prima di rendere effettiva o scartare l'intestazione in attesa.
+     */
+    private VaultData loadVault(char[] masterPassword)
+            throws InvalidPasswordException, UnknownErrorException, VaultException {
+        KdfHeader pending = KdfHeader.loadPending();
+        if (pending == null) {
+            return VaultUtils.loadVault(key);
+        }
+
+        SecretKey pendingKey = pending.deriveKey(masterPassword);
+        try {
+            VaultData loaded = VaultUtils.loadVault(key);
+            VaultUtils.reconcileHistoryKey(loaded, key, pendingKey);
+            KdfHeader.discardPending();
+            return loaded;
+        } catch (InvalidPasswordException e) {
+            VaultData loaded = VaultUtils.loadVault(pendingKey);
+            VaultUtils.reconcileHistoryKey(loaded, pendingKey, key);
+            this.key = pendingKey;
+            KdfHeader.promotePending();
+            return loaded;
+        }
+    }
+
+    /**
+     * Ricifra il vault con una nuova intestazione KDF calibrata su questa macchina.
+     */
+    private void upgradeKdf(char[] masterPassword) throws VaultException {
+        KdfHeader upgraded = KdfHeader.calibrate(KdfHeader.DEFAULT_TARGET_MILLIS);
+        SecretKey upgradedKey = upgraded.deriveKey(masterPassword);
+        VaultUtils.rekeyVault(vault, key, upgradedKey, upgraded);
+        this.key = upgradedKey;
+    }
     
     /**
-     * Cancella i dati dalla memoria RAM.
+     * Salva le modifiche in sospeso e cancella i dati dalla memoria RAM.
      * Rilascia il lock sul vault.
      * In caso di errore, stampa lo stacktrace ma non rilancia eccezioni.
      */
     public void closeVault() {
+
+    	if(this.saver != null) {
+    		try {
+    			saver.close(); // salvataggio sincrono delle modifiche in sospeso
+    		} catch (VaultException e) {
+    			System.err.println("Impossibile salvare il vault");
+    			e.printStackTrace();
+    		}
+    		this.saver = null;
+    	}
     	
-    	if(this.vault != null) vault.clearAll();
+    	if(this.vault != null) {
+    		vault.clearAll();
+    		vault.setHistoryStore(null);
+    	}
     	
     	if(this.key != null) this.key = null; //aiuta il GC anche se non azzera
+    	this.audit = null;
 
+    	VaultJournal.close();
     	
     	try {
 			VaultUtils.releaseVaultLock();
@@ -80,6 +187,109 @@ public class JaVaultController {
      */
     public String generateAndSaveLogin(String name, String userEmail, int length,
                                        boolean lower, boolean upper, boolean digits, boolean special) {
+        if (vault.hasLogin(name)) {
+            return "Login già esistente.";
+        }
+
+        if (!lower && !upper && !digits && !special) {
+            return "Devi selezionare almeno un tipo di carattere.";
+        }
+
+        return generateAndSaveLogin(name, userEmail, length, PasswordPolicy.of(lower, upper, digits, special));
+    }
+
+    /**
+     * Genera una nuova password secondo la politica indicata e la salva nel vault associata a un login.
+     *
+     * @param name     nome identificativo del login
+     * @param userEmail username/email associata
+     * @param length   lunghezza della password (da 1 a 64, almeno il minimo richiesto dalla politica)
+     * @param policy   la politica di composizione della password
+     * @return messaggio di esito (successo o errore)
+     */
+    public String generateAndSaveLogin(String name, String userEmail, int length, PasswordPolicy policy) {
+        if (length < 1 || length > 64) {
+            return "La lunghezza deve essere tra 1 e 64.";
+        }
+
+        if (length < policy.getMinimumLength()) {
+            return "La lunghezza deve essere almeno " + policy.getMinimumLength() + ".";
+        }
+
+        PasswordGenerator generator = new PasswordGenerator(policy);
+        return saveGeneratedLogin(name, userEmail, () -> generator.generatePassword(length), generator.entropyBits(length));
+    }
+
+    /**
+     * Genera una nuova passphrase di parole casuali e la salva nel vault associata a un login.
+     *
+     * @param name      nome identificativo del login
+     * @param userEmail username/email associata
+     * @param words     numero di parole della passphrase (da 3 a 20)
+     * @param generator il generatore di passphrase, con separatore e maiuscole scelti dall'utente
+     * @return messaggio di esito (successo o errore)
+     */
+    public String generateAndSaveLogin(String name, String userEmail, int words, PassphraseGenerator generator) {
+        if (words < 3 || words > 20) {
+            return "Il numero di parole deve essere tra 3 e 20.";
+        }
+
+        return saveGeneratedLogin(name, userEmail, () -> generator.generatePassphrase(words), generator.entropyBits(words));
+    }
+
+    /**
+     * @param entropyBits l'entropia delle password generate
+     * @return true se le password generate vanno confrontate con l'elenco delle password compromesse
+     */
+    private static boolean isChecked(double entropyBits) {
+        return entropyBits >= MIN_CHECKED_ENTROPY_BITS;
+    }
+
+    /**
+     * Genera una password che non compare nell'elenco delle password compromesse,
+     * scartando e azzerando quelle che vi compaiono. Le password con entropia sotto
+     * {@link #MIN_CHECKED_ENTROPY_BITS}, richieste esplicitamente dall'utente, non vengono confrontate:
+     * il chiamante lo segnala con {@link #UNCHECKED_WARNING}.
+     *
+     * @throws IllegalArgumentException se dopo alcuni tentativi le password generate risultano ancora compromesse
+     */
+    private char[] generateUnbreached(Supplier<char[]> generator, double entropyBits) {
+        if (!isChecked(entropyBits)) {
+            return generator.get();
+        }
+        for (int attempt = 1; ; attempt++) {
+            char[] password = generator.get();
+            if (!breached.isBreached(password)) return password;
+            Arrays.fill(password, '\0');
+            if (attempt == MAX_BREACHED_ATTEMPTS) {
+                throw new IllegalArgumentException(
+                        "Le password generate risultano tutte compromesse: aumenta la lunghezza o i tipi di carattere.");
+            }
+        }
+    }
+
+    /**
+     * @return una copia dello username del login, da azzerare dopo l'uso,
+     *         o null se il login non esiste o è stato rimosso nel frattempo
+     */
+    private char[] usernameOf(String name) {
+        LoginEntry entry = vault.getLogin(name);
+        if (entry == null) {
+            return null;
+        }
+        try {
+            return entry.getUsername();
+        } catch (IllegalStateException e) {
+            return null; // Rimosso da un altro thread dopo la lettura: la entry è stata pulita
+        }
+    }
+
+    /**
+     * Salva un nuovo login con la password prodotta dal generatore indicato.
+     * Il login viene aggiunto con un batch (vedi {@link #commitChange(VaultBatch)}):
+     * se la registrazione nel journal fallisce non compare nel vault.
+     */
+    private String saveGeneratedLogin(String name, String userEmail, Supplier<char[]> generator, double entropyBits) {
         char[] passwordArray = null;
         char[] usernameArray = null;
 
@@ -88,6 +298,47 @@ public class JaVaultController {
                 return "Login già esistente.";
             }
 
+            passwordArray = generateUnbreached(generator, entropyBits);
+            usernameArray = userEmail.toCharArray();
+
+            try (VaultBatch batch = beginBatch()) {
+                commitChange(batch.add(name, usernameArray, passwordArray));
+            } catch (IllegalStateException e) {
+                // Un altro thread ha aggiunto lo stesso nome dopo il controllo iniziale
+                return "Login già esistente.";
+            }
+
+            return isChecked(entropyBits) ? "Login generato:\n" : "Login generato:" + UNCHECKED_WARNING + "\n";
+        } catch (IllegalArgumentException e) {
+            return e.getMessage();
+        } catch (VaultException e) {
+            e.printStackTrace();
+            return "Errore nel salvataggio: login non aggiunto.";
+        } finally {
+            if (passwordArray != null) Arrays.fill(passwordArray, '\0');
+            if (usernameArray != null) Arrays.fill(usernameArray, '\0');
+        }
+    }
+
+    /**
+     * Sostituisce la password di un login esistente con una nuova password generata,
+     * mantenendo lo username. La password precedente viene conservata nella cronologia del login.
+     * Se la registrazione nel journal fallisce la password non viene sostituita.
+     *
+     * @param name     nome identificativo del login
+     * @param length   lunghezza della password (da 1 a 64)
+     * @param lower    true per includere lettere minuscole
+     * @param upper    true per includere lettere maiuscole
+     * @param digits   true per includere cifre
+     * @param special  true per includere caratteri speciali
+     * @return messaggio di esito (successo o errore)
+     */
+    public String rotatePassword(String name, int length,
+                                 boolean lower, boolean upper, boolean digits, boolean special) {
+        char[] passwordArray = null;
+        char[] usernameArray = null;
+
+        try {
             if (!lower && !upper && !digits && !special) {
                 return "Devi selezionare almeno un tipo di carattere.";
             }
@@ -96,25 +347,241 @@ public class JaVaultController {
                 return "La lunghezza deve essere tra 1 e 64.";
             }
 
-            PasswordGenerator generator = new PasswordGenerator(lower, upper, digits, special);
-            passwordArray = generator.generatePassword(length);
-            usernameArray = userEmail.toCharArray();
+            usernameArray = usernameOf(name);
+            if (usernameArray == null) {
+                return "Login non trovato.";
+            }
 
-            vault.addLogin(name, usernameArray, passwordArray);
-            VaultUtils.saveVault(vault, key);
+            PasswordGenerator generator = new PasswordGenerator(lower, upper, digits, special);
+            double entropyBits = generator.entropyBits(length);
+            passwordArray = generateUnbreached(() -> generator.generatePassword(length), entropyBits);
+            try (VaultBatch batch = beginBatch()) {
+                commitChange(batch.update(name, usernameArray, passwordArray));
+            } catch (IllegalStateException e) {
+                // Rimosso da un altro thread dopo la lettura dello username
+                return "Login non trovato.";
+            }
 
-            return "Login generato:\n";
+            return isChecked(entropyBits) ? "Password aggiornata." : "Password aggiornata." + UNCHECKED_WARNING;
+        } catch (IllegalArgumentException e) {
+            return e.getMessage();
         } catch (VaultException e) {
             e.printStackTrace();
-            return "Errore nella generazione o salvataggio.";
+            return "Errore nel salvataggio: password non sostituita.";
         } finally {
             if (passwordArray != null) Arrays.fill(passwordArray, '\0');
             if (usernameArray != null) Arrays.fill(usernameArray, '\0');
         }
     }
 
+    /**
+     * Sostituisce le password di più login con nuove password generate, mantenendo gli username,
+     * ad esempio per ruotare le credenziali di molti account di servizio. Le password vengono
+     * generate tutte insieme e applicate con un unico batch (vedi {@link #commitBatch(VaultBatch)}):
+     * se un login non esiste, la generazione non riesce o il salvataggio fallisce, nessuna password
+     * viene sostituita e il messaggio ne indica il motivo.
+     *
+     * @param names    i nomi dei login
+     * @param length   lunghezza delle password (da 1 a 64)
+     * @param lower    true per includere lettere minuscole
+     * @param upper    true per includere lettere maiuscole
+     * @param digits   true per includere cifre
+     * @param special  true per includere caratteri speciali
+     * @return messaggio di esito (successo o errore)
+     */
+    public String rotatePasswords(Collection<String> names, int length,
+                                  boolean lower, boolean upper, boolean digits, boolean special) {
+        if (!lower && !upper && !digits && !special) {
+            return "Devi selezionare almeno un tipo di carattere.";
+        }
+
+        if (length < 1 || length > 64) {
+            return "La lunghezza deve essere tra 1 e 64.";
+        }
+
+        PasswordGenerator generator = new PasswordGenerator(lower, upper, digits, special);
+        double entropyBits = generator.entropyBits(length);
+        char[] passwords = new char[names.size() * length];
+        try (VaultBatch batch = beginBatch()) {
+            generator.generate(names.size(), length, passwords);
+            int offset = 0;
+            for (String name : names) {
+                char[] username = usernameOf(name);
+                if (username == null) {
+                    return "Login non trovato: " + name + ". Nessuna password sostituita.";
+                }
+                if (isChecked(entropyBits) && breached.isBreached(CharBuffer.wrap(passwords, offset, length))) {
+                    char[] replacement = generateUnbreached(() -> generator.generatePassword(length), entropyBits);
+                    System.arraycopy(replacement, 0, passwords, offset, length);
+                    Arrays.fill(replacement, '\0');
+                }
+                batch.update(name, username, Arrays.copyOfRange(passwords, offset, offset + length));
+                offset += length;
+            }
+            int changed = commitChange(batch);
+            String result = "Sostituite " + changed + " password.";
+            return isChecked(entropyBits) ? result : result + UNCHECKED_WARNING;
+        } catch (IllegalArgumentException e) {
+            return e.getMessage() + " Nessuna password sostituita.";
+        } catch (IllegalStateException e) {
+            // Un login è stato rimosso da un altro thread prima del commit
+            return e.getMessage() + ". Nessuna password sostituita.";
+        } catch (VaultException e) {
+            e.printStackTrace();
+            return "Errore nel salvataggio. Nessuna password sostituita.";
+        } finally {
+            Arrays.fill(passwords, '\0');
+        }
+    }
+
+    /**
+     * Imposta cartella e tag di un login e registra la modifica nel journal.
+     * Se la registrazione fallisce le etichette restano invariate.
+     *
+     * @param name nome del login
+     * @param folder la cartella (percorso separato da "/"), vuota per nessuna
+     * @param tags i tag
+     * @return messaggio di esito (successo o errore)
+     */
+    public String setLabels(String name, String folder, List<String> tags) {
+        try (VaultBatch batch = beginBatch()) {
+            commitChange(batch.setLabels(name, folder, tags));
+            return "Etichette aggiornate.";
+        } catch (IllegalArgumentException e) {
+            return e.getMessage();
+        } catch (IllegalStateException e) {
+            return "Login non trovato.";
+        } catch (VaultException e) {
+            e.printStackTrace();
+            return "Errore nel salvataggio: etichette non aggiornate.";
+        }
+    }
+
+    /**
+     * Restituisce i login che soddisfano un filtro per tag e cartelle,
+     * ad esempio "prod AND database NOT legacy" (vedi {@link VaultData#filter(String)}).
+     *
+     * @param query il filtro
+     * @return i nomi trovati, in ordine alfabetico
+     * @throws IllegalArgumentException se il filtro non è valido
+     */
+    public List<String> filterLogins(String query) {
+        return vault.filter(query);
+    }
+
+    /**
+     * Cerca i login che usano la stessa password (vedi {@link PasswordAudit}).
+     * Le verifiche successive alla prima ricalcolano solo i login aggiunti o modificati.
+     *
+     * @return i gruppi di login con la stessa password, dal più numeroso
+     */
+    public List<List<String>> findReusedPasswords() {
+        return audit.audit(vault).reused();
+    }
+
+    /**
+     * Cerca i login con una password presente nell'elenco locale delle password compromesse
+     * (vedi {@link BreachedPasswords}). Le verifiche successive alla prima controllano solo
+     * i login aggiunti o modificati.
+     *
+     * @return i nomi dei login con una password compromessa, in ordine alfabetico;
+     *         vuoto se l'elenco non è disponibile
+     */
+    public List<String> findBreachedPasswords() {
+        return audit.breached(vault, breached);
+    }
+
+    /**
+     * Restituisce le password precedenti di un login, dalla più recente
+     * (vedi {@link VaultData#getPasswordHistory(String)}).
+     *
+     * @param name nome del login
+     * @return le versioni precedenti, eventualmente nessuna
+     */
+    public List<PasswordVersion> getPasswordHistory(String name) {
+        return vault.getPasswordHistory(name);
+    }
+
+    /**
+     * Importa i login da un file CSV o JSON esportato da un altro password manager
+     * e programma un unico salvataggio in background al termine.
+     * Con file grandi può richiedere alcuni secondi: va chiamato fuori dal thread della GUI.
+     *
+     * @param path percorso del file da importare (.csv o .json)
+     * @return messaggio di esito con il numero di login importati e scartati, oppure di errore
+     */
+    public String importLogins(String path) {
+        try {
+            VaultImporter.Result result = VaultImporter.importFile(Path.of(path), vault);
+            if (result.imported() > 0) saver.markDirty();
+            return "Importati " + result.imported() + " login, " + result.skipped() + " scartati.";
+        } catch (VaultException e) {
+            e.printStackTrace();
+            return "Errore durante l'importazione: " + e.getMessage();
+        }
+    }
+
+    /**
+     * Importa i login da un'esportazione cifrata di JaVault e programma un unico salvataggio
+     * in background al termine. Deriva la chiave dalla password e decifra l'intero file:
+     * va chiamato fuori dal thread della GUI.
+     *
+     * @param path percorso del file esportato
+     * @param password la password scelta al momento dell'esportazione, azzerata al termine
+     * @return messaggio di esito con il numero di login importati e scartati, oppure di errore
+     */
+    public String importEncrypted(String path, char[] password) {
+        try {
+            VaultImporter.Result result = VaultImporter.importEncrypted(Path.of(path), password, vault);
+            if (result.imported() > 0) saver.markDirty();
+            return "Importati " + result.imported() + " login, " + result.skipped() + " scartati.";
+        } catch (InvalidPasswordException e) {
+            return "Password dell'esportazione errata o file corrotto.";
+        } catch (VaultException e) {
+            e.printStackTrace();
+            return "Errore durante l'importazione: " + e.getMessage();
+        }
+    }
+
+    /**
+     * Esporta il vault in un file cifrato con una password dedicata, apribile con {@link #importEncrypted(String, char[])}.
+     * Può richiedere alcuni secondi: va chiamato fuori dal thread della GUI.
+     *
+     * @param path percorso del file di destinazione
+     * @param password la password dell'esportazione, azzerata al termine
+     * @return messaggio di esito o di errore
+     */
+    public String exportEncrypted(String path, char[] password) {
+        try {
+            VaultExporter.exportEncrypted(vault, Path.of(path), password);
+            return "Vault esportato in " + path;
+        } catch (VaultException e) {
+            e.printStackTrace();
+            return "Errore durante l'esportazione: " + e.getMessage();
+        }
+    }
+
+    /**
+     * Esporta il vault in un CSV con le password in chiaro.
+     * Da usare solo su richiesta esplicita dell'utente; va chiamato fuori dal thread della GUI.
+     *
+     * @param path percorso del file di destinazione
+     * @return messaggio di esito o di errore
+     */
+    public String exportCsv(String path) {
+        try {
+            int exported = VaultExporter.exportCsv(vault, Path.of(path));
+            return "Esportati " + exported + " login in chiaro in " + path;
+        } catch (VaultException e) {
+            e.printStackTrace();
+            return "Errore durante l'esportazione: " + e.getMessage();
+        }
+    }
+
     /**
      * Restituisce i dati di un login come array di caratteri formattato con nome, username e password.
+     * Username e password vengono copiati direttamente dalla memoria fuori heap nel risultato,
+     * che è l'unica copia allocata e va azzerato dal chiamante dopo l'uso.
      *
      * @param name nome del login da cercare
      * @return array di caratteri con le informazioni del login formattate, oppure messaggio di errore "Login non trovato."
@@ -124,59 +591,126 @@ public class JaVaultController {
             return "Login non trovato.".toCharArray();
         }
 
-        LoginEntry entry = vault.getLogin(name);
-        char[] usernameCopy = entry.getUsername();
-        char[] passwordCopy = entry.getPassword();
-        char[] result;
-
-        try {
-            char[] label1 = "Nome login: ".toCharArray();
-            char[] label2 = "\nUsername: ".toCharArray();
-            char[] label3 = "\nPassword: ".toCharArray();
-            char[] newline = "\n".toCharArray();
-
-            int totalLength = label1.length + name.length() +
-                              label2.length + usernameCopy.length +
-                              label3.length + passwordCopy.length +
-                              newline.length;
-
-            result = new char[totalLength];
+        char[] result = withLogin(name, (username, password) -> {
+            char[] text = new char[LABEL_NAME.length() + name.length()
+                    + LABEL_USERNAME.length() + username.length()
+                    + LABEL_PASSWORD.length() + password.length()
+                    + 1];
             int pos = 0;
+            LABEL_NAME.getChars(0, LABEL_NAME.length(), text, pos); pos += LABEL_NAME.length();
+            name.getChars(0, name.length(), text, pos); pos += name.length();
+            LABEL_USERNAME.getChars(0, LABEL_USERNAME.length(), text, pos); pos += LABEL_USERNAME.length();
+            username.getChars(0, username.length(), text, pos); pos += username.length();
+            LABEL_PASSWORD.getChars(0, LABEL_PASSWORD.length(), text, pos); pos += LABEL_PASSWORD.length();
+            password.getChars(0, password.length(), text, pos); pos += password.length();
+            text[pos] = '\n';
+            return text;
+        });
+        return result != null ? result : "Impossibile decifrare il login.".toCharArray();
+    }
 
-            System.arraycopy(label1, 0, result, pos, label1.length); pos += label1.length;
-            name.getChars(0, name.length(), result, pos); pos += name.length();
-            System.arraycopy(label2, 0, result, pos, label2.length); pos += label2.length;
-            System.arraycopy(usernameCopy, 0, result, pos, usernameCopy.length); pos += usernameCopy.length;
-            System.arraycopy(label3, 0, result, pos, label3.length); pos += label3.length;
-            System.arraycopy(passwordCopy, 0, result, pos, passwordCopy.length); pos += passwordCopy.length;
-            System.arraycopy(newline, 0, result, pos, newline.length);
-
-            return result;
-
-        } finally {
-            Arrays.fill(usernameCopy, '\0');
-            Arrays.fill(passwordCopy, '\0');
+    /**
+     * Concede in prestito username e password di un login per la durata della chiamata,
+     * senza copiarli (vedi {@link LoginEntry#borrow(CredentialReader)}).
+     *
+     * @param <R> il tipo del risultato
+     * @param name nome del login
+     * @param reader la funzione che legge le credenziali
+     * @return il risultato di {@code reader}, o null se il login non esiste o non è decifrabile
+     */
+    public <R> R withLogin(String name, CredentialReader<R> reader) {
+        LoginEntry entry = vault.getLogin(name);
+        if (entry == null) {
+            return null;
         }
+        return entry.borrow(reader);
     }
 
     /**
-     * Rimuove un login dal vault e salva le modifiche.
+     * Rimuove un login dal vault, insieme alla cronologia delle sue password, e registra la rimozione nel journal.
      *
      * @param name nome del login da rimuovere
-     * @throws IllegalStateException se il salvataggio fallisce
+     * @return true se il login era presente ed è stato rimosso
+     * @throws IllegalStateException se il salvataggio fallisce: il login non viene rimosso
      */
-    public void removeLogin(String name) {
-        if (vault.hasLogin(name)) {
-            vault.removeLogin(name);
-            try {
-                VaultUtils.saveVault(vault, key);
-            } catch (VaultException e) {
-                System.err.println("Impossibile salvare il vault");
-                throw new IllegalStateException("Impossibile salvare il vault "+ e);
+    public boolean removeLogin(String name) {
+        if (!vault.hasLogin(name)) {
+            return false;
+        }
+        try (VaultBatch batch = beginBatch()) {
+            return commitChange(batch.remove(name)) > 0;
+        } catch (VaultException e) {
+            System.err.println("Impossibile salvare il vault");
+            throw new IllegalStateException("Impossibile salvare il vault "+ e);
+        }
+    }
+
+    /**
+     * Rimuove i login indicati con un'unica modifica atomica, registrata nel journal con un solo record.
+     * I nomi non presenti nel vault vengono ignorati.
+     *
+     * @param names i nomi dei login da rimuovere
+     * @return il numero di login rimossi
+     * @throws IllegalStateException se il salvataggio fallisce: nessun login viene rimosso
+     */
+    public int removeLogins(Collection<String> names) {
+        try (VaultBatch batch = beginBatch()) {
+            for (String name : names) {
+                batch.remove(name);
             }
+            return commitChange(batch);
+        } catch (VaultException e) {
+            System.err.println("Impossibile salvare il vault");
+            throw new IllegalStateException("Impossibile salvare il vault "+ e);
+        }
+    }
+
+    /**
+     * Inizia un batch di modifiche al vault (aggiunte, sostituzioni, rimozioni ed etichette),
+     * da applicare tutte insieme con {@link #commitBatch(VaultBatch)}.
+     * Va chiuso al termine, tipicamente con try-with-resources: se non è stato committato
+     * le modifiche registrate vengono scartate.
+     *
+     * @return il batch, vuoto
+     */
+    public VaultBatch beginBatch() {
+        return vault.beginBatch();
+    }
+
+    /**
+     * Applica al vault tutte le modifiche del batch in un'unica operazione atomica
+     * e le registra nel journal con un solo record, al posto di un record per modifica.
+     * Se una modifica non è applicabile o la registrazione fallisce, il vault resta invariato.
+     *
+     * @param batch il batch ottenuto da {@link #beginBatch()}
+     * @return messaggio di esito (successo o errore)
+     */
+    public String commitBatch(VaultBatch batch) {
+        try {
+            int changed = commitChange(batch);
+            return "Modificati " + changed + " login.";
+        } catch (IllegalStateException e) {
+            return e.getMessage() + ". Nessuna modifica applicata.";
+        } catch (VaultException e) {
+            e.printStackTrace();
+            return "Errore nel salvataggio. Nessuna modifica applicata.";
         }
     }
 
+    /**
+     * Applica una modifica registrata in un batch dal controller: la modifica viene prima accodata
+     * al journal e diventa visibile solo se la scrittura riesce, altrimenti il vault resta invariato.
+     *
+     * @return il numero di login modificati
+     * @throws IllegalStateException se la modifica non è applicabile
+     * @throws VaultException se la registrazione nel journal fallisce
+     */
+    private int commitChange(VaultBatch batch) throws VaultException {
+        int changed = VaultJournal.commit(batch, key);
+        journalAppended();
+        return changed;
+    }
+
     /**
      * Restituisce l'oggetto Vault attualmente in uso.
      *
@@ -187,22 +721,55 @@ public class JaVaultController {
     }
 
     /**
-     * Salva manualmente lo stato attuale del vault.
+     * Elimina tutti i login dal vault e la cronologia delle password, e registra la cancellazione nel journal.
+     * La cancellazione viene registrata prima di svuotare il vault, così che se la scrittura fallisce
+     * i login restino sia in memoria sia su disco. Se il file della cronologia non può essere eliminato
+     * subito, viene eliminato dal salvataggio successivo.
      *
-     * @throws IllegalStateException se il salvataggio fallisce
+     * @throws IllegalStateException se la cancellazione non può essere registrata: il vault resta invariato
      */
-    public void saveVault() {
+    public void clearAll() {
         try {
-            VaultUtils.saveVault(vault, key);
+            VaultJournal.clear(vault, key);
         } catch (VaultException e) {
             System.err.println("Impossibile salvare il vault");
-            throw new IllegalStateException();
+            throw new IllegalStateException("Impossibile salvare il vault "+ e);
+        }
+        try {
+            VaultUtils.deleteHistory();
+        } catch (VaultException e) {
+            System.err.println("Impossibile eliminare la cronologia: " + e.getMessage());
+        }
+        saver.markDirty();
+    }
+
+    /**
+     * Programma il salvataggio completo dello stato attuale del vault.
+     * Il salvataggio avviene in background; le modifiche ravvicinate vengono
+     * raggruppate in un'unica scrittura e quelle in sospeso sono salvate alla chiusura.
+     */
+    public void saveVault() {
+        saver.markDirty();
+    }
+
+    /**
+     * Da chiamare dopo ogni record accodato al journal: ne programma la sincronizzazione su disco
+     * in background e, se il journal è cresciuto oltre la soglia, un salvataggio completo
+     * che lo compatta nel file base.
+     */
+    private void journalAppended() {
+        saver.syncJournal();
+        if (VaultJournal.needsCompaction()) {
+            saver.markDirty();
         }
     }
 
     /**
      * Verifica se una password è considerata "forte".
-     * Richiede almeno 10 caratteri e la presenza di: minuscola, maiuscola, cifra e simbolo.
+     * Richiede almeno 10 caratteri e una stima di almeno 10^8 tentativi per indovinarla
+     * (vedi {@link StrengthEstimator}): le password comuni, le parole di dizionario con poche
+     * varianti e gli schemi prevedibili non bastano, anche se contengono tutte le classi di caratteri.
+     * Le password presenti nell'elenco delle password compromesse non sono mai forti.
      *
      * @param password array di caratteri da valutare
      * @return true se la password è forte, false altrimenti
@@ -210,17 +777,27 @@ public class JaVaultController {
     public boolean isStrongPassword(char[] password) {
         if (password.length < 10) return false;
 
-        boolean hasLower = false, hasUpper = false, hasDigit = false, hasSpecial = false;
-
-        for (char c : password) {
-            if (Character.isLowerCase(c)) hasLower = true;
-            else if (Character.isUpperCase(c)) hasUpper = true;
-            else if (Character.isDigit(c)) hasDigit = true;
-            else if ("!@#$%&*_+-=/?".indexOf(c) >= 0) hasSpecial = true;
+        return estimateStrength(password).score() >= StrengthEstimator.STRONG_SCORE;
+    }
 
-            if (hasLower && hasUpper && hasDigit && hasSpecial) break;
+    /**
+     * Stima la robustezza di una password, abbastanza velocemente da poter essere chiamata a ogni tasto premuto.
+     * Una password presente nell'elenco delle password compromesse ha punteggio 0.
+     *
+     * @param password array di caratteri da valutare, non modificato
+     * @return la stima, con il punteggio da 0 a 4 e il suggerimento da mostrare all'utente
+     */
+    public StrengthEstimator.Estimate estimateStrength(char[] password) {
+        if (breached.isBreached(password)) {
+            return new StrengthEstimator.Estimate(0, 0, "La password compare in violazioni di dati note: scegline un'altra.");
         }
+        return StrengthEstimator.estimate(password);
+    }
 
-        return hasLower && hasUpper && hasDigit && hasSpecial;
+    /**
+     * @return true se su disco esiste già un vault, false se la master password inserita ne creerà uno nuovo
+     */
+    public boolean vaultExists() {
+        return VaultUtils.vaultExists();
     }
 }
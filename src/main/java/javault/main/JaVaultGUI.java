@@ -1,13 +1,21 @@
 package javault.main;
 
 import java.awt.*;
-import java.util.Set;
+import java.util.List;
 import javax.swing.*;
+import javax.swing.filechooser.FileNameExtensionFilter;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.PlainDocument;
 import javault.controller.JaVaultController;
 import javault.exception.InvalidPasswordException;
 import javault.exception.UnknownErrorException;
+import javault.model.PassphraseGenerator;
+import javault.model.PasswordGenerator;
 import javault.model.VaultData;
+import javault.utils.StrengthEstimator;
 import java.util.Arrays;
+import java.io.File;
 
 public class JaVaultGUI {
     private JFrame frame;
@@ -18,8 +26,13 @@ public class JaVaultGUI {
     private JCheckBox upperCaseCheck;
     private JCheckBox digitsCheck;
     private JCheckBox specialCheck;
+    private JCheckBox passphraseCheck;
     private JButton generateButton;
     private JTextArea outputArea;
+    private SecretContent outputContent;
+    private String dashboardFilter = "";
+
+    private static final int PAGE_SIZE = 200;
     private JaVaultController controller;
 
     /**
@@ -36,16 +49,31 @@ public class JaVaultGUI {
 
     /**
      * Richiede la master password all'utente tramite un dialogo.
-     * Verifica che la password sia valida, sicura e corretta prima di sbloccare il vault.
+     * Verifica che la password sia valida e corretta prima di sbloccare il vault; se il vault
+     * non esiste ancora, verifica anche che sia sicura. Mentre l'utente scrive mostra la robustezza stimata.
      * In caso di errore critico, chiude l'applicazione.
      */
     private void askMasterPassword() {
+        boolean creating = !controller.vaultExists();
         while (true) {
             JPasswordField pwdField = new JPasswordField();
+            JLabel strengthLabel = new JLabel(" ");
+            pwdField.getDocument().addDocumentListener(new DocumentListener() {
+                @Override
+                public void insertUpdate(DocumentEvent e) { showStrength(pwdField, strengthLabel); }
+                @Override
+                public void removeUpdate(DocumentEvent e) { showStrength(pwdField, strengthLabel); }
+                @Override
+                public void changedUpdate(DocumentEvent e) { showStrength(pwdField, strengthLabel); }
+            });
+            JPanel passwordPanel = new JPanel(new BorderLayout(0, 5));
+            passwordPanel.add(pwdField, BorderLayout.NORTH);
+            passwordPanel.add(strengthLabel, BorderLayout.CENTER);
+
             int option = JOptionPane.showConfirmDialog(
                     frame,
-                    pwdField,
-                    "Inserisci la master password:",
+                    passwordPanel,
+                    creating ? "Scegli la master password del nuovo vault:" : "Inserisci la master password:",
                     JOptionPane.OK_CANCEL_OPTION,
                     JOptionPane.PLAIN_MESSAGE
             );
@@ -68,8 +96,10 @@ public class JaVaultGUI {
                     continue;
                 }
 
-                if (!controller.isStrongPassword(password)) {
-                    JOptionPane.showMessageDialog(frame, "La Master password è sbagliata o non abbastanza sicura. Deve contenere almeno un carattere minuscolo, uno maiuscolo, un numero, un carattere speciale (!@#$%&*_+-=/?) e deve essere lunga almeno dieci caratteri", "Errore", JOptionPane.ERROR_MESSAGE);
+                // Un vault esistente si apre anche con una password che oggi risulterebbe debole
+                if (creating && !controller.isStrongPassword(password)) {
+                    String feedback = controller.estimateStrength(password).feedback();
+                    JOptionPane.showMessageDialog(frame, "La Master password non è abbastanza sicura. Deve essere lunga almeno dieci caratteri e difficile da indovinare.\n" + feedback, "Errore", JOptionPane.ERROR_MESSAGE);
                     continue;
                 }
 
@@ -95,6 +125,27 @@ public class JaVaultGUI {
         }
     }
 
+    /**
+     * Mostra nell'etichetta la robustezza stimata della password contenuta nel campo.
+     *
+     * @param pwdField il campo della password
+     * @param strengthLabel l'etichetta da aggiornare
+     */
+    private void showStrength(JPasswordField pwdField, JLabel strengthLabel) {
+        char[] password = pwdField.getPassword();
+        try {
+            if (password.length == 0) {
+                strengthLabel.setText(" ");
+                return;
+            }
+            StrengthEstimator.Estimate estimate = controller.estimateStrength(password);
+            strengthLabel.setText("<html><body style='width:280px'>Robustezza: " + StrengthEstimator.describe(estimate.score())
+                    + (estimate.feedback().isEmpty() ? "" : "<br>" + estimate.feedback()) + "</body></html>");
+        } finally {
+            Arrays.fill(password, '\0'); // Pulizia dati sensibili dalla RAM
+        }
+    }
+
     /**
      * Inizializza la finestra principale e mostra la dashboard iniziale.
      * Imposta anche il comportamento alla chiusura della finestra.
@@ -122,54 +173,33 @@ public class JaVaultGUI {
      * Fornisce opzioni per visualizzare, eliminare o creare nuove voci.
      */
     private void showDashboard() {
+        clearOutput();
         frame.getContentPane().removeAll();
 
         // Pannello che contiene tutte le righe
         JPanel listPanel = new JPanel();
         listPanel.setLayout(new BoxLayout(listPanel, BoxLayout.Y_AXIS));
 
-        Set<String> logins = controller.getVault().getAllLogins();
-        if (logins.isEmpty()) {
-            listPanel.add(new JLabel("Nessun login salvato."));
-        } else {
-        	for (String login : logins) {
-        	    JPanel row = new JPanel(new GridBagLayout());
-        	    row.setBorder(BorderFactory.createEmptyBorder(5, 5, 5, 5));
-        	    GridBagConstraints gbc = new GridBagConstraints();
-
-        	    // Nome login 
-        	    JLabel loginLabel = new JLabel(login);
-        	    loginLabel.setFont(new Font("Arial", Font.PLAIN, 16));  // Aumenta la dimensione del testo
-        	    gbc.gridx = 0;
-        	    gbc.gridy = 0;
-        	    gbc.weightx = 1.0;
-        	    gbc.fill = GridBagConstraints.HORIZONTAL;
-        	    gbc.anchor = GridBagConstraints.WEST;
-        	    row.add(loginLabel, gbc);
-
-        	    // Bottoni
-        	    JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT, 5, 0));
-        	    JButton viewButton = new JButton("Visualizza");
-        	    viewButton.setPreferredSize(new Dimension(100, 25));
-        	    viewButton.addActionListener(_ -> showLoginDetails(login));
-        	    buttonPanel.add(viewButton);
-
-        	    JButton deleteButton = new JButton("Elimina");
-        	    deleteButton.setPreferredSize(new Dimension(100, 25));
-        	    deleteButton.addActionListener(_ -> deleteLoginFromDashboard(login));
-        	    buttonPanel.add(deleteButton);
-
-        	    gbc.gridx = 1;
-        	    gbc.gridy = 0;
-        	    gbc.weightx = 0;
-        	    gbc.anchor = GridBagConstraints.EAST;
-        	    gbc.fill = GridBagConstraints.NONE;
-        	    row.add(buttonPanel, gbc);
-
-        	    listPanel.add(row);
-        	}
+        JTextField searchField = new JTextField(dashboardFilter);
+        searchField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) { filterChanged(); }
+            @Override
+            public void removeUpdate(DocumentEvent e) { filterChanged(); }
+            @Override
+            public void changedUpdate(DocumentEvent e) { filterChanged(); }
 
-        }
+            private void filterChanged() {
+                dashboardFilter = searchField.getText();
+                fillLoginList(listPanel);
+            }
+        });
+        fillLoginList(listPanel);
+
+        JPanel searchPanel = new JPanel(new BorderLayout(5, 0));
+        searchPanel.setBorder(BorderFactory.createEmptyBorder(5, 5, 0, 5));
+        searchPanel.add(new JLabel("Cerca:"), BorderLayout.WEST);
+        searchPanel.add(searchField, BorderLayout.CENTER);
 
         // Wrapper per evitare che listPanel non si allarghi in verticale
         JPanel wrapperPanel = new JPanel(new BorderLayout());
@@ -183,6 +213,12 @@ public class JaVaultGUI {
         JButton newLoginButton = new JButton("➕ Nuovo Login");
         newLoginButton.addActionListener(_ -> showCreateLoginView());
 
+        JButton importButton = new JButton("📥 Importa");
+        importButton.addActionListener(_ -> importLogins());
+
+        JButton exportButton = new JButton("📤 Esporta");
+        exportButton.addActionListener(_ -> exportVault());
+
         JButton clearAllButton = new JButton("⚠️ Cancella Tutto");
         clearAllButton.setForeground(Color.WHITE);
         clearAllButton.setBackground(Color.RED);
@@ -200,8 +236,7 @@ public class JaVaultGUI {
 
             if (result == JOptionPane.YES_OPTION) {
             	try {
-                    controller.getVault().clearAll();
-                    controller.saveVault();
+                    controller.clearAll();
                     JOptionPane.showMessageDialog(frame, "Tutti i login sono stati eliminati.", "Fatto", JOptionPane.INFORMATION_MESSAGE);
                     showDashboard();
                 } catch (IllegalStateException e) {
@@ -217,9 +252,14 @@ public class JaVaultGUI {
 
         JPanel bottomPanel = new JPanel(new BorderLayout());
         bottomPanel.setBorder(BorderFactory.createEmptyBorder(5, 5, 5, 5));
-        bottomPanel.add(newLoginButton, BorderLayout.WEST);
+        JPanel leftButtons = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 0));
+        leftButtons.add(newLoginButton);
+        leftButtons.add(importButton);
+        leftButtons.add(exportButton);
+        bottomPanel.add(leftButtons, BorderLayout.WEST);
         bottomPanel.add(clearAllButton, BorderLayout.EAST);
 
+        frame.add(searchPanel, BorderLayout.NORTH);
         frame.add(scrollPane, BorderLayout.CENTER);
         frame.add(bottomPanel, BorderLayout.SOUTH);
 
@@ -228,36 +268,239 @@ public class JaVaultGUI {
     }
 
 
+    /**
+     * Riempie l'elenco della dashboard: senza filtro con la prima pagina di login in ordine alfabetico,
+     * altrimenti con i risultati della ricerca approssimata su nome e username, dal più pertinente.
+     */
+    private void fillLoginList(JPanel listPanel) {
+        listPanel.removeAll();
+        if (dashboardFilter.isBlank()) {
+            appendLoginPage(listPanel, null);
+        } else {
+            List<String> results = controller.getVault().search(dashboardFilter.strip(), PAGE_SIZE);
+            if (results.isEmpty()) {
+                listPanel.add(new JLabel("Nessun login trovato."));
+            }
+            for (String login : results) {
+                addLoginRow(listPanel, login);
+            }
+        }
+        listPanel.revalidate();
+        listPanel.repaint();
+    }
+
+    /**
+     * Aggiunge all'elenco una pagina di login in ordine alfabetico, a partire da quello successivo ad {@code after}.
+     * Se ci sono altri login, aggiunge in fondo un bottone per caricare la pagina seguente.
+     */
+    private void appendLoginPage(JPanel listPanel, String after) {
+        List<String> page = controller.getVault().getLoginsPage(after, PAGE_SIZE);
+        if (page.isEmpty() && after == null) {
+            listPanel.add(new JLabel("Nessun login salvato."));
+            return;
+        }
+
+        for (String login : page) {
+            addLoginRow(listPanel, login);
+        }
+
+        if (page.size() == PAGE_SIZE) {
+            JButton moreButton = new JButton("Mostra altri");
+            moreButton.addActionListener(_ -> {
+                listPanel.remove(moreButton);
+                appendLoginPage(listPanel, page.get(page.size() - 1));
+                listPanel.revalidate();
+                listPanel.repaint();
+            });
+            listPanel.add(moreButton);
+        }
+    }
+
+    /**
+     * Aggiunge all'elenco la riga di un login, con i bottoni per visualizzarlo ed eliminarlo.
+     */
+    private void addLoginRow(JPanel listPanel, String login) {
+        JPanel row = new JPanel(new GridBagLayout());
+        row.setBorder(BorderFactory.createEmptyBorder(5, 5, 5, 5));
+        GridBagConstraints gbc = new GridBagConstraints();
+
+        // Nome login 
+        JLabel loginLabel = new JLabel(login);
+        loginLabel.setFont(new Font("Arial", Font.PLAIN, 16));  // Aumenta la dimensione del testo
+        gbc.gridx = 0;
+        gbc.gridy = 0;
+        gbc.weightx = 1.0;
+        gbc.fill = GridBagConstraints.HORIZONTAL;
+        gbc.anchor = GridBagConstraints.WEST;
+        row.add(loginLabel, gbc);
+
+        // Bottoni
+        JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT, 5, 0));
+        JButton viewButton = new JButton("Visualizza");
+        viewButton.setPreferredSize(new Dimension(100, 25));
+        viewButton.addActionListener(_ -> showLoginDetails(login));
+        buttonPanel.add(viewButton);
+
+        JButton deleteButton = new JButton("Elimina");
+        deleteButton.setPreferredSize(new Dimension(100, 25));
+        deleteButton.addActionListener(_ -> deleteLoginFromDashboard(login));
+        buttonPanel.add(deleteButton);
+
+        gbc.gridx = 1;
+        gbc.gridy = 0;
+        gbc.weightx = 0;
+        gbc.anchor = GridBagConstraints.EAST;
+        gbc.fill = GridBagConstraints.NONE;
+        row.add(buttonPanel, gbc);
+
+        listPanel.add(row);
+    }
+
+    /**
+     * Azzera il testo con le credenziali mostrato dopo la generazione di un login, se presente.
+     */
+    private void clearOutput() {
+        if (outputContent != null) {
+            outputContent.clear();
+            outputContent = null;
+        }
+    }
+
+    /**
+     * Chiede un file CSV o JSON esportato da un altro password manager, oppure un'esportazione
+     * cifrata di JaVault, ne importa i login e aggiorna la dashboard.
+     * L'importazione avviene in background per non bloccare l'interfaccia.
+     */
+    private void importLogins() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setFileFilter(new FileNameExtensionFilter("CSV, JSON o esportazione JaVault", "csv", "json", "jvx"));
+        if (chooser.showOpenDialog(frame) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+
+        String path = chooser.getSelectedFile().getPath();
+        char[] password = null;
+        if (path.toLowerCase().endsWith(".jvx")) {
+            password = askPassword("Password dell'esportazione:");
+            if (password == null) return;
+        }
+
+        char[] importPassword = password;
+        new SwingWorker<String, Void>() {
+            @Override
+            protected String doInBackground() {
+                return importPassword != null
+                        ? controller.importEncrypted(path, importPassword)
+                        : controller.importLogins(path);
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    JOptionPane.showMessageDialog(frame, get(), "Importazione", JOptionPane.INFORMATION_MESSAGE);
+                } catch (Exception e) {
+                    JOptionPane.showMessageDialog(frame, "Importazione non riuscita", "Errore", JOptionPane.ERROR_MESSAGE);
+                }
+                showDashboard();
+            }
+        }.execute();
+    }
+
+    /**
+     * Esporta il vault in un file cifrato con una password dedicata o, su conferma esplicita,
+     * in CSV in chiaro. L'esportazione avviene in background per non bloccare l'interfaccia.
+     */
+    private void exportVault() {
+        Object[] options = {"Cifrato (.jvx)", "CSV in chiaro", "Annulla"};
+        int format = JOptionPane.showOptionDialog(frame, "Formato dell'esportazione:", "Esporta",
+                JOptionPane.DEFAULT_OPTION, JOptionPane.QUESTION_MESSAGE, null, options, options[0]);
+        if (format != 0 && format != 1) return;
+
+        if (format == 1) {
+            int confirm = JOptionPane.showConfirmDialog(frame,
+                    "Il CSV conterrà tutte le password in chiaro.\nChiunque abbia accesso al file potrà leggerle. Continuare?",
+                    "Attenzione", JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE);
+            if (confirm != JOptionPane.YES_OPTION) return;
+        }
+
+        JFileChooser chooser = new JFileChooser();
+        chooser.setSelectedFile(new File(format == 0 ? "javault.jvx" : "javault.csv"));
+        if (chooser.showSaveDialog(frame) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        String path = chooser.getSelectedFile().getPath();
+
+        char[] password = null;
+        if (format == 0) {
+            password = askPassword("Password per l'esportazione:");
+            if (password == null) return;
+            if (!controller.isStrongPassword(password)) {
+                Arrays.fill(password, '\0');
+                JOptionPane.showMessageDialog(frame, "La password dell'esportazione deve rispettare gli stessi requisiti della master password.", "Errore", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+        }
+
+        char[] exportPassword = password;
+        new SwingWorker<String, Void>() {
+            @Override
+            protected String doInBackground() {
+                return exportPassword != null
+                        ? controller.exportEncrypted(path, exportPassword)
+                        : controller.exportCsv(path);
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    JOptionPane.showMessageDialog(frame, get(), "Esportazione", JOptionPane.INFORMATION_MESSAGE);
+                } catch (Exception e) {
+                    JOptionPane.showMessageDialog(frame, "Esportazione non riuscita", "Errore", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        }.execute();
+    }
+
+    /**
+     * Chiede una password tramite un dialogo.
+     *
+     * @return la password inserita, o null se l'utente annulla o non inserisce nulla
+     */
+    private char[] askPassword(String title) {
+        JPasswordField pwdField = new JPasswordField();
+        int option = JOptionPane.showConfirmDialog(frame, pwdField, title,
+                JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+        if (option != JOptionPane.OK_OPTION) return null;
+
+        char[] password = pwdField.getPassword();
+        if (password.length == 0) return null;
+        return password;
+    }
+
     /**
      * Visualizza i dettagli completi del login specificato.
      *
      * @param name Il nome del login da visualizzare.
      */
     private void showLoginDetails(String name) {
-    	
-        char[] login = controller.printLogin(name);
-        JTextArea detailArea = new JTextArea();
+        SecretContent content = new SecretContent(controller.printLogin(name));
+        JTextArea detailArea = new JTextArea(new PlainDocument(content));
         detailArea.setEditable(false);
         detailArea.setLineWrap(false); 
         detailArea.setWrapStyleWord(false);
 
-        
-        for(char c : login) {
-        	detailArea.append(String.valueOf(c));
-        }
-      
-        
         JScrollPane scrollPane = new JScrollPane(detailArea);
         scrollPane.setHorizontalScrollBarPolicy(JScrollPane.HORIZONTAL_SCROLLBAR_AS_NEEDED);
         scrollPane.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED);
 
         JOptionPane.showMessageDialog(frame, scrollPane, "Dettagli login", JOptionPane.INFORMATION_MESSAGE);
-        Arrays.fill(login, '\0'); // Pulizia array
+        content.clear(); // Pulizia del testo mostrato
     }
 
     /**
      * Mostra l'interfaccia per creare un nuovo login.
-     * Permette di impostare criteri personalizzati per la generazione della password.
+     * Permette di impostare criteri personalizzati per la generazione della password,
+     * oppure di generare una passphrase di parole casuali.
      */
     private void showCreateLoginView() {
         frame.getContentPane().removeAll();
@@ -272,17 +515,46 @@ public class JaVaultGUI {
         upperCaseCheck = new JCheckBox("Uppercase (A-Z)", true);
         digitsCheck = new JCheckBox("Digits (0-9)", true);
         specialCheck = new JCheckBox("Special (!@#$%&*_+-=/?)", true);
+        passphraseCheck = new JCheckBox("Passphrase (parole casuali)", false);
+
+        JLabel lengthLabel = new JLabel("Lunghezza Password (1-64):");
+        JLabel strengthLabel = new JLabel();
+        passphraseCheck.addActionListener(_ -> {
+            boolean passphrase = passphraseCheck.isSelected();
+            lengthLabel.setText(passphrase ? "Numero parole (3-20):" : "Lunghezza Password (1-64):");
+            lengthField.setText(passphrase ? "6" : "16");
+            lowerCaseCheck.setEnabled(!passphrase);
+            upperCaseCheck.setEnabled(!passphrase);
+            digitsCheck.setEnabled(!passphrase);
+            specialCheck.setEnabled(!passphrase);
+        });
+        lengthField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) { showGeneratedStrength(strengthLabel); }
+            @Override
+            public void removeUpdate(DocumentEvent e) { showGeneratedStrength(strengthLabel); }
+            @Override
+            public void changedUpdate(DocumentEvent e) { showGeneratedStrength(strengthLabel); }
+        });
+        for (JCheckBox check : List.of(lowerCaseCheck, upperCaseCheck, digitsCheck, specialCheck, passphraseCheck)) {
+            check.addActionListener(_ -> showGeneratedStrength(strengthLabel));
+        }
+        showGeneratedStrength(strengthLabel);
 
         inputPanel.add(new JLabel("Nome Login:"));
         inputPanel.add(accountField);
         inputPanel.add(new JLabel("Email/Username:"));
         inputPanel.add(usernameField);
-        inputPanel.add(new JLabel("Lunghezza Password (1-64):"));
+        inputPanel.add(passphraseCheck);
+        inputPanel.add(new JLabel());
+        inputPanel.add(lengthLabel);
         inputPanel.add(lengthField);
         inputPanel.add(lowerCaseCheck);
         inputPanel.add(upperCaseCheck);
         inputPanel.add(digitsCheck);
         inputPanel.add(specialCheck);
+        inputPanel.add(new JLabel("Robustezza stimata:"));
+        inputPanel.add(strengthLabel);
 
         generateButton = new JButton("Genera e Salva");
         JButton backButton = new JButton("⬅ Torna alla Dashboard");
@@ -308,8 +580,33 @@ public class JaVaultGUI {
     }
 
     /**
-     * Genera una password secondo i criteri selezionati e salva il nuovo login nel vault.
-     * Mostra il risultato nell'area di output.
+     * Mostra la robustezza delle password che verrebbero generate con i criteri selezionati,
+     * stimata dall'entropia del generatore.
+     *
+     * @param strengthLabel l'etichetta da aggiornare
+     */
+    private void showGeneratedStrength(JLabel strengthLabel) {
+        int length;
+        try {
+            length = Integer.parseInt(lengthField.getText().trim());
+        } catch (NumberFormatException e) {
+            strengthLabel.setText("-");
+            return;
+        }
+        double bits;
+        if (passphraseCheck.isSelected()) {
+            bits = new PassphraseGenerator('-', false).entropyBits(length);
+        } else {
+            bits = new PasswordGenerator(lowerCaseCheck.isSelected(), upperCaseCheck.isSelected(),
+                    digitsCheck.isSelected(), specialCheck.isSelected()).entropyBits(length);
+        }
+        int score = StrengthEstimator.scoreOf(bits * Math.log10(2));
+        strengthLabel.setText(StrengthEstimator.describe(score) + " (" + Math.round(bits) + " bit)");
+    }
+
+    /**
+     * Genera una password secondo i criteri selezionati, o una passphrase se richiesta,
+     * e salva il nuovo login nel vault. Mostra il risultato nell'area di output.
      */
     private void generateAndSavePassword() {
         String accountName = accountField.getText().trim();
@@ -320,15 +617,19 @@ public class JaVaultGUI {
         }
         
         String username = usernameField.getText().trim();
+        boolean passphrase = passphraseCheck.isSelected();
+        int min = passphrase ? 3 : 1;
+        int max = passphrase ? 20 : 64;
         int length;
 
         try {
             length = Integer.parseInt(lengthField.getText().trim());
-            if (length < 1 || length > 64) {
+            if (length < min || length > max) {
                 throw new NumberFormatException("Lunghezza fuori range");
             }
         } catch (NumberFormatException e) {
-            JOptionPane.showMessageDialog(frame, "Inserisci una lunghezza valida (1-64)", "Errore", JOptionPane.ERROR_MESSAGE);
+            String message = passphrase ? "Inserisci un numero di parole valido (3-20)" : "Inserisci una lunghezza valida (1-64)";
+            JOptionPane.showMessageDialog(frame, message, "Errore", JOptionPane.ERROR_MESSAGE);
             return;
         }
 
@@ -342,16 +643,21 @@ public class JaVaultGUI {
         boolean useDigits = digitsCheck.isSelected();
         boolean useSpecial = specialCheck.isSelected();        
         
-        String check = controller.generateAndSaveLogin(accountName, username, length, useLower, useUpper, useDigits, useSpecial);
+        String check = passphrase
+                ? controller.generateAndSaveLogin(accountName, username, length, new PassphraseGenerator('-', false))
+                : controller.generateAndSaveLogin(accountName, username, length, useLower, useUpper, useDigits, useSpecial);
 
         
-        outputArea.setText(check + "\n");
-
         char[] loginText = controller.printLogin(accountName); //Modo più sicuro per evitare che i dati vengano letti dalla RAM
-        for (char c : loginText) {
-            outputArea.append(String.valueOf(c));
-        }
+        char[] text = new char[check.length() + 1 + loginText.length];
+        check.getChars(0, check.length(), text, 0);
+        text[check.length()] = '\n';
+        System.arraycopy(loginText, 0, text, check.length() + 1, loginText.length);
         Arrays.fill(loginText, '\0'); //Pulizia dati sensibili dalla RAM
+
+        clearOutput();
+        outputContent = new SecretContent(text);
+        outputArea.setDocument(new PlainDocument(outputContent));
     }
 
     /**
@@ -371,7 +677,7 @@ public class JaVaultGUI {
     
     /**
      * Elimina il login specificato dopo conferma dell'utente.
-     * Salva il vault aggiornato e ricarica la dashboard.
+     * Registra la rimozione nel vault e ricarica la dashboard.
      *
      * @param loginName Il nome del login da eliminare.
      */
@@ -385,15 +691,9 @@ public class JaVaultGUI {
         );
 
         if (confirm == JOptionPane.YES_OPTION) {
-            VaultData vault = controller.getVault();
-            if (!vault.hasLogin(loginName)) {
-                JOptionPane.showMessageDialog(frame, "Login non trovato.", "Errore", JOptionPane.ERROR_MESSAGE);
-                return;
-            }
-
-            vault.removeLogin(loginName);
+            boolean removed = false;
             try {
-                controller.saveVault();
+                removed = controller.removeLogin(loginName);
             } catch (IllegalStateException e) {
                 // Il salvataggio è fallito
                 JOptionPane.showMessageDialog(frame, 
@@ -402,6 +702,10 @@ public class JaVaultGUI {
                 controller.closeVault(); //Azione di pulizia
                 System.exit(1); //Chiusura controllata
             }
+            if (!removed) {
+                JOptionPane.showMessageDialog(frame, "Login non trovato.", "Errore", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
 
             JOptionPane.showMessageDialog(frame, "Login eliminato con successo.", "Successo", JOptionPane.INFORMATION_MESSAGE);
             showDashboard();
@@ -0,0 +1,83 @@
+package javault.main;
+
+import java.util.Arrays;
+
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Position;
+import javax.swing.text.Segment;
+import javax.swing.undo.UndoableEdit;
+
+/**
+ * Contenuto in sola lettura di un documento Swing, basato direttamente su un array di caratteri
+ * che contiene dati sensibili. A differenza del contenuto predefinito dei documenti,
+ * il testo non viene copiato in stringhe o buffer interni: i componenti leggono dall'array,
+ * che viene azzerato con {@link #clear()} quando il testo non è più mostrato.
+ */
+class SecretContent implements AbstractDocument.Content {
+
+    private final char[] chars;
+
+    /**
+     * I documenti Swing terminano sempre con un a capo: se il testo ne è privo
+     * viene copiato in un array che lo aggiunge, e l'originale viene azzerato.
+     *
+     * @param chars il testo da mostrare; l'array non viene copiato e viene azzerato da {@link #clear()}
+     */
+    SecretContent(char[] chars) {
+        if (chars.length == 0 || chars[chars.length - 1] != '\n') {
+            char[] terminated = Arrays.copyOf(chars, chars.length + 1);
+            terminated[chars.length] = '\n';
+            Arrays.fill(chars, '\0');
+            chars = terminated;
+        }
+        this.chars = chars;
+    }
+
+    @Override
+    public Position createPosition(int offset) {
+        return () -> offset;
+    }
+
+    @Override
+    public int length() {
+        return chars.length;
+    }
+
+    @Override
+    public UndoableEdit insertString(int where, String str) throws BadLocationException {
+        throw new BadLocationException("Contenuto in sola lettura", where);
+    }
+
+    @Override
+    public UndoableEdit remove(int where, int nitems) throws BadLocationException {
+        throw new BadLocationException("Contenuto in sola lettura", where);
+    }
+
+    @Override
+    public String getString(int where, int len) throws BadLocationException {
+        checkRange(where, len);
+        return new String(chars, where, len);
+    }
+
+    @Override
+    public void getChars(int where, int len, Segment txt) throws BadLocationException {
+        checkRange(where, len);
+        txt.array = chars;
+        txt.offset = where;
+        txt.count = len;
+    }
+
+    /**
+     * Azzera il testo. Il documento continua a esistere ma mostra solo caratteri nulli.
+     */
+    void clear() {
+        Arrays.fill(chars, '\0'); // Pulizia dati sensibili dalla RAM
+    }
+
+    private void checkRange(int where, int len) throws BadLocationException {
+        if (where < 0 || len < 0 || where + len > chars.length) {
+            throw new BadLocationException("Posizione non valida", where);
+        }
+    }
+}
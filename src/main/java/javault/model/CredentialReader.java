@@ -0,0 +1,19 @@
+package javault.model;
+
+/**
+ * Funzione che riceve in prestito username e password di un login.
+ * Le viste sono valide solo durante la chiamata: non vanno conservate
+ * né convertite in String.
+ *
+ * @param <R> il tipo del risultato
+ */
+@FunctionalInterface
+public interface CredentialReader<R> {
+
+    /**
+     * @param username vista in sola lettura sullo username
+     * @param password vista in sola lettura sulla password
+     * @return il risultato della lettura
+     */
+    R read(SecretView username, SecretView password);
+}
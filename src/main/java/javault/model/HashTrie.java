@@ -0,0 +1,269 @@
+package javault.model;
+
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+
+/**
+ * Mappa immutabile persistente (hash array mapped trie): ogni modifica restituisce
+ * una nuova mappa che condivide con la precedente tutti i nodi non toccati.
+ * Inserimento e rimozione copiano solo il percorso dalla radice alla chiave,
+ * al più sette nodi da 32 elementi, quindi conservare una versione precedente costa O(1).
+ * Le chiavi sono distribuite per gruppi di 5 bit del loro hash; le chiavi con lo stesso
+ * hash completo finiscono in un nodo di collisione. I valori non possono essere null.
+ *
+ * @param <K> il tipo delle chiavi
+ * @param <V> il tipo dei valori
+ */
+final class HashTrie<K, V> {
+
+    private static final HashTrie<?, ?> EMPTY = new HashTrie<>(null, 0);
+
+    private final Node root;
+    private final int size;
+
+    private HashTrie(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <K, V> HashTrie<K, V> empty() {
+        return (HashTrie<K, V>) EMPTY;
+    }
+
+    int size() {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(K key) {
+        return root == null ? null : (V) root.get(0, hash(key), key);
+    }
+
+    /**
+     * @return una nuova mappa con la chiave associata al valore, o questa se il valore è già quello
+     */
+    HashTrie<K, V> put(K key, V value) {
+        boolean[] added = new boolean[1];
+        Node start = root != null ? root : BitmapNode.EMPTY;
+        Node updated = start.put(0, hash(key), key, value, added);
+        return updated == root ? this : new HashTrie<>(updated, added[0] ? size + 1 : size);
+    }
+
+    /**
+     * @return una nuova mappa senza la chiave, o questa se la chiave non è presente
+     */
+    HashTrie<K, V> remove(K key) {
+        if (root == null) return this;
+        Node updated = root.remove(0, hash(key), key);
+        return updated == root ? this : new HashTrie<>(updated, size - 1);
+    }
+
+    @SuppressWarnings("unchecked")
+    void forEach(BiConsumer<? super K, ? super V> action) {
+        if (root != null) root.forEach((BiConsumer<Object, Object>) action);
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private static int bit(int hash, int shift) {
+        return 1 << ((hash >>> shift) & 31);
+    }
+
+    /**
+     * Crea il nodo che contiene due chiavi distinte a partire dal livello indicato.
+     */
+    private static Node pair(int shift, Object key1, Object value1, int hash2, Object key2, Object value2) {
+        int hash1 = hash(key1);
+        if (hash1 == hash2) {
+            return new CollisionNode(hash1, new Object[] {key1, value1, key2, value2});
+        }
+        boolean[] added = new boolean[1];
+        return BitmapNode.EMPTY
+                .put(shift, hash1, key1, value1, added)
+                .put(shift, hash2, key2, value2, added);
+    }
+
+    private interface Node {
+        Object get(int shift, int hash, Object key);
+
+        Node put(int shift, int hash, Object key, Object value, boolean[] added);
+
+        /**
+         * @return il nodo senza la chiave, questo nodo se la chiave è assente, o null se resta vuoto
+         */
+        Node remove(int shift, int hash, Object key);
+
+        void forEach(BiConsumer<Object, Object> action);
+    }
+
+    /**
+     * Nodo con fino a 32 posizioni, occupate secondo la bitmap. L'array alterna
+     * chiave e valore; una chiave null indica che il valore è un nodo figlio.
+     */
+    private static final class BitmapNode implements Node {
+
+        static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+        final int bitmap;
+        final Object[] array;
+
+        BitmapNode(int bitmap, Object[] array) {
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+
+        private int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        @Override
+        public Object get(int shift, int hash, Object key) {
+            int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0) return null;
+            int i = index(bit);
+            Object k = array[2 * i];
+            Object v = array[2 * i + 1];
+            if (k == null) return ((Node) v).get(shift + 5, hash, key);
+            return key.equals(k) ? v : null;
+        }
+
+        @Override
+        public Node put(int shift, int hash, Object key, Object value, boolean[] added) {
+            int bit = bit(hash, shift);
+            int i = index(bit);
+            if ((bitmap & bit) == 0) {
+                Object[] copy = new Object[array.length + 2];
+                System.arraycopy(array, 0, copy, 0, 2 * i);
+                copy[2 * i] = key;
+                copy[2 * i + 1] = value;
+                System.arraycopy(array, 2 * i, copy, 2 * i + 2, array.length - 2 * i);
+                added[0] = true;
+                return new BitmapNode(bitmap | bit, copy);
+            }
+
+            Object k = array[2 * i];
+            Object v = array[2 * i + 1];
+            if (k == null) {
+                Node child = ((Node) v).put(shift + 5, hash, key, value, added);
+                return child == v ? this : with(2 * i + 1, child);
+            }
+            if (key.equals(k)) {
+                return value == v ? this : with(2 * i + 1, value);
+            }
+            added[0] = true;
+            Object[] copy = array.clone();
+            copy[2 * i] = null;
+            copy[2 * i + 1] = pair(shift + 5, k, v, hash, key, value);
+            return new BitmapNode(bitmap, copy);
+        }
+
+        private BitmapNode with(int position, Object element) {
+            Object[] copy = array.clone();
+            copy[position] = element;
+            return new BitmapNode(bitmap, copy);
+        }
+
+        @Override
+        public Node remove(int shift, int hash, Object key) {
+            int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0) return this;
+            int i = index(bit);
+            Object k = array[2 * i];
+            Object v = array[2 * i + 1];
+            if (k == null) {
+                Node child = ((Node) v).remove(shift + 5, hash, key);
+                if (child == v) return this;
+                if (child != null) return with(2 * i + 1, child);
+            } else if (!key.equals(k)) {
+                return this;
+            }
+
+            if (bitmap == bit) return null;
+            Object[] copy = new Object[array.length - 2];
+            System.arraycopy(array, 0, copy, 0, 2 * i);
+            System.arraycopy(array, 2 * i + 2, copy, 2 * i, array.length - 2 * i - 2);
+            return new BitmapNode(bitmap ^ bit, copy);
+        }
+
+        @Override
+        public void forEach(BiConsumer<Object, Object> action) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (array[i] == null) {
+                    ((Node) array[i + 1]).forEach(action);
+                } else {
+                    action.accept(array[i], array[i + 1]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Nodo per chiavi diverse con lo stesso hash completo, con ricerca lineare.
+     */
+    private static final class CollisionNode implements Node {
+
+        final int hash;
+        final Object[] array;
+
+        CollisionNode(int hash, Object[] array) {
+            this.hash = hash;
+            this.array = array;
+        }
+
+        private int find(Object key) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (key.equals(array[i])) return i;
+            }
+            return -1;
+        }
+
+        @Override
+        public Object get(int shift, int hash, Object key) {
+            int i = find(key);
+            return i < 0 ? null : array[i + 1];
+        }
+
+        @Override
+        public Node put(int shift, int hash, Object key, Object value, boolean[] added) {
+            if (hash != this.hash) {
+                // Chiave con hash diverso: il nodo di collisione scende di un livello
+                BitmapNode parent = new BitmapNode(bit(this.hash, shift), new Object[] {null, this});
+                return parent.put(shift, hash, key, value, added);
+            }
+            int i = find(key);
+            if (i >= 0) {
+                if (array[i + 1] == value) return this;
+                Object[] copy = array.clone();
+                copy[i + 1] = value;
+                return new CollisionNode(hash, copy);
+            }
+            Object[] copy = Arrays.copyOf(array, array.length + 2);
+            copy[array.length] = key;
+            copy[array.length + 1] = value;
+            added[0] = true;
+            return new CollisionNode(hash, copy);
+        }
+
+        @Override
+        public Node remove(int shift, int hash, Object key) {
+            int i = find(key);
+            if (i < 0) return this;
+            if (array.length == 2) return null;
+            Object[] copy = new Object[array.length - 2];
+            System.arraycopy(array, 0, copy, 0, i);
+            System.arraycopy(array, i + 2, copy, i, array.length - i - 2);
+            return new CollisionNode(hash, copy);
+        }
+
+        @Override
+        public void forEach(BiConsumer<Object, Object> action) {
+            for (int i = 0; i < array.length; i += 2) {
+                action.accept(array[i], array[i + 1]);
+            }
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package javault.model;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Archivio persistente della cronologia delle password, da cui {@link VaultData}
+ * legge la cronologia di un login solo quando viene richiesta.
+ */
+public interface HistoryStore extends AutoCloseable {
+
+    /**
+     * @return i nomi dei login con una cronologia salvata
+     */
+    Set<String> names();
+
+    /**
+     * Legge la cronologia salvata di un login.
+     *
+     * @param name nome del login
+     * @return le versioni dalla più recente, o una lista vuota se il login non ha cronologia
+     *         o non può essere letta
+     */
+    List<PasswordVersion> load(String name);
+
+    /**
+     * Rilascia le risorse dell'archivio.
+     */
+    @Override
+    void close();
+}
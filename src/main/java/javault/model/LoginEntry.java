@@ -1,18 +1,33 @@
 package javault.model;
 
-import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.SortedSet;
+import java.util.TreeSet;
 
 /**
- * Rappresenta una entry di login con username e password in chiaro (char[]),
+ * Rappresenta una entry di login con username e password in chiaro,
  * da mantenere in RAM il meno possibile e pulire subito dopo l'uso.
  * Costruisce una nuova entry di login copiando username e password.
  * Si usa una copia per evitare che modifiche esterne agli array originali
  * compromettano l'integrità interna dell'oggetto e per ridurre i rischi
  * legati alla gestione dei dati sensibili in memoria.
+ * Username e password sono conservati fuori dall'heap ({@link OffHeapSecret}):
+ * il garbage collector non li copia e {@link #clear()} li azzera in modo deterministico.
+ * L'accesso ai segreti è sincronizzato sull'istanza: una entry rimossa e pulita da un altro
+ * thread non viene mai letta a metà, e chi la legge dopo riceve {@link IllegalStateException}.
+ * <p>
+ * Oltre alle credenziali, la entry ha una cartella e dei tag, usati per organizzare e filtrare
+ * i login: non sono segreti, quindi restano disponibili anche se la entry è cifrata o pulita.
+ * Le cartelle sono percorsi separati da "/", i tag parole minuscole.
  */
 public class LoginEntry {
-    private char[] username;
-    private char[] password;
+    private transient OffHeapSecret username;
+    private transient OffHeapSecret password;
+    private transient byte[] sealed;
+    private String folder = "";
+    private SortedSet<String> tags = Collections.emptySortedSet();
 
     /**
      * Costruisce un'istanza di LoginEntry copiando username e password.
@@ -21,39 +36,243 @@ public class LoginEntry {
      * @param password array di caratteri contenente la password
      */
     public LoginEntry(char[] username, char[] password) {
-        this.username = Arrays.copyOf(username, username.length);
-        this.password = Arrays.copyOf(password, password.length);
+        this.username = OffHeapSecret.of(username);
+        this.password = OffHeapSecret.of(password);
+    }
+
+    /**
+     * Costruisce un'istanza di LoginEntry copiando username e password,
+     * con la cartella e i tag indicati.
+     *
+     * @param username array di caratteri contenente lo username
+     * @param password array di caratteri contenente la password
+     * @param folder la cartella, o null per nessuna
+     * @param tags i tag
+     * @throws IllegalArgumentException se un tag non è valido
+     */
+    public LoginEntry(char[] username, char[] password, String folder, Collection<String> tags) {
+        this(username, password);
+        this.folder = normalizeFolder(folder);
+        this.tags = normalizeTags(tags);
+    }
+
+    private LoginEntry(byte[] sealed) {
+        this.sealed = sealed;
+    }
+
+    /**
+     * Crea una entry ancora cifrata, che verrà decifrata solo quando richiesta
+     * tramite {@link VaultData#getLogin(String)}.
+     *
+     * @param sealed record cifrato con AES-GCM (IV pre-posto) contenente username e password
+     * @return la LoginEntry cifrata
+     */
+    public static LoginEntry sealed(byte[] sealed) {
+        return new LoginEntry(sealed);
+    }
+
+    /**
+     * Indica se la entry non è ancora stata decifrata.
+     *
+     * @return true se username e password non sono ancora disponibili in chiaro
+     */
+    public synchronized boolean isSealed() {
+        return username == null && sealed != null;
+    }
+
+    /**
+     * Restituisce il record cifrato da cui la entry è stata caricata, se presente.
+     * Il contenuto è già cifrato, quindi può essere riscritto su disco così com'è.
+     *
+     * @return il record cifrato, o null se la entry è stata creata in chiaro
+     */
+    public synchronized byte[] getSealed() {
+        return sealed;
+    }
+
+    /**
+     * Sposta in questa entry username e password di una entry appena decifrata,
+     * mantenendo il record cifrato originale.
+     *
+     * @param opened la entry decifrata, che viene svuotata
+     */
+    synchronized void open(LoginEntry opened) {
+        this.username = opened.username;
+        this.password = opened.password;
+        opened.username = null;
+        opened.password = null;
+    }
+
+    /**
+     * Sostituisce il record cifrato con lo stesso contenuto cifrato con un'altra chiave,
+     * dopo un cambio di chiave. La entry resta cifrata o in chiaro come prima.
+     *
+     * @param resealed il nuovo record cifrato
+     */
+    synchronized void reseal(byte[] resealed) {
+        sealed = resealed;
+    }
+
+    /**
+     * Concede in prestito username e password per la durata della chiamata,
+     * come viste in sola lettura sulla memoria fuori heap: nessuna copia dei segreti
+     * viene allocata, e al ritorno le viste vengono invalidate.
+     * Da preferire ai getter, che restituiscono una copia da azzerare.
+     *
+     * @param <R> il tipo del risultato
+     * @param reader la funzione che legge le credenziali
+     * @return il risultato di {@code reader}
+     * @throws IllegalStateException se la entry è ancora cifrata o è stata pulita
+     */
+    public synchronized <R> R borrow(CredentialReader<R> reader) {
+        SecretView userView = available(username).view();
+        SecretView passView = available(password).view();
+        try {
+            return reader.read(userView, passView);
+        } finally {
+            userView.close();
+            passView.close();
+        }
     }
 
     /**
      * Evita di esporre il riferimento originale grazie ad una copia
      * per evitare perdite o manipolazioni di dati.
      * @return char[] username
+     * @throws IllegalStateException se la entry è ancora cifrata o è stata pulita
      */
-    public char[] getUsername() {
-        return Arrays.copyOf(username, username.length);
+    public synchronized char[] getUsername() {
+        return available(username).toCharArray();
     }
     
     /**
      * Evita di esporre il riferimento originale grazie ad una copia
      * * per evitare perdite o manipolazioni di dati.
      * @return char[] password
+     * @throws IllegalStateException se la entry è ancora cifrata o è stata pulita
+     */
+    public synchronized char[] getPassword() {
+        return available(password).toCharArray();
+    }
+
+    /**
+     * @return la cartella del login, o una stringa vuota se non è in una cartella
+     */
+    public synchronized String getFolder() {
+        return folder;
+    }
+
+    /**
+     * @return i tag del login in ordine alfabetico, in un insieme non modificabile
+     */
+    public synchronized SortedSet<String> getTags() {
+        return tags;
+    }
+
+    /**
+     * Sostituisce cartella e tag, già normalizzati.
+     */
+    synchronized void setLabels(String folder, SortedSet<String> tags) {
+        this.folder = folder;
+        this.tags = tags;
+    }
+
+    /**
+     * Restituisce una copia della entry con cartella e tag indicati, già normalizzati.
+     * Le credenziali vengono copiate fuori heap e il record cifrato, se presente, condiviso:
+     * una entry ancora cifrata resta cifrata. Questa entry non viene modificata,
+     * quindi chi la sta leggendo, ad esempio uno snapshot, continua a vedere le etichette precedenti.
+     *
+     * @throws IllegalStateException se la entry è stata pulita
      */
-    public char[] getPassword() {
-        return Arrays.copyOf(password, password.length);
+    synchronized LoginEntry withLabels(String folder, SortedSet<String> tags) {
+        if (username == null && sealed == null) {
+            throw new IllegalStateException("Credenziali non disponibili in chiaro");
+        }
+        LoginEntry copy = new LoginEntry(sealed);
+        if (username != null) {
+            copy.username = username.copy();
+            copy.password = password.copy();
+        }
+        copy.folder = folder;
+        copy.tags = tags;
+        return copy;
+    }
+
+    /**
+     * Copia cartella e tag di un'altra entry, ad esempio quella che questa sostituisce.
+     */
+    void copyLabels(LoginEntry other) {
+        String otherFolder;
+        SortedSet<String> otherTags;
+        synchronized (other) {
+            otherFolder = other.folder;
+            otherTags = other.tags;
+        }
+        setLabels(otherFolder, otherTags);
+    }
+
+    /**
+     * Normalizza il percorso di una cartella: segmenti separati da "/", senza spazi ai bordi
+     * e senza segmenti vuoti.
+     *
+     * @param folder il percorso, o null
+     * @return il percorso normalizzato, vuoto per nessuna cartella
+     */
+    static String normalizeFolder(String folder) {
+        if (folder == null) return "";
+        StringBuilder normalized = new StringBuilder(folder.length());
+        for (String segment : folder.split("/")) {
+            String stripped = segment.strip();
+            if (stripped.isEmpty()) continue;
+            if (!normalized.isEmpty()) normalized.append('/');
+            normalized.append(stripped);
+        }
+        return normalized.toString();
+    }
+
+    /**
+     * Normalizza i tag in minuscolo e li ordina, scartando i duplicati.
+     *
+     * @param tags i tag
+     * @return i tag normalizzati, in un insieme non modificabile
+     * @throws IllegalArgumentException se un tag è vuoto, contiene spazi o parentesi,
+     *         o coincide con un operatore dei filtri
+     */
+    static SortedSet<String> normalizeTags(Collection<String> tags) {
+        if (tags == null || tags.isEmpty()) return Collections.emptySortedSet();
+        SortedSet<String> normalized = new TreeSet<>();
+        for (String tag : tags) {
+            String lower = tag.strip().toLowerCase(Locale.ROOT);
+            if (lower.isEmpty() || lower.chars().anyMatch(c -> Character.isWhitespace(c) || c == '(' || c == ')')
+                    || lower.equals("and") || lower.equals("or") || lower.equals("not")
+                    || lower.startsWith("folder:")) {
+                throw new IllegalArgumentException("Tag non valido: " + tag);
+            }
+            normalized.add(lower);
+        }
+        return Collections.unmodifiableSortedSet(normalized);
+    }
+
+    private static OffHeapSecret available(OffHeapSecret secret) {
+        if (secret == null) {
+            throw new IllegalStateException("Credenziali non disponibili in chiaro");
+        }
+        return secret;
     }
 
     /**
-     * Pulisce username e password dalla memoria sovrascrivendo gli array.
+     * Pulisce username e password dalla memoria sovrascrivendo la memoria fuori heap.
      */
-    public void clear() {
+    public synchronized void clear() {
         if (username != null) {
-            Arrays.fill(username, '\0');
+            username.clear();
             username = null;
         }
         if (password != null) {
-            Arrays.fill(password, '\0');
+            password.clear();
             password = null;
         }
+        sealed = null;
     }
 }
@@ -0,0 +1,81 @@
+package javault.model;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+
+/**
+ * Sequenza di caratteri segreti conservata fuori dall'heap, in un {@link MemorySegment}.
+ * Il garbage collector non copia mai questi byte durante la compattazione dell'heap,
+ * e {@link #clear()} li azzera in modo deterministico. La memoria nativa viene poi
+ * rilasciata automaticamente quando il segreto non è più raggiungibile.
+ */
+final class OffHeapSecret {
+
+    private final MemorySegment segment;
+    private final int length;
+
+    private OffHeapSecret(MemorySegment segment, int length) {
+        this.segment = segment;
+        this.length = length;
+    }
+
+    /**
+     * Copia i caratteri indicati in un nuovo segmento nativo.
+     * L'array originale non viene modificato: va azzerato dal chiamante.
+     *
+     * @param chars i caratteri da copiare
+     * @return il segreto fuori heap
+     */
+    static OffHeapSecret of(char[] chars) {
+        MemorySegment segment = Arena.ofAuto().allocate(ValueLayout.JAVA_CHAR.byteSize() * chars.length,
+                ValueLayout.JAVA_CHAR.byteAlignment());
+        MemorySegment.copy(chars, 0, segment, ValueLayout.JAVA_CHAR, 0, chars.length);
+        return new OffHeapSecret(segment, chars.length);
+    }
+
+    /**
+     * Copia il segreto in un nuovo segmento nativo, senza passare per l'heap.
+     *
+     * @return la copia, indipendente da questo segreto
+     */
+    OffHeapSecret copy() {
+        MemorySegment copied = Arena.ofAuto().allocate(segment.byteSize(), ValueLayout.JAVA_CHAR.byteAlignment());
+        copied.copyFrom(segment);
+        return new OffHeapSecret(copied, length);
+    }
+
+    /**
+     * @return il numero di caratteri del segreto
+     */
+    int length() {
+        return length;
+    }
+
+    /**
+     * Crea una vista in sola lettura sui caratteri, senza copiarli.
+     *
+     * @return la vista, da invalidare al termine dell'accesso
+     */
+    SecretView view() {
+        return new SecretView(segment, length);
+    }
+
+    /**
+     * Copia i caratteri in un nuovo array sull'heap, da azzerare dopo l'uso.
+     *
+     * @return una copia dei caratteri
+     */
+    char[] toCharArray() {
+        char[] chars = new char[length];
+        MemorySegment.copy(segment, ValueLayout.JAVA_CHAR, 0, chars, 0, length);
+        return chars;
+    }
+
+    /**
+     * Sovrascrive con zeri la memoria nativa del segreto.
+     */
+    void clear() {
+        segment.fill((byte) 0);
+    }
+}
@@ -0,0 +1,85 @@
+package javault.model;
+
+import java.util.Arrays;
+
+/**
+ * Generatore di passphrase in stile Diceware: parole estratte a caso da un {@link WordList},
+ * separate da un carattere, con l'iniziale eventualmente maiuscola.
+ * <p>
+ * Gli indici delle parole vengono estratti con il DRBG del thread (vedi {@link RandomStream});
+ * le parole vengono poi copiate direttamente dall'elenco nell'array della passphrase,
+ * allocato una sola volta della lunghezza esatta, senza creare stringhe.
+ * Il generatore è immutabile e può essere usato da più thread.
+ */
+public final class PassphraseGenerator {
+
+    private final WordList words;
+    private final char separator;
+    private final boolean capitalize;
+
+    /**
+     * Costruisce il generatore sull'elenco di parole incluso nell'applicazione.
+     *
+     * @param separator il carattere tra le parole
+     * @param capitalize true per rendere maiuscola l'iniziale di ogni parola
+     * @throws IllegalStateException se l'elenco di parole non può essere caricato
+     */
+    public PassphraseGenerator(char separator, boolean capitalize) {
+        this(WordList.bundled(), separator, capitalize);
+    }
+
+    /**
+     * Costruisce il generatore sull'elenco di parole indicato.
+     *
+     * @param words l'elenco di parole
+     * @param separator il carattere tra le parole
+     * @param capitalize true per rendere maiuscola l'iniziale di ogni parola
+     */
+    public PassphraseGenerator(WordList words, char separator, boolean capitalize) {
+        this.words = words;
+        this.separator = separator;
+        this.capitalize = capitalize;
+    }
+
+    /**
+     * Genera una passphrase con il numero di parole indicato.
+     *
+     * @param count il numero di parole, almeno 1
+     * @return array di char con la passphrase generata
+     * @throws IllegalArgumentException se il numero di parole è minore di 1
+     */
+    public char[] generatePassphrase(int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("La passphrase deve avere almeno una parola.");
+        }
+        int[] indexes = new int[count];
+        RandomStream random = new RandomStream(count * 2L);
+        try {
+            int length = count - 1;
+            for (int i = 0; i < count; i++) {
+                indexes[i] = random.below(words.size());
+                length += words.length(indexes[i]);
+            }
+            char[] passphrase = new char[length];
+            int position = 0;
+            for (int i = 0; i < count; i++) {
+                if (i > 0) passphrase[position++] = separator;
+                int start = position;
+                position += words.copy(indexes[i], passphrase, position);
+                if (capitalize) passphrase[start] = Character.toUpperCase(passphrase[start]);
+            }
+            return passphrase;
+        } finally {
+            Arrays.fill(indexes, 0);
+            random.clear();
+        }
+    }
+
+    /**
+     * @param count il numero di parole
+     * @return l'entropia in bit di una passphrase con il numero di parole indicato
+     */
+    public double entropyBits(int count) {
+        return count * (Math.log(words.size()) / Math.log(2));
+    }
+}
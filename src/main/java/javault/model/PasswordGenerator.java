@@ -1,28 +1,45 @@
 package javault.model;
 
-import java.security.SecureRandom;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 
 /**
  * Generatore di password sicure con possibilità di includere lettere minuscole,
- * maiuscole, cifre e caratteri speciali.
+ * maiuscole, cifre e caratteri speciali, secondo una {@link PasswordPolicy}.
+ * <p>
+ * La politica viene compilata alla costruzione in una tabella di caratteri per classe.
+ * Ogni password è generata in un'unica passata, senza tentativi ripetuti: le posizioni
+ * dei caratteri obbligatori (i minimi per classe) sono scelte con un rimescolamento casuale,
+ * le altre scelgono una classe a caso tra quelle abilitate e poi un carattere a caso della classe.
+ * Per le posizioni libere le due scelte sono precalcolate in un'unica tabella, in cui ogni classe
+ * occupa lo stesso numero di posizioni, così che un carattere costi una sola estrazione.
+ * Quando un carattere raggiunge il massimo di ripetizioni consecutive, il successivo viene estratto
+ * tra gli altri caratteri della classe. Le estrazioni usano il campionamento con rigetto, senza distorsioni.
+ * I byte casuali vengono da un DRBG (NIST SP 800-90A) per thread, riusato tra le chiamate,
+ * letti a blocchi e rialimentati periodicamente dall'entropia di sistema (vedi {@link RandomStream}).
+ * Il generatore è immutabile e può essere usato da più thread.
  */
 public final class PasswordGenerator {
 
-    private static final String LOWERCASE = "abcdefghijklmnopqrstuvwxyz";
-    private static final String UPPERCASE = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
-    private static final String DIGITS = "0123456789";
-    private static final String SPECIAL = "!@#$%&*_+-=/?";
+    private static final int MAX_COMBINED_TABLE = 1 << 14;
 
-    private final boolean useLowercase;
-    private final boolean useUppercase;
-    private final boolean useDigits;
-    private final boolean useSpecial;
+    /** Caratteri delle classi abilitate, ciascuna in ordine crescente. */
+    private final char[][] tables;
+    /** Minimo per ogni tabella. */
+    private final int[] minimums;
+    private final int minimumLength;
+    private final int maxRepeat;
+    /**
+     * Ogni classe abilitata ripetuta fino a occupare lo stesso numero di posizioni,
+     * o null se la tabella sarebbe troppo grande: allora si estraggono classe e carattere.
+     */
+    private final char[] combined;
 
     /**
      * Costruttore che definisce quali categorie di caratteri usare nella password.
+     * Ogni categoria abilitata è presente almeno una volta in ogni password.
      *
      * @param useLowercase se includere lettere minuscole
      * @param useUppercase se includere lettere maiuscole
@@ -30,51 +47,191 @@ public final class PasswordGenerator {
      * @param useSpecial se includere caratteri speciali
      */
     public PasswordGenerator(boolean useLowercase, boolean useUppercase, boolean useDigits, boolean useSpecial) {
-        this.useLowercase = useLowercase;
-        this.useUppercase = useUppercase;
-        this.useDigits = useDigits;
-        this.useSpecial = useSpecial;
+        this(PasswordPolicy.of(useLowercase, useUppercase, useDigits, useSpecial));
+    }
+
+    /**
+     * Costruisce il generatore compilando la politica indicata.
+     *
+     * @param policy la politica di composizione
+     * @throws IllegalArgumentException se una classe abilitata non ha caratteri dopo le esclusioni,
+     *         o ne ha uno solo con un limite di ripetizioni (due posizioni vicine potrebbero non avere alternative)
+     */
+    public PasswordGenerator(PasswordPolicy policy) {
+        List<char[]> enabled = new ArrayList<>();
+        List<Integer> enabledMinimums = new ArrayList<>();
+        for (PasswordPolicy.CharClass charClass : PasswordPolicy.CharClass.values()) {
+            if (!policy.isEnabled(charClass)) continue;
+            char[] characters = policy.characters(charClass);
+            if (characters.length == 0 || (characters.length == 1 && policy.getMaxRepeat() > 0)) {
+                throw new IllegalArgumentException("Caratteri insufficienti per la classe " + charClass);
+            }
+            enabled.add(characters);
+            enabledMinimums.add(policy.getMinimum(charClass));
+        }
+        this.tables = enabled.toArray(char[][]::new);
+        this.minimums = enabledMinimums.stream().mapToInt(Integer::intValue).toArray();
+        this.minimumLength = policy.getMinimumLength();
+        this.maxRepeat = policy.getMaxRepeat();
+
+        long slots = 1;
+        for (char[] table : tables) {
+            slots = lcm(slots, table.length);
+        }
+        if (tables.length > 0 && slots * tables.length <= MAX_COMBINED_TABLE) {
+            this.combined = new char[(int) slots * tables.length];
+            int position = 0;
+            for (char[] table : tables) {
+                for (int i = 0; i < slots; i++) {
+                    combined[position++] = table[i % table.length];
+                }
+            }
+        } else {
+            this.combined = null;
+        }
     }
 
     /**
      * Genera una password casuale della lunghezza specificata.
      *
-     * @param length lunghezza della password da generare, deve essere >= numero di categorie abilitate
+     * @param length lunghezza della password da generare, deve essere >= numero minimo di caratteri richiesti
      * @return array di char con la password generata
      * @throws IllegalStateException se nessuna categoria di caratteri è stata abilitata
-     * @throws IllegalArgumentException se la lunghezza è minore del numero di categorie abilitate
+     * @throws IllegalArgumentException se la lunghezza è minore del numero minimo di caratteri richiesti
      */
     public char[] generatePassword(int length) {
-    	 if (length <= 0) {
-             return new char[0];
-         }
-    	 
-    	 
-         // Categorie disponibili
-         List<String> charCategories = new ArrayList<>();
-         if (useLowercase) charCategories.add(LOWERCASE);
-         if (useUppercase) charCategories.add(UPPERCASE);
-         if (useDigits) charCategories.add(DIGITS);
-         if (useSpecial) charCategories.add(SPECIAL);
-
-         if (charCategories.isEmpty()) {
-             throw new IllegalStateException("Devi abilitare almeno una categoria di caratteri.");
-         }
-         if (length < charCategories.size()) {
-             throw new IllegalArgumentException("La lunghezza deve essere almeno pari al numero di categorie abilitate.");
-         }
-
+        if (length <= 0) {
+            return new char[0];
+        }
         char[] password = new char[length];
-        SecureRandom random = new SecureRandom();
+        generate(1, length, password);
+        return password;
+    }
 
+    /**
+     * Genera più password della stessa lunghezza in un buffer fornito dal chiamante,
+     * una dopo l'altra: la password i-esima occupa le posizioni da {@code i * length}
+     * a {@code (i + 1) * length} esclusa. Il buffer va azzerato dopo l'uso.
+     * Conviene per generare molte password insieme, ad esempio per ruotare le credenziali
+     * di molti account: non alloca nulla per password o per carattere.
+     *
+     * @param count il numero di password da generare
+     * @param length la lunghezza di ogni password, deve essere >= numero minimo di caratteri richiesti
+     * @param buffer il buffer di destinazione, di almeno {@code count * length} caratteri
+     * @throws IllegalStateException se nessuna categoria di caratteri è stata abilitata
+     * @throws IllegalArgumentException se la lunghezza è minore del numero minimo di caratteri richiesti,
+     *         o il buffer è troppo piccolo
+     */
+    public void generate(int count, int length, char[] buffer) {
+        if (tables.length == 0) {
+            throw new IllegalStateException("Devi abilitare almeno una categoria di caratteri.");
+        }
+        if (length < Math.max(minimumLength, 1)) {
+            throw new IllegalArgumentException("La lunghezza deve essere almeno pari al numero minimo di caratteri richiesti.");
+        }
+        if (count < 0 || (long) count * length > buffer.length) {
+            throw new IllegalArgumentException("Buffer insufficiente per " + count + " password di " + length + " caratteri.");
+        }
 
-        // Generazione password
-        for (int i = 0; i < length; i++) {
-            String charCategory = charCategories.get(random.nextInt(charCategories.size()));
-            int position = random.nextInt(charCategory.length());
-            password[i] = charCategory.charAt(position); 
+        // Circa due estrazioni da due byte per carattere: rimescolamento e scelta del carattere
+        RandomStream random = new RandomStream((long) count * length * 4 + 64);
+        int[] layout = new int[length];
+        try {
+            for (int p = 0; p < count; p++) {
+                int offset = p * length;
+                shuffleLayout(layout, random);
+                int run = 0;
+                for (int i = 0; i < length; i++) {
+                    char forbidden = maxRepeat > 0 && run == maxRepeat ? buffer[offset + i - 1] : 0;
+                    int table = layout[i];
+                    char c;
+                    if (table < 0 && forbidden == 0 && combined != null) {
+                        c = combined[random.below(combined.length)];
+                    } else {
+                        if (table < 0) table = random.below(tables.length);
+                        c = pick(tables[table], forbidden, random);
+                    }
+                    run = i > 0 && c == buffer[offset + i - 1] ? run + 1 : 1;
+                    buffer[offset + i] = c;
+                }
+            }
+        } finally {
+            Arrays.fill(layout, 0);
+            random.clear();
         }
+    }
 
-        return password; 
+    /**
+     * Stima per difetto l'entropia di una password generata. Ogni carattere obbligatorio conta
+     * solo quanto la sua classe; ogni carattere libero conta come se fosse sempre estratto dalla
+     * classe più piccola, perché le classi hanno lo stesso peso anche se hanno dimensioni diverse.
+     * Con il limite di ripetizioni ogni carattere può dover escludere il precedente, e conta
+     * un carattere in meno. La scelta delle posizioni dei caratteri obbligatori non è conteggiata.
+     *
+     * @param length la lunghezza della password
+     * @return l'entropia in bit, 0 se la lunghezza non basta per i caratteri obbligatori
+     */
+    public double entropyBits(int length) {
+        if (tables.length == 0 || length < Math.max(minimumLength, 1)) {
+            return 0;
+        }
+        int excluded = maxRepeat > 0 ? 1 : 0;
+        double bits = 0;
+        int forced = 0;
+        int smallest = Integer.MAX_VALUE;
+        for (int table = 0; table < tables.length; table++) {
+            bits += minimums[table] * log2(tables[table].length - excluded);
+            forced += minimums[table];
+            smallest = Math.min(smallest, tables[table].length);
+        }
+        return bits + (length - forced) * log2((double) tables.length * (smallest - excluded));
+    }
+
+    private static double log2(double value) {
+        return Math.log(value) / Math.log(2);
+    }
+
+    /**
+     * Assegna a posizioni casuali le classi dei caratteri obbligatori; le altre posizioni restano libere (-1).
+     */
+    private void shuffleLayout(int[] layout, RandomStream random) {
+        int position = 0;
+        for (int table = 0; table < tables.length; table++) {
+            for (int n = 0; n < minimums[table]; n++) {
+                layout[position++] = table;
+            }
+        }
+        Arrays.fill(layout, position, layout.length, -1);
+        if (position == 0) return;
+        for (int i = layout.length - 1; i > 0; i--) {
+            int j = random.below(i + 1);
+            int swap = layout[i];
+            layout[i] = layout[j];
+            layout[j] = swap;
+        }
+    }
+
+    /**
+     * Estrae un carattere della tabella diverso da {@code forbidden}, se indicato:
+     * l'estrazione avviene tra le posizioni restanti, saltando quella del carattere escluso.
+     */
+    private static char pick(char[] table, char forbidden, RandomStream random) {
+        int excluded = forbidden != 0 ? Arrays.binarySearch(table, forbidden) : -1;
+        if (excluded < 0) {
+            return table[random.below(table.length)];
+        }
+        int index = random.below(table.length - 1);
+        return table[index >= excluded ? index + 1 : index];
+    }
+
+    private static long lcm(long a, long b) {
+        long x = a;
+        long y = b;
+        while (y != 0) {
+            long t = x % y;
+            x = y;
+            y = t;
+        }
+        return a / x * b;
     }
 }
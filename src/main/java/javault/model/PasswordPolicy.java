@@ -0,0 +1,212 @@
+package javault.model;
+
+import java.util.Arrays;
+
+/**
+ * Regole di composizione delle password generate da {@link PasswordGenerator}:
+ * classi di caratteri abilitate, numero minimo di caratteri per classe, insieme dei simboli,
+ * esclusione dei caratteri facilmente confondibili e numero massimo di ripetizioni consecutive.
+ * <p>
+ * La politica è immutabile: i metodi {@code with...} restituiscono una nuova politica.
+ * Il generatore la compila una sola volta in tabelle di caratteri, e ogni password generata
+ * la rispetta per costruzione, senza tentativi ripetuti.
+ */
+public final class PasswordPolicy {
+
+    /**
+     * Classe di caratteri.
+     */
+    public enum CharClass {
+        /** Lettere minuscole. */
+        LOWERCASE,
+        /** Lettere maiuscole. */
+        UPPERCASE,
+        /** Cifre. */
+        DIGITS,
+        /** Simboli, per default {@value PasswordPolicy#DEFAULT_SYMBOLS}. */
+        SYMBOLS
+    }
+
+    /**
+     * Simboli usati se non ne viene indicato un insieme diverso,
+     * gli stessi riconosciuti dal controllo di robustezza del controller.
+     */
+    public static final String DEFAULT_SYMBOLS = "!@#$%&*_+-=/?";
+
+    /**
+     * Caratteri esclusi da {@link #excludingLookAlikes(boolean)}.
+     */
+    public static final String LOOK_ALIKES = "0Oo1Il|";
+
+    private static final String LOWERCASE = "abcdefghijklmnopqrstuvwxyz";
+    private static final String UPPERCASE = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+    private static final String DIGITS = "0123456789";
+
+    /** Minimo per classe, indicizzato per ordinale; -1 per le classi disabilitate. */
+    private final int[] minimums;
+    private final String symbols;
+    private final boolean excludeLookAlikes;
+    private final int maxRepeat;
+
+    private PasswordPolicy(int[] minimums, String symbols, boolean excludeLookAlikes, int maxRepeat) {
+        this.minimums = minimums;
+        this.symbols = symbols;
+        this.excludeLookAlikes = excludeLookAlikes;
+        this.maxRepeat = maxRepeat;
+    }
+
+    /**
+     * Crea la politica con le classi indicate, ciascuna presente almeno una volta in ogni password.
+     *
+     * @param lowercase se includere lettere minuscole
+     * @param uppercase se includere lettere maiuscole
+     * @param digits se includere cifre
+     * @param symbols se includere simboli
+     * @return la politica
+     */
+    public static PasswordPolicy of(boolean lowercase, boolean uppercase, boolean digits, boolean symbols) {
+        int[] minimums = {lowercase ? 1 : -1, uppercase ? 1 : -1, digits ? 1 : -1, symbols ? 1 : -1};
+        return new PasswordPolicy(minimums, DEFAULT_SYMBOLS, false, 0);
+    }
+
+    /**
+     * Abilita la classe indicata con un numero minimo di caratteri.
+     *
+     * @param charClass la classe
+     * @param minimum il numero minimo di caratteri della classe in ogni password, anche 0
+     * @return la nuova politica
+     * @throws IllegalArgumentException se il minimo è negativo
+     */
+    public PasswordPolicy withMinimum(CharClass charClass, int minimum) {
+        if (minimum < 0) {
+            throw new IllegalArgumentException("Il minimo per classe non può essere negativo.");
+        }
+        int[] updated = minimums.clone();
+        updated[charClass.ordinal()] = minimum;
+        return new PasswordPolicy(updated, symbols, excludeLookAlikes, maxRepeat);
+    }
+
+    /**
+     * Disabilita la classe indicata.
+     *
+     * @param charClass la classe
+     * @return la nuova politica
+     */
+    public PasswordPolicy without(CharClass charClass) {
+        int[] updated = minimums.clone();
+        updated[charClass.ordinal()] = -1;
+        return new PasswordPolicy(updated, symbols, excludeLookAlikes, maxRepeat);
+    }
+
+    /**
+     * Sostituisce l'insieme dei simboli. I duplicati vengono ignorati.
+     *
+     * @param symbols i simboli
+     * @return la nuova politica
+     * @throws IllegalArgumentException se l'insieme è vuoto o contiene lettere, cifre o spazi
+     */
+    public PasswordPolicy withSymbols(String symbols) {
+        StringBuilder distinct = new StringBuilder();
+        symbols.chars().sorted().distinct().forEach(c -> {
+            if (Character.isLetterOrDigit(c) || Character.isWhitespace(c) || Character.isISOControl(c)) {
+                throw new IllegalArgumentException("Simbolo non valido: " + (char) c);
+            }
+            distinct.append((char) c);
+        });
+        if (distinct.isEmpty()) {
+            throw new IllegalArgumentException("L'insieme dei simboli è vuoto.");
+        }
+        return new PasswordPolicy(minimums, distinct.toString(), excludeLookAlikes, maxRepeat);
+    }
+
+    /**
+     * Esclude o reinclude i caratteri facilmente confondibili tra loro ({@value #LOOK_ALIKES}).
+     *
+     * @param exclude true per escluderli
+     * @return la nuova politica
+     */
+    public PasswordPolicy excludingLookAlikes(boolean exclude) {
+        return new PasswordPolicy(minimums, symbols, exclude, maxRepeat);
+    }
+
+    /**
+     * Limita le ripetizioni consecutive dello stesso carattere: con 2, "aa" è ammesso ma "aaa" no.
+     *
+     * @param maxRepeat il numero massimo di caratteri uguali consecutivi, 0 per nessun limite
+     * @return la nuova politica
+     * @throws IllegalArgumentException se il limite è negativo
+     */
+    public PasswordPolicy withMaxRepeat(int maxRepeat) {
+        if (maxRepeat < 0) {
+            throw new IllegalArgumentException("Il limite di ripetizioni non può essere negativo.");
+        }
+        return new PasswordPolicy(minimums, symbols, excludeLookAlikes, maxRepeat);
+    }
+
+    /**
+     * @param charClass la classe
+     * @return true se la classe è abilitata
+     */
+    public boolean isEnabled(CharClass charClass) {
+        return minimums[charClass.ordinal()] >= 0;
+    }
+
+    /**
+     * @param charClass la classe
+     * @return il numero minimo di caratteri della classe, 0 se la classe è disabilitata
+     */
+    public int getMinimum(CharClass charClass) {
+        return Math.max(minimums[charClass.ordinal()], 0);
+    }
+
+    /**
+     * @return la somma dei minimi per classe, cioè la lunghezza minima di una password
+     */
+    public int getMinimumLength() {
+        return Arrays.stream(minimums).filter(minimum -> minimum > 0).sum();
+    }
+
+    /**
+     * @return i simboli usati dalla classe {@link CharClass#SYMBOLS}
+     */
+    public String getSymbols() {
+        return symbols;
+    }
+
+    /**
+     * @return true se i caratteri facilmente confondibili sono esclusi
+     */
+    public boolean excludesLookAlikes() {
+        return excludeLookAlikes;
+    }
+
+    /**
+     * @return il numero massimo di caratteri uguali consecutivi, 0 per nessun limite
+     */
+    public int getMaxRepeat() {
+        return maxRepeat;
+    }
+
+    /**
+     * Restituisce i caratteri della classe secondo la politica, in ordine crescente.
+     *
+     * @param charClass la classe
+     * @return i caratteri, eventualmente nessuno se tutti esclusi
+     */
+    public char[] characters(CharClass charClass) {
+        String all = switch (charClass) {
+            case LOWERCASE -> LOWERCASE;
+            case UPPERCASE -> UPPERCASE;
+            case DIGITS -> DIGITS;
+            case SYMBOLS -> symbols;
+        };
+        StringBuilder allowed = new StringBuilder(all.length());
+        for (int i = 0; i < all.length(); i++) {
+            char c = all.charAt(i);
+            if (!excludeLookAlikes || LOOK_ALIKES.indexOf(c) < 0) allowed.append(c);
+        }
+        char[] characters = allowed.toString().toCharArray();
+        Arrays.sort(characters);
+        return characters;
+    }
+}
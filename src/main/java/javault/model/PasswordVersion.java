@@ -0,0 +1,56 @@
+package javault.model;
+
+import java.time.Instant;
+
+/**
+ * Password precedente di un login, conservata nella cronologia insieme al momento
+ * in cui è stata sostituita o rimossa. Come per {@link LoginEntry}, la password è
+ * conservata fuori dall'heap e {@link #clear()} la azzera in modo deterministico.
+ */
+public final class PasswordVersion {
+
+    private final long replacedAt;
+    private OffHeapSecret password;
+
+    /**
+     * Costruisce una versione copiando la password.
+     * L'array originale non viene modificato: va azzerato dal chiamante.
+     *
+     * @param replacedAt istante della sostituzione, in millisecondi dall'epoca
+     * @param password la password sostituita
+     */
+    public PasswordVersion(long replacedAt, char[] password) {
+        this.replacedAt = replacedAt;
+        this.password = OffHeapSecret.of(password);
+    }
+
+    /**
+     * @return l'istante in cui la password è stata sostituita o rimossa
+     */
+    public Instant getReplacedAt() {
+        return Instant.ofEpochMilli(replacedAt);
+    }
+
+    /**
+     * Restituisce una copia della password, da azzerare dopo l'uso.
+     *
+     * @return char[] password
+     * @throws IllegalStateException se la versione è stata pulita
+     */
+    public synchronized char[] getPassword() {
+        if (password == null) {
+            throw new IllegalStateException("Versione non più disponibile");
+        }
+        return password.toCharArray();
+    }
+
+    /**
+     * Pulisce la password dalla memoria sovrascrivendo la memoria fuori heap.
+     */
+    public synchronized void clear() {
+        if (password != null) {
+            password.clear();
+            password = null;
+        }
+    }
+}
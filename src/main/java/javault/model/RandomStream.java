@@ -0,0 +1,91 @@
+package javault.model;
+
+import java.security.DrbgParameters;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+/**
+ * Byte casuali letti a blocchi dal DRBG (NIST SP 800-90A) del thread corrente,
+ * usati dai generatori di password e di passphrase.
+ * Il DRBG è riusato tra le chiamate e rialimentato dall'entropia di sistema ogni {@value #RESEED_INTERVAL} byte.
+ * Le estrazioni usano il campionamento con rigetto, senza distorsioni.
+ * Uno stream appartiene a un solo thread e va azzerato con {@link #clear()} dopo l'uso.
+ */
+final class RandomStream {
+
+    static final int RESEED_INTERVAL = 1 << 20;
+    static final int BLOCK_SIZE = 4096;
+    private static final ThreadLocal<Drbg> drbgs = ThreadLocal.withInitial(Drbg::new);
+
+    private final Drbg drbg;
+    private final byte[] block;
+    private int next;
+
+    /**
+     * @param bytes il numero di byte casuali che si prevede di consumare, per dimensionare il blocco
+     */
+    RandomStream(long bytes) {
+        this.drbg = drbgs.get();
+        this.block = new byte[(int) Math.max(1, Math.min(BLOCK_SIZE, bytes))];
+        this.next = block.length;
+    }
+
+    /**
+     * @return un intero uniforme in [0, bound): due byte per estrazione fino a 65536, altrimenti quattro
+     */
+    int below(int bound) {
+        if (bound == 1) return 0;
+        int bytes = bound <= 65536 ? 2 : 4;
+        long range = bytes == 2 ? 65536 : 1L << 31;
+        long limit = range - range % bound;
+        while (true) {
+            long value = 0;
+            for (int i = 0; i < bytes; i++) {
+                value = (value << 8) | nextByte();
+            }
+            value &= range - 1;
+            if (value < limit) return (int) (value % bound);
+        }
+    }
+
+    private int nextByte() {
+        if (next == block.length) {
+            drbg.nextBytes(block);
+            next = 0;
+        }
+        return block[next++] & 0xFF;
+    }
+
+    void clear() {
+        Arrays.fill(block, (byte) 0); // Pulizia dati sensibili dalla RAM
+    }
+
+    /**
+     * DRBG di un thread, rialimentato dopo {@value RandomStream#RESEED_INTERVAL} byte prodotti.
+     */
+    private static final class Drbg {
+
+        private final SecureRandom random;
+        private long produced;
+
+        Drbg() {
+            try {
+                random = SecureRandom.getInstance("DRBG",
+                        DrbgParameters.instantiation(256, DrbgParameters.Capability.RESEED_ONLY, null));
+            } catch (NoSuchAlgorithmException e) {
+                System.err.println("Generatore casuale DRBG non disponibile.");
+                throw new IllegalStateException("Generatore casuale DRBG non disponibile", e);
+            }
+        }
+
+        void nextBytes(byte[] bytes) {
+            if (produced >= RESEED_INTERVAL) {
+                random.reseed();
+                produced = 0;
+            }
+            random.nextBytes(bytes);
+            produced += bytes.length;
+        }
+    }
+}
@@ -0,0 +1,597 @@
+package javault.model;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Indice a n-grammi per la ricerca approssimata dei login per nome e username.
+ * <p>
+ * Per ogni login vengono indicizzati, su nome e username normalizzati (minuscole,
+ * separatori ridotti a spazio), i trigrammi consecutivi e le coppie di caratteri
+ * a distanza massima {@value #MAX_GAP}: i trigrammi trovano sottostringhe e refusi,
+ * le coppie trovano le abbreviazioni ("gtlbprd" per "gitlab prod"), perché ogni coppia
+ * di caratteri adiacenti della query compare nel testo con pochi caratteri saltati.
+ * Ogni n-gramma ha una lista degli identificativi dei login che lo contengono;
+ * una query somma i pesi dei propri n-grammi sulle liste, senza scorrere il vault.
+ * <p>
+ * L'indice viene aggiornato a ogni aggiunta e rimozione: i login rimossi vengono solo
+ * marcati, e le liste vengono compattate quando i rimossi superano quelli presenti.
+ * Gli n-grammi degli username restano in memoria come chiavi numeriche: l'indice
+ * va quindi salvato su disco solo cifrato. Non è thread-safe: lo protegge {@link VaultData}.
+ */
+final class SearchIndex {
+
+    private static final int MAX_GAP = 3;
+    private static final int TRIGRAM_WEIGHT = 2;
+    private static final int PAIR_WEIGHT = 1;
+    /** Frazione minima, in percentuale, del punteggio massimo della query per considerare un risultato. */
+    private static final int MIN_SCORE_PERCENT = 60;
+    /** Frazione minima, in percentuale, delle coppie della query che devono comparire in un'abbreviazione. */
+    private static final int MIN_PAIRS_PERCENT = 80;
+    private static final int COMPACT_THRESHOLD = 1024;
+    private static final byte VERSION = 1;
+
+    private GramTable postings = new GramTable(1024);
+    private final Map<String, Integer> ids = new HashMap<>();
+    private String[] names = new String[64];
+    private final BitSet removed = new BitSet();
+    private int nextId;
+
+    /**
+     * Indicizza un login. Se il nome è già presente, la vecchia voce viene sostituita.
+     *
+     * @param name il nome del login
+     * @param username lo username, o null se non disponibile in chiaro
+     */
+    void add(String name, CharSequence username) {
+        remove(name);
+
+        int id = nextId++;
+        if (id == names.length) {
+            names = Arrays.copyOf(names, id * 2);
+        }
+        names[id] = name;
+        ids.put(name, id);
+
+        char[] text = normalize(name, username);
+        try {
+            for (long gram : grams(text, normalize(name, null).length, MAX_GAP)) {
+                postings.getOrCreate(gram).add(id);
+            }
+        } finally {
+            Arrays.fill(text, '\0');
+        }
+    }
+
+    /**
+     * Rimuove un login dall'indice, se presente.
+     *
+     * @param name il nome del login
+     */
+    void remove(String name) {
+        Integer id = ids.remove(name);
+        if (id == null) return;
+
+        names[id] = null;
+        removed.set(id);
+        if (removed.cardinality() > COMPACT_THRESHOLD && removed.cardinality() > ids.size()) {
+            compact();
+        }
+    }
+
+    /**
+     * @return il numero di login indicizzati
+     */
+    int size() {
+        return ids.size();
+    }
+
+    /**
+     * @return i nomi dei login indicizzati, in una nuova lista
+     */
+    List<String> names() {
+        return new ArrayList<>(ids.keySet());
+    }
+
+    /**
+     * Verifica se il login indicato è indicizzato.
+     */
+    boolean contains(String name) {
+        return ids.containsKey(name);
+    }
+
+    /**
+     * Svuota l'indice.
+     */
+    void clear() {
+        postings = new GramTable(1024);
+        ids.clear();
+        names = new String[64];
+        removed.clear();
+        nextId = 0;
+    }
+
+    /**
+     * Cerca i login che corrispondono in modo approssimato alla query.
+     * I risultati sono ordinati per punteggio sugli n-grammi; a parità di punteggio
+     * vengono prima i nomi che iniziano con la query, poi quelli che la contengono
+     * come sottosequenza, poi i più corti.
+     *
+     * @param query il testo cercato
+     * @param limit il numero massimo di risultati
+     * @return i nomi trovati, dal più pertinente, o null se la query è troppo corta per avere n-grammi
+     */
+    List<String> search(String query, int limit) {
+        char[] text = normalize(query, null);
+        long[] grams = grams(text, text.length, 1);
+        if (grams.length == 0) return null;
+
+        // Per ogni login si contano separatamente trigrammi (bit alti) e coppie (bit bassi)
+        int trigrams = 0;
+        int pairs = 0;
+        int[] hits = new int[nextId];
+        for (long gram : grams) {
+            int increment;
+            if (isTrigram(gram)) {
+                trigrams++;
+                increment = 1 << 16;
+            } else {
+                pairs++;
+                increment = 1;
+            }
+            Postings list = postings.get(gram);
+            if (list == null) continue;
+            for (int i = 0; i < list.size; i++) {
+                hits[list.ids[i]] += increment;
+            }
+        }
+
+        // Un login corrisponde se ha abbastanza n-grammi in comune con la query,
+        // oppure, per le abbreviazioni, quasi tutte le sue coppie
+        int maxScore = trigrams * TRIGRAM_WEIGHT + pairs * PAIR_WEIGHT;
+        int minScore = (maxScore * MIN_SCORE_PERCENT + 99) / 100;
+        int minPairs = Math.max(1, (pairs * MIN_PAIRS_PERCENT + 99) / 100);
+        int[] scores = hits;
+        int[] histogram = new int[maxScore + 1];
+        for (int id = 0; id < hits.length; id++) {
+            int hit = hits[id];
+            int score = (hit >>> 16) * TRIGRAM_WEIGHT + (hit & 0xFFFF) * PAIR_WEIGHT;
+            if ((score >= minScore || (hit & 0xFFFF) >= minPairs) && !removed.get(id)) {
+                scores[id] = score;
+                histogram[score]++;
+            } else {
+                scores[id] = -1;
+            }
+        }
+
+        // Solo i punteggi che possono entrare nei primi "limit" risultati vengono ordinati
+        minScore = 0;
+        for (int score = maxScore, count = 0; score > 0; score--) {
+            count += histogram[score];
+            if (count >= limit) {
+                minScore = score;
+                break;
+            }
+        }
+
+        // I migliori "limit" candidati restano in un heap con il peggiore in cima
+        PriorityQueue<Match> best = new PriorityQueue<>(limit + 1, Collections.reverseOrder());
+        for (int id = 0; id < scores.length; id++) {
+            if (scores[id] < minScore) continue;
+            Match match = new Match(names[id], rank(scores[id], names[id], text));
+            if (best.size() < limit) {
+                best.add(match);
+            } else if (match.compareTo(best.peek()) < 0) {
+                best.poll();
+                best.add(match);
+            }
+        }
+
+        List<Match> matches = new ArrayList<>(best);
+        matches.sort(null);
+        List<String> result = new ArrayList<>(matches.size());
+        for (Match match : matches) {
+            result.add(match.name);
+        }
+        return result;
+    }
+
+    /**
+     * Combina il punteggio sugli n-grammi con i bonus calcolati sul nome, che è in chiaro:
+     * nome che inizia con la query, poi query contenuta come sottosequenza, poi nome più corto.
+     * Il punteggio occupa i bit alti, così un bonus non supera mai un punteggio maggiore.
+     */
+    private static long rank(int score, String name, char[] query) {
+        int bonus = 0;
+        int q = 0;
+        boolean prefix = true;
+        char previous = ' ';
+        for (int i = 0; i < name.length() && q < query.length; i++) {
+            char c = name.charAt(i);
+            c = Character.isLetterOrDigit(c) ? Character.toLowerCase(c) : ' ';
+            if (c == ' ' && previous == ' ') continue;
+            previous = c;
+            if (c == query[q]) {
+                q++;
+            } else {
+                prefix = false;
+            }
+        }
+        if (q == query.length) {
+            bonus = prefix ? 2 : 1;
+        }
+        return ((long) score << 32) | ((long) bonus << 24) | (0xFFFFFF - Math.min(name.length(), 0xFFFFFF));
+    }
+
+    /**
+     * Normalizza nome e username in un unico testo: lettere e cifre in minuscolo,
+     * ogni sequenza di altri caratteri ridotta a un solo spazio.
+     * L'array restituito contiene lo username e va azzerato dal chiamante.
+     */
+    private static char[] normalize(CharSequence name, CharSequence username) {
+        int capacity = name.length() + 1 + (username != null ? username.length() : 0);
+        char[] text = new char[capacity];
+        int length = append(text, 0, name);
+        if (username != null) {
+            if (length > 0 && text[length - 1] != ' ') text[length++] = ' ';
+            length = append(text, length, username);
+        }
+        while (length > 0 && text[length - 1] == ' ') length--;
+
+        char[] result = Arrays.copyOf(text, length);
+        Arrays.fill(text, '\0');
+        return result;
+    }
+
+    private static int append(char[] text, int length, CharSequence source) {
+        for (int i = 0; i < source.length(); i++) {
+            char c = source.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                text[length++] = Character.toLowerCase(c);
+            } else if (length > 0 && text[length - 1] != ' ') {
+                text[length++] = ' ';
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Estrae gli n-grammi distinti del testo: i trigrammi consecutivi su tutto il testo
+     * e, sui primi {@code pairsLength} caratteri, le coppie di caratteri non spazio
+     * a distanza fino a {@code maxGap}. Le abbreviazioni riguardano il nome, quindi
+     * per lo username bastano i trigrammi, che dimezzano la dimensione dell'indice.
+     * Ogni n-gramma è codificato in un long: un bit di tipo e i caratteri a 16 bit.
+     */
+    private static long[] grams(char[] text, int pairsLength, int maxGap) {
+        long[] grams = new long[text.length + pairsLength * maxGap];
+        int count = 0;
+        for (int i = 0; i < text.length; i++) {
+            if (i + 2 < text.length) {
+                grams[count++] = (1L << 48) | ((long) text[i] << 32) | ((long) text[i + 1] << 16) | text[i + 2];
+            }
+            if (i >= pairsLength || text[i] == ' ') continue;
+            for (int j = i + 1; j <= i + maxGap && j < pairsLength; j++) {
+                if (text[j] != ' ') {
+                    grams[count++] = ((long) text[i] << 16) | text[j];
+                }
+            }
+        }
+
+        Arrays.sort(grams, 0, count);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinct == 0 || grams[i] != grams[distinct - 1]) {
+                grams[distinct++] = grams[i];
+            }
+        }
+        long[] result = Arrays.copyOf(grams, distinct);
+        Arrays.fill(grams, 0L);
+        return result;
+    }
+
+    private static boolean isTrigram(long gram) {
+        return (gram >>> 48) != 0;
+    }
+
+    /**
+     * Rinumera i login presenti in modo contiguo ed elimina dalle liste quelli rimossi.
+     */
+    void compact() {
+        if (removed.isEmpty()) return;
+
+        int[] remap = new int[nextId];
+        int live = 0;
+        String[] compacted = new String[Math.max(64, ids.size() * 2)];
+        for (int id = 0; id < nextId; id++) {
+            if (removed.get(id)) {
+                remap[id] = -1;
+            } else {
+                remap[id] = live;
+                compacted[live] = names[id];
+                ids.put(names[id], live);
+                live++;
+            }
+        }
+
+        postings = postings.remap(remap);
+        names = compacted;
+        nextId = live;
+        removed.clear();
+    }
+
+    /**
+     * Codifica l'indice per il salvataggio su disco. L'indice va prima compattato con
+     * {@link #compact()}: la codifica non lo modifica, quindi può procedere insieme alle ricerche.
+     * Le liste sono ordinate, quindi vengono salvate come differenze in varint.
+     *
+     * @return l'indice codificato, da cifrare prima di scriverlo
+     */
+    byte[] encode() {
+        if (!removed.isEmpty()) throw new IllegalStateException("Indice da compattare");
+
+        Encoder out = new Encoder();
+        out.buffer[out.length++] = VERSION;
+        out.putVarint(nextId);
+        for (int id = 0; id < nextId; id++) {
+            byte[] name = names[id].getBytes(StandardCharsets.UTF_8);
+            out.putVarint(name.length);
+            out.put(name);
+        }
+        out.putVarint(postings.size);
+        for (int slot = 0; slot < postings.keys.length; slot++) {
+            Postings list = postings.values[slot];
+            if (list == null) continue;
+            out.putLong(postings.keys[slot]);
+            out.putVarint(list.size);
+            int previous = 0;
+            for (int i = 0; i < list.size; i++) {
+                out.putVarint(list.ids[i] - previous);
+                previous = list.ids[i];
+            }
+        }
+        return Arrays.copyOf(out.buffer, out.length);
+    }
+
+    /**
+     * Ricostruisce un indice da {@link #encode()}.
+     *
+     * @param data l'indice codificato
+     * @return l'indice, o null se i dati non sono un indice valido
+     */
+    static SearchIndex decode(byte[] data) {
+        Decoder in = new Decoder(data);
+        try {
+            if (in.data.length == 0 || in.data[in.position++] != VERSION) return null;
+
+            SearchIndex index = new SearchIndex();
+            int count = in.getVarint();
+            index.names = new String[Math.max(64, count)];
+            for (int id = 0; id < count; id++) {
+                int length = in.getVarint();
+                index.names[id] = new String(in.data, in.skip(length), length, StandardCharsets.UTF_8);
+                index.ids.put(index.names[id], id);
+            }
+            index.nextId = count;
+
+            int grams = in.getVarint();
+            index.postings = new GramTable(grams);
+            for (int g = 0; g < grams; g++) {
+                long gram = in.getLong();
+                Postings list = index.postings.getOrCreate(gram);
+                int size = in.getVarint();
+                if (list.size != 0 || size > count) return null;
+                list.ids = new int[Math.max(size, 1)];
+                int id = 0;
+                for (int i = 0; i < size; i++) {
+                    id += in.getVarint();
+                    if (id < 0 || id >= count) return null;
+                    list.ids[i] = id;
+                }
+                list.size = size;
+            }
+            return in.position != in.data.length || index.ids.size() != count ? null : index;
+        } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Risultato candidato, ordinato per rango decrescente e poi per nome.
+     */
+    private record Match(String name, long rank) implements Comparable<Match> {
+        @Override
+        public int compareTo(Match other) {
+            int byRank = Long.compare(other.rank, rank);
+            return byRank != 0 ? byRank : name.compareTo(other.name);
+        }
+    }
+
+    /**
+     * Lista crescente di identificativi, senza boxing.
+     */
+    private static final class Postings {
+        int[] ids = new int[4];
+        int size;
+
+        void add(int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+
+        /**
+         * Applica la rinumerazione, scartando gli identificativi rimossi.
+         *
+         * @return il numero di identificativi rimasti
+         */
+        int remap(int[] remap) {
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                int id = remap[ids[i]];
+                if (id >= 0) ids[kept++] = id;
+            }
+            size = kept;
+            return kept;
+        }
+    }
+
+    /**
+     * Tabella a indirizzamento aperto n-gramma - lista, senza boxing delle chiavi:
+     * con centinaia di migliaia di n-grammi distinti evita un oggetto per chiave.
+     */
+    private static final class GramTable {
+        long[] keys;
+        Postings[] values;
+        int size;
+
+        GramTable(int expected) {
+            int capacity = Integer.highestOneBit(Math.max(expected, 8) * 2 - 1) << 1;
+            keys = new long[capacity];
+            values = new Postings[capacity];
+        }
+
+        private static int slot(long gram, int mask) {
+            return (int) ((gram * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+        }
+
+        Postings get(long gram) {
+            int mask = keys.length - 1;
+            for (int i = slot(gram, mask); values[i] != null; i = (i + 1) & mask) {
+                if (keys[i] == gram) return values[i];
+            }
+            return null;
+        }
+
+        Postings getOrCreate(long gram) {
+            int mask = keys.length - 1;
+            int i = slot(gram, mask);
+            for (; values[i] != null; i = (i + 1) & mask) {
+                if (keys[i] == gram) return values[i];
+            }
+            if ((size + 1) * 2 > keys.length) {
+                grow();
+                return getOrCreate(gram);
+            }
+            keys[i] = gram;
+            values[i] = new Postings();
+            size++;
+            return values[i];
+        }
+
+        private void grow() {
+            GramTable larger = new GramTable(keys.length);
+            for (int i = 0; i < keys.length; i++) {
+                if (values[i] != null) larger.put(keys[i], values[i]);
+            }
+            keys = larger.keys;
+            values = larger.values;
+        }
+
+        private void put(long gram, Postings list) {
+            int mask = keys.length - 1;
+            int i = slot(gram, mask);
+            while (values[i] != null) i = (i + 1) & mask;
+            keys[i] = gram;
+            values[i] = list;
+            size++;
+        }
+
+        /**
+         * Applica la rinumerazione a tutte le liste.
+         *
+         * @return una nuova tabella senza le liste rimaste vuote
+         */
+        GramTable remap(int[] remap) {
+            GramTable compacted = new GramTable(size);
+            for (int i = 0; i < keys.length; i++) {
+                if (values[i] != null && values[i].remap(remap) > 0) {
+                    compacted.put(keys[i], values[i]);
+                }
+            }
+            return compacted;
+        }
+    }
+
+    /**
+     * Lettura sequenziale dell'indice codificato.
+     */
+    private static final class Decoder {
+        final byte[] data;
+        int position;
+
+        Decoder(byte[] data) {
+            this.data = data;
+        }
+
+        int skip(int length) {
+            if (length < 0 || length > data.length - position) {
+                throw new IllegalArgumentException("Indice troncato");
+            }
+            int start = position;
+            position += length;
+            return start;
+        }
+
+        long getLong() {
+            long value = 0;
+            for (int i = skip(Long.BYTES), end = i + Long.BYTES; i < end; i++) {
+                value = (value << 8) | (data[i] & 0xFF);
+            }
+            return value;
+        }
+
+        int getVarint() {
+            int value = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                byte b = data[position++];
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) return value;
+            }
+            throw new IllegalArgumentException("Varint troppo lungo");
+        }
+    }
+
+    /**
+     * Buffer di byte crescente per la codifica.
+     */
+    private static final class Encoder {
+        byte[] buffer = new byte[4096];
+        int length;
+
+        void ensure(int extra) {
+            if (length + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+            }
+        }
+
+        void put(byte[] bytes) {
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buffer, length, bytes.length);
+            length += bytes.length;
+        }
+
+        void putLong(long value) {
+            ensure(Long.BYTES);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                buffer[length++] = (byte) (value >>> shift);
+            }
+        }
+
+        void putVarint(int value) {
+            ensure(5);
+            while ((value & ~0x7F) != 0) {
+                buffer[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[length++] = (byte) value;
+        }
+    }
+}
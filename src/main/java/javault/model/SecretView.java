@@ -0,0 +1,91 @@
+package javault.model;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.Objects;
+
+/**
+ * Vista in sola lettura sui caratteri di un segreto fuori heap, valida solo durante
+ * l'accesso concesso da {@link LoginEntry#borrow(CredentialReader)}.
+ * I caratteri vengono letti direttamente dalla memoria nativa, senza copie;
+ * al termine dell'accesso la vista viene invalidata e ogni lettura successiva fallisce.
+ * Per evitare copie non controllate, {@link #toString()} non restituisce il contenuto.
+ */
+public final class SecretView implements CharSequence {
+
+    private final MemorySegment segment;
+    private final int offset;
+    private final int length;
+    private final SecretView root;
+    private volatile boolean closed;
+
+    SecretView(MemorySegment segment, int length) {
+        this(segment, 0, length, null);
+    }
+
+    private SecretView(MemorySegment segment, int offset, int length, SecretView root) {
+        this.segment = segment;
+        this.offset = offset;
+        this.length = length;
+        this.root = root != null ? root : this;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        ensureOpen();
+        Objects.checkIndex(index, length);
+        return segment.get(ValueLayout.JAVA_CHAR, (offset + index) * ValueLayout.JAVA_CHAR.byteSize());
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        ensureOpen();
+        Objects.checkFromToIndex(start, end, length);
+        return new SecretView(segment, offset + start, end - start, root);
+    }
+
+    /**
+     * Copia i caratteri indicati direttamente dalla memoria nativa nell'array di destinazione,
+     * come {@link String#getChars(int, int, char[], int)}.
+     *
+     * @param srcBegin indice del primo carattere da copiare
+     * @param srcEnd indice successivo all'ultimo carattere da copiare
+     * @param dst array di destinazione, da azzerare dopo l'uso
+     * @param dstBegin posizione iniziale nell'array di destinazione
+     */
+    public void getChars(int srcBegin, int srcEnd, char[] dst, int dstBegin) {
+        ensureOpen();
+        Objects.checkFromToIndex(srcBegin, srcEnd, length);
+        MemorySegment.copy(segment, ValueLayout.JAVA_CHAR, (offset + srcBegin) * ValueLayout.JAVA_CHAR.byteSize(),
+                dst, dstBegin, srcEnd - srcBegin);
+    }
+
+    /**
+     * Non restituisce il contenuto del segreto, che non deve finire in una String:
+     * log, messaggi di errore e concatenazioni mostrano solo un segnaposto.
+     *
+     * @return sempre {@code "********"}
+     */
+    @Override
+    public String toString() {
+        return "********";
+    }
+
+    /**
+     * Invalida la vista e tutte le sotto-sequenze ottenute da essa.
+     */
+    void close() {
+        closed = true;
+    }
+
+    private void ensureOpen() {
+        if (root.closed) {
+            throw new IllegalStateException("Accesso al segreto già concluso");
+        }
+    }
+}
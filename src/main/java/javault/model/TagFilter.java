@@ -0,0 +1,173 @@
+package javault.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Function;
+
+/**
+ * Valutazione dei filtri per tag e cartelle sulle bitmap dell'indice di {@link VaultData}.
+ * <p>
+ * Un filtro combina termini con {@code AND}, {@code OR}, {@code NOT} e parentesi,
+ * senza distinzione tra maiuscole e minuscole: {@code prod AND database NOT legacy},
+ * {@code (prod OR staging) folder:team/infra}. Due termini consecutivi sono in AND,
+ * e {@code AND} lega più di {@code OR}. Un termine è un tag, oppure {@code folder:percorso}
+ * per i login nella cartella indicata o in una sua sottocartella.
+ * <p>
+ * Le negazioni non vengono calcolate sul complemento: un termine negato resta tale finché
+ * può essere combinato come differenza ({@code a AND NOT b} diventa {@code a.andNot(b)}),
+ * e solo un risultato finale negato viene sottratto dall'insieme di tutti i login.
+ */
+final class TagFilter {
+
+    private static final String FOLDER_PREFIX = "folder:";
+
+    private final List<String> tokens;
+    private final Function<String, RoaringBitmap> tags;
+    private final Function<String, RoaringBitmap> folders;
+    private int position;
+
+    private TagFilter(List<String> tokens, Function<String, RoaringBitmap> tags,
+                      Function<String, RoaringBitmap> folders) {
+        this.tokens = tokens;
+        this.tags = tags;
+        this.folders = folders;
+    }
+
+    /**
+     * Valuta il filtro.
+     *
+     * @param query il filtro
+     * @param tags restituisce la bitmap di un tag normalizzato, o null se il tag non esiste
+     * @param folders restituisce la bitmap di una cartella normalizzata, o null se non esiste
+     * @param all la bitmap di tutti i login
+     * @return i login che soddisfano il filtro, in una nuova bitmap
+     * @throws IllegalArgumentException se il filtro non è valido
+     */
+    static RoaringBitmap evaluate(String query, Function<String, RoaringBitmap> tags,
+                                  Function<String, RoaringBitmap> folders, RoaringBitmap all) {
+        TagFilter filter = new TagFilter(tokenize(query), tags, folders);
+        if (filter.tokens.isEmpty()) {
+            throw new IllegalArgumentException("Filtro vuoto");
+        }
+        Term result = filter.expression();
+        if (filter.position < filter.tokens.size()) {
+            throw new IllegalArgumentException("Filtro non valido vicino a: " + filter.tokens.get(filter.position));
+        }
+        return result.negated() ? all.andNot(result.bits()) : result.bits().and(all);
+    }
+
+    /**
+     * Divide il filtro in parentesi e parole.
+     */
+    private static List<String> tokenize(String query) {
+        List<String> tokens = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= query.length(); i++) {
+            char c = i < query.length() ? query.charAt(i) : ' ';
+            boolean separator = Character.isWhitespace(c) || c == '(' || c == ')';
+            if (separator && start >= 0) {
+                tokens.add(query.substring(start, i));
+                start = -1;
+            }
+            if (c == '(' || c == ')') {
+                tokens.add(String.valueOf(c));
+            } else if (!separator && start < 0) {
+                start = i;
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * expression := conjunction (OR conjunction)*
+     */
+    private Term expression() {
+        Term result = conjunction();
+        while (accept("OR")) {
+            result = result.or(conjunction());
+        }
+        return result;
+    }
+
+    /**
+     * conjunction := factor ((AND)? factor)*
+     */
+    private Term conjunction() {
+        Term result = factor();
+        while (position < tokens.size() && !peek("OR") && !peek(")")) {
+            accept("AND");
+            result = result.and(factor());
+        }
+        return result;
+    }
+
+    /**
+     * factor := NOT factor | ( expression ) | termine
+     */
+    private Term factor() {
+        if (position == tokens.size()) {
+            throw new IllegalArgumentException("Filtro incompleto");
+        }
+        if (accept("NOT")) {
+            return factor().not();
+        }
+        if (accept("(")) {
+            Term inner = expression();
+            if (!accept(")")) {
+                throw new IllegalArgumentException("Parentesi non chiusa nel filtro");
+            }
+            return inner;
+        }
+
+        String word = tokens.get(position++);
+        if (word.equals(")") || isOperator(word)) {
+            throw new IllegalArgumentException("Filtro non valido vicino a: " + word);
+        }
+        RoaringBitmap bits;
+        if (word.regionMatches(true, 0, FOLDER_PREFIX, 0, FOLDER_PREFIX.length())) {
+            bits = folders.apply(LoginEntry.normalizeFolder(word.substring(FOLDER_PREFIX.length())).toLowerCase(Locale.ROOT));
+        } else {
+            bits = tags.apply(word.toLowerCase(Locale.ROOT));
+        }
+        return new Term(bits != null ? bits : new RoaringBitmap(), false);
+    }
+
+    private boolean peek(String token) {
+        return position < tokens.size() && tokens.get(position).equalsIgnoreCase(token);
+    }
+
+    private boolean accept(String token) {
+        if (!peek(token)) return false;
+        position++;
+        return true;
+    }
+
+    private static boolean isOperator(String word) {
+        return word.equalsIgnoreCase("AND") || word.equalsIgnoreCase("OR") || word.equalsIgnoreCase("NOT");
+    }
+
+    /**
+     * Risultato parziale: l'insieme {@code bits}, oppure il suo complemento se {@code negated}.
+     */
+    private record Term(RoaringBitmap bits, boolean negated) {
+
+        Term not() {
+            return new Term(bits, !negated);
+        }
+
+        Term and(Term other) {
+            if (!negated && !other.negated) return new Term(bits.and(other.bits), false);
+            if (!negated) return new Term(bits.andNot(other.bits), false);
+            if (!other.negated) return new Term(other.bits.andNot(bits), false);
+            return new Term(bits.or(other.bits), true); // NOT a AND NOT b = NOT (a OR b)
+        }
+
+        Term or(Term other) {
+            if (!negated && !other.negated) return new Term(bits.or(other.bits), false);
+            if (negated && other.negated) return new Term(bits.and(other.bits), true); // NOT (a AND b)
+            // a OR NOT b = NOT (b AND NOT a)
+            return negated ? new Term(bits.andNot(other.bits), true) : new Term(other.bits.andNot(bits), true);
+        }
+    }
+}
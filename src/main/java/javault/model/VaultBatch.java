@@ -0,0 +1,202 @@
+package javault.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedSet;
+
+/**
+ * Insieme di modifiche al vault da applicare tutte insieme, ottenuto con {@link VaultData#beginBatch()}.
+ * Le modifiche vengono solo registrate finché non si chiama {@link #commit(Writer)}, che le applica
+ * in un'unica operazione atomica: chi legge il vault le vede tutte o nessuna, e se una non è applicabile
+ * (ad esempio un'aggiunta su un nome già presente) o la loro registrazione fallisce il vault non cambia.
+ * <p>
+ * Le credenziali vengono copiate fuori dall'heap al momento della registrazione, quindi gli array
+ * passati vengono azzerati subito. Un batch non committato va chiuso con {@link #close()}, che pulisce
+ * le credenziali registrate, tipicamente con try-with-resources. Un batch non è thread-safe
+ * e può essere committato una sola volta.
+ */
+public final class VaultBatch implements AutoCloseable {
+
+    /**
+     * Tipo di una modifica registrata nel batch.
+     */
+    public enum Kind {
+        /** Aggiunta di un login non presente. */
+        ADD,
+        /** Sostituzione delle credenziali di un login esistente, mantenendo cartella e tag. */
+        UPDATE,
+        /** Rimozione di un login, ignorata se il login non esiste. */
+        REMOVE,
+        /** Sostituzione di cartella e tag di un login esistente. */
+        LABELS
+    }
+
+    /**
+     * Modifica registrata nel batch.
+     *
+     * @param kind il tipo di modifica
+     * @param name il nome del login
+     * @param entry le nuove credenziali per {@link Kind#ADD} e {@link Kind#UPDATE}, altrimenti null
+     * @param folder la nuova cartella per {@link Kind#LABELS}, altrimenti null
+     * @param tags i nuovi tag per {@link Kind#LABELS}, altrimenti null
+     */
+    public record Operation(Kind kind, String name, LoginEntry entry, String folder, SortedSet<String> tags) {
+    }
+
+    /**
+     * Registra su disco le modifiche di un batch prima che diventino visibili nel vault.
+     *
+     * @param <E> l'eccezione sollevata se la registrazione fallisce
+     */
+    @FunctionalInterface
+    public interface Writer<E extends Exception> {
+
+        /**
+         * @param batch il batch da registrare, già verificato
+         * @throws E se la registrazione fallisce: il batch non viene applicato
+         */
+        void write(VaultBatch batch) throws E;
+    }
+
+    private final VaultData vault;
+    private final List<Operation> operations = new ArrayList<>();
+    private long timestamp;
+    private boolean finished;
+
+    VaultBatch(VaultData vault) {
+        this.vault = vault;
+    }
+
+    /**
+     * Registra l'aggiunta di un login, che al commit non deve esistere.
+     * Pulisce i char array username e password.
+     *
+     * @param name nome identificativo del login
+     * @param username username come char array
+     * @param password password come char array
+     * @return questo batch
+     */
+    public VaultBatch add(String name, char[] username, char[] password) {
+        return stage(Kind.ADD, name, username, password);
+    }
+
+    /**
+     * Registra la sostituzione delle credenziali di un login, che al commit deve esistere.
+     * Cartella e tag restano quelli del login; la password sostituita entra nella sua cronologia.
+     * Pulisce i char array username e password.
+     *
+     * @param name nome identificativo del login
+     * @param username username come char array
+     * @param password password come char array
+     * @return questo batch
+     */
+    public VaultBatch update(String name, char[] username, char[] password) {
+        return stage(Kind.UPDATE, name, username, password);
+    }
+
+    /**
+     * Registra la rimozione di un login, che ne elimina anche la cronologia.
+     * Se al commit il login non esiste, la rimozione è ignorata.
+     *
+     * @param name nome del login da rimuovere
+     * @return questo batch
+     */
+    public VaultBatch remove(String name) {
+        checkOpen();
+        operations.add(new Operation(Kind.REMOVE, name, null, null, null));
+        return this;
+    }
+
+    /**
+     * Registra la sostituzione di cartella e tag di un login, che al commit deve esistere
+     * (anche perché aggiunto prima nello stesso batch).
+     *
+     * @param name nome del login
+     * @param folder la cartella (percorso separato da "/"), o null per nessuna
+     * @param tags i tag, eventualmente nessuno
+     * @return questo batch
+     * @throws IllegalArgumentException se un tag non è valido (vedi {@link VaultData#setLabels(String, String, Collection)})
+     */
+    public VaultBatch setLabels(String name, String folder, Collection<String> tags) {
+        checkOpen();
+        operations.add(new Operation(Kind.LABELS, name, null,
+                LoginEntry.normalizeFolder(folder), LoginEntry.normalizeTags(tags)));
+        return this;
+    }
+
+    /**
+     * @return il numero di modifiche registrate
+     */
+    public int size() {
+        return operations.size();
+    }
+
+    /**
+     * Restituisce l'istante del commit, con cui le password sostituite dal batch entrano nella cronologia.
+     * Viene fissato prima della registrazione, così che il {@link Writer} possa registrarlo insieme alle modifiche.
+     *
+     * @return l'istante del commit in millisecondi dall'epoca, 0 se il batch non è stato committato
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return le modifiche registrate, nell'ordine di registrazione
+     */
+    public List<Operation> getOperations() {
+        return Collections.unmodifiableList(operations);
+    }
+
+    /**
+     * Applica tutte le modifiche al vault in un'unica operazione atomica.
+     * Le modifiche vengono prima verificate sullo stato attuale del vault, poi passate a {@code writer}
+     * (ad esempio per accodarle al journal) e solo se la scrittura riesce diventano visibili.
+     * Durante la scrittura le modifiche concorrenti agli stessi login attendono.
+     *
+     * @param <E> l'eccezione sollevata da {@code writer}
+     * @param writer registra le modifiche prima che vengano applicate
+     * @return il numero di login modificati
+     * @throws IllegalStateException se una modifica non è applicabile o il batch è già stato chiuso:
+     *         nessuna modifica viene applicata
+     * @throws E se la scrittura fallisce: nessuna modifica viene applicata
+     */
+    public <E extends Exception> int commit(Writer<E> writer) throws E {
+        checkOpen();
+        finished = true;
+        timestamp = System.currentTimeMillis();
+        return vault.applyBatch(this, writer);
+    }
+
+    /**
+     * Annulla il batch se non è stato committato, pulendo le credenziali registrate.
+     */
+    @Override
+    public void close() {
+        if (finished) return;
+        finished = true;
+        for (Operation operation : operations) {
+            if (operation.entry() != null) operation.entry().clear();
+        }
+    }
+
+    private VaultBatch stage(Kind kind, String name, char[] username, char[] password) {
+        try {
+            checkOpen();
+            operations.add(new Operation(kind, name, new LoginEntry(username, password), null, null));
+            return this;
+        } finally {
+            Arrays.fill(username, '\0'); // Pulizia dati sensibili dalla RAM
+            Arrays.fill(password, '\0'); // Pulizia dati sensibili dalla RAM
+        }
+    }
+
+    private void checkOpen() {
+        if (finished) {
+            throw new IllegalStateException("Batch già chiuso");
+        }
+    }
+}
@@ -1,21 +1,107 @@
 package javault.model;
 
+import java.nio.CharBuffer;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.List;
 import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Queue;
 import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
 
 
 /**
  * Gestisce un archivio di credenziali tramite
  * una mappa nome login - LoginEntry con username e password.
+ * Le entry caricate in formato cifrato vengono decifrate solo al primo accesso.
+ * Accanto alla mappa è mantenuto un indice ordinato dei nomi, che permette
+ * iterazione ordinata, ricerca per prefisso e paginazione senza scorrere tutto il vault,
+ * un indice a n-grammi su nomi e username per la ricerca approssimata ({@link #search(String, int)})
+ * e un indice a bitmap di tag e cartelle per i filtri ({@link #filter(String)}).
+ * <p>
+ * Il vault è thread-safe: le letture non acquisiscono lock e l'iterazione sui nomi è
+ * debolmente consistente (non fallisce per modifiche concorrenti e non vede due volte lo stesso nome).
+ * Ogni modifica di un login è atomica rispetto alle altre sullo stesso nome e aggiorna
+ * insieme mappa e indici; modifiche su nomi diversi procedono in parallelo.
+ * Più modifiche possono essere applicate insieme, in modo atomico, con un {@link VaultBatch}.
+ * <p>
+ * Le entry sono conservate in una mappa persistente ({@link HashTrie}): ogni modifica
+ * pubblica una nuova versione che condivide con la precedente quasi tutta la struttura,
+ * quindi {@link #snapshot()} fotografa l'intero vault in tempo costante. Chi deve leggere
+ * uno stato coerente, come il salvataggio, lavora sullo snapshot senza bloccare le modifiche.
+ * Le entry rimosse vengono pulite subito, oppure alla chiusura dell'ultimo snapshot aperto.
+ * <p>
+ * Per ogni login è conservata la cronologia delle password sostituite
+ * ({@link #getPasswordHistory(String)}), entro i limiti di {@link #setHistoryLimits(int, Duration)};
+ * la rimozione di un login ne elimina anche la cronologia.
+ * La cronologia salvata resta nell'{@link HistoryStore} e viene letta solo per i login
+ * di cui viene richiesta o modificata, quindi non pesa sull'apertura del vault.
  */
 public class VaultData {
 
-    private final Map<String, LoginEntry> passwordMap = new HashMap<>();
+    private static final int STRIPES = 64;
+    private static final int DEFAULT_HISTORY_VERSIONS = 10;
+    private static final Duration DEFAULT_HISTORY_AGE = Duration.ofDays(365);
 
+    private final AtomicReference<HashTrie<String, LoginEntry>> entries = new AtomicReference<>(HashTrie.empty());
+    private final Object[] stripes = new Object[STRIPES];
+    private final NavigableSet<String> nameIndex = new ConcurrentSkipListSet<>();
+    private SearchIndex searchIndex;
+    private final Object searchLock = new Object();
+    /** Aggiornamenti dell'indice di ricerca rinviati mentre viene codificato, protetti da searchLock. */
+    private List<Runnable> deferredIndexUpdates;
+    private final AtomicInteger openSnapshots = new AtomicInteger();
+    private final Queue<Runnable> retired = new ConcurrentLinkedQueue<>();
+    private volatile Function<byte[], LoginEntry> unsealer;
+    /** Cronologie lette dall'archivio o modificate in questa sessione. */
+    private final Map<String, List<PasswordVersion>> histories = new ConcurrentHashMap<>();
+    /** Cronologie modificate dall'ultimo salvataggio. */
+    private final Map<String, List<PasswordVersion>> changedHistories = new ConcurrentHashMap<>();
+    private final Object historyLock = new Object();
+    private HistoryStore historyStore;
+    private volatile int maxHistoryVersions = DEFAULT_HISTORY_VERSIONS;
+    private volatile Duration maxHistoryAge = DEFAULT_HISTORY_AGE;
     /**
-     * Aggiunge una nuova credenziale al vault.
+     * Indice di tag e cartelle, protetto da labelLock: ogni login ha un ordinale,
+     * riusato dopo la sua rimozione, e ogni tag o cartella la bitmap degli ordinali dei suoi login.
+     */
+    private final Object labelLock = new Object();
+    private final Map<String, Integer> ordinals = new HashMap<>();
+    private String[] ordinalNames = new String[64];
+    private final Deque<Integer> freeOrdinals = new ArrayDeque<>();
+    private final RoaringBitmap allOrdinals = new RoaringBitmap();
+    private final Map<String, RoaringBitmap> tagBitmaps = new HashMap<>();
+    private final Map<String, RoaringBitmap> folderBitmaps = new HashMap<>();
+
+    public VaultData() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Object();
+        }
+    }
+
+    /**
+     * Aggiunge una nuova credenziale al vault, sostituendo e pulendo quella con lo stesso nome.
+     * Se la password sostituita è diversa dalla nuova viene conservata nella cronologia del login;
+     * cartella e tag del login sostituito vengono mantenuti.
      * Dopo l'aggiunta, pulisce i char array username e password per sicurezza,
      * sovrascrivendo i dati sensibili in RAM.
      *
@@ -24,20 +110,202 @@ public class VaultData {
      * @param password password come char array
      */
     public void addLogin(String name, char[] username, char[] password) {
-    	
-        passwordMap.put(name, new LoginEntry(username, password));
-        Arrays.fill(username, '\0'); // Pulizia dati sensibili dalla RAM
-        Arrays.fill(password, '\0'); // Pulizia dati sensibili dalla RAM
+        addLogin(name, username, password, System.currentTimeMillis());
+    }
+
+    /**
+     * Come {@link #addLogin(String, char[], char[])}, ma la password sostituita entra nella cronologia
+     * con la data indicata invece di quella attuale: serve a riapplicare una modifica registrata in precedenza,
+     * ad esempio dal journal, con la data in cui è stata fatta.
+     *
+     * @param name nome identificativo del login
+     * @param username username come char array
+     * @param password password come char array
+     * @param changedAt istante della modifica, in millisecondi dall'epoca
+     */
+    public void addLogin(String name, char[] username, char[] password, long changedAt) {
+        try {
+            LoginEntry entry = new LoginEntry(username, password);
+            mutate(name, previous -> {
+                if (previous != null) entry.copyLabels(previous);
+                return entry;
+            }, true, changedAt);
+        } finally {
+            Arrays.fill(username, '\0'); // Pulizia dati sensibili dalla RAM
+            Arrays.fill(password, '\0'); // Pulizia dati sensibili dalla RAM
+        }
+    }
+
+    /**
+     * Aggiunge una nuova credenziale solo se non esiste già un login con lo stesso nome:
+     * verifica e inserimento avvengono in un'unica operazione atomica.
+     * In ogni caso pulisce i char array username e password.
+     *
+     * @param name nome identificativo del login
+     * @param username username come char array
+     * @param password password come char array
+     * @return true se il login è stato aggiunto, false se il nome era già presente
+     */
+    public boolean addLoginIfAbsent(String name, char[] username, char[] password) {
+        try {
+            if (hasLogin(name)) return false;
+            LoginEntry entry = new LoginEntry(username, password);
+            if (mutate(name, previous -> previous != null ? previous : entry, false) == null) {
+                return true;
+            }
+            entry.clear();
+            return false;
+        } finally {
+            Arrays.fill(username, '\0'); // Pulizia dati sensibili dalla RAM
+            Arrays.fill(password, '\0'); // Pulizia dati sensibili dalla RAM
+        }
+    }
+
+    /**
+     * Aggiunge le credenziali indicate, ad esempio al termine di un'importazione.
+     * Le credenziali con un nome già presente nel vault non vengono aggiunte e vengono pulite.
+     *
+     * @param entries mappa nome login - LoginEntry da aggiungere
+     * @return il numero di credenziali aggiunte
+     */
+    public int addAllLogins(Map<String, LoginEntry> entries) {
+        int added = 0;
+        for (Map.Entry<String, LoginEntry> candidate : entries.entrySet()) {
+            LoginEntry entry = candidate.getValue();
+            if (mutate(candidate.getKey(), previous -> previous != null ? previous : entry, false) == null) {
+                added++;
+            } else {
+                entry.clear();
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Aggiunge una credenziale ancora cifrata, senza decifrarla.
+     *
+     * @param name nome identificativo del login
+     * @param sealed record cifrato contenente username e password
+     */
+    public void addSealedLogin(String name, byte[] sealed) {
+        LoginEntry entry = LoginEntry.sealed(sealed);
+        mutate(name, previous -> entry, false);
+    }
+
+    /**
+     * Imposta la funzione usata per decifrare le entry caricate in formato cifrato.
+     *
+     * @param unsealer funzione che decifra un record e restituisce la entry in chiaro, o null se fallisce
+     */
+    public void setUnsealer(Function<byte[], LoginEntry> unsealer) {
+        this.unsealer = unsealer;
     }
 
     /**
      * Recupera la LoginEntry associata al nome login specificato.
+     * Se la entry è ancora cifrata viene decifrata ora, e solo lei:
+     * più thread che la richiedono insieme la decifrano una sola volta.
      *
      * @param name nome identificativo del login
-     * @return la LoginEntry corrispondente, o null se non presente
+     * @return la LoginEntry corrispondente, o null se non presente o non decifrabile
      */
     public LoginEntry getLogin(String name) {
-        return passwordMap.get(name);
+        LoginEntry entry = entries.get().get(name);
+        return entry == null ? null : open(name, entry);
+    }
+
+    /**
+     * Decifra la entry se è ancora cifrata, una sola volta anche con più thread.
+     *
+     * @return la entry, o null se non decifrabile
+     */
+    LoginEntry open(String name, LoginEntry entry) {
+        synchronized (entry) {
+            if (entry.isSealed()) {
+                Function<byte[], LoginEntry> opener = unsealer;
+                LoginEntry opened = opener != null ? opener.apply(entry.getSealed()) : null;
+                if (opened == null) {
+                    System.err.println("Impossibile decifrare il login " + name);
+                    return null;
+                }
+                entry.open(opened);
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Legge le credenziali della entry senza decifrarla in modo permanente:
+     * una entry ancora cifrata viene decifrata in una copia pulita al ritorno.
+     *
+     * @return il risultato di {@code reader}, o null se la entry non è decifrabile
+     */
+    <R> R borrow(String name, LoginEntry entry, CredentialReader<R> reader) {
+        byte[] sealed;
+        synchronized (entry) {
+            if (!entry.isSealed()) return entry.borrow(reader);
+            sealed = entry.getSealed();
+        }
+        Function<byte[], LoginEntry> opener = unsealer;
+        LoginEntry opened = opener != null ? opener.apply(sealed) : null;
+        if (opened == null) {
+            System.err.println("Impossibile decifrare il login " + name);
+            return null;
+        }
+        try {
+            return opened.borrow(reader);
+        } finally {
+            opened.clear();
+        }
+    }
+
+    /**
+     * Recupera la LoginEntry associata al nome login senza decifrarla,
+     * ad esempio per riscriverne su disco il record cifrato.
+     *
+     * @param name nome identificativo del login
+     * @return la LoginEntry corrispondente, eventualmente ancora cifrata, o null se non presente
+     */
+    public LoginEntry peekLogin(String name) {
+        return entries.get().get(name);
+    }
+
+    /**
+     * Ricifra i record cifrati delle entry caricate da disco, ad esempio dopo un cambio di chiave,
+     * a lotti di {@code batchSize} record: in chiaro resta al più un lotto alla volta, dentro {@code reseal},
+     * e le entry ancora cifrate restano tali. I nuovi record sostituiscono i precedenti, insieme
+     * al nuovo {@code unsealer}, solo se tutti i lotti sono stati ricifrati.
+     * Non va chiamato in concorrenza con modifiche del vault.
+     *
+     * @param batchSize il numero di record per lotto
+     * @param reseal ricifra un lotto di record e restituisce i nuovi record nello stesso ordine,
+     *               o null se un record non può essere decifrato
+     * @param unsealer la funzione che decifra i nuovi record
+     * @return false se un record non può essere decifrato: il vault resta invariato
+     */
+    public boolean resealAll(int batchSize, UnaryOperator<byte[][]> reseal, Function<byte[], LoginEntry> unsealer) {
+        List<LoginEntry> sealedEntries = new ArrayList<>();
+        entries.get().forEach((name, entry) -> {
+            if (entry.getSealed() != null) sealedEntries.add(entry);
+        });
+
+        byte[][] resealed = new byte[sealedEntries.size()][];
+        for (int start = 0; start < resealed.length; start += batchSize) {
+            int end = Math.min(start + batchSize, resealed.length);
+            byte[][] batch = new byte[end - start][];
+            for (int i = start; i < end; i++) {
+                batch[i - start] = sealedEntries.get(i).getSealed();
+            }
+            byte[][] records = reseal.apply(batch);
+            if (records == null) return false;
+            System.arraycopy(records, 0, resealed, start, records.length);
+        }
+
+        for (int i = 0; i < resealed.length; i++) {
+            sealedEntries.get(i).reseal(resealed[i]);
+        }
+        this.unsealer = unsealer;
+        return true;
     }
 
     /**
@@ -47,37 +315,750 @@ public class VaultData {
      * @return true se il login esiste, false altrimenti
      */
     public boolean hasLogin(String name) {
-        return passwordMap.containsKey(name);
+        return entries.get().get(name) != null;
     }
 
     /**
-     * Rimuove il login dal vault e pulisce i dati sensibili associati.
+     * Rimuove il login dal vault e pulisce i dati sensibili associati,
+     * in un'unica operazione atomica. Viene eliminata anche la cronologia del login:
+     * le sue password precedenti spariscono dalla memoria subito e dall'archivio al prossimo salvataggio.
      *
      * @param name nome del login da rimuovere
+     * @return true se il login era presente ed è stato rimosso
      */
-    public void removeLogin(String name) {
-        if (passwordMap.containsKey(name)) {
-            passwordMap.get(name).clear();
-            passwordMap.remove(name);
+    public boolean removeLogin(String name) {
+        return mutate(name, previous -> null, true) != null;
+    }
+
+    /**
+     * Restituisce l'insieme di tutti i nomi login salvati, in ordine alfabetico.
+     * L'insieme è una vista non modificabile che riflette le modifiche successive;
+     * può essere iterato anche mentre altri thread modificano il vault.
+     *
+     * @return set ordinato di stringhe con tutti i nomi login
+     */
+    public NavigableSet<String> getAllLogins() {
+        return Collections.unmodifiableNavigableSet(nameIndex);
+    }
+
+    /**
+     * Restituisce una versione immutabile dell'intero vault in questo istante, in tempo costante.
+     * Le modifiche successive non la alterano e non attendono chi la legge.
+     *
+     * @return lo snapshot, da chiudere al termine della lettura
+     */
+    public VaultSnapshot snapshot() {
+        // Il contatore va incrementato prima di leggere la versione: vedi retire()
+        openSnapshots.incrementAndGet();
+        return new VaultSnapshot(this, entries.get());
+    }
+
+    /**
+     * Inizia un batch di modifiche da applicare tutte insieme con {@link VaultBatch#commit(VaultBatch.Writer)},
+     * ad esempio per rimuovere molti login con un'unica registrazione su disco.
+     *
+     * @return il batch, vuoto
+     */
+    public VaultBatch beginBatch() {
+        return new VaultBatch(this);
+    }
+
+    /**
+     * Restituisce in ordine alfabetico i nomi login che iniziano con il prefisso indicato,
+     * a pagine: la ricerca costa O(log n + k), dove k è il numero di nomi restituiti.
+     *
+     * @param prefix il prefisso da cercare (stringa vuota per tutti i login)
+     * @param after l'ultimo nome della pagina precedente, escluso, o null per partire dall'inizio
+     * @param limit il numero massimo di nomi da restituire
+     * @return i nomi trovati, in una nuova lista
+     */
+    public List<String> findByPrefix(String prefix, String after, int limit) {
+        NavigableSet<String> candidates = after != null && after.compareTo(prefix) >= 0
+                ? nameIndex.tailSet(after, false)
+                : nameIndex.tailSet(prefix, true);
+
+        List<String> names = new ArrayList<>(Math.min(limit, 64));
+        for (String name : candidates) {
+            if (names.size() == limit || !name.startsWith(prefix)) break;
+            names.add(name);
+        }
+        return names;
+    }
+
+    /**
+     * Restituisce una pagina di nomi login in ordine alfabetico.
+     *
+     * @param after l'ultimo nome della pagina precedente, escluso, o null per la prima pagina
+     * @param limit il numero massimo di nomi da restituire
+     * @return i nomi della pagina, in una nuova lista
+     */
+    public List<String> getLoginsPage(String after, int limit) {
+        return findByPrefix("", after, limit);
+    }
+
+    /**
+     * Cerca i login il cui nome o username corrisponde in modo approssimato alla query,
+     * anche abbreviata o con refusi: "gtlbprd" trova "gitlab prod".
+     * I risultati sono ordinati dal più pertinente. Le query troppo corte per la ricerca
+     * approssimata (meno di due lettere o cifre) diventano una ricerca per prefisso.
+     * <p>
+     * Se l'indice non è stato ripristinato da disco viene costruito alla prima ricerca,
+     * decifrando tutte le entry; da lì in poi è aggiornato a ogni modifica.
+     *
+     * @param query il testo cercato
+     * @param limit il numero massimo di risultati
+     * @return i nomi trovati, in una nuova lista
+     */
+    public List<String> search(String query, int limit) {
+        List<String> names;
+        synchronized (searchLock) {
+            names = searchIndex().search(query, limit);
+        }
+        return names != null ? names : findByPrefix(query, null, limit);
+    }
+
+    /**
+     * Codifica l'indice di ricerca per salvarlo accanto al vault, così che all'apertura
+     * non vada ricostruito. Contiene n-grammi degli username: va scritto solo cifrato.
+     * L'indice può includere modifiche successive allo snapshot salvato: sono anche nel journal,
+     * e all'apertura {@link #restoreSearchIndex(byte[])} e la rilettura del journal lo riallineano.
+     *
+     * @return l'indice codificato, o null se in questa sessione l'indice non esiste
+     */
+    public byte[] encodeSearchIndex() {
+        SearchIndex index;
+        synchronized (searchLock) {
+            if (searchIndex == null || deferredIndexUpdates != null) return null;
+            index = searchIndex;
+            index.compact();
+            deferredIndexUpdates = new ArrayList<>();
         }
+
+        // La codifica non tiene il lock: le modifiche nel frattempo vengono accodate
+        try {
+            return index.encode();
+        } finally {
+            synchronized (searchLock) {
+                for (Runnable update : deferredIndexUpdates) {
+                    update.run();
+                }
+                deferredIndexUpdates = null;
+            }
+        }
+    }
+
+    /**
+     * Ripristina l'indice di ricerca salvato con {@link #encodeSearchIndex()},
+     * riallineandolo ai login presenti: vengono tolti i nomi non più presenti
+     * e indicizzati quelli mancanti, decifrando solo questi ultimi.
+     *
+     * @param data l'indice codificato
+     * @return true se l'indice è stato ripristinato, false se i dati non sono validi
+     */
+    public boolean restoreSearchIndex(byte[] data) {
+        SearchIndex restored = SearchIndex.decode(data);
+        if (restored == null) return false;
+
+        synchronized (searchLock) {
+            HashTrie<String, LoginEntry> current = entries.get();
+            for (String name : restored.names()) {
+                if (current.get(name) == null) restored.remove(name);
+            }
+            current.forEach((name, entry) -> {
+                if (!restored.contains(name)) indexLogin(restored, name, entry);
+            });
+            searchIndex = restored;
+            return true;
+        }
+    }
+
+    /**
+     * Imposta cartella e tag di un login, sostituendo quelli precedenti, e aggiorna l'indice.
+     * La entry pubblicata non viene modificata: ne viene pubblicata una copia con le nuove etichette,
+     * così gli snapshot aperti continuano a vedere quelle precedenti.
+     *
+     * @param name nome del login
+     * @param folder la cartella (percorso separato da "/"), o null per nessuna
+     * @param tags i tag, eventualmente nessuno
+     * @return true se il login esiste
+     * @throws IllegalArgumentException se un tag è vuoto, contiene spazi o parentesi,
+     *         o coincide con un operatore dei filtri
+     */
+    public boolean setLabels(String name, String folder, Collection<String> tags) {
+        String normalizedFolder = LoginEntry.normalizeFolder(folder);
+        SortedSet<String> normalizedTags = LoginEntry.normalizeTags(tags);
+        synchronized (stripe(name)) {
+            // Con il lock del nome la entry letta è quella che mutate sostituirà
+            LoginEntry entry = entries.get().get(name);
+            if (entry == null) return false;
+            LoginEntry relabeled = entry.withLabels(normalizedFolder, normalizedTags);
+            mutate(name, previous -> relabeled, false);
+            return true;
+        }
+    }
+
+    /**
+     * Restituisce in ordine alfabetico i login che soddisfano un filtro per tag e cartelle.
+     * Il filtro combina tag con {@code AND}, {@code OR}, {@code NOT} e parentesi, senza distinzione
+     * tra maiuscole e minuscole; due termini consecutivi sono in AND e {@code AND} lega più di {@code OR}.
+     * Il termine {@code folder:percorso} indica i login nella cartella o in una sua sottocartella.
+     * Esempi: {@code prod AND database NOT legacy}, {@code (prod OR staging) folder:team/infra}.
+     * <p>
+     * Il filtro è valutato con intersezioni, unioni e differenze sulle bitmap dell'indice,
+     * senza scorrere i login: il costo dipende dal numero di tag nel filtro e dai risultati.
+     *
+     * @param query il filtro
+     * @return i nomi trovati, in una nuova lista
+     * @throws IllegalArgumentException se il filtro non è valido
+     */
+    public List<String> filter(String query) {
+        List<String> names = new ArrayList<>();
+        synchronized (labelLock) {
+            RoaringBitmap matches = TagFilter.evaluate(query, tagBitmaps::get, folderBitmaps::get, allOrdinals);
+            matches.forEach(ordinal -> names.add(ordinalNames[ordinal]));
+        }
+        names.sort(null);
+        return names;
+    }
+
+    /**
+     * @return tutti i tag usati nel vault, in ordine alfabetico, in un nuovo insieme
+     */
+    public SortedSet<String> getAllTags() {
+        synchronized (labelLock) {
+            return new TreeSet<>(tagBitmaps.keySet());
+        }
+    }
+
+    /**
+     * Restituisce le password precedenti del login, dalla più recente.
+     * La cronologia salvata viene letta dall'archivio solo la prima volta che viene richiesta
+     * (o modificata); le versioni oltre i limiti di conservazione non sono incluse.
+     * Una versione può essere pulita da una modifica successiva del login: da lì in poi
+     * la sua lettura solleva {@link IllegalStateException}.
+     *
+     * @param name nome del login
+     * @return le versioni, in una lista non modificabile eventualmente vuota
+     */
+    public List<PasswordVersion> getPasswordHistory(String name) {
+        List<PasswordVersion> history = history(name);
+        return history.subList(0, retained(history));
     }
 
     /**
-     * Restituisce l'insieme di tutti i nomi login salvati.
+     * Imposta i limiti di conservazione della cronologia, applicati alla prossima modifica
+     * di ogni login e ai salvataggi successivi.
      *
-     * @return set di stringhe con tutti i nomi login
+     * @param maxVersions il numero massimo di password precedenti per login (0 disattiva la cronologia)
+     * @param maxAge l'età massima di una password precedente, dalla sua sostituzione
+     */
+    public void setHistoryLimits(int maxVersions, Duration maxAge) {
+        if (maxVersions < 0 || maxAge.isNegative()) {
+            throw new IllegalArgumentException("Limiti della cronologia non validi");
+        }
+        this.maxHistoryVersions = maxVersions;
+        this.maxHistoryAge = maxAge;
+    }
+
+    /**
+     * @return il numero massimo di password precedenti conservate per login
      */
-    public Set<String> getAllLogins() {
-        return passwordMap.keySet();
+    public int getMaxHistoryVersions() {
+        return maxHistoryVersions;
     }
 
     /**
-     * Pulisce tutte le credenziali dalla memoria, sovrascrivendo i dati sensibili.
+     * @return l'età massima di una password precedente conservata
+     */
+    public Duration getMaxHistoryAge() {
+        return maxHistoryAge;
+    }
+
+    /**
+     * Imposta l'archivio da cui leggere la cronologia salvata, chiudendo il precedente.
+     * Le cronologie già lette restano in memoria: l'archivio nuovo deve contenerle
+     * uguali, come accade dopo un salvataggio.
+     *
+     * @param store l'archivio, o null se non c'è cronologia salvata
+     */
+    public void setHistoryStore(HistoryStore store) {
+        synchronized (historyLock) {
+            if (historyStore != null && historyStore != store) historyStore.close();
+            historyStore = store;
+        }
+    }
+
+    /**
+     * Restituisce i nomi dei login con una cronologia, salvata o creata in questa sessione.
+     *
+     * @return i nomi, in un nuovo insieme
+     */
+    public Set<String> getHistoryNames() {
+        Set<String> names = new HashSet<>(histories.keySet());
+        synchronized (historyLock) {
+            if (historyStore != null) names.addAll(historyStore.names());
+        }
+        return names;
+    }
+
+    /**
+     * Restituisce le cronologie modificate dall'ultimo salvataggio, da scrivere nell'archivio.
+     *
+     * @return mappa nome login - versioni dalla più recente, non modificabile
+     */
+    public Map<String, List<PasswordVersion>> getChangedHistories() {
+        return Map.copyOf(changedHistories);
+    }
+
+    /**
+     * Da chiamare quando le cronologie ottenute da {@link #getChangedHistories()} sono su disco:
+     * tornano non modificate, tranne quelle cambiate di nuovo nel frattempo.
+     *
+     * @param saved le cronologie salvate
+     */
+    public void historiesSaved(Map<String, List<PasswordVersion>> saved) {
+        saved.forEach(changedHistories::remove);
+    }
+
+    /**
+     * Applica in modo atomico una modifica al login indicato e aggiorna gli indici.
+     * Le modifiche sullo stesso nome sono serializzate da un lock per gruppo di nomi;
+     * la nuova versione della mappa viene pubblicata con un compare-and-set,
+     * quindi {@code change} non deve avere effetti collaterali: può essere rieseguita.
+     * La entry sostituita o rimossa viene pulita (vedi {@link #retire(Runnable)}); se {@code keepHistory}
+     * è true, prima la password sostituita entra nella cronologia, mentre una rimozione la elimina.
+     *
+     * @return la entry associata al nome prima della modifica, o null
+     */
+    private LoginEntry mutate(String name, UnaryOperator<LoginEntry> change, boolean keepHistory) {
+        return mutate(name, change, keepHistory, System.currentTimeMillis());
+    }
+
+    /**
+     * Come {@link #mutate(String, UnaryOperator, boolean)}, con la data di sostituzione
+     * da registrare nella cronologia.
+     */
+    private LoginEntry mutate(String name, UnaryOperator<LoginEntry> change, boolean keepHistory, long changedAt) {
+        synchronized (stripe(name)) {
+            HashTrie<String, LoginEntry> current;
+            HashTrie<String, LoginEntry> updated;
+            LoginEntry previous;
+            LoginEntry next;
+            do {
+                current = entries.get();
+                previous = current.get(name);
+                next = change.apply(previous);
+                if (next == previous) return previous;
+                updated = next != null ? current.put(name, next) : current.remove(name);
+            } while (!entries.compareAndSet(current, updated));
+
+            published(name, previous, next, keepHistory, changedAt);
+            return previous;
+        }
+    }
+
+    /**
+     * Aggiorna indici e cronologia dopo la pubblicazione di una nuova entry (o della sua rimozione)
+     * e pulisce quella precedente. Va chiamato con il lock del nome.
+     */
+    private void published(String name, LoginEntry previous, LoginEntry next, boolean keepHistory, long changedAt) {
+        updateLabelIndex(name, previous, next);
+        if (next != null) {
+            nameIndex.add(name);
+            updateSearchIndex(() -> indexLogin(searchIndex, name, next));
+        } else {
+            nameIndex.remove(name);
+            updateSearchIndex(() -> searchIndex.remove(name));
+        }
+        if (previous != null) {
+            if (keepHistory && next != null) {
+                recordHistory(name, previous, next, changedAt);
+            } else if (keepHistory) {
+                purgeHistory(name);
+            }
+            retire(previous::clear);
+        }
+    }
+
+    /**
+     * Applica le modifiche di un batch (vedi {@link VaultBatch#commit(VaultBatch.Writer)}).
+     * Acquisisce i lock di tutti i gruppi di nomi coinvolti, in ordine crescente per evitare stalli
+     * con altri batch; le modifiche singole prendono un solo lock e non possono incrociarsi.
+     * Le entry registrate nel batch e non pubblicate vengono pulite, anche se il batch fallisce.
+     */
+    <E extends Exception> int applyBatch(VaultBatch batch, VaultBatch.Writer<E> writer) throws E {
+        List<VaultBatch.Operation> operations = batch.getOperations();
+        int[] locked = operations.stream().mapToInt(operation -> stripeIndex(operation.name()))
+                .distinct().sorted().toArray();
+        Set<LoginEntry> published = Collections.newSetFromMap(new IdentityHashMap<>());
+        try {
+            return applyBatch(batch, writer, locked, 0, published);
+        } finally {
+            for (VaultBatch.Operation operation : operations) {
+                if (operation.entry() != null && !published.contains(operation.entry())) {
+                    operation.entry().clear();
+                }
+            }
+        }
+    }
+
+    /**
+     * Acquisisce ricorsivamente i lock da {@code locked[depth]} in poi, poi applica il batch:
+     * verifica le modifiche in ordine su una vista dello stato attuale, le passa a {@code writer}
+     * e le pubblica con un unico compare-and-set.
+     */
+    private <E extends Exception> int applyBatch(VaultBatch batch, VaultBatch.Writer<E> writer,
+                                                 int[] locked, int depth, Set<LoginEntry> published) throws E {
+        if (depth < locked.length) {
+            synchronized (stripes[locked[depth]]) {
+                return applyBatch(batch, writer, locked, depth + 1, published);
+            }
+        }
+
+        // Con i lock acquisiti nessun altro può modificare questi nomi: la verifica resta valida
+        HashTrie<String, LoginEntry> base = entries.get();
+        Map<String, LoginEntry> changes = new LinkedHashMap<>(); // valore null: login rimosso
+        Map<String, VaultBatch.Operation> relabeled = new LinkedHashMap<>(); // login esistenti solo rietichettati
+        for (VaultBatch.Operation operation : batch.getOperations()) {
+            String name = operation.name();
+            LoginEntry current = changes.containsKey(name) ? changes.get(name) : base.get(name);
+            switch (operation.kind()) {
+                case ADD -> {
+                    if (current != null) throw new IllegalStateException("Login già esistente: " + name);
+                    changes.put(name, operation.entry());
+                }
+                case UPDATE -> {
+                    if (current == null) throw new IllegalStateException("Login non trovato: " + name);
+                    VaultBatch.Operation labels = relabeled.remove(name);
+                    if (labels != null) {
+                        operation.entry().setLabels(labels.folder(), labels.tags());
+                    } else {
+                        operation.entry().copyLabels(current);
+                    }
+                    changes.put(name, operation.entry());
+                }
+                case REMOVE -> {
+                    relabeled.remove(name);
+                    changes.put(name, null);
+                }
+                case LABELS -> {
+                    if (current == null) throw new IllegalStateException("Login non trovato: " + name);
+                    if (changes.containsKey(name)) {
+                        current.setLabels(operation.folder(), operation.tags()); // entry del batch, non ancora pubblicata
+                    } else {
+                        relabeled.put(name, operation);
+                    }
+                }
+            }
+        }
+
+        writer.write(batch);
+
+        // I login solo rietichettati vengono sostituiti da copie, come in setLabels
+        Set<String> labelsOnly = new HashSet<>();
+        for (VaultBatch.Operation labels : relabeled.values()) {
+            changes.put(labels.name(), base.get(labels.name()).withLabels(labels.folder(), labels.tags()));
+            labelsOnly.add(labels.name());
+        }
+
+        HashTrie<String, LoginEntry> current;
+        HashTrie<String, LoginEntry> updated;
+        do {
+            current = entries.get();
+            updated = current;
+            for (Map.Entry<String, LoginEntry> change : changes.entrySet()) {
+                updated = change.getValue() != null
+                        ? updated.put(change.getKey(), change.getValue())
+                        : updated.remove(change.getKey());
+            }
+        } while (!entries.compareAndSet(current, updated));
+
+        int changed = 0;
+        for (Map.Entry<String, LoginEntry> change : changes.entrySet()) {
+            LoginEntry previous = base.get(change.getKey());
+            LoginEntry next = change.getValue();
+            if (next != null) published.add(next);
+            if (previous == next) continue; // aggiunto e rimosso nello stesso batch
+            published(change.getKey(), previous, next, !labelsOnly.contains(change.getKey()), batch.getTimestamp());
+            changed++;
+        }
+        return changed;
+    }
+
+    private Object stripe(String name) {
+        return stripes[stripeIndex(name)];
+    }
+
+    private static int stripeIndex(String name) {
+        return Math.floorMod(name.hashCode(), STRIPES);
+    }
+
+    /**
+     * Aggiorna l'indice di tag e cartelle dopo una modifica del login.
+     * Va chiamato con il lock del nome.
+     */
+    private void updateLabelIndex(String name, LoginEntry previous, LoginEntry next) {
+        String oldFolder = previous != null ? previous.getFolder() : "";
+        SortedSet<String> oldTags = previous != null ? previous.getTags() : Collections.emptySortedSet();
+        String newFolder = next != null ? next.getFolder() : "";
+        SortedSet<String> newTags = next != null ? next.getTags() : Collections.emptySortedSet();
+
+        synchronized (labelLock) {
+            Integer ordinal = ordinals.get(name);
+            if (ordinal == null) {
+                if (next == null) return;
+                ordinal = freeOrdinals.isEmpty() ? ordinals.size() : freeOrdinals.pop();
+                if (ordinal == ordinalNames.length) {
+                    ordinalNames = Arrays.copyOf(ordinalNames, ordinal * 2);
+                }
+                ordinals.put(name, ordinal);
+                ordinalNames[ordinal] = name;
+                allOrdinals.add(ordinal);
+            } else if (oldFolder.equals(newFolder) && oldTags.equals(newTags) && next != null) {
+                return;
+            }
+
+            unindexLabels(ordinal, oldFolder, oldTags);
+            if (next != null) {
+                indexLabels(ordinal, newFolder, newTags);
+            } else {
+                ordinals.remove(name);
+                ordinalNames[ordinal] = null;
+                allOrdinals.remove(ordinal);
+                freeOrdinals.push(ordinal);
+            }
+        }
+    }
+
+    /**
+     * Aggiunge l'ordinale alle bitmap dei tag e della cartella, comprese le cartelle che la contengono.
+     */
+    private void indexLabels(int ordinal, String folder, SortedSet<String> tags) {
+        for (String tag : tags) {
+            tagBitmaps.computeIfAbsent(tag, key -> new RoaringBitmap()).add(ordinal);
+        }
+        for (String path : folderPaths(folder)) {
+            folderBitmaps.computeIfAbsent(path, key -> new RoaringBitmap()).add(ordinal);
+        }
+    }
+
+    private void unindexLabels(int ordinal, String folder, SortedSet<String> tags) {
+        for (String tag : tags) {
+            unindex(tagBitmaps, tag, ordinal);
+        }
+        for (String path : folderPaths(folder)) {
+            unindex(folderBitmaps, path, ordinal);
+        }
+    }
+
+    private static void unindex(Map<String, RoaringBitmap> bitmaps, String key, int ordinal) {
+        RoaringBitmap bitmap = bitmaps.get(key);
+        if (bitmap == null) return;
+        bitmap.remove(ordinal);
+        if (bitmap.isEmpty()) bitmaps.remove(key);
+    }
+
+    /**
+     * @return la cartella e tutte quelle che la contengono, in minuscolo: "a/b" dà "a" e "a/b"
+     */
+    private static List<String> folderPaths(String folder) {
+        if (folder.isEmpty()) return List.of();
+        String lower = folder.toLowerCase(Locale.ROOT);
+        List<String> paths = new ArrayList<>();
+        for (int i = lower.indexOf('/'); i >= 0; i = lower.indexOf('/', i + 1)) {
+            paths.add(lower.substring(0, i));
+        }
+        paths.add(lower);
+        return paths;
+    }
+
+    /**
+     * Applica un aggiornamento all'indice di ricerca, se esiste,
+     * oppure lo accoda se l'indice è in corso di codifica.
+     */
+    private void updateSearchIndex(Runnable update) {
+        synchronized (searchLock) {
+            if (searchIndex == null) return;
+            if (deferredIndexUpdates != null) {
+                deferredIndexUpdates.add(update);
+            } else {
+                update.run();
+            }
+        }
+    }
+
+    /**
+     * Conserva nella cronologia la password della entry sostituita, se diversa
+     * da quella della nuova entry. Va chiamato con il lock del nome.
+     */
+    private void recordHistory(String name, LoginEntry previous, LoginEntry next, long changedAt) {
+        if (open(name, previous) == null) return;
+
+        char[] password = previous.getPassword();
+        try {
+            if (next.borrow((u, p) -> CharSequence.compare(p, CharBuffer.wrap(password)) == 0)) {
+                return;
+            }
+            List<PasswordVersion> current = history(name);
+            if (!current.isEmpty() && isNewest(current, password)) {
+                return; // già registrata, ad esempio da un journal riapplicato dopo un salvataggio interrotto
+            }
+
+            List<PasswordVersion> updated = new ArrayList<>(current.size() + 1);
+            updated.add(new PasswordVersion(changedAt, password));
+            updated.addAll(current);
+            int kept = retained(updated);
+            for (PasswordVersion dropped : updated.subList(kept, updated.size())) {
+                retire(dropped::clear);
+            }
+            List<PasswordVersion> history = List.copyOf(updated.subList(0, kept));
+            histories.put(name, history);
+            changedHistories.put(name, history);
+        } finally {
+            Arrays.fill(password, '\0'); // Pulizia dati sensibili dalla RAM
+        }
+    }
+
+    /**
+     * Elimina la cronologia del login rimosso: le versioni in memoria vengono pulite e una cronologia
+     * vuota tra quelle modificate fa sì che il salvataggio successivo la tolga dall'archivio.
+     * Va chiamato con il lock del nome.
+     */
+    private void purgeHistory(String name) {
+        List<PasswordVersion> history;
+        synchronized (historyLock) {
+            history = histories.get(name);
+            if (history == null && (historyStore == null || !historyStore.names().contains(name))) return;
+            histories.put(name, List.of());
+        }
+        changedHistories.put(name, List.of());
+        if (history != null) {
+            for (PasswordVersion version : history) {
+                retire(version::clear);
+            }
+        }
+    }
+
+    private static boolean isNewest(List<PasswordVersion> history, char[] password) {
+        char[] newest = history.get(0).getPassword();
+        try {
+            return Arrays.equals(newest, password);
+        } finally {
+            Arrays.fill(newest, '\0');
+        }
+    }
+
+    /**
+     * Restituisce la cronologia del login, leggendola dall'archivio se non è ancora in memoria.
+     */
+    private List<PasswordVersion> history(String name) {
+        List<PasswordVersion> history = histories.get(name);
+        if (history != null) return history;
+
+        synchronized (historyLock) {
+            history = histories.get(name);
+            if (history == null) {
+                // Senza archivio non c'è niente da ricordare: il nome non deve comparire tra le cronologie,
+                // altrimenti il salvataggio lo copierebbe dal file precedente, ad esempio dopo clearAll
+                if (historyStore == null) return List.of();
+                history = List.copyOf(historyStore.load(name));
+                histories.put(name, history);
+            }
+            return history;
+        }
+    }
+
+    /**
+     * @return il numero di versioni iniziali (le più recenti) entro i limiti di conservazione
+     */
+    private int retained(List<PasswordVersion> history) {
+        long oldest = System.currentTimeMillis() - maxHistoryAge.toMillis();
+        int limit = Math.min(history.size(), maxHistoryVersions);
+        int kept = 0;
+        while (kept < limit && history.get(kept).getReplacedAt().toEpochMilli() >= oldest) {
+            kept++;
+        }
+        return kept;
+    }
+
+    /**
+     * Pulisce dati sensibili non più presenti nel vault. Se ci sono snapshot aperti che potrebbero
+     * ancora leggerli, la pulizia è rinviata alla chiusura dell'ultimo.
+     * Uno snapshot aperto dopo il controllo legge già la versione senza la entry,
+     * perché il contatore viene incrementato prima di leggere la versione corrente.
+     */
+    private void retire(Runnable scrub) {
+        if (openSnapshots.get() == 0) {
+            scrub.run();
+            return;
+        }
+        retired.add(scrub);
+        if (openSnapshots.get() == 0) scrubRetired(); // l'ultimo snapshot si è chiuso nel frattempo
+    }
+
+    /**
+     * Chiamato alla chiusura di uno snapshot.
+     */
+    void snapshotClosed() {
+        if (openSnapshots.decrementAndGet() == 0) scrubRetired();
+    }
+
+    private void scrubRetired() {
+        Runnable scrub;
+        while ((scrub = retired.poll()) != null) {
+            scrub.run();
+        }
+    }
+
+    /**
+     * Restituisce l'indice di ricerca, costruendolo se assente.
+     * Va chiamato con {@code searchLock}: le modifiche concorrenti alla costruzione
+     * attendono il lock e vengono applicate dopo.
+     */
+    private SearchIndex searchIndex() {
+        if (searchIndex == null) {
+            SearchIndex built = new SearchIndex();
+            entries.get().forEach((name, entry) -> indexLogin(built, name, entry));
+            searchIndex = built;
+        }
+        return searchIndex;
+    }
+
+    /**
+     * Indicizza lo username del login. Una entry ancora cifrata viene decifrata solo
+     * per la durata della lettura (vedi {@link #borrow(String, LoginEntry, CredentialReader)}) e resta cifrata.
+     */
+    private void indexLogin(SearchIndex index, String name, LoginEntry entry) {
+        try {
+            Boolean indexed = borrow(name, entry, (username, password) -> {
+                index.add(name, username);
+                return Boolean.TRUE;
+            });
+            if (indexed != null) return;
+        } catch (IllegalStateException e) {
+            // Rimossa nel frattempo: la rimozione aggiornerà l'indice
+        }
+        index.add(name, null);
+    }
+
+    /**
+     * Pulisce tutte le credenziali dalla memoria, sovrascrivendo i dati sensibili,
+     * insieme alla cronologia in memoria. La cronologia non ancora salvata viene persa,
+     * e le password rimosse non vengono aggiunte alla cronologia.
+     * Anche l'archivio della cronologia salvata viene scollegato, così che le versioni precedenti
+     * non vengano più lette né copiate dal salvataggio successivo, che elimina il file.
      */
     public void clearAll() {
-        for (LoginEntry entry : passwordMap.values()) {
-            entry.clear();
+        entries.get().forEach((name, entry) -> mutate(name, previous -> null, false));
+        synchronized (historyLock) {
+            setHistoryStore(null);
+            for (List<PasswordVersion> history : histories.values()) {
+                for (PasswordVersion version : history) {
+                    retire(version::clear);
+                }
+            }
+            histories.clear();
+            changedHistories.clear();
         }
-        passwordMap.clear();
     }
 }
@@ -0,0 +1,92 @@
+package javault.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Versione immutabile del vault in un dato istante, ottenuta con {@link VaultData#snapshot()}
+ * in tempo costante: condivide la struttura con il vault, che nel frattempo può continuare
+ * a essere modificato senza attendere chi legge lo snapshot (ad esempio il salvataggio).
+ * <p>
+ * Finché lo snapshot è aperto, le entry rimosse o sostituite nel vault non vengono pulite,
+ * perché lo snapshot potrebbe ancora leggerle: va chiuso appena possibile,
+ * tipicamente con try-with-resources.
+ */
+public final class VaultSnapshot implements AutoCloseable {
+
+    private final VaultData vault;
+    private final HashTrie<String, LoginEntry> entries;
+    private boolean closed;
+
+    VaultSnapshot(VaultData vault, HashTrie<String, LoginEntry> entries) {
+        this.vault = vault;
+        this.entries = entries;
+    }
+
+    /**
+     * @return il numero di login nello snapshot
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Restituisce i nomi login dello snapshot, in un ordine non specificato ma stabile.
+     *
+     * @return i nomi, in una nuova lista
+     */
+    public List<String> names() {
+        List<String> names = new ArrayList<>(entries.size());
+        entries.forEach((name, entry) -> names.add(name));
+        return names;
+    }
+
+    /**
+     * Recupera la entry del login, decifrandola se necessario come {@link VaultData#getLogin(String)}.
+     *
+     * @param name nome identificativo del login
+     * @return la LoginEntry, o null se non presente nello snapshot o non decifrabile
+     */
+    public LoginEntry getLogin(String name) {
+        LoginEntry entry = entries.get(name);
+        return entry == null ? null : vault.open(name, entry);
+    }
+
+    /**
+     * Recupera la entry del login senza decifrarla.
+     *
+     * @param name nome identificativo del login
+     * @return la LoginEntry, eventualmente ancora cifrata, o null se non presente nello snapshot
+     */
+    public LoginEntry peekLogin(String name) {
+        return entries.get(name);
+    }
+
+    /**
+     * Concede in prestito username e password del login per la durata della chiamata,
+     * come {@link LoginEntry#borrow(CredentialReader)}. Se la entry è ancora cifrata viene
+     * decifrata in una copia temporanea, pulita al ritorno: a differenza di {@link #getLogin(String)}
+     * la entry resta cifrata, quindi leggere tutto il vault non lascia le credenziali in chiaro.
+     *
+     * @param <R> il tipo del risultato
+     * @param name nome identificativo del login
+     * @param reader la funzione che legge le credenziali
+     * @return il risultato di {@code reader}, o null se il login non è nello snapshot o non è decifrabile
+     */
+    public <R> R borrow(String name, CredentialReader<R> reader) {
+        LoginEntry entry = entries.get(name);
+        return entry == null ? null : vault.borrow(name, entry, reader);
+    }
+
+    /**
+     * Chiude lo snapshot, permettendo la pulizia delle entry rimosse dal vault nel frattempo.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+        }
+        vault.snapshotClosed();
+    }
+}
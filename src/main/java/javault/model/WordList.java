@@ -0,0 +1,193 @@
+package javault.model;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Elenco di parole per le passphrase, in un formato binario compatto letto senza creare stringhe:
+ * <pre>
+ *   "JVWL" | numero di parole n (int) | n + 1 offset (int) | caratteri delle parole (un byte ASCII ciascuno)
+ * </pre>
+ * La parola i-esima occupa i byte dall'offset i all'offset i + 1 escluso, contati dall'inizio dei caratteri.
+ * Gli interi sono big-endian.
+ * <p>
+ * L'elenco incluso nell'applicazione viene caricato al primo uso: se la risorsa è un file viene mappato
+ * in memoria in sola lettura, altrimenti (ad esempio dentro il jar) viene copiato una volta fuori heap.
+ * Le letture sono assolute e non modificano il buffer, quindi l'elenco può essere usato da più thread.
+ * <p>
+ * La risorsa viene generata da {@code javault.tools.WordListCompiler} (nei sorgenti di test)
+ * a partire da {@code wordlist.txt}.
+ */
+public final class WordList {
+
+    private static final String RESOURCE = "wordlist.bin";
+    private static final int MAGIC = 0x4A56574C; // "JVWL"
+    private static final int MAX_WORD_LENGTH = 32;
+
+    private final ByteBuffer buffer;
+    private final int size;
+    private final int charsStart;
+
+    private WordList(ByteBuffer buffer) {
+        if (buffer.limit() < 12 || buffer.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException("Elenco di parole non valido.");
+        }
+        int count = buffer.getInt(4);
+        long start = 8 + 4L * (count + 1);
+        if (count < 2 || start > buffer.limit() || buffer.getInt(8) != 0
+                || start + buffer.getInt(8 + 4 * count) != buffer.limit()) {
+            throw new IllegalArgumentException("Elenco di parole non valido.");
+        }
+        for (int i = 0; i < count; i++) {
+            int length = buffer.getInt(12 + 4 * i) - buffer.getInt(8 + 4 * i);
+            if (length < 1 || length > MAX_WORD_LENGTH) {
+                throw new IllegalArgumentException("Elenco di parole non valido.");
+            }
+        }
+        this.buffer = buffer;
+        this.size = count;
+        this.charsStart = (int) start;
+    }
+
+    /**
+     * Elenco incluso nell'applicazione, caricato alla prima richiesta.
+     */
+    private static final class Bundled {
+        static final WordList INSTANCE = loadBundled();
+    }
+
+    /**
+     * @return l'elenco di parole incluso nell'applicazione
+     * @throws IllegalStateException se l'elenco manca o non è valido
+     */
+    public static WordList bundled() {
+        return Bundled.INSTANCE;
+    }
+
+    private static WordList loadBundled() {
+        URL url = WordList.class.getResource(RESOURCE);
+        try {
+            if (url == null) {
+                throw new IOException("Risorsa " + RESOURCE + " non trovata");
+            }
+            if ("file".equals(url.getProtocol())) {
+                return map(Path.of(url.toURI()));
+            }
+            try (InputStream in = url.openStream()) {
+                byte[] bytes = in.readAllBytes();
+                return new WordList(ByteBuffer.allocateDirect(bytes.length).put(bytes).flip());
+            }
+        } catch (IOException | URISyntaxException | IllegalArgumentException e) {
+            System.err.println("Impossibile caricare l'elenco di parole.");
+            throw new IllegalStateException("Impossibile caricare l'elenco di parole", e);
+        }
+    }
+
+    /**
+     * Mappa in memoria un elenco in formato binario.
+     *
+     * @param file il file dell'elenco
+     * @return l'elenco
+     * @throws IOException se il file non può essere letto
+     * @throws IllegalArgumentException se il file non è un elenco valido
+     */
+    public static WordList map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new WordList(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * @return il numero di parole
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param index l'indice della parola
+     * @return la lunghezza della parola
+     */
+    public int length(int index) {
+        return buffer.getInt(12 + 4 * index) - buffer.getInt(8 + 4 * index);
+    }
+
+    /**
+     * Copia la parola nel buffer indicato, senza allocazioni.
+     *
+     * @param index l'indice della parola
+     * @param destination il buffer di destinazione
+     * @param offset la posizione del primo carattere nel buffer
+     * @return la lunghezza della parola
+     */
+    public int copy(int index, char[] destination, int offset) {
+        int from = charsStart + buffer.getInt(8 + 4 * index);
+        int length = length(index);
+        for (int i = 0; i < length; i++) {
+            destination[offset + i] = (char) (buffer.get(from + i) & 0xFF);
+        }
+        return length;
+    }
+
+    /**
+     * @param index l'indice della parola
+     * @return la parola
+     */
+    public String word(int index) {
+        char[] word = new char[length(index)];
+        copy(index, word, 0);
+        return new String(word);
+    }
+
+    /**
+     * Codifica un elenco di parole nel formato binario.
+     *
+     * @param words le parole, distinte, di sole lettere minuscole ASCII e lunghe al più {@value #MAX_WORD_LENGTH}
+     * @return l'elenco codificato
+     * @throws IllegalArgumentException se una parola non è valida o è ripetuta, o le parole sono meno di due
+     */
+    public static byte[] encode(List<String> words) {
+        if (words.size() < 2) {
+            throw new IllegalArgumentException("Servono almeno due parole.");
+        }
+        Set<String> seen = new HashSet<>();
+        ByteArrayOutputStream chars = new ByteArrayOutputStream();
+        int[] offsets = new int[words.size() + 1];
+        for (int i = 0; i < words.size(); i++) {
+            String word = words.get(i);
+            if (word.isEmpty() || word.length() > MAX_WORD_LENGTH || !word.chars().allMatch(c -> c >= 'a' && c <= 'z')) {
+                throw new IllegalArgumentException("Parola non valida: " + word);
+            }
+            if (!seen.add(word)) {
+                throw new IllegalArgumentException("Parola ripetuta: " + word);
+            }
+            chars.writeBytes(word.getBytes(StandardCharsets.US_ASCII));
+            offsets[i + 1] = chars.size();
+        }
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream(8 + 4 * offsets.length + chars.size());
+        try (DataOutputStream out = new DataOutputStream(encoded)) {
+            out.writeInt(MAGIC);
+            out.writeInt(words.size());
+            for (int offset : offsets) {
+                out.writeInt(offset);
+            }
+            chars.writeTo(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return encoded.toByteArray();
+    }
+}
@@ -0,0 +1,275 @@
+package javault.utils;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javault.exception.VaultException;
+import javault.model.LoginEntry;
+import javault.model.VaultData;
+import javault.model.VaultSnapshot;
+
+/**
+ * Codifica binaria compatta del contenuto del vault, alternativa al JSON di Gson.
+ * <p>
+ * Il contenuto inizia con un byte di versione, seguito dal numero di entry in varint;
+ * per ogni entry sono scritti nome, username e password come UTF-8 preceduti
+ * dalla lunghezza in byte (varint), poi la cartella, il numero di tag e i tag.
+ * Username e password vengono codificati direttamente dai char[] tramite buffer
+ * riusati e azzerati, senza mai passare per String.
+ * La versione 1, senza cartella e tag, viene ancora letta.
+ */
+final class BinaryVaultCodec {
+
+    /**
+     * Versione della codifica, scritta come primo byte.
+     * Non può coincidere con l'inizio di un documento JSON.
+     */
+    static final int VERSION = 2;
+
+    private static final int VERSION_WITHOUT_LABELS = 1;
+
+    private final byte[] buffer = new byte[VaultStreams.BUFFER_SIZE];
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPORT)
+            .onUnmappableCharacter(CodingErrorAction.REPORT);
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPORT)
+            .onUnmappableCharacter(CodingErrorAction.REPORT);
+    private byte[] scratch = new byte[256];
+    private char[] chars = new char[256];
+
+    private OutputStream out;
+    private InputStream in;
+    private int position;
+    private int limit;
+
+    private BinaryVaultCodec() {
+    }
+
+    /**
+     * Scrive il vault nella codifica binaria. Le entry ancora cifrate vengono decifrate.
+     *
+     * @param vault il vault da scrivere
+     * @param out lo stream di destinazione (tipicamente lo stream cifrante), chiuso al termine
+     * @throws VaultException se una entry non può essere letta
+     * @throws IOException se la scrittura fallisce
+     */
+    static void write(VaultSnapshot vault, OutputStream out) throws VaultException, IOException {
+        BinaryVaultCodec codec = new BinaryVaultCodec();
+        codec.out = out;
+        try {
+            List<String> names = vault.names();
+            codec.writeByte(VERSION);
+            codec.writeVarint(names.size());
+            for (String name : names) {
+                LoginEntry entry = vault.getLogin(name);
+                if (entry == null) {
+                    throw new VaultException("Impossibile leggere il login " + name);
+                }
+                char[] username = entry.getUsername();
+                char[] password = entry.getPassword();
+                try {
+                    codec.writeChars(name.toCharArray());
+                    codec.writeChars(username);
+                    codec.writeChars(password);
+                    codec.writeChars(entry.getFolder().toCharArray());
+                    codec.writeVarint(entry.getTags().size());
+                    for (String tag : entry.getTags()) {
+                        codec.writeChars(tag.toCharArray());
+                    }
+                } finally {
+                    Arrays.fill(username, '\0');
+                    Arrays.fill(password, '\0');
+                }
+            }
+            codec.flushBuffer();
+        } finally {
+            codec.wipe();
+            out.close();
+        }
+    }
+
+    /**
+     * Legge un vault dalla codifica binaria.
+     *
+     * @param in lo stream sorgente (tipicamente lo stream decifrante), chiuso al termine
+     * @return il vault letto
+     * @throws IOException se la lettura fallisce o il contenuto non è valido
+     */
+    static VaultData read(InputStream in) throws IOException {
+        BinaryVaultCodec codec = new BinaryVaultCodec();
+        codec.in = in;
+        try {
+            int version = codec.readByte();
+            if (!isVersion(version)) {
+                throw new IOException("Versione della codifica del vault non supportata: " + version);
+            }
+
+            VaultData vault = new VaultData();
+            int count = codec.readVarint();
+            for (int i = 0; i < count; i++) {
+                char[] name = codec.readChars();
+                char[] username = codec.readChars();
+                char[] password = codec.readChars();
+                String loginName = new String(name);
+                vault.addLogin(loginName, username, password); // addLogin azzera gli array
+                if (version == VERSION_WITHOUT_LABELS) continue;
+
+                String folder = new String(codec.readChars());
+                int tagCount = codec.readVarint();
+                List<String> tags = new ArrayList<>(tagCount);
+                for (int j = 0; j < tagCount; j++) {
+                    tags.add(new String(codec.readChars()));
+                }
+                if (!folder.isEmpty() || !tags.isEmpty()) {
+                    vault.setLabels(loginName, folder, tags);
+                }
+            }
+            return vault;
+        } finally {
+            codec.wipe();
+            in.close();
+        }
+    }
+
+    /**
+     * Indica se il primo byte del contenuto è una versione di questa codifica.
+     *
+     * @param first il primo byte del contenuto
+     * @return true se il contenuto è in codifica binaria
+     */
+    static boolean isVersion(int first) {
+        return first == VERSION || first == VERSION_WITHOUT_LABELS;
+    }
+
+    private void writeByte(int b) throws IOException {
+        if (position == buffer.length) flushBuffer();
+        buffer[position++] = (byte) b;
+    }
+
+    private void writeVarint(int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        writeByte(value);
+    }
+
+    /**
+     * Scrive i caratteri come UTF-8 preceduti dalla lunghezza in byte.
+     */
+    private void writeChars(char[] value) throws IOException {
+        int maxBytes = value.length * 3;
+        if (scratch.length < maxBytes) {
+            Arrays.fill(scratch, (byte) 0);
+            scratch = new byte[maxBytes];
+        }
+
+        ByteBuffer encoded = ByteBuffer.wrap(scratch);
+        encoder.reset();
+        CoderResult result = encoder.encode(CharBuffer.wrap(value), encoded, true);
+        if (result.isError()) result.throwException();
+        encoder.flush(encoded);
+
+        int length = encoded.position();
+        writeVarint(length);
+        for (int off = 0; off < length; ) {
+            if (position == buffer.length) flushBuffer();
+            int n = Math.min(length - off, buffer.length - position);
+            System.arraycopy(scratch, off, buffer, position, n);
+            position += n;
+            off += n;
+        }
+        Arrays.fill(scratch, 0, length, (byte) 0);
+    }
+
+    private void flushBuffer() throws IOException {
+        out.write(buffer, 0, position);
+        Arrays.fill(buffer, 0, position, (byte) 0);
+        position = 0;
+    }
+
+    private int readByte() throws IOException {
+        if (position == limit) {
+            Arrays.fill(buffer, 0, limit, (byte) 0);
+            limit = in.read(buffer, 0, buffer.length);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                throw new EOFException("Vault troncato");
+            }
+        }
+        return buffer[position++] & 0xFF;
+    }
+
+    private int readVarint() throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = readByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (value < 0) break;
+                return value;
+            }
+        }
+        throw new IOException("Lunghezza non valida nel vault");
+    }
+
+    /**
+     * Legge dei caratteri scritti con {@link #writeChars(char[])}.
+     *
+     * @return un nuovo array con i caratteri letti
+     */
+    private char[] readChars() throws IOException {
+        int length = readVarint();
+        if (scratch.length < length) {
+            Arrays.fill(scratch, (byte) 0);
+            scratch = new byte[length];
+        }
+        for (int i = 0; i < length; i++) {
+            scratch[i] = (byte) readByte();
+        }
+        if (chars.length < length) {
+            Arrays.fill(chars, '\0');
+            chars = new char[length];
+        }
+
+        CharBuffer decoded = CharBuffer.wrap(chars);
+        decoder.reset();
+        try {
+            CoderResult result = decoder.decode(ByteBuffer.wrap(scratch, 0, length), decoded, true);
+            if (result.isError()) result.throwException();
+            decoder.flush(decoded);
+        } catch (CharacterCodingException e) {
+            throw new IOException("Testo non valido nel vault", e);
+        } finally {
+            Arrays.fill(scratch, 0, length, (byte) 0);
+        }
+
+        char[] value = Arrays.copyOf(chars, decoded.position());
+        Arrays.fill(chars, 0, decoded.position(), '\0');
+        return value;
+    }
+
+    /**
+     * Azzera tutti i buffer che possono aver contenuto dati in chiaro.
+     */
+    private void wipe() {
+        Arrays.fill(buffer, (byte) 0); // Pulizia dati sensibili dalla RAM
+        Arrays.fill(scratch, (byte) 0);
+        Arrays.fill(chars, '\0');
+    }
+}
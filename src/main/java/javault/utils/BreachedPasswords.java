@@ -0,0 +1,435 @@
+package javault.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Verifica locale delle password comparse in violazioni di dati note, senza servizi esterni.
+ * <p>
+ * L'elenco è un file binario con i primi 64 bit dell'hash SHA-1 (dei byte UTF-8) di ogni password compromessa,
+ * ordinati come interi senza segno, preceduti da un filtro di Bloom e da un indice per i primi 16 bit:
+ * <pre>
+ *   "JVBR" | versione (int) | numero di hash (long) | log2 dei bit del filtro (int) | funzioni del filtro (int)
+ *   | indice: 65537 long, la posizione del primo hash di ogni prefisso di 16 bit
+ *   | filtro di Bloom | hash ordinati (long)
+ * </pre>
+ * Gli interi sono big-endian. Il filtro ha almeno 10 bit per hash, arrotondati alla potenza di due successiva,
+ * e un numero di funzioni ricavato dai bit per hash, così che la probabilità di falsi positivi resti
+ * intorno all'1% o meno qualunque sia la dimensione dell'elenco.
+ * Filtro e hash vengono mappati in memoria in sola lettura, a blocchi: la memoria heap
+ * occupata è solo l'indice, circa 512 KiB, qualunque sia la dimensione dell'elenco. Una password assente
+ * viene quasi sempre esclusa dal filtro con pochi accessi; le altre vengono cercate con una ricerca
+ * binaria limitata all'intervallo dell'indice, circa 13 passi per mezzo miliardo di hash.
+ * <p>
+ * L'elenco viene letto dal file indicato dalla proprietà di sistema {@value #PATH_PROPERTY}, per default
+ * {@value #DEFAULT_PATH}; se il file non esiste la verifica è disattivata e nessuna password risulta compromessa.
+ * Il metodo {@link #build(Path, Path)}, usato da {@code javault.tools.BreachedPasswordsCompiler} (nei sorgenti
+ * di test), compila il file dall'elenco di testo ordinato per hash (una riga per password,
+ * {@code HASH:occorrenze}, come quello distribuito da Have I Been Pwned).
+ */
+public final class BreachedPasswords {
+
+    /** Proprietà di sistema con il percorso dell'elenco. */
+    public static final String PATH_PROPERTY = "javault.breached";
+    /** Percorso predefinito dell'elenco. */
+    public static final String DEFAULT_PATH = "breached.bin";
+
+    private static final int MAGIC = 0x4A564252; // "JVBR"
+    /** La versione 1 ha la stessa struttura, con un filtro di al più 2^31 bit e 7 funzioni. */
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 24;
+    private static final int FANOUT = 1 << 16;
+    private static final int BITS_PER_HASH = 10;
+    private static final int MAX_BLOOM_HASHES = 16;
+    private static final int MIN_BLOOM_LOG2 = 16;
+    /** Limite di validità nella lettura, ben oltre qualunque elenco reale. */
+    private static final int MAX_BLOOM_LOG2 = 48;
+    /** Bit del filtro per blocco mappato, 1 GiB; i blocchi della compilazione hanno la stessa dimensione. */
+    private static final int BLOOM_SEGMENT_LOG2 = 33;
+    /** Hash per blocco mappato: un blocco non può superare 2 GiB. */
+    private static final int CHUNK_HASHES = 1 << 27;
+    private static final int BUFFER_SIZE = 256;
+
+    private static final BreachedPasswords DISABLED = new BreachedPasswords();
+
+    private final long count;
+    private final long[] fanout;
+    private final ByteBuffer[] bloom;
+    private final long bloomMask;
+    private final int bloomHashes;
+    private final LongBuffer[] chunks;
+
+    private static final ThreadLocal<MessageDigest> digests = ThreadLocal.withInitial(BreachedPasswords::newDigest);
+    private static final ThreadLocal<byte[]> buffers = ThreadLocal.withInitial(() -> new byte[BUFFER_SIZE]);
+
+    private BreachedPasswords() {
+        this.count = 0;
+        this.fanout = null;
+        this.bloom = new ByteBuffer[0];
+        this.bloomMask = 0;
+        this.bloomHashes = 0;
+        this.chunks = new LongBuffer[0];
+    }
+
+    private BreachedPasswords(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + (FANOUT + 1) * Long.BYTES);
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) < 0) throw new IOException("Elenco troncato");
+        }
+        header.flip();
+        int version;
+        if (header.getInt() != MAGIC || (version = header.getInt()) < 1 || version > VERSION) {
+            throw new IOException("Elenco delle password compromesse non valido");
+        }
+        this.count = header.getLong();
+        int bloomLog2 = header.getInt();
+        this.bloomHashes = header.getInt();
+        if (count < 0 || bloomLog2 < MIN_BLOOM_LOG2 || bloomLog2 > MAX_BLOOM_LOG2
+                || bloomHashes < 1 || bloomHashes > MAX_BLOOM_HASHES) {
+            throw new IOException("Elenco delle password compromesse non valido");
+        }
+        this.fanout = new long[FANOUT + 1];
+        header.asLongBuffer().get(fanout);
+        if (fanout[0] != 0 || fanout[FANOUT] != count) {
+            throw new IOException("Elenco delle password compromesse non valido");
+        }
+
+        long bloomStart = header.capacity();
+        long bloomBytes = (1L << bloomLog2) / 8;
+        long recordsStart = bloomStart + bloomBytes;
+        if (channel.size() != recordsStart + count * Long.BYTES) {
+            throw new IOException("Elenco delle password compromesse troncato");
+        }
+        long segmentBytes = 1L << (BLOOM_SEGMENT_LOG2 - 3);
+        this.bloom = new ByteBuffer[(int) ((bloomBytes + segmentBytes - 1) / segmentBytes)];
+        for (int s = 0; s < bloom.length; s++) {
+            long offset = s * segmentBytes;
+            bloom[s] = channel.map(FileChannel.MapMode.READ_ONLY, bloomStart + offset,
+                    Math.min(segmentBytes, bloomBytes - offset));
+        }
+        this.bloomMask = (1L << bloomLog2) - 1;
+
+        int chunkCount = (int) ((count + CHUNK_HASHES - 1) / CHUNK_HASHES);
+        this.chunks = new LongBuffer[chunkCount];
+        for (int c = 0; c < chunkCount; c++) {
+            long first = (long) c * CHUNK_HASHES;
+            long hashes = Math.min(CHUNK_HASHES, count - first);
+            chunks[c] = channel.map(FileChannel.MapMode.READ_ONLY, recordsStart + first * Long.BYTES, hashes * Long.BYTES)
+                    .asLongBuffer();
+        }
+    }
+
+    /**
+     * Elenco predefinito, aperto alla prima richiesta.
+     */
+    private static final class Shared {
+        static final BreachedPasswords INSTANCE = openShared();
+    }
+
+    /**
+     * @return l'elenco indicato dalla proprietà {@value #PATH_PROPERTY}, o un elenco vuoto se il file
+     *         non esiste o non può essere letto
+     */
+    public static BreachedPasswords shared() {
+        return Shared.INSTANCE;
+    }
+
+    private static BreachedPasswords openShared() {
+        Path path = Path.of(System.getProperty(PATH_PROPERTY, DEFAULT_PATH));
+        if (!Files.exists(path)) return DISABLED;
+        try {
+            return open(path);
+        } catch (IOException e) {
+            System.err.println("Impossibile leggere l'elenco delle password compromesse: " + e.getMessage());
+            return DISABLED;
+        }
+    }
+
+    /**
+     * Apre e mappa in memoria un elenco.
+     *
+     * @param file il file dell'elenco
+     * @return l'elenco
+     * @throws IOException se il file non può essere letto o non è un elenco valido
+     */
+    public static BreachedPasswords open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new BreachedPasswords(channel);
+        }
+    }
+
+    /**
+     * @return true se l'elenco è stato caricato e la verifica è attiva
+     */
+    public boolean isAvailable() {
+        return count > 0;
+    }
+
+    /**
+     * @return il numero di hash nell'elenco
+     */
+    public long size() {
+        return count;
+    }
+
+    /**
+     * @param password la password da verificare, non modificata
+     * @return true se la password compare nell'elenco
+     */
+    public boolean isBreached(char[] password) {
+        return isBreached(CharBuffer.wrap(password));
+    }
+
+    /**
+     * Verifica una password senza copiarla: i caratteri passano in UTF-8 per un piccolo buffer del thread,
+     * azzerato al termine insieme all'hash.
+     *
+     * @param password la password da verificare
+     * @return true se la password compare nell'elenco
+     */
+    public boolean isBreached(CharSequence password) {
+        if (count == 0) return false;
+        return contains(prefix(password));
+    }
+
+    private boolean contains(long hash) {
+        long h1 = mix(hash);
+        long h2 = mix(h1) | 1;
+        for (int i = 0; i < bloomHashes; i++) {
+            long bit = (h1 + i * h2) & bloomMask;
+            ByteBuffer segment = bloom[(int) (bit >>> BLOOM_SEGMENT_LOG2)];
+            int index = (int) ((bit & ((1L << BLOOM_SEGMENT_LOG2) - 1)) >>> 3);
+            if ((segment.get(index) & (1 << (bit & 7))) == 0) return false;
+        }
+
+        int bucket = (int) (hash >>> 48);
+        long low = fanout[bucket];
+        long high = fanout[bucket + 1] - 1;
+        while (low <= high) {
+            long middle = (low + high) >>> 1;
+            int compared = Long.compareUnsigned(hashAt(middle), hash);
+            if (compared == 0) return true;
+            if (compared < 0) low = middle + 1;
+            else high = middle - 1;
+        }
+        return false;
+    }
+
+    private long hashAt(long index) {
+        return chunks[(int) (index / CHUNK_HASHES)].get((int) (index % CHUNK_HASHES));
+    }
+
+    /**
+     * @return i primi 64 bit dell'hash SHA-1 dei byte UTF-8 della password
+     */
+    private static long prefix(CharSequence password) {
+        MessageDigest digest = digests.get();
+        digest.reset(); // un calcolo precedente può essere stato interrotto da un'eccezione
+        byte[] buffer = buffers.get();
+        byte[] hash = null;
+        try {
+            int count = 0;
+            for (int i = 0; i < password.length(); i++) {
+                if (count > buffer.length - 4) {
+                    digest.update(buffer, 0, count);
+                    count = 0;
+                }
+                int c = password.charAt(i);
+                if (Character.isHighSurrogate((char) c) && i + 1 < password.length()
+                        && Character.isLowSurrogate(password.charAt(i + 1))) {
+                    c = Character.toCodePoint((char) c, password.charAt(++i));
+                } else if (Character.isSurrogate((char) c)) {
+                    c = '?'; // come String.getBytes per i surrogati isolati
+                }
+                if (c < 0x80) {
+                    buffer[count++] = (byte) c;
+                } else if (c < 0x800) {
+                    buffer[count++] = (byte) (0xC0 | (c >> 6));
+                    buffer[count++] = (byte) (0x80 | (c & 0x3F));
+                } else if (c < 0x10000) {
+                    buffer[count++] = (byte) (0xE0 | (c >> 12));
+                    buffer[count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    buffer[count++] = (byte) (0x80 | (c & 0x3F));
+                } else {
+                    buffer[count++] = (byte) (0xF0 | (c >> 18));
+                    buffer[count++] = (byte) (0x80 | ((c >> 12) & 0x3F));
+                    buffer[count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    buffer[count++] = (byte) (0x80 | (c & 0x3F));
+                }
+            }
+            digest.update(buffer, 0, count);
+            hash = digest.digest();
+            return ByteBuffer.wrap(hash).getLong();
+        } finally {
+            Arrays.fill(buffer, (byte) 0); // Pulizia dati sensibili dalla RAM
+            if (hash != null) Arrays.fill(hash, (byte) 0);
+        }
+    }
+
+    /**
+     * Finalizzatore di SplitMix64, per ricavare le posizioni nel filtro dall'hash.
+     */
+    private static long mix(long value) {
+        long z = value + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            System.err.println("Algoritmo SHA-1 non disponibile.");
+            throw new IllegalStateException("Algoritmo SHA-1 non disponibile", e);
+        }
+    }
+
+    /**
+     * Compila un elenco di testo ordinato per hash nel formato binario. Il testo viene letto due volte:
+     * la prima per dimensionare il filtro, senza limiti di dimensione, la seconda per scrivere gli hash.
+     * Durante la compilazione restano in memoria solo il filtro, da 10 a 20 bit per hash, e l'indice.
+     * <p>
+     * Il file viene scritto accanto alla destinazione con estensione {@code .tmp}, sincronizzato sul disco
+     * e solo allora rinominato in modo atomico: un'interruzione non lascia mai un elenco incompleto
+     * al posto di quello precedente.
+     *
+     * @param source l'elenco di testo, una riga {@code HASH[:occorrenze]} per password, ordinato per hash
+     * @param destination il file binario da scrivere
+     * @return il numero di hash distinti scritti
+     * @throws IOException se un file non può essere letto o scritto, o l'elenco non è ordinato
+     */
+    public static long build(Path source, Path destination) throws IOException {
+        long lines = 0;
+        try (BufferedReader reader = Files.newBufferedReader(source, StandardCharsets.US_ASCII)) {
+            while (reader.readLine() != null) lines++;
+        }
+        int bloomLog2 = MIN_BLOOM_LOG2;
+        while ((1L << bloomLog2) < lines * BITS_PER_HASH) bloomLog2++;
+        // Numero ottimo di funzioni per i bit disponibili: bit per hash · ln 2
+        double bitsPerHash = (double) (1L << bloomLog2) / Math.max(lines, 1);
+        int bloomHashes = (int) Math.max(1, Math.min(MAX_BLOOM_HASHES, Math.round(bitsPerHash * Math.log(2))));
+        long[][] bloomBits = newBloom(bloomLog2);
+        long mask = (1L << bloomLog2) - 1;
+        long[] fanout = new long[FANOUT + 1];
+
+        Path target = destination.toAbsolutePath();
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        long bloomStart = HEADER_SIZE + (FANOUT + 1) * (long) Long.BYTES;
+        long count = 0;
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                // Gli hash vengono scritti dopo lo spazio del filtro; intestazione, indice e filtro alla fine
+                channel.position(bloomStart + (1L << bloomLog2) / 8);
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+                try (BufferedReader reader = Files.newBufferedReader(source, StandardCharsets.US_ASCII)) {
+                    long previous = 0;
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        line = line.trim();
+                        if (line.isEmpty()) continue;
+                        if (line.length() < 16) throw new IOException("Riga non valida: " + line);
+                        long hash = Long.parseUnsignedLong(line.substring(0, 16), 16);
+                        if (count > 0) {
+                            int compared = Long.compareUnsigned(hash, previous);
+                            if (compared < 0) throw new IOException("L'elenco deve essere ordinato per hash: " + line);
+                            if (compared == 0) continue;
+                        }
+                        out.writeLong(hash);
+                        long h1 = mix(hash);
+                        long h2 = mix(h1) | 1;
+                        for (int i = 0; i < bloomHashes; i++) {
+                            long bit = (h1 + i * h2) & mask;
+                            bloomBits[(int) (bit >>> BLOOM_SEGMENT_LOG2)][(int) ((bit & ((1L << BLOOM_SEGMENT_LOG2) - 1)) >>> 6)]
+                                    |= 1L << (bit & 63);
+                        }
+                        fanout[(int) (hash >>> 48) + 1]++;
+                        previous = hash;
+                        count++;
+                    }
+                } catch (NumberFormatException e) {
+                    throw new IOException("Hash non valido", e);
+                }
+                out.flush(); // non chiuso: chiuderebbe il canale
+                for (int i = 1; i <= FANOUT; i++) {
+                    fanout[i] += fanout[i - 1];
+                }
+
+                ByteBuffer header = ByteBuffer.allocate((int) bloomStart);
+                header.putInt(MAGIC).putInt(VERSION).putLong(count).putInt(bloomLog2).putInt(bloomHashes);
+                header.asLongBuffer().put(fanout);
+                header.rewind();
+                writeFully(channel, header, 0);
+                // Il filtro è letto byte per byte: il bit i sta nel byte i / 8
+                ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+                long position = bloomStart;
+                for (long[] segment : bloomBits) {
+                    for (long word : segment) {
+                        buffer.putLong(word);
+                        if (!buffer.hasRemaining()) {
+                            buffer.flip();
+                            position += writeFully(channel, buffer, position);
+                            buffer.clear();
+                        }
+                    }
+                }
+                buffer.flip();
+                writeFully(channel, buffer, position);
+                channel.force(true);
+            }
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+        return count;
+    }
+
+    /**
+     * Alloca i bit del filtro in blocchi di al più 2^{@value #BLOOM_SEGMENT_LOG2} bit,
+     * poiché un singolo array non può superare 2^31 elementi.
+     */
+    private static long[][] newBloom(int bloomLog2) {
+        long words = (1L << bloomLog2) / 64;
+        long segmentWords = 1L << (BLOOM_SEGMENT_LOG2 - 6);
+        long[][] segments = new long[(int) ((words + segmentWords - 1) / segmentWords)][];
+        for (int s = 0; s < segments.length; s++) {
+            segments[s] = new long[(int) Math.min(segmentWords, words - s * segmentWords)];
+        }
+        return segments;
+    }
+
+    /**
+     * Scrive tutto il buffer nella posizione indicata del canale.
+     *
+     * @return il numero di byte scritti
+     */
+    private static int writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int written = 0;
+        while (buffer.hasRemaining()) {
+            written += channel.write(buffer, position + written);
+        }
+        return written;
+    }
+}
@@ -0,0 +1,273 @@
+package javault.utils;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * Motore di cifratura AES-GCM legato a una chiave, riusabile per molti record.
+ * Il {@link Cipher} viene cercato presso il provider una sola volta per thread e poi
+ * reinizializzato a ogni operazione con un IV nuovo; le operazioni su {@link ByteBuffer}
+ * scrivono direttamente nel buffer di destinazione senza allocare array intermedi.
+ * Il formato prodotto è lo stesso di {@link EncryptionUtils#encrypt(SecretKey, byte[])}:
+ * IV di 12 byte, seguito da ciphertext e tag di 16 byte.
+ * Le varianti con dati associati (AAD) autenticano anche un contesto non cifrato,
+ * ad esempio la posizione del record: un record spostato in un altro contesto non si decifra.
+ */
+public final class CipherEngine {
+
+    /**
+     * Dimensione dell'IV scritto davanti a ogni record.
+     */
+    public static final int IV_SIZE = 12;
+
+    /**
+     * Dimensione del tag di autenticazione scritto in coda a ogni record.
+     */
+    public static final int TAG_SIZE = 16;
+
+    private static final int PARALLEL_THRESHOLD = 64;
+
+    private static final SecureRandom secureRandom = new SecureRandom();
+    private static final ThreadLocal<Cipher> ciphers = ThreadLocal.withInitial(CipherEngine::newCipher);
+
+    private final SecretKey key;
+
+    /**
+     * Crea un motore per la chiave indicata.
+     *
+     * @param key la chiave AES
+     */
+    public CipherEngine(SecretKey key) {
+        this.key = key;
+    }
+
+    /**
+     * Calcola la dimensione del record cifrato corrispondente a un testo in chiaro.
+     *
+     * @param plaintextLength lunghezza del testo in chiaro
+     * @return lunghezza del record cifrato, IV e tag compresi
+     */
+    public static int sealedSize(int plaintextLength) {
+        return IV_SIZE + plaintextLength + TAG_SIZE;
+    }
+
+    /**
+     * Cifra i byte rimanenti di {@code src} e scrive IV, ciphertext e tag in {@code dst}.
+     * Entrambi i buffer avanzano della quantità letta e scritta.
+     *
+     * @param src i dati in chiaro
+     * @param dst il buffer di destinazione, con almeno {@link #sealedSize(int)} byte liberi
+     * @return il numero di byte scritti in {@code dst}
+     * @throws IllegalStateException se la cifratura fallisce o {@code dst} non ha spazio sufficiente
+     */
+    public int encryptInto(ByteBuffer src, ByteBuffer dst) {
+        return encryptInto(src, dst, null);
+    }
+
+    /**
+     * Come {@link #encryptInto(ByteBuffer, ByteBuffer)}, autenticando anche i dati associati indicati,
+     * che non vengono scritti nel record e vanno ripassati identici alla decifratura.
+     *
+     * @param src i dati in chiaro
+     * @param dst il buffer di destinazione, con almeno {@link #sealedSize(int)} byte liberi
+     * @param aad i dati associati, o null per nessuno
+     * @return il numero di byte scritti in {@code dst}
+     * @throws IllegalStateException se la cifratura fallisce o {@code dst} non ha spazio sufficiente
+     */
+    public int encryptInto(ByteBuffer src, ByteBuffer dst, byte[] aad) {
+        byte[] iv = new byte[IV_SIZE];
+        secureRandom.nextBytes(iv);
+        return encryptInto(src, dst, iv, aad);
+    }
+
+    /**
+     * Decifra un record prodotto da {@link #encryptInto(ByteBuffer, ByteBuffer)}
+     * e scrive i dati in chiaro in {@code dst}. Entrambi i buffer avanzano della quantità
+     * letta e scritta; se il tag non è valido {@code dst} non viene modificato.
+     *
+     * @param src il record cifrato, IV compreso
+     * @param dst il buffer di destinazione, con almeno tanti byte liberi quanti il record meno IV e tag
+     * @return il numero di byte scritti in {@code dst}, o -1 se la password è errata o i dati sono corrotti
+     */
+    public int decryptInto(ByteBuffer src, ByteBuffer dst) {
+        return decryptInto(src, dst, null);
+    }
+
+    /**
+     * Decifra un record prodotto da {@link #encryptInto(ByteBuffer, ByteBuffer, byte[])}
+     * con gli stessi dati associati.
+     *
+     * @param src il record cifrato, IV compreso
+     * @param dst il buffer di destinazione, con almeno tanti byte liberi quanti il record meno IV e tag
+     * @param aad i dati associati usati alla cifratura, o null per nessuno
+     * @return il numero di byte scritti in {@code dst}, o -1 se la password è errata,
+     *         i dati sono corrotti o i dati associati non corrispondono
+     */
+    public int decryptInto(ByteBuffer src, ByteBuffer dst, byte[] aad) {
+        if (src.remaining() < IV_SIZE + TAG_SIZE) return -1;
+
+        byte[] iv = new byte[IV_SIZE];
+        src.get(iv);
+        Cipher cipher = ciphers.get();
+        try {
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_SIZE * 8, iv));
+            if (aad != null) cipher.updateAAD(aad);
+            return cipher.doFinal(src, dst);
+        } catch (AEADBadTagException e) {
+            return -1;
+        } catch (GeneralSecurityException e) {
+            System.err.println("Errore di inizializzazione del cifrario. Chiave o IV non validi.");
+            throw new IllegalStateException("Errore di inizializzazione del cifrario.", e);
+        }
+    }
+
+    /**
+     * Cifra un array di byte in un nuovo record.
+     *
+     * @param plaintext dati in chiaro da cifrare
+     * @return dati cifrati con IV pre-posto
+     */
+    public byte[] seal(byte[] plaintext) {
+        return seal(plaintext, null);
+    }
+
+    /**
+     * Cifra un array di byte in un nuovo record, autenticando anche i dati associati indicati.
+     *
+     * @param plaintext dati in chiaro da cifrare
+     * @param aad i dati associati, o null per nessuno
+     * @return dati cifrati con IV pre-posto
+     */
+    public byte[] seal(byte[] plaintext, byte[] aad) {
+        byte[] sealed = new byte[sealedSize(plaintext.length)];
+        encryptInto(ByteBuffer.wrap(plaintext), ByteBuffer.wrap(sealed), aad);
+        return sealed;
+    }
+
+    /**
+     * Decifra un record prodotto da {@link #seal(byte[])}.
+     *
+     * @param sealed il record cifrato, IV compreso
+     * @return dati decifrati in chiaro, o null se la password è errata o i dati sono corrotti
+     */
+    public byte[] open(byte[] sealed) {
+        return open(sealed, null);
+    }
+
+    /**
+     * Decifra un record prodotto da {@link #seal(byte[], byte[])} con gli stessi dati associati.
+     *
+     * @param sealed il record cifrato, IV compreso
+     * @param aad i dati associati usati alla cifratura, o null per nessuno
+     * @return dati decifrati in chiaro, o null se la password è errata, i dati sono corrotti
+     *         o i dati associati non corrispondono
+     */
+    public byte[] open(byte[] sealed, byte[] aad) {
+        if (sealed.length < IV_SIZE + TAG_SIZE) return null;
+
+        byte[] plaintext = new byte[sealed.length - IV_SIZE - TAG_SIZE];
+        if (decryptInto(ByteBuffer.wrap(sealed), ByteBuffer.wrap(plaintext), aad) < 0) {
+            return null;
+        }
+        return plaintext;
+    }
+
+    /**
+     * Cifra più record in una sola operazione. Gli IV vengono generati con un'unica
+     * chiamata al generatore casuale e, per lotti grandi, i record vengono cifrati
+     * in parallelo, ciascun thread con il proprio {@link Cipher}.
+     *
+     * @param plaintexts i dati in chiaro, non modificati
+     * @return i record cifrati, nello stesso ordine
+     */
+    public byte[][] sealAll(byte[][] plaintexts) {
+        return sealAll(plaintexts, null);
+    }
+
+    /**
+     * Come {@link #sealAll(byte[][])}, autenticando ogni record con i propri dati associati.
+     *
+     * @param plaintexts i dati in chiaro, non modificati
+     * @param aads i dati associati di ciascun record, o null per nessuno
+     * @return i record cifrati, nello stesso ordine
+     */
+    public byte[][] sealAll(byte[][] plaintexts, byte[][] aads) {
+        byte[] ivs = new byte[plaintexts.length * IV_SIZE];
+        secureRandom.nextBytes(ivs);
+        byte[][] sealed = new byte[plaintexts.length][];
+
+        IntStream indexes = IntStream.range(0, plaintexts.length);
+        if (plaintexts.length >= PARALLEL_THRESHOLD) indexes = indexes.parallel();
+        indexes.forEach(i -> {
+            byte[] iv = Arrays.copyOfRange(ivs, i * IV_SIZE, (i + 1) * IV_SIZE);
+            sealed[i] = new byte[sealedSize(plaintexts[i].length)];
+            encryptInto(ByteBuffer.wrap(plaintexts[i]), ByteBuffer.wrap(sealed[i]), iv, aads != null ? aads[i] : null);
+        });
+        return sealed;
+    }
+
+    /**
+     * Decifra più record in una sola operazione, in parallelo per lotti grandi.
+     *
+     * @param sealed i record cifrati
+     * @return i dati in chiaro nello stesso ordine; null per i record non decifrabili
+     */
+    public byte[][] openAll(byte[][] sealed) {
+        return openAll(sealed, null);
+    }
+
+    /**
+     * Decifra più record prodotti da {@link #sealAll(byte[][], byte[][])} con gli stessi dati associati.
+     *
+     * @param sealed i record cifrati
+     * @param aads i dati associati di ciascun record, o null per nessuno
+     * @return i dati in chiaro nello stesso ordine; null per i record non decifrabili
+     */
+    public byte[][] openAll(byte[][] sealed, byte[][] aads) {
+        byte[][] plaintexts = new byte[sealed.length][];
+        IntStream indexes = IntStream.range(0, sealed.length);
+        if (sealed.length >= PARALLEL_THRESHOLD) indexes = indexes.parallel();
+        indexes.forEach(i -> plaintexts[i] = open(sealed[i], aads != null ? aads[i] : null));
+        return plaintexts;
+    }
+
+    /**
+     * Restituisce il {@link Cipher} AES-GCM del thread corrente, da reinizializzare prima dell'uso.
+     */
+    static Cipher cipher() {
+        return ciphers.get();
+    }
+
+    private int encryptInto(ByteBuffer src, ByteBuffer dst, byte[] iv, byte[] aad) {
+        int start = dst.position();
+        Cipher cipher = ciphers.get();
+        try {
+            cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_SIZE * 8, iv));
+            if (aad != null) cipher.updateAAD(aad);
+            dst.put(iv);
+            cipher.doFinal(src, dst);
+        } catch (GeneralSecurityException e) {
+            dst.position(start);
+            System.err.println("Errore del cifrario. Chiave invalida? Buffer insufficiente?");
+            throw new IllegalStateException("Errore del cifrario. Chiave invalida? Buffer insufficiente?", e);
+        }
+        return dst.position() - start;
+    }
+
+    private static Cipher newCipher() {
+        try {
+            return Cipher.getInstance("AES/GCM/NoPadding");
+        } catch (GeneralSecurityException e) {
+            System.err.println("Errore del cifrario. Algoritmo non esistente? Padding non esistente?");
+            throw new IllegalStateException("Errore del cifrario. Algoritmo non esistente? Padding non esistente?", e);
+        }
+    }
+}
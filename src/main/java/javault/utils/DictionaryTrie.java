@@ -0,0 +1,122 @@
+package javault.utils;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * Trie delle parole dei dizionari usati da {@link StrengthEstimator}, disposto in array primitivi.
+ * <p>
+ * I nodi sono numerati in ampiezza, quindi i figli di ogni nodo sono contigui e ordinati per carattere:
+ * i figli del nodo i vanno da {@code firstChild[i]} a {@code firstChild[i + 1]} escluso e il figlio
+ * con un dato carattere si trova con una ricerca binaria. Per ogni nodo terminale sono memorizzati
+ * la posizione minima della parola nei dizionari (il rango, dalla parola più comune) e il dizionario
+ * che la contiene. La struttura è immutabile e può essere usata da più thread.
+ */
+final class DictionaryTrie {
+
+    /** Nodo radice. */
+    static final int ROOT = 0;
+
+    private final char[] labels;
+    private final int[] firstChild;
+    /** Rango della parola che termina nel nodo, 0 se nessuna. */
+    private final int[] ranks;
+    private final byte[] dictionaries;
+
+    /**
+     * Nodo temporaneo usato solo durante la costruzione.
+     */
+    private static final class Node {
+        final TreeMap<Character, Node> children = new TreeMap<>();
+        int rank;
+        byte dictionary;
+    }
+
+    /**
+     * Costruisce il trie dai dizionari indicati. Se una parola compare in più dizionari
+     * viene conservato il rango minore.
+     *
+     * @param words i dizionari, ciascuno dalla parola più comune
+     */
+    DictionaryTrie(List<List<String>> words) {
+        Node root = new Node();
+        int count = 1;
+        for (int d = 0; d < words.size(); d++) {
+            List<String> dictionary = words.get(d);
+            for (int r = 0; r < dictionary.size(); r++) {
+                Node node = root;
+                String word = dictionary.get(r);
+                for (int i = 0; i < word.length(); i++) {
+                    Node child = node.children.get(word.charAt(i));
+                    if (child == null) {
+                        child = new Node();
+                        node.children.put(word.charAt(i), child);
+                        count++;
+                    }
+                    node = child;
+                }
+                if (node.rank == 0 || r + 1 < node.rank) {
+                    node.rank = r + 1;
+                    node.dictionary = (byte) d;
+                }
+            }
+        }
+
+        labels = new char[count];
+        firstChild = new int[count + 1];
+        ranks = new int[count];
+        dictionaries = new byte[count];
+        Deque<Node> queue = new ArrayDeque<>();
+        queue.add(root);
+        int index = 0;
+        int next = 1;
+        while (!queue.isEmpty()) {
+            Node node = queue.poll();
+            ranks[index] = node.rank;
+            dictionaries[index] = node.dictionary;
+            firstChild[index] = next;
+            for (var child : node.children.entrySet()) {
+                labels[next++] = child.getKey();
+                queue.add(child.getValue());
+            }
+            index++;
+        }
+        firstChild[count] = next;
+    }
+
+    /**
+     * @param node il nodo di partenza
+     * @param c il carattere
+     * @return il figlio del nodo con il carattere indicato, o -1 se non esiste
+     */
+    int child(int node, char c) {
+        int found = Arrays.binarySearch(labels, firstChild[node], firstChild[node + 1], c);
+        return found >= 0 ? found : -1;
+    }
+
+    /**
+     * @param node il nodo
+     * @return il rango della parola che termina nel nodo, 0 se nessuna
+     */
+    int rank(int node) {
+        return ranks[node];
+    }
+
+    /**
+     * @param node un nodo terminale
+     * @return l'indice del dizionario della parola che termina nel nodo
+     */
+    int dictionary(int node) {
+        return dictionaries[node];
+    }
+
+    /**
+     * @return il numero di nodi
+     */
+    int size() {
+        return labels.length;
+    }
+}
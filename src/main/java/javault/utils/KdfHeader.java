@@ -0,0 +1,294 @@
+package javault.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.security.spec.InvalidKeySpecException;
+import java.util.Arrays;
+
+import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import javault.exception.VaultException;
+
+/**
+ * Intestazione che descrive come derivare la chiave del vault dalla master password:
+ * algoritmo KDF, numero di iterazioni, dimensione della chiave e salt.
+ * Viene salvata in {@code vault/vault.hdr}; i vault creati prima della sua introduzione
+ * hanno solo {@code vault/salt.bin} e usano i parametri storici (PBKDF2, 65536 iterazioni),
+ * finché non vengono aggiornati.
+ * Il numero di iterazioni dei nuovi vault viene calibrato sulla macchina corrente
+ * per ottenere un tempo di sblocco prefissato.
+ */
+public final class KdfHeader {
+
+    static final String HEADER_PATH = "vault/vault.hdr";
+    private static final String PENDING_PATH = "vault/vault.hdr.new";
+    private static final String LEGACY_SALT_PATH = "vault/salt.bin";
+
+    private static final byte[] MAGIC = {'J', 'V', 'K', 'D'};
+    private static final byte VERSION = 1;
+
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final int KEY_SIZE = 256;
+    private static final int SALT_SIZE = 16;
+    private static final int LEGACY_ITERATIONS = 65536;
+    private static final int MAX_ITERATIONS = 10_000_000;
+    private static final int CALIBRATION_ITERATIONS = 10_000;
+
+    /**
+     * Tempo di sblocco obiettivo usato dalla calibrazione, in millisecondi.
+     */
+    public static final long DEFAULT_TARGET_MILLIS = 300;
+
+    private static final SecureRandom secureRandom = new SecureRandom();
+
+    private final String algorithm;
+    private final int iterations;
+    private final int keySize;
+    private final byte[] salt;
+    private final boolean legacy;
+
+    private KdfHeader(String algorithm, int iterations, int keySize, byte[] salt, boolean legacy) {
+        this.algorithm = algorithm;
+        this.iterations = iterations;
+        this.keySize = keySize;
+        this.salt = salt;
+        this.legacy = legacy;
+    }
+
+    /**
+     * Carica l'intestazione KDF del vault, oppure i parametri storici se esiste solo il salt.
+     *
+     * @return l'intestazione del vault, o null se il vault non esiste ancora
+     * @throws VaultException se l'intestazione esiste ma non è leggibile
+     */
+    public static KdfHeader load() throws VaultException {
+        Path header = Path.of(HEADER_PATH);
+        if (Files.exists(header)) {
+            return read(header);
+        }
+
+        Path legacySalt = Path.of(LEGACY_SALT_PATH);
+        if (Files.exists(legacySalt)) {
+            try {
+                return new KdfHeader(ALGORITHM, LEGACY_ITERATIONS, KEY_SIZE, Files.readAllBytes(legacySalt), true);
+            } catch (IOException e) {
+                throw new VaultException("Impossibile leggere il salt del vault", e);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Carica l'intestazione scritta da un aggiornamento non ancora concluso, se presente.
+     *
+     * @return l'intestazione in attesa, o null se non esiste
+     * @throws VaultException se l'intestazione esiste ma non è leggibile
+     */
+    public static KdfHeader loadPending() throws VaultException {
+        Path pending = Path.of(PENDING_PATH);
+        return Files.exists(pending) ? read(pending) : null;
+    }
+
+    /**
+     * Crea una nuova intestazione con salt casuale e numero di iterazioni calibrato
+     * per richiedere circa il tempo indicato su questa macchina.
+     * Il numero di iterazioni non scende mai sotto quello storico.
+     *
+     * @param targetMillis tempo di derivazione della chiave desiderato, in millisecondi
+     * @return la nuova intestazione, non ancora salvata
+     */
+    public static KdfHeader calibrate(long targetMillis) {
+        byte[] salt = new byte[SALT_SIZE];
+        secureRandom.nextBytes(salt);
+        char[] probe = "javault-calibration".toCharArray();
+
+        KdfHeader sample = new KdfHeader(ALGORITHM, CALIBRATION_ITERATIONS, KEY_SIZE, salt, false);
+        sample.deriveKey(probe); // riscaldamento del provider e del JIT
+        long start = System.nanoTime();
+        sample.deriveKey(probe);
+        long elapsedNanos = Math.max(1, System.nanoTime() - start);
+
+        long iterations = CALIBRATION_ITERATIONS * (targetMillis * 1_000_000L) / elapsedNanos;
+        iterations = Math.max(LEGACY_ITERATIONS, Math.min(MAX_ITERATIONS, iterations / 1000 * 1000));
+        return new KdfHeader(ALGORITHM, (int) iterations, KEY_SIZE, salt, false);
+    }
+
+    /**
+     * Deriva la chiave AES dalla master password con i parametri di questa intestazione.
+     * La password non viene azzerata: se ne occupa il chiamante.
+     *
+     * @param password la master password
+     * @return la chiave AES derivata
+     * @throws RuntimeException se la generazione della chiave fallisce per problemi crittografici
+     */
+    public SecretKey deriveKey(char[] password) {
+        PBEKeySpec spec = new PBEKeySpec(password, salt, iterations, keySize);
+        try {
+            SecretKeyFactory factory = SecretKeyFactory.getInstance(algorithm);
+            byte[] keyBytes = factory.generateSecret(spec).getEncoded();
+            try {
+                return new SecretKeySpec(keyBytes, "AES");
+            } finally {
+                Arrays.fill(keyBytes, (byte) 0);
+            }
+        } catch (NoSuchAlgorithmException | InvalidKeySpecException e) {
+            throw new RuntimeException("Errore nella generazione della chiave", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    /**
+     * Indica se il vault usa ancora i parametri storici e va aggiornato.
+     *
+     * @return true se la chiave va rigenerata con una nuova intestazione
+     */
+    public boolean needsUpgrade() {
+        return legacy || iterations < LEGACY_ITERATIONS;
+    }
+
+    /**
+     * @return il numero di iterazioni del KDF
+     */
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * Salva questa intestazione come intestazione del vault.
+     *
+     * @throws VaultException se il salvataggio fallisce
+     */
+    public void save() throws VaultException {
+        write(Path.of(HEADER_PATH));
+    }
+
+    /**
+     * Salva questa intestazione come aggiornamento in attesa: diventa effettiva
+     * solo con {@link #promotePending()}, dopo che il vault è stato ricifrato.
+     *
+     * @throws VaultException se il salvataggio fallisce
+     */
+    public void savePending() throws VaultException {
+        write(Path.of(PENDING_PATH));
+    }
+
+    /**
+     * Rende effettiva l'intestazione in attesa ed elimina il salt storico.
+     *
+     * @throws VaultException se l'operazione fallisce
+     */
+    public static void promotePending() throws VaultException {
+        try {
+            Files.move(Path.of(PENDING_PATH), Path.of(HEADER_PATH),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            Files.deleteIfExists(Path.of(LEGACY_SALT_PATH));
+        } catch (IOException e) {
+            throw new VaultException("Impossibile aggiornare l'intestazione del vault", e);
+        }
+    }
+
+    /**
+     * Elimina un'intestazione in attesa rimasta da un aggiornamento mai applicato al vault.
+     *
+     * @throws VaultException se l'eliminazione fallisce
+     */
+    public static void discardPending() throws VaultException {
+        try {
+            Files.deleteIfExists(Path.of(PENDING_PATH));
+        } catch (IOException e) {
+            throw new VaultException("Impossibile eliminare l'intestazione in attesa", e);
+        }
+    }
+
+    private static KdfHeader read(Path path) throws VaultException {
+        try {
+            return decode(ByteBuffer.wrap(Files.readAllBytes(path)));
+        } catch (IOException e) {
+            throw new VaultException("Impossibile leggere l'intestazione del vault", e);
+        }
+    }
+
+    /**
+     * Legge un'intestazione scritta da {@link #encode()}, avanzando il buffer.
+     * Numero di iterazioni, dimensione della chiave e salt vengono verificati: un file alterato
+     * non deve poter bloccare l'apertura con milioni di miliardi di iterazioni
+     * né indebolire la chiave con zero iterazioni.
+     *
+     * @throws VaultException se l'intestazione non è valida
+     */
+    static KdfHeader decode(ByteBuffer buffer) throws VaultException {
+        try {
+            byte[] magic = new byte[MAGIC.length];
+            buffer.get(magic);
+            if (!Arrays.equals(magic, MAGIC) || buffer.get() != VERSION) {
+                throw new VaultException("Intestazione del vault non valida");
+            }
+
+            byte[] algorithm = new byte[buffer.get() & 0xFF];
+            buffer.get(algorithm);
+            int iterations = buffer.getInt();
+            if (iterations < 1 || iterations > MAX_ITERATIONS) {
+                throw new VaultException("Numero di iterazioni del KDF non valido: " + iterations);
+            }
+            int keySize = buffer.getShort() & 0xFFFF;
+            if (keySize != 128 && keySize != 192 && keySize != 256) {
+                throw new VaultException("Dimensione della chiave non valida: " + keySize);
+            }
+            byte[] salt = new byte[buffer.get() & 0xFF];
+            if (salt.length == 0) {
+                throw new VaultException("Salt del KDF mancante");
+            }
+            buffer.get(salt);
+            return new KdfHeader(new String(algorithm, StandardCharsets.US_ASCII), iterations, keySize, salt, false);
+        } catch (RuntimeException e) {
+            throw new VaultException("Intestazione del vault non valida", e);
+        }
+    }
+
+    /**
+     * Codifica l'intestazione, ad esempio per includerla in un file esportato.
+     *
+     * @return il buffer pronto per la lettura
+     */
+    ByteBuffer encode() {
+        byte[] algorithmBytes = algorithm.getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer buffer = ByteBuffer.allocate(MAGIC.length + 1 + 1 + algorithmBytes.length + 4 + 2 + 1 + salt.length);
+        buffer.put(MAGIC).put(VERSION);
+        buffer.put((byte) algorithmBytes.length).put(algorithmBytes);
+        buffer.putInt(iterations).putShort((short) keySize);
+        buffer.put((byte) salt.length).put(salt);
+        return buffer.flip();
+    }
+
+    private void write(Path path) throws VaultException {
+        ByteBuffer buffer = encode();
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(path.getParent());
+            try (FileChannel channel = FileChannel.open(temp,
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new VaultException("Impossibile salvare l'intestazione del vault", e);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package javault.utils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import javault.model.LoginEntry;
+
+/**
+ * Serializzazione Gson di {@link LoginEntry}, i cui segreti sono fuori heap
+ * e quindi non visibili alla riflessione di Gson.
+ * Mantiene il formato JSON dei vault salvati in precedenza, in cui username e password
+ * sono array di caratteri: {@code {"username":["u","s"],"password":["p","w"]}}.
+ * Cartella e tag, se presenti, sono scritti come {@code "folder":"team/infra","tags":["prod"]}.
+ * Gli array intermedi vengono azzerati subito dopo l'uso.
+ */
+final class LoginEntryAdapter extends TypeAdapter<LoginEntry> {
+
+    @Override
+    public void write(JsonWriter out, LoginEntry entry) throws IOException {
+        if (entry == null) {
+            out.nullValue();
+            return;
+        }
+
+        char[] username = entry.getUsername();
+        char[] password = entry.getPassword();
+        try {
+            out.beginObject();
+            out.name("username");
+            writeChars(out, username);
+            out.name("password");
+            writeChars(out, password);
+            if (!entry.getFolder().isEmpty()) {
+                out.name("folder").value(entry.getFolder());
+            }
+            if (!entry.getTags().isEmpty()) {
+                out.name("tags").beginArray();
+                for (String tag : entry.getTags()) {
+                    out.value(tag);
+                }
+                out.endArray();
+            }
+            out.endObject();
+        } finally {
+            Arrays.fill(username, '\0');
+            Arrays.fill(password, '\0');
+        }
+    }
+
+    @Override
+    public LoginEntry read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+
+        char[] username = new char[0];
+        char[] password = new char[0];
+        String folder = null;
+        List<String> tags = new ArrayList<>();
+        try {
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "username" -> username = readChars(in);
+                    case "password" -> password = readChars(in);
+                    case "folder" -> folder = in.nextString();
+                    case "tags" -> {
+                        in.beginArray();
+                        while (in.hasNext()) {
+                            tags.add(in.nextString());
+                        }
+                        in.endArray();
+                    }
+                    default -> in.skipValue();
+                }
+            }
+            in.endObject();
+            return new LoginEntry(username, password, folder, tags);
+        } catch (IllegalArgumentException e) {
+            throw new JsonParseException("Tag non valido nel vault", e);
+        } finally {
+            Arrays.fill(username, '\0');
+            Arrays.fill(password, '\0');
+        }
+    }
+
+    private static void writeChars(JsonWriter out, char[] chars) throws IOException {
+        out.beginArray();
+        for (char c : chars) {
+            out.value(String.valueOf(c));
+        }
+        out.endArray();
+    }
+
+    private static char[] readChars(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.STRING) {
+            return in.nextString().toCharArray();
+        }
+
+        char[] chars = new char[16];
+        int length = 0;
+        in.beginArray();
+        while (in.hasNext()) {
+            if (length == chars.length) {
+                char[] larger = Arrays.copyOf(chars, chars.length * 2);
+                Arrays.fill(chars, '\0');
+                chars = larger;
+            }
+            String c = in.nextString();
+            chars[length++] = c.isEmpty() ? '\0' : c.charAt(0);
+        }
+        in.endArray();
+
+        char[] result = Arrays.copyOf(chars, length);
+        Arrays.fill(chars, '\0');
+        return result;
+    }
+}
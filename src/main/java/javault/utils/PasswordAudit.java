@@ -0,0 +1,234 @@
+package javault.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+import javault.exception.VaultException;
+import javault.model.LoginEntry;
+import javault.model.VaultData;
+import javault.model.VaultSnapshot;
+
+/**
+ * Ricerca delle password riutilizzate in più login.
+ * Di ogni password viene calcolata un'impronta HMAC-SHA256 con una chiave derivata da quella
+ * del vault, quindi le impronte non permettono attacchi a dizionario senza la master password;
+ * i login con la stessa impronta hanno la stessa password.
+ * <p>
+ * Le impronte vengono calcolate in parallelo su uno snapshot del vault, leggendo ogni password
+ * direttamente dalla memoria fuori heap: l'unica copia in chiaro è un piccolo buffer per thread,
+ * azzerato dopo ogni login, e le entry ancora cifrate restano tali. Le impronte restano in memoria
+ * tra una verifica e l'altra, associate alla entry da cui sono state calcolate: poiché ogni modifica
+ * delle credenziali sostituisce la entry, le verifiche successive ricalcolano solo i login modificati.
+ * <p>
+ * Allo stesso modo vengono cercati i login con una password presente nell'elenco locale
+ * delle password compromesse ({@link BreachedPasswords}).
+ */
+public class PasswordAudit {
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final byte[] CONTEXT = "javault-password-audit".getBytes(StandardCharsets.UTF_8);
+    private static final int PARALLEL_THRESHOLD = 64;
+    private static final int BUFFER_CHARS = 64;
+
+    /**
+     * Esito di una verifica.
+     *
+     * @param reused i gruppi di login con la stessa password, ciascuno in ordine alfabetico,
+     *               dal gruppo più numeroso
+     * @param audited il numero di login verificati
+     * @param rehashed il numero di login di cui è stata calcolata l'impronta, perché nuovi o modificati
+     */
+    public record Result(List<List<String>> reused, int audited, int rehashed) {
+    }
+
+    /**
+     * Primi 128 bit dell'HMAC della password.
+     */
+    private record Fingerprint(long high, long low) {
+    }
+
+    private record Cached(LoginEntry entry, Fingerprint fingerprint) {
+    }
+
+    private record Checked(LoginEntry entry, boolean breached) {
+    }
+
+    private final SecretKey auditKey;
+    private final ThreadLocal<Mac> macs = ThreadLocal.withInitial(this::newMac);
+    private final ThreadLocal<byte[]> buffers = ThreadLocal.withInitial(() -> new byte[BUFFER_CHARS * 2]);
+    /** Impronte dell'ultima verifica per nome login, sostituite a ogni verifica. */
+    private Map<String, Cached> fingerprints = new HashMap<>();
+    /** Esiti dell'ultima ricerca delle password compromesse per nome login. */
+    private Map<String, Checked> breachChecks = new HashMap<>();
+
+    /**
+     * Crea il motore di verifica per il vault cifrato con la chiave indicata.
+     *
+     * @param key la chiave AES del vault, da cui viene derivata la chiave delle impronte
+     * @throws VaultException se la chiave non può essere derivata
+     */
+    public PasswordAudit(SecretKey key) throws VaultException {
+        byte[] encoded = key.getEncoded();
+        byte[] derived = null;
+        try {
+            Mac kdf = Mac.getInstance(ALGORITHM);
+            kdf.init(new SecretKeySpec(encoded, ALGORITHM));
+            derived = kdf.doFinal(CONTEXT);
+            this.auditKey = new SecretKeySpec(derived, ALGORITHM);
+        } catch (GeneralSecurityException e) {
+            throw new VaultException("Impossibile derivare la chiave delle impronte", e);
+        } finally {
+            Arrays.fill(encoded, (byte) 0);
+            if (derived != null) Arrays.fill(derived, (byte) 0);
+        }
+    }
+
+    /**
+     * Cerca i login che condividono la stessa password.
+     * I login che non possono essere decifrati vengono ignorati.
+     *
+     * @param vault il vault da verificare
+     * @return i gruppi di login con la stessa password e le statistiche della verifica
+     */
+    public synchronized Result audit(VaultData vault) {
+        Map<String, Cached> previous = fingerprints;
+        AtomicInteger rehashed = new AtomicInteger();
+        List<String> names;
+        Cached[] computed;
+        try (VaultSnapshot snapshot = vault.snapshot()) {
+            names = snapshot.names();
+            computed = new Cached[names.size()];
+            IntStream indexes = IntStream.range(0, names.size());
+            if (names.size() >= PARALLEL_THRESHOLD) indexes = indexes.parallel();
+            indexes.forEach(i -> {
+                String name = names.get(i);
+                LoginEntry entry = snapshot.peekLogin(name);
+                Cached cached = previous.get(name);
+                if (cached != null && cached.entry() == entry) {
+                    computed[i] = cached;
+                    return;
+                }
+                Fingerprint fingerprint = snapshot.borrow(name, (username, password) -> fingerprint(password));
+                if (fingerprint != null) {
+                    computed[i] = new Cached(entry, fingerprint);
+                    rehashed.incrementAndGet();
+                }
+            });
+        }
+
+        Map<String, Cached> current = new HashMap<>(names.size() * 4 / 3 + 1);
+        Map<Fingerprint, List<String>> groups = new HashMap<>(names.size() * 4 / 3 + 1);
+        int audited = 0;
+        for (int i = 0; i < computed.length; i++) {
+            if (computed[i] == null) continue;
+            current.put(names.get(i), computed[i]);
+            groups.computeIfAbsent(computed[i].fingerprint(), key -> new ArrayList<>(1)).add(names.get(i));
+            audited++;
+        }
+        fingerprints = current;
+
+        List<List<String>> reused = new ArrayList<>();
+        for (List<String> group : groups.values()) {
+            if (group.size() < 2) continue;
+            group.sort(null);
+            reused.add(List.copyOf(group));
+        }
+        reused.sort(Comparator.<List<String>>comparingInt(List::size).reversed()
+                .thenComparing(group -> group.get(0)));
+        return new Result(reused, audited, rehashed.get());
+    }
+
+    /**
+     * Cerca i login con una password presente nell'elenco delle password compromesse.
+     * Vengono verificati solo i login nuovi o modificati dall'ultima ricerca;
+     * quelli che non possono essere decifrati vengono ignorati.
+     *
+     * @param vault il vault da verificare
+     * @param breached l'elenco delle password compromesse
+     * @return i nomi dei login con una password compromessa, in ordine alfabetico
+     */
+    public synchronized List<String> breached(VaultData vault, BreachedPasswords breached) {
+        if (!breached.isAvailable()) return List.of();
+        Map<String, Checked> previous = breachChecks;
+        List<String> names;
+        Checked[] checked;
+        try (VaultSnapshot snapshot = vault.snapshot()) {
+            names = snapshot.names();
+            checked = new Checked[names.size()];
+            IntStream indexes = IntStream.range(0, names.size());
+            if (names.size() >= PARALLEL_THRESHOLD) indexes = indexes.parallel();
+            indexes.forEach(i -> {
+                String name = names.get(i);
+                LoginEntry entry = snapshot.peekLogin(name);
+                Checked cached = previous.get(name);
+                if (cached != null && cached.entry() == entry) {
+                    checked[i] = cached;
+                    return;
+                }
+                Boolean found = snapshot.borrow(name, (username, password) -> breached.isBreached(password));
+                if (found != null) checked[i] = new Checked(entry, found);
+            });
+        }
+
+        Map<String, Checked> current = new HashMap<>(names.size() * 4 / 3 + 1);
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < checked.length; i++) {
+            if (checked[i] == null) continue;
+            current.put(names.get(i), checked[i]);
+            if (checked[i].breached()) result.add(names.get(i));
+        }
+        breachChecks = current;
+        result.sort(null);
+        return result;
+    }
+
+    /**
+     * Calcola l'impronta della password con il {@link Mac} del thread corrente,
+     * passando i caratteri a blocchi in un buffer che viene azzerato al termine.
+     */
+    private Fingerprint fingerprint(CharSequence password) {
+        Mac mac = macs.get();
+        mac.reset(); // un calcolo precedente può essere stato interrotto da un'eccezione
+        byte[] buffer = buffers.get();
+        try {
+            for (int start = 0; start < password.length(); start += BUFFER_CHARS) {
+                int end = Math.min(start + BUFFER_CHARS, password.length());
+                int count = 0;
+                for (int i = start; i < end; i++) {
+                    char c = password.charAt(i);
+                    buffer[count++] = (byte) (c >>> 8);
+                    buffer[count++] = (byte) c;
+                }
+                mac.update(buffer, 0, count);
+            }
+        } finally {
+            Arrays.fill(buffer, (byte) 0); // Pulizia dati sensibili dalla RAM
+        }
+        ByteBuffer digest = ByteBuffer.wrap(mac.doFinal());
+        return new Fingerprint(digest.getLong(), digest.getLong());
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(auditKey);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            System.err.println("Errore nel calcolo delle impronte delle password.");
+            throw new IllegalStateException("Errore nel calcolo delle impronte delle password", e);
+        }
+    }
+}
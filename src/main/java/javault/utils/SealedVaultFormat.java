@@ -0,0 +1,359 @@
+package javault.utils;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import javax.crypto.SecretKey;
+
+import javault.exception.InvalidPasswordException;
+import javault.exception.VaultException;
+import javault.model.LoginEntry;
+import javault.model.VaultData;
+import javault.model.VaultSnapshot;
+
+/**
+ * Formato del vault a record cifrati singolarmente.
+ * Il file contiene un indice cifrato con i nomi login e la dimensione di ogni record,
+ * seguito dai record delle entry, ciascuno cifrato con AES-GCM con IV e tag propri.
+ * All'apertura viene decifrato solo l'indice; ogni entry viene decifrata
+ * quando viene richiesta tramite {@link VaultData#getLogin(String)}.
+ * In coda all'indice sono scritti cartella e tag dei login che li hanno, così che
+ * l'indice dei filtri sia disponibile senza decifrare le entry; gli indici scritti
+ * prima dell'introduzione dei tag terminano dopo l'ultima entry.
+ * <p>
+ * Per ogni record l'indice contiene anche il suo hash SHA-256: essendo l'indice autenticato,
+ * un record scambiato con quello di un altro login o sostituito con una versione precedente
+ * viene riconosciuto all'apertura, pur riscrivendo senza ricifrarli i record mai decifrati.
+ * Gli indici con gli hash iniziano con {@link #INDEX_DIGESTS}, quelli precedenti con il numero di entry.
+ * <p>
+ * L'indice termina con il numero di sequenza del primo record del {@link VaultJournal} non contenuto
+ * nel file, con cui la rilettura del journal riconosce i record iniziali rimossi;
+ * negli indici scritti in precedenza manca.
+ */
+final class SealedVaultFormat {
+
+    private static final int SEAL_BATCH_SIZE = 256;
+    /** Marcatore iniziale degli indici che contengono l'hash di ogni record. */
+    private static final int INDEX_DIGESTS = -1;
+    private static final int DIGEST_SIZE = 32;
+
+    private SealedVaultFormat() {
+    }
+
+    /**
+     * Cifra il vault nel formato a record singoli e lo scrive sul canale.
+     * Le entry caricate da disco e mai decifrate vengono riscritte senza essere ricifrate;
+     * le altre vengono cifrate a lotti con un unico {@link CipherEngine}.
+     * In memoria restano solo i record cifrati; le entry in chiaro di ogni lotto vengono
+     * azzerate subito dopo essere state cifrate.
+     *
+     * @param vault i dati del vault da cifrare
+     * @param key la chiave AES
+     * @param channel il canale su cui scrivere il contenuto, senza intestazione
+     * @param journalSequence il numero di sequenza del primo record del journal non contenuto nel vault
+     * @throws VaultException se una entry non può essere letta
+     * @throws IOException se la scrittura fallisce
+     */
+    static void write(VaultSnapshot vault, SecretKey key, WritableByteChannel channel, long journalSequence)
+            throws VaultException, IOException {
+        CipherEngine engine = new CipherEngine(key);
+        List<String> names = vault.names();
+        byte[][] records = sealEntries(vault, names, engine);
+        ByteBuffer[] buffers = new ByteBuffer[names.size() + 1];
+        byte[][] nameBytes = new byte[names.size()][];
+        MessageDigest digest = sha256();
+        int indexSize = 4 + 4;
+
+        byte[][][] labels = new byte[names.size()][][];
+        int labeled = 0;
+
+        for (int i = 0; i < names.size(); i++) {
+            nameBytes[i] = names.get(i).getBytes(StandardCharsets.UTF_8);
+            buffers[i + 1] = ByteBuffer.wrap(records[i]);
+            indexSize += 4 + nameBytes[i].length + 4 + DIGEST_SIZE;
+
+            labels[i] = encodeLabels(vault.peekLogin(names.get(i)));
+            if (labels[i] != null) {
+                labeled++;
+                indexSize += 4 + 4;
+                for (byte[] label : labels[i]) indexSize += 4 + label.length;
+            }
+        }
+        indexSize += 4 + 8;
+
+        ByteBuffer index = ByteBuffer.allocate(indexSize);
+        index.putInt(INDEX_DIGESTS).putInt(names.size());
+        for (int i = 0; i < names.size(); i++) {
+            index.putInt(nameBytes[i].length).put(nameBytes[i]);
+            index.putInt(records[i].length).put(digest.digest(records[i]));
+        }
+        index.putInt(labeled);
+        for (int i = 0; i < names.size(); i++) {
+            if (labels[i] == null) continue;
+            index.putInt(i).putInt(labels[i].length - 1);
+            for (byte[] label : labels[i]) {
+                index.putInt(label.length).put(label);
+            }
+        }
+        index.putLong(journalSequence);
+        byte[] sealedIndex = engine.seal(index.array());
+
+        buffers[0] = ByteBuffer.allocate(4 + sealedIndex.length).putInt(sealedIndex.length).put(sealedIndex).flip();
+        for (ByteBuffer buffer : buffers) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * Carica il vault decifrando solo l'indice dei nomi.
+     * I record delle entry vengono letti dallo stream ma restano cifrati finché non vengono richiesti.
+     *
+     * @param in lo stream posizionato dopo l'intestazione del file
+     * @param key la chiave AES
+     * @return il vault con le entry ancora cifrate e il numero di sequenza registrato nell'indice
+     * @throws InvalidPasswordException se l'indice non può essere decifrato
+     *         o un record non corrisponde al suo hash nell'indice
+     * @throws IOException se la lettura fallisce o il file è troncato
+     */
+    static Contents read(DataInputStream in, SecretKey key) throws InvalidPasswordException, IOException {
+        byte[] sealedIndex = new byte[in.readInt()];
+        in.readFully(sealedIndex);
+        byte[] index = new CipherEngine(key).open(sealedIndex);
+        if (index == null) {
+            throw new InvalidPasswordException("Master password errata o indice del vault corrotto");
+        }
+
+        VaultData vault = new VaultData();
+        ByteBuffer buffer = ByteBuffer.wrap(index);
+        int count = buffer.getInt();
+        MessageDigest digest = null;
+        byte[] expected = new byte[DIGEST_SIZE];
+        if (count == INDEX_DIGESTS) {
+            digest = sha256();
+            count = buffer.getInt();
+        }
+        String[] names = new String[count];
+        for (int i = 0; i < count; i++) {
+            names[i] = getString(buffer);
+            byte[] record = new byte[buffer.getInt()];
+            in.readFully(record);
+            if (digest != null) {
+                buffer.get(expected);
+                if (!MessageDigest.isEqual(expected, digest.digest(record))) {
+                    throw new InvalidPasswordException("Record del vault alterato: " + names[i]);
+                }
+            }
+            vault.addSealedLogin(names[i], record);
+        }
+        if (buffer.hasRemaining()) {
+            int labeled = buffer.getInt();
+            for (int i = 0; i < labeled; i++) {
+                String name = names[buffer.getInt()];
+                List<String> tags = new ArrayList<>();
+                int tagCount = buffer.getInt();
+                String folder = getString(buffer);
+                for (int j = 0; j < tagCount; j++) {
+                    tags.add(getString(buffer));
+                }
+                vault.setLabels(name, folder, tags);
+            }
+        }
+        long journalSequence = buffer.remaining() >= 8 ? buffer.getLong() : -1;
+        CipherEngine engine = new CipherEngine(key);
+        vault.setUnsealer(record -> openEntry(record, engine));
+        return new Contents(vault, journalSequence);
+    }
+
+    /**
+     * Contenuto di un vault letto con {@link #read(DataInputStream, SecretKey)}.
+     *
+     * @param vault il vault con le entry ancora cifrate
+     * @param journalSequence il numero di sequenza del primo record del journal non contenuto, -1 se non è noto
+     */
+    record Contents(VaultData vault, long journalSequence) {
+    }
+
+    /**
+     * Ricifra con una nuova chiave i record delle entry caricate da disco, a lotti di {@link #SEAL_BATCH_SIZE}:
+     * ogni record viene decifrato con la vecchia chiave e cifrato con la nuova, senza aprire le entry,
+     * e i testi in chiaro di ogni lotto vengono azzerati subito dopo.
+     *
+     * @param vault il vault caricato con {@code oldKey}
+     * @param oldKey la chiave dei record attuali
+     * @param newKey la nuova chiave
+     * @return false se un record non può essere decifrato: il vault resta invariato
+     */
+    static boolean reseal(VaultData vault, SecretKey oldKey, SecretKey newKey) {
+        CipherEngine oldEngine = new CipherEngine(oldKey);
+        CipherEngine newEngine = new CipherEngine(newKey);
+        return vault.resealAll(SEAL_BATCH_SIZE, records -> {
+            byte[][] plaintexts = new byte[records.length][];
+            try {
+                for (int i = 0; i < records.length; i++) {
+                    plaintexts[i] = oldEngine.open(records[i]);
+                    if (plaintexts[i] == null) return null;
+                }
+                return newEngine.sealAll(plaintexts);
+            } finally {
+                for (byte[] plaintext : plaintexts) {
+                    if (plaintext != null) Arrays.fill(plaintext, (byte) 0); // Pulizia dati sensibili dalla RAM
+                }
+            }
+        }, record -> openEntry(record, newEngine));
+    }
+
+    /**
+     * Restituisce i record cifrati delle entry, riusando quelli caricati da disco se disponibili.
+     * Le entry da cifrare vengono raccolte in lotti di {@link #SEAL_BATCH_SIZE},
+     * così in memoria resta in chiaro al più un lotto alla volta.
+     */
+    private static byte[][] sealEntries(VaultSnapshot vault, List<String> names, CipherEngine engine) throws VaultException {
+        byte[][] records = new byte[names.size()][];
+        int[] pending = new int[Math.min(SEAL_BATCH_SIZE, names.size())];
+        byte[][] plaintexts = new byte[pending.length][];
+        int count = 0;
+
+        try {
+            for (int i = 0; i < names.size(); i++) {
+                LoginEntry entry = vault.peekLogin(names.get(i));
+                if (entry == null) {
+                    throw new VaultException("Impossibile leggere il login " + names.get(i));
+                }
+                if (entry.getSealed() != null) {
+                    records[i] = entry.getSealed();
+                    continue;
+                }
+
+                pending[count] = i;
+                plaintexts[count++] = encodeEntry(entry);
+                if (count == pending.length) {
+                    sealBatch(engine, plaintexts, pending, count, records);
+                    count = 0;
+                }
+            }
+            if (count > 0) {
+                sealBatch(engine, plaintexts, pending, count, records);
+            }
+        } finally {
+            for (byte[] plaintext : plaintexts) {
+                if (plaintext != null) Arrays.fill(plaintext, (byte) 0); // Pulizia dati sensibili dalla RAM
+            }
+        }
+        return records;
+    }
+
+    private static void sealBatch(CipherEngine engine, byte[][] plaintexts, int[] pending, int count, byte[][] records) {
+        byte[][] batch = count == plaintexts.length ? plaintexts : Arrays.copyOf(plaintexts, count);
+        byte[][] sealed = engine.sealAll(batch);
+        for (int j = 0; j < count; j++) {
+            records[pending[j]] = sealed[j];
+            Arrays.fill(plaintexts[j], (byte) 0);
+            plaintexts[j] = null;
+        }
+    }
+
+    /**
+     * Codifica in UTF-8 cartella e tag di una entry, nell'ordine.
+     *
+     * @return la cartella seguita dai tag, o null se la entry non ha né cartella né tag
+     */
+    private static byte[][] encodeLabels(LoginEntry entry) {
+        String folder = entry.getFolder();
+        Set<String> tags = entry.getTags();
+        if (folder.isEmpty() && tags.isEmpty()) return null;
+
+        byte[][] labels = new byte[1 + tags.size()][];
+        labels[0] = folder.getBytes(StandardCharsets.UTF_8);
+        int i = 1;
+        for (String tag : tags) {
+            labels[i++] = tag.getBytes(StandardCharsets.UTF_8);
+        }
+        return labels;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 non disponibile", e);
+        }
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] encoded = new byte[buffer.getInt()];
+        buffer.get(encoded);
+        return new String(encoded, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Codifica username e password di una entry nel testo in chiaro del suo record.
+     */
+    private static byte[] encodeEntry(LoginEntry entry) {
+        char[] username = entry.getUsername();
+        char[] password = entry.getPassword();
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate(4 + username.length * 2 + 4 + password.length * 2);
+            putChars(buffer, username);
+            putChars(buffer, password);
+            return buffer.array();
+        } finally {
+            Arrays.fill(username, '\0');
+            Arrays.fill(password, '\0');
+        }
+    }
+
+    /**
+     * Decifra il record di una singola entry.
+     *
+     * @return la entry in chiaro, o null se il record non può essere decifrato
+     */
+    private static LoginEntry openEntry(byte[] record, CipherEngine engine) {
+        byte[] plaintext = engine.open(record);
+        if (plaintext == null) return null;
+
+        char[] username = null;
+        char[] password = null;
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(plaintext);
+            username = getChars(buffer);
+            password = getChars(buffer);
+            return new LoginEntry(username, password);
+        } finally {
+            if (username != null) Arrays.fill(username, '\0');
+            if (password != null) Arrays.fill(password, '\0');
+            Arrays.fill(plaintext, (byte) 0); // Pulizia dati sensibili dalla RAM
+        }
+    }
+
+    /**
+     * Scrive un array di caratteri preceduto dalla sua lunghezza.
+     */
+    static void putChars(ByteBuffer buffer, char[] chars) {
+        buffer.putInt(chars.length);
+        for (char c : chars) {
+            buffer.putChar(c);
+        }
+    }
+
+    /**
+     * Legge un array di caratteri scritto con {@link #putChars(ByteBuffer, char[])}.
+     */
+    static char[] getChars(ByteBuffer buffer) {
+        char[] chars = new char[buffer.getInt()];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = buffer.getChar();
+        }
+        return chars;
+    }
+}
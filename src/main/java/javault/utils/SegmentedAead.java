@@ -0,0 +1,280 @@
+package javault.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * Cifratura AES-GCM a segmenti di dimensione fissa, per vault troppo grandi
+ * per essere cifrati o decifrati come un unico blocco.
+ * <p>
+ * Il contenuto è formato dalla dimensione dei segmenti (4 byte), da un prefisso casuale
+ * di 7 byte e dai segmenti cifrati, ciascuno seguito dal proprio tag di 16 byte.
+ * Il nonce di ogni segmento è composto da prefisso, contatore del segmento (4 byte)
+ * e da un flag che indica l'ultimo segmento, così segmenti scambiati, duplicati
+ * o un file troncato non superano la verifica del tag.
+ * La lettura mappa il file in memoria e decifra più segmenti in parallelo,
+ * tenendo in RAM solo una finestra limitata di segmenti in chiaro.
+ */
+final class SegmentedAead {
+
+    static final int SEGMENT_SIZE = 64 * 1024;
+    private static final int MAX_SEGMENT_SIZE = 16 * 1024 * 1024;
+    private static final int TAG_SIZE = 16;
+    private static final int NONCE_PREFIX_SIZE = 7;
+
+    private static final SecureRandom secureRandom = new SecureRandom();
+
+    private SegmentedAead() {
+    }
+
+    /**
+     * Calcola il nonce di un segmento: prefisso del file, contatore e flag di ultimo segmento.
+     */
+    private static GCMParameterSpec nonce(byte[] prefix, long segment, boolean last) {
+        if (segment > 0xFFFFFFFFL) {
+            throw new IllegalStateException("Numero massimo di segmenti superato");
+        }
+        byte[] nonce = new byte[12];
+        System.arraycopy(prefix, 0, nonce, 0, NONCE_PREFIX_SIZE);
+        nonce[7] = (byte) (segment >>> 24);
+        nonce[8] = (byte) (segment >>> 16);
+        nonce[9] = (byte) (segment >>> 8);
+        nonce[10] = (byte) segment;
+        nonce[11] = (byte) (last ? 1 : 0);
+        return new GCMParameterSpec(TAG_SIZE * 8, nonce);
+    }
+
+    /**
+     * Stream che cifra i dati scritti un segmento alla volta.
+     * Usa un buffer di un solo segmento, riusato e azzerato alla chiusura.
+     */
+    static final class Encryptor extends OutputStream {
+
+        private final SecretKey key;
+        private final OutputStream out;
+        private final byte[] prefix = new byte[NONCE_PREFIX_SIZE];
+        private final byte[] plaintext = new byte[SEGMENT_SIZE];
+        private final byte[] ciphertext = new byte[SEGMENT_SIZE + TAG_SIZE];
+        private int count;
+        private long segment;
+        private boolean closed;
+
+        /**
+         * Scrive subito dimensione dei segmenti e prefisso dei nonce.
+         *
+         * @param key la chiave AES
+         * @param out lo stream su cui scrivere il contenuto cifrato
+         * @throws IOException se la scrittura fallisce
+         */
+        Encryptor(SecretKey key, OutputStream out) throws IOException {
+            this.key = key;
+            this.out = out;
+            secureRandom.nextBytes(prefix);
+            out.write(ByteBuffer.allocate(4).putInt(SEGMENT_SIZE).array());
+            out.write(prefix);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                // Un segmento pieno viene cifrato solo quando arrivano altri dati:
+                // fino ad allora potrebbe essere l'ultimo
+                if (count == plaintext.length) {
+                    seal(false);
+                }
+                int n = Math.min(len, plaintext.length - count);
+                System.arraycopy(b, off, plaintext, count, n);
+                count += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            closed = true;
+            try {
+                seal(true);
+                out.close();
+            } finally {
+                Arrays.fill(plaintext, (byte) 0); // Pulizia dati sensibili dalla RAM
+            }
+        }
+
+        private void seal(boolean last) throws IOException {
+            try {
+                Cipher cipher = CipherEngine.cipher();
+                cipher.init(Cipher.ENCRYPT_MODE, key, nonce(prefix, segment++, last));
+                int n = cipher.doFinal(plaintext, 0, count, ciphertext, 0);
+                out.write(ciphertext, 0, n);
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Errore nella cifratura del segmento", e);
+            }
+            Arrays.fill(plaintext, 0, count, (byte) 0);
+            count = 0;
+        }
+    }
+
+    /**
+     * Stream che decifra un contenuto segmentato mappato in memoria.
+     * I segmenti successivi vengono decifrati in parallelo sul pool comune,
+     * mantenendo al massimo una finestra di segmenti pari al numero di core.
+     */
+    static final class Decryptor extends InputStream {
+
+        private final SecretKey key;
+        private final byte[] prefix = new byte[NONCE_PREFIX_SIZE];
+        private final int segmentSize;
+        private final long segmentCount;
+        private final long lastSegmentLength;
+        private final int segmentsPerRegion;
+        private final MappedByteBuffer[] regions;
+        private final int window = Math.max(1, Runtime.getRuntime().availableProcessors());
+        private final ArrayDeque<CompletableFuture<byte[]>> pending = new ArrayDeque<>();
+        private long nextSegment;
+        private byte[] current = new byte[0];
+        private int position;
+
+        /**
+         * Legge l'intestazione dei segmenti dalla posizione corrente del canale
+         * e mappa in memoria il resto del file.
+         *
+         * @param key la chiave AES
+         * @param channel il canale posizionato all'inizio del contenuto segmentato
+         * @throws IOException se il contenuto è troncato o non valido
+         */
+        Decryptor(SecretKey key, FileChannel channel) throws IOException {
+            this.key = key;
+
+            ByteBuffer header = ByteBuffer.allocate(4 + NONCE_PREFIX_SIZE);
+            while (header.hasRemaining()) {
+                if (channel.read(header) < 0) throw new IOException("Vault segmentato troncato");
+            }
+            header.flip();
+            segmentSize = header.getInt();
+            header.get(prefix);
+            if (segmentSize <= 0 || segmentSize > MAX_SEGMENT_SIZE) {
+                throw new IOException("Dimensione dei segmenti non valida: " + segmentSize);
+            }
+
+            long start = channel.position();
+            long length = channel.size() - start;
+            long cipherSegmentSize = (long) segmentSize + TAG_SIZE;
+            segmentCount = Math.max(1, (length + cipherSegmentSize - 1) / cipherSegmentSize);
+            lastSegmentLength = length - (segmentCount - 1) * cipherSegmentSize;
+            if (lastSegmentLength < TAG_SIZE) {
+                throw new IOException("Vault segmentato troncato");
+            }
+
+            // Una singola mappatura non può superare Integer.MAX_VALUE byte
+            segmentsPerRegion = (int) Math.max(1, Integer.MAX_VALUE / cipherSegmentSize);
+            long regionSize = segmentsPerRegion * cipherSegmentSize;
+            regions = new MappedByteBuffer[(int) ((segmentCount + segmentsPerRegion - 1) / segmentsPerRegion)];
+            for (int i = 0; i < regions.length; i++) {
+                long offset = i * regionSize;
+                regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, start + offset,
+                        Math.min(regionSize, length - offset));
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!ensureData()) return -1;
+            return current[position++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            if (!ensureData()) return -1;
+            int n = Math.min(len, current.length - position);
+            System.arraycopy(current, position, b, off, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public void close() {
+            Arrays.fill(current, (byte) 0); // Pulizia dati sensibili dalla RAM
+            for (CompletableFuture<byte[]> segment : pending) {
+                segment.thenAccept(plaintext -> Arrays.fill(plaintext, (byte) 0));
+            }
+            pending.clear();
+            nextSegment = segmentCount;
+        }
+
+        /**
+         * Passa al segmento successivo quando quello corrente è stato letto completamente.
+         *
+         * @return false se non ci sono altri dati
+         */
+        private boolean ensureData() throws IOException {
+            while (position == current.length) {
+                schedule();
+                CompletableFuture<byte[]> next = pending.poll();
+                if (next == null) return false;
+
+                Arrays.fill(current, (byte) 0);
+                try {
+                    current = next.join();
+                } catch (CompletionException e) {
+                    close();
+                    throw new IOException("Segmento del vault non valido", e.getCause());
+                }
+                position = 0;
+            }
+            return true;
+        }
+
+        private void schedule() {
+            while (pending.size() < window && nextSegment < segmentCount) {
+                long segment = nextSegment++;
+                pending.add(CompletableFuture.supplyAsync(() -> decrypt(segment), ForkJoinPool.commonPool()));
+            }
+        }
+
+        private byte[] decrypt(long segment) {
+            boolean last = segment == segmentCount - 1;
+            int length = (int) (last ? lastSegmentLength : segmentSize + TAG_SIZE);
+            int offset = (int) ((segment % segmentsPerRegion) * (segmentSize + TAG_SIZE));
+            ByteBuffer source = regions[(int) (segment / segmentsPerRegion)].slice(offset, length);
+
+            byte[] plaintext = new byte[length - TAG_SIZE];
+            try {
+                Cipher cipher = CipherEngine.cipher();
+                cipher.init(Cipher.DECRYPT_MODE, key, nonce(prefix, segment, last));
+                cipher.doFinal(source, ByteBuffer.wrap(plaintext));
+                return plaintext;
+            } catch (GeneralSecurityException e) {
+                Arrays.fill(plaintext, (byte) 0);
+                throw new CompletionException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,587 @@
+package javault.utils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Year;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Stima della robustezza di una password nello stile di zxcvbn: invece di contare le classi di caratteri,
+ * stima quanti tentativi servirebbero a un attaccante che prova prima le password più probabili.
+ * <p>
+ * La password viene scomposta in schemi riconoscibili: parole dei dizionari (anche con maiuscole,
+ * sostituzioni come "@" per "a" o scritte al contrario), percorsi sulla tastiera, ripetizioni,
+ * sequenze e anni. Ogni schema ha un numero di tentativi stimato; i caratteri non coperti valgono
+ * dieci tentativi ciascuno. Una programmazione dinamica sceglie la scomposizione che richiede meno
+ * tentativi, penalizzando il numero di schemi con il fattoriale come zxcvbn.
+ * <p>
+ * I dizionari vengono caricati una sola volta, al primo uso della classe, in un {@link DictionaryTrie}
+ * di array primitivi; anche le tastiere sono tabelle indicizzate per carattere. La stima di una password
+ * non accede a strutture condivise modificabili e richiede pochi microsecondi, quindi può essere ripetuta
+ * a ogni tasto premuto e da più thread.
+ */
+public final class StrengthEstimator {
+
+    /**
+     * Esito della stima.
+     *
+     * @param guessesLog10 il logaritmo in base 10 del numero di tentativi stimato
+     * @param score il punteggio da 0 (molto debole) a 4 (ottima), come in zxcvbn
+     * @param feedback il motivo principale della debolezza e un suggerimento, vuoto se la password è robusta
+     */
+    public record Estimate(double guessesLog10, int score, String feedback) {
+    }
+
+    /** Punteggio minimo considerato robusto, circa 10^8 tentativi. */
+    public static final int STRONG_SCORE = 3;
+
+    private static final String[] DICTIONARIES = {"passwords", "english", "italian", "names"};
+    private static final int DICTIONARY_PASSWORDS = 0;
+    private static final int DICTIONARY_NAMES = 3;
+    private static final String[] SCORE_LABELS = {"Molto debole", "Debole", "Discreta", "Buona", "Ottima"};
+
+    private static final double BRUTEFORCE_LOG10 = 1; // dieci tentativi per carattere
+    private static final double MIN_SINGLE_CHAR_LOG10 = 1;
+    private static final double MIN_MULTI_CHAR_LOG10 = Math.log10(50);
+    private static final int MIN_YEAR_SPACE = 20;
+    private static final int MIN_WORD_LENGTH = 3;
+
+    private static final int DICTIONARY = 0;
+    private static final int SPATIAL = 1;
+    private static final int REPEAT = 2;
+    private static final int SEQUENCE = 3;
+    private static final int YEAR = 4;
+
+    private static final DictionaryTrie TRIE = loadDictionaries();
+    /** Lettere che un carattere può sostituire, per i caratteri ASCII. */
+    private static final char[][] UNLEET = new char[128][];
+    private static final Keyboard QWERTY = new Keyboard(new String[][]{
+            {"`~", "1!", "2@", "3#", "4$", "5%", "6^", "7&", "8*", "9(", "0)", "-_", "=+"},
+            {"qQ", "wW", "eE", "rR", "tT", "yY", "uU", "iI", "oO", "pP", "[{", "]}", "\\|"},
+            {"aA", "sS", "dD", "fF", "gG", "hH", "jJ", "kK", "lL", ";:", "'\""},
+            {"zZ", "xX", "cC", "vV", "bB", "nN", "mM", ",<", ".>", "/?"}
+    }, new int[]{0, 3, 4, 5}, true);
+    private static final Keyboard KEYPAD = new Keyboard(new String[][]{
+            {" ", "/", "*", "-"},
+            {"7", "8", "9", "+"},
+            {"4", "5", "6"},
+            {"1", "2", "3"},
+            {" ", "0", "."}
+    }, new int[]{0, 0, 0, 0, 0}, false);
+    private static final double[] LOG10_FACTORIAL = new double[257];
+
+    static {
+        String[] leet = {"a4@", "b8", "c(", "e3", "g69", "i1!|", "l1|7", "o0", "s$5", "t7+", "x%", "z2"};
+        for (String substitutions : leet) {
+            for (int i = 1; i < substitutions.length(); i++) {
+                char c = substitutions.charAt(i);
+                char[] letters = UNLEET[c] == null ? new char[0] : UNLEET[c];
+                letters = Arrays.copyOf(letters, letters.length + 1);
+                letters[letters.length - 1] = substitutions.charAt(0);
+                UNLEET[c] = letters;
+            }
+        }
+        for (int i = 1; i < LOG10_FACTORIAL.length; i++) {
+            LOG10_FACTORIAL[i] = LOG10_FACTORIAL[i - 1] + Math.log10(i);
+        }
+    }
+
+    private StrengthEstimator() {
+    }
+
+    /**
+     * Schema riconosciuto in una porzione della password.
+     */
+    private static final class Match {
+        final int start;
+        final int end;
+        final int kind;
+        final double log10;
+        /** Dizionario, numero di svolte o lunghezza della base, secondo il tipo. */
+        final int detail;
+        final boolean leet;
+        final boolean reversed;
+
+        Match(int start, int end, int kind, double log10, int detail, boolean leet, boolean reversed) {
+            this.start = start;
+            this.end = end;
+            this.kind = kind;
+            double minimum = end == start ? MIN_SINGLE_CHAR_LOG10 : MIN_MULTI_CHAR_LOG10;
+            this.log10 = Math.max(log10, minimum);
+            this.detail = detail;
+            this.leet = leet;
+            this.reversed = reversed;
+        }
+    }
+
+    /**
+     * Stima la robustezza di una password. Nessuna copia della password sopravvive alla chiamata.
+     *
+     * @param password la password
+     * @return la stima
+     */
+    public static Estimate estimate(char[] password) {
+        char[] lower = new char[password.length];
+        char[] scratch = new char[password.length];
+        try {
+            for (int i = 0; i < password.length; i++) {
+                lower[i] = Character.toLowerCase(password[i]);
+            }
+            List<Match> sequence = new ArrayList<>();
+            double log10 = minimumGuesses(password, lower, scratch, sequence);
+            int score = scoreOf(log10);
+            return new Estimate(log10, score, score >= STRONG_SCORE ? "" : feedback(password.length, sequence));
+        } finally {
+            Arrays.fill(lower, '\0'); // Pulizia dati sensibili dalla RAM
+            Arrays.fill(scratch, '\0');
+        }
+    }
+
+    /**
+     * @param guessesLog10 il logaritmo in base 10 del numero di tentativi
+     * @return il punteggio da 0 a 4 corrispondente, con le soglie di zxcvbn
+     */
+    public static int scoreOf(double guessesLog10) {
+        if (guessesLog10 < 3) return 0;
+        if (guessesLog10 < 6) return 1;
+        if (guessesLog10 < 8) return 2;
+        if (guessesLog10 < 10) return 3;
+        return 4;
+    }
+
+    /**
+     * @param score il punteggio da 0 a 4
+     * @return la descrizione del punteggio da mostrare all'utente
+     */
+    public static String describe(int score) {
+        return SCORE_LABELS[Math.max(0, Math.min(score, SCORE_LABELS.length - 1))];
+    }
+
+    /**
+     * Cerca tutti gli schemi e sceglie la scomposizione con meno tentativi.
+     * Gli stati sono le posizioni, distinguendo se l'ultimo carattere è coperto da forza bruta,
+     * così che una sequenza di caratteri non coperti conti come un solo schema.
+     */
+    private static double minimumGuesses(char[] password, char[] lower, char[] scratch, List<Match> sequence) {
+        int n = password.length;
+        if (n == 0) return 0;
+        List<Match> matches = new ArrayList<>();
+        matchDictionary(password, lower, scratch, false, matches);
+        for (int i = 0; i < n; i++) {
+            scratch[i] = lower[n - 1 - i];
+        }
+        System.arraycopy(scratch, 0, lower, 0, n);
+        matchDictionary(password, lower, scratch, true, matches);
+        for (int i = 0; i < n; i++) {
+            lower[i] = Character.toLowerCase(password[i]);
+        }
+        matchSpatial(password, QWERTY, matches);
+        matchSpatial(password, KEYPAD, matches);
+        matchRepeat(password, matches);
+        matchSequence(password, matches);
+        matchYear(password, matches);
+
+        List<List<Match>> byEnd = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) byEnd.add(new ArrayList<>(2));
+        for (Match match : matches) byEnd.get(match.end).add(match);
+
+        // [0] ultimo schema riconosciuto, [1] ultimo carattere coperto da forza bruta
+        double[][] sums = new double[2][n + 1];
+        int[][] counts = new int[2][n + 1];
+        Match[] via = new Match[n + 1];
+        boolean[][] fromBrute = new boolean[2][n + 1];
+        for (double[] row : sums) Arrays.fill(row, Double.POSITIVE_INFINITY);
+        sums[0][0] = 0;
+        for (int i = 1; i <= n; i++) {
+            // forza bruta sul carattere i - 1, nuova o prolungata
+            if (better(sums[0][i - 1], counts[0][i - 1] + 1, sums[1][i - 1], counts[1][i - 1])) {
+                sums[1][i] = sums[0][i - 1] + BRUTEFORCE_LOG10;
+                counts[1][i] = counts[0][i - 1] + 1;
+            } else {
+                sums[1][i] = sums[1][i - 1] + BRUTEFORCE_LOG10;
+                counts[1][i] = counts[1][i - 1];
+                fromBrute[1][i] = true;
+            }
+            for (Match match : byEnd.get(i - 1)) {
+                for (int state = 0; state < 2; state++) {
+                    double sum = sums[state][match.start] + match.log10;
+                    int count = counts[state][match.start] + 1;
+                    if (total(sum, count) < total(sums[0][i], counts[0][i])) {
+                        sums[0][i] = sum;
+                        counts[0][i] = count;
+                        via[i] = match;
+                        fromBrute[0][i] = state == 1;
+                    }
+                }
+            }
+        }
+
+        int state = total(sums[0][n], counts[0][n]) <= total(sums[1][n], counts[1][n]) ? 0 : 1;
+        double best = total(sums[state][n], counts[state][n]);
+        for (int i = n; i > 0; ) {
+            boolean previous = fromBrute[state][i];
+            if (state == 0) {
+                sequence.add(via[i]);
+                i = via[i].start;
+            } else {
+                i--;
+            }
+            state = previous ? 1 : 0;
+        }
+        return best;
+    }
+
+    private static double total(double sum, int count) {
+        return sum + LOG10_FACTORIAL[Math.min(count, LOG10_FACTORIAL.length - 1)];
+    }
+
+    private static boolean better(double sumA, int countA, double sumB, int countB) {
+        return total(sumA + BRUTEFORCE_LOG10, countA) < total(sumB + BRUTEFORCE_LOG10, countB);
+    }
+
+    /**
+     * Cerca le parole dei dizionari che iniziano in ogni posizione, seguendo il trie
+     * e provando per ogni carattere anche le lettere che può sostituire.
+     * Se {@code reversed} è true, {@code lower} contiene la password al contrario.
+     */
+    private static void matchDictionary(char[] password, char[] lower, char[] chosen, boolean reversed, List<Match> matches) {
+        for (int start = 0; start < lower.length; start++) {
+            walk(password, lower, chosen, start, start, DictionaryTrie.ROOT, reversed, matches);
+        }
+    }
+
+    private static void walk(char[] password, char[] lower, char[] chosen, int start, int position, int node,
+                             boolean reversed, List<Match> matches) {
+        if (position == lower.length) return;
+        char c = lower[position];
+        step(password, lower, chosen, start, position, node, c, reversed, matches);
+        char[] letters = c < UNLEET.length ? UNLEET[c] : null;
+        if (letters != null) {
+            for (char letter : letters) {
+                step(password, lower, chosen, start, position, node, letter, reversed, matches);
+            }
+        }
+    }
+
+    private static void step(char[] password, char[] lower, char[] chosen, int start, int position, int node,
+                             char letter, boolean reversed, List<Match> matches) {
+        int child = TRIE.child(node, letter);
+        if (child < 0) return;
+        chosen[position] = letter;
+        int rank = TRIE.rank(child);
+        if (rank > 0 && position - start + 1 >= MIN_WORD_LENGTH) {
+            int n = lower.length;
+            int from = reversed ? n - 1 - position : start;
+            int to = reversed ? n - 1 - start : position;
+            double leet = leetVariations(lower, chosen, start, position);
+            double log10 = Math.log10(rank) + uppercaseVariations(password, from, to) + leet + (reversed ? Math.log10(2) : 0);
+            matches.add(new Match(from, to, DICTIONARY, log10, TRIE.dictionary(child), leet > 0, reversed));
+        }
+        walk(password, lower, chosen, start, position + 1, child, reversed, matches);
+    }
+
+    /**
+     * @return il logaritmo dei modi di scrivere la parola con le stesse maiuscole, come in zxcvbn
+     */
+    private static double uppercaseVariations(char[] password, int from, int to) {
+        int upper = 0;
+        int lowerCount = 0;
+        for (int i = from; i <= to; i++) {
+            if (Character.isUpperCase(password[i])) upper++;
+            else if (Character.isLowerCase(password[i])) lowerCount++;
+        }
+        if (upper == 0) return 0;
+        boolean firstOnly = upper == 1 && Character.isUpperCase(password[from]);
+        boolean lastOnly = upper == 1 && Character.isUpperCase(password[to]);
+        if (lowerCount == 0 || firstOnly || lastOnly) return Math.log10(2);
+        return Math.log10(partialBinomialSum(upper + lowerCount, Math.min(upper, lowerCount)));
+    }
+
+    /**
+     * @return il logaritmo dei modi di applicare le stesse sostituzioni alla parola, come in zxcvbn
+     */
+    private static double leetVariations(char[] lower, char[] chosen, int start, int end) {
+        double log10 = 0;
+        for (int i = start; i <= end; i++) {
+            char substitute = lower[i];
+            char letter = chosen[i];
+            if (substitute == letter) continue;
+            boolean first = true;
+            int substituted = 0;
+            int plain = 0;
+            for (int j = start; j <= end; j++) {
+                if (lower[j] == substitute && chosen[j] == letter) {
+                    if (j < i) first = false;
+                    substituted++;
+                } else if (lower[j] == letter) {
+                    plain++;
+                }
+            }
+            if (!first) continue; // coppia già contata
+            log10 += plain == 0 ? Math.log10(2) : Math.log10(partialBinomialSum(substituted + plain, Math.min(substituted, plain)));
+        }
+        return log10;
+    }
+
+    /**
+     * Cerca i percorsi di almeno tre tasti adiacenti sulla tastiera indicata.
+     */
+    private static void matchSpatial(char[] password, Keyboard keyboard, List<Match> matches) {
+        int i = 0;
+        while (i < password.length - 2) {
+            int j = i;
+            int turns = 0;
+            int direction = Integer.MIN_VALUE;
+            int shifted = keyboard.isShifted(password[i]) ? 1 : 0;
+            while (j + 1 < password.length) {
+                int next = keyboard.direction(password[j], password[j + 1]);
+                if (next == Integer.MIN_VALUE) break;
+                if (next != direction) turns++;
+                direction = next;
+                if (keyboard.isShifted(password[j + 1])) shifted++;
+                j++;
+            }
+            if (j - i + 1 >= 3) {
+                matches.add(new Match(i, j, SPATIAL, keyboard.guessesLog10(j - i + 1, turns, shifted), turns, false, false));
+                i = j;
+            } else {
+                i++;
+            }
+        }
+    }
+
+    /**
+     * Cerca le ripetizioni di una stessa base, scegliendo in ogni posizione quella che copre più caratteri.
+     * I tentativi sono quelli della base, stimati ricorsivamente, per il numero di ripetizioni.
+     */
+    private static void matchRepeat(char[] password, List<Match> matches) {
+        int n = password.length;
+        int i = 0;
+        while (i < n - 1) {
+            int bestPeriod = 0;
+            int bestCount = 0;
+            for (int period = 1; period <= (n - i) / 2; period++) {
+                int count = 1;
+                while (i + (count + 1) * period <= n
+                        && Arrays.equals(password, i, i + period, password, i + count * period, i + (count + 1) * period)) {
+                    count++;
+                }
+                if (count >= 2 && period * count > bestPeriod * bestCount) {
+                    bestPeriod = period;
+                    bestCount = count;
+                }
+            }
+            if (bestCount == 0) {
+                i++;
+                continue;
+            }
+            double base = estimate(Arrays.copyOfRange(password, i, i + bestPeriod)).guessesLog10();
+            int end = i + bestPeriod * bestCount - 1;
+            matches.add(new Match(i, end, REPEAT, base + Math.log10(bestCount), bestPeriod, false, false));
+            i = end + 1;
+        }
+    }
+
+    /**
+     * Cerca le sequenze di almeno tre caratteri della stessa classe a passo costante, come "abc" o "9753".
+     */
+    private static void matchSequence(char[] password, List<Match> matches) {
+        int i = 0;
+        while (i < password.length - 2) {
+            int delta = password[i + 1] - password[i];
+            int j = i + 1;
+            if (delta != 0 && Math.abs(delta) <= 5 && sameClass(password[i], password[j])) {
+                while (j + 1 < password.length && password[j + 1] - password[j] == delta && sameClass(password[j], password[j + 1])) {
+                    j++;
+                }
+            }
+            if (j - i + 1 >= 3) {
+                char first = password[i];
+                double base = "aAzZ019".indexOf(first) >= 0 ? 4 : Character.isDigit(first) ? 10 : 26;
+                if (delta < 0) base *= 2;
+                matches.add(new Match(i, j, SEQUENCE, Math.log10(base * (j - i + 1)), delta, false, false));
+                i = j;
+            } else {
+                i++;
+            }
+        }
+    }
+
+    private static boolean sameClass(char a, char b) {
+        return (Character.isLowerCase(a) && Character.isLowerCase(b))
+                || (Character.isUpperCase(a) && Character.isUpperCase(b))
+                || (Character.isDigit(a) && Character.isDigit(b));
+    }
+
+    /**
+     * Cerca gli anni tra il 1900 e il 2099: i tentativi crescono con la distanza dall'anno corrente.
+     */
+    private static void matchYear(char[] password, List<Match> matches) {
+        int reference = Year.now().getValue();
+        for (int i = 0; i + 3 < password.length; i++) {
+            int year = 0;
+            for (int j = i; j < i + 4 && year >= 0; j++) {
+                year = password[j] >= '0' && password[j] <= '9' ? year * 10 + password[j] - '0' : -1;
+            }
+            if (year >= 1900 && year <= 2099) {
+                matches.add(new Match(i, i + 3, YEAR, Math.log10(Math.max(Math.abs(year - reference), MIN_YEAR_SPACE)), year, false, false));
+            }
+        }
+    }
+
+    /**
+     * @return la somma dei coefficienti binomiali C(n, i) per i da 1 a k
+     */
+    private static double partialBinomialSum(int n, int k) {
+        double sum = 0;
+        for (int i = 1; i <= k; i++) {
+            sum += binomial(n, i);
+        }
+        return Math.max(sum, 1);
+    }
+
+    private static double binomial(int n, int k) {
+        if (k < 0 || k > n) return 0;
+        double result = 1;
+        for (int i = 1; i <= k; i++) {
+            result = result * (n - k + i) / i;
+        }
+        return result;
+    }
+
+    /**
+     * Sceglie il messaggio sullo schema più lungo della scomposizione.
+     */
+    private static String feedback(int length, List<Match> sequence) {
+        Match main = null;
+        for (Match match : sequence) {
+            if (main == null || match.end - match.start > main.end - main.start) main = match;
+        }
+        String suggestion = "Aggiungi una o due parole poco comuni.";
+        if (main == null) {
+            return length < 10 ? "La password è troppo corta. " + suggestion : suggestion;
+        }
+        String warning = switch (main.kind) {
+            case DICTIONARY -> {
+                if (main.reversed) yield "Le parole scritte al contrario sono facili da indovinare.";
+                if (main.detail == DICTIONARY_PASSWORDS) yield "È tra le password più usate.";
+                if (main.leet) yield "Sostituzioni prevedibili come \"@\" al posto di \"a\" aiutano poco.";
+                if (main.detail == DICTIONARY_NAMES) yield "Nomi e cognomi sono facili da indovinare.";
+                yield "Le parole di uso comune sono facili da indovinare.";
+            }
+            case SPATIAL -> main.detail == 1
+                    ? "Le file di tasti vicini sono facili da indovinare."
+                    : "I percorsi brevi sulla tastiera sono facili da indovinare.";
+            case REPEAT -> main.detail == 1
+                    ? "Ripetizioni come \"aaa\" sono facili da indovinare."
+                    : "Ripetizioni come \"abcabc\" sono solo poco più difficili di \"abc\".";
+            case SEQUENCE -> "Sequenze come \"abc\" o \"6543\" sono facili da indovinare.";
+            default -> "Gli anni sono facili da indovinare.";
+        };
+        return warning + " " + suggestion;
+    }
+
+    private static DictionaryTrie loadDictionaries() {
+        List<List<String>> words = new ArrayList<>(DICTIONARIES.length);
+        for (String name : DICTIONARIES) {
+            List<String> dictionary = new ArrayList<>();
+            try (InputStream in = StrengthEstimator.class.getResourceAsStream("strength/" + name + ".txt")) {
+                if (in == null) {
+                    throw new IOException("Dizionario " + name + " non trovato");
+                }
+                BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String word = line.trim().toLowerCase();
+                    if (word.length() >= MIN_WORD_LENGTH) dictionary.add(word);
+                }
+            } catch (IOException e) {
+                System.err.println("Impossibile caricare i dizionari per la stima della robustezza.");
+                throw new IllegalStateException("Impossibile caricare i dizionari", e);
+            }
+            words.add(dictionary);
+        }
+        return new DictionaryTrie(words);
+    }
+
+    /**
+     * Tastiera come griglia di tasti, indicizzata per carattere ASCII. Le colonne sono misurate
+     * in mezzi tasti, così che le file sfalsate della tastiera QWERTY abbiano due vicini sopra e due sotto.
+     */
+    private static final class Keyboard {
+
+        private final byte[] rows = new byte[128];
+        private final byte[] columns = new byte[128];
+        private final boolean[] shifted = new boolean[128];
+        private final boolean slanted;
+        private final double keysLog10;
+        private final double averageDegree;
+
+        Keyboard(String[][] layout, int[] offsets, boolean slanted) {
+            this.slanted = slanted;
+            Arrays.fill(rows, (byte) -1);
+            List<Character> keys = new ArrayList<>();
+            for (int r = 0; r < layout.length; r++) {
+                for (int c = 0; c < layout[r].length; c++) {
+                    String key = layout[r][c];
+                    if (key.isBlank()) continue;
+                    for (int k = 0; k < key.length(); k++) {
+                        char ch = key.charAt(k);
+                        rows[ch] = (byte) r;
+                        columns[ch] = (byte) (2 * c + offsets[r]);
+                        shifted[ch] = k > 0;
+                    }
+                    keys.add(key.charAt(0));
+                }
+            }
+            int degrees = 0;
+            for (char a : keys) {
+                for (char b : keys) {
+                    if (direction(a, b) != Integer.MIN_VALUE) degrees++;
+                }
+            }
+            this.keysLog10 = Math.log10(keys.size());
+            this.averageDegree = (double) degrees / keys.size();
+        }
+
+        /**
+         * @return la direzione dal tasto di a al tasto di b, o {@link Integer#MIN_VALUE} se non sono adiacenti
+         */
+        int direction(char a, char b) {
+            if (a >= 128 || b >= 128 || rows[a] < 0 || rows[b] < 0) return Integer.MIN_VALUE;
+            int dr = rows[b] - rows[a];
+            int dc = columns[b] - columns[a];
+            boolean adjacent = slanted
+                    ? (dr == 0 && Math.abs(dc) == 2) || (Math.abs(dr) == 1 && Math.abs(dc) == 1)
+                    : Math.abs(dr) <= 1 && Math.abs(dc) <= 2 && (dr != 0 || dc != 0);
+            return adjacent ? dr * 16 + dc : Integer.MIN_VALUE;
+        }
+
+        boolean isShifted(char c) {
+            return c < 128 && shifted[c];
+        }
+
+        /**
+         * @return il logaritmo dei tentativi per un percorso di {@code length} tasti con {@code turns} svolte, come in zxcvbn
+         */
+        double guessesLog10(int length, int turns, int shiftedCount) {
+            double guesses = 0;
+            for (int i = 2; i <= length; i++) {
+                for (int j = 1; j <= Math.min(turns, i - 1); j++) {
+                    guesses += binomial(i - 1, j - 1) * Math.pow(averageDegree, j);
+                }
+            }
+            double log10 = Math.log10(guesses) + keysLog10;
+            int plain = length - shiftedCount;
+            if (shiftedCount > 0) {
+                log10 += plain == 0 ? Math.log10(2) : Math.log10(partialBinomialSum(length, Math.min(shiftedCount, plain)));
+            }
+            return log10;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package javault.utils;
+
+/**
+ * Codifiche del contenuto in chiaro del vault, usate dai formati
+ * {@link VaultFormat#SINGLE_BLOCK} e {@link VaultFormat#SEGMENTED}.
+ * La codifica viene riconosciuta automaticamente dal primo byte del contenuto decifrato,
+ * quindi i vault JSON esistenti vengono letti e migrati al salvataggio successivo.
+ */
+public enum VaultCodec {
+
+    /**
+     * Serializzazione JSON tramite Gson, usata dalle versioni precedenti.
+     */
+    JSON,
+
+    /**
+     * Codifica binaria compatta con lunghezze in varint e byte di versione.
+     */
+    BINARY
+}
@@ -0,0 +1,229 @@
+package javault.utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.crypto.SecretKey;
+
+import javault.exception.InvalidPasswordException;
+import javault.exception.VaultException;
+import javault.model.LoginEntry;
+import javault.model.VaultData;
+import javault.model.VaultSnapshot;
+
+/**
+ * Esportazione del vault in un file cifrato portabile o, su richiesta esplicita, in CSV in chiaro.
+ * <p>
+ * Le entry vengono scritte una alla volta su stream a buffer fisso, quindi la memoria usata
+ * non dipende dalla dimensione del vault. L'esportazione cifrata contiene una propria
+ * intestazione KDF (salt e iterazioni calibrate) seguita dal contenuto nella codifica binaria,
+ * cifrato a segmenti: si apre con la password scelta al momento dell'esportazione,
+ * indipendente dalla master password del vault.
+ */
+public final class VaultExporter {
+
+    private static final byte[] MAGIC = {'J', 'V', 'E', 'X'};
+    private static final byte VERSION = 1;
+
+    private VaultExporter() {
+    }
+
+    /**
+     * Esporta il vault in un file cifrato con una chiave derivata dalla password indicata.
+     * Il file viene scritto su un file temporaneo e rinominato solo a esportazione conclusa.
+     *
+     * @param vault il vault da esportare
+     * @param file il file di destinazione
+     * @param password la password dell'esportazione, azzerata al termine
+     * @throws VaultException se una entry non è leggibile o la scrittura fallisce
+     */
+    public static void exportEncrypted(VaultData vault, Path file, char[] password) throws VaultException {
+        KdfHeader header = KdfHeader.calibrate(KdfHeader.DEFAULT_TARGET_MILLIS);
+        SecretKey key;
+        try {
+            key = header.deriveKey(password);
+        } finally {
+            Arrays.fill(password, '\0');
+        }
+
+        writeAtomically(file, channel -> {
+            ByteBuffer encodedHeader = header.encode();
+            ByteBuffer prologue = ByteBuffer.allocate(MAGIC.length + 1 + 2 + encodedHeader.remaining())
+                    .put(MAGIC)
+                    .put(VERSION)
+                    .putShort((short) encodedHeader.remaining())
+                    .put(encodedHeader)
+                    .flip();
+            while (prologue.hasRemaining()) {
+                channel.write(prologue);
+            }
+
+            OutputStream out = VaultStreams.nonClosing(Channels.newOutputStream(channel));
+            // La codifica binaria richiede un elenco stabile: si esporta uno snapshot
+            try (VaultSnapshot snapshot = vault.snapshot()) {
+                BinaryVaultCodec.write(snapshot, new SegmentedAead.Encryptor(key, out));
+            }
+        });
+    }
+
+    /**
+     * Legge un file prodotto da {@link #exportEncrypted(VaultData, Path, char[])}.
+     *
+     * @param file il file esportato
+     * @param password la password dell'esportazione, azzerata al termine
+     * @return i login contenuti nel file
+     * @throws InvalidPasswordException se la password è errata o il file è stato alterato
+     * @throws VaultException se il file non è un'esportazione valida
+     */
+    public static VaultData readEncrypted(Path file, char[] password) throws InvalidPasswordException, VaultException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer prologue = readFully(channel, MAGIC.length + 1 + 2);
+            byte[] magic = new byte[MAGIC.length];
+            prologue.get(magic);
+            if (!Arrays.equals(magic, MAGIC) || prologue.get() != VERSION) {
+                throw new VaultException("Il file non è un'esportazione di JaVault");
+            }
+            KdfHeader header = KdfHeader.decode(readFully(channel, prologue.getShort() & 0xFFFF));
+
+            SecretKey key = header.deriveKey(password);
+            try {
+                return BinaryVaultCodec.read(new SegmentedAead.Decryptor(key, channel));
+            } catch (IOException e) {
+                if (VaultUtils.isAuthenticationFailure(e)) {
+                    throw new InvalidPasswordException("Password errata o esportazione corrotta");
+                }
+                throw e;
+            }
+        } catch (IOException e) {
+            throw new VaultException("Impossibile leggere l'esportazione", e);
+        } finally {
+            Arrays.fill(password, '\0');
+        }
+    }
+
+    /**
+     * Esporta il vault in un CSV in chiaro con colonne {@code name,username,password},
+     * leggibile dall'importazione di JaVault e dagli altri password manager.
+     * Il file contiene le password in chiaro: va usato solo su richiesta esplicita dell'utente.
+     * Viene esportato uno snapshot del vault: le modifiche concorrenti non vengono attese
+     * e non entrano nel file. Le righe sono in ordine alfabetico.
+     *
+     * @param vault il vault da esportare
+     * @param file il file di destinazione
+     * @return il numero di login esportati
+     * @throws VaultException se la scrittura fallisce
+     */
+    public static int exportCsv(VaultData vault, Path file) throws VaultException {
+        int[] exported = new int[1];
+        writeAtomically(file, channel -> {
+            try (VaultSnapshot snapshot = vault.snapshot();
+                 Writer writer = new VaultStreams.Utf8Writer(VaultStreams.nonClosing(Channels.newOutputStream(channel)))) {
+                List<String> names = snapshot.names();
+                names.sort(null);
+                writer.write("name,username,password\r\n");
+                for (String name : names) {
+                    LoginEntry entry = snapshot.getLogin(name);
+                    if (entry == null) continue;
+
+                    char[] username = entry.getUsername();
+                    char[] password = entry.getPassword();
+                    try {
+                        writeCsvField(writer, name.toCharArray());
+                        writer.write(',');
+                        writeCsvField(writer, username);
+                        writer.write(',');
+                        writeCsvField(writer, password);
+                        writer.write("\r\n");
+                    } finally {
+                        Arrays.fill(username, '\0');
+                        Arrays.fill(password, '\0');
+                    }
+                    exported[0]++;
+                }
+            }
+        });
+        return exported[0];
+    }
+
+    /**
+     * Scrive un campo CSV, tra virgolette se contiene separatori, virgolette o a capo.
+     */
+    private static void writeCsvField(Writer writer, char[] value) throws IOException {
+        boolean quote = false;
+        for (char c : value) {
+            if (c == ',' || c == '"' || c == '\r' || c == '\n') {
+                quote = true;
+                break;
+            }
+        }
+        if (!quote) {
+            writer.write(value);
+            return;
+        }
+
+        // Scrive a tratti dall'array originale, raddoppiando le virgolette senza copie intermedie
+        writer.write('"');
+        int start = 0;
+        for (int i = 0; i < value.length; i++) {
+            if (value[i] == '"') {
+                writer.write(value, start, i + 1 - start);
+                start = i;
+            }
+        }
+        writer.write(value, start, value.length - start);
+        writer.write('"');
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, int size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) throw new IOException("Esportazione troncata");
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * Contenuto scritto sul canale di un file temporaneo.
+     */
+    @FunctionalInterface
+    private interface ChannelWriter {
+        void write(FileChannel channel) throws VaultException, IOException;
+    }
+
+    /**
+     * Scrive su un file temporaneo accanto alla destinazione e lo rinomina solo se la scrittura
+     * è andata a buon fine; in caso di errore il file temporaneo viene eliminato.
+     */
+    private static void writeAtomically(Path file, ChannelWriter content) throws VaultException {
+        Path target = file.toAbsolutePath();
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp,
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                content.write(channel);
+                channel.force(true);
+            }
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | VaultException e) {
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            if (e instanceof VaultException vaultException) throw vaultException;
+            throw new VaultException("Impossibile scrivere l'esportazione", e);
+        }
+    }
+}
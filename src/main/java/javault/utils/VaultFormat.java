@@ -0,0 +1,52 @@
+package javault.utils;
+
+/**
+ * Formati su disco supportati per il file vault.
+ * Il formato viene indicato nell'intestazione del file, così il caricamento
+ * riconosce automaticamente quale usare.
+ */
+public enum VaultFormat {
+
+    /**
+     * L'intero vault serializzato e cifrato come un unico blocco.
+     */
+    SINGLE_BLOCK((byte) 1),
+
+    /**
+     * Un indice cifrato dei nomi login seguito da un record cifrato per ogni entry,
+     * ciascuno con il proprio IV e tag: all'apertura si decifra solo l'indice.
+     */
+    SEALED((byte) 2),
+
+    /**
+     * L'intero vault serializzato e cifrato a segmenti di dimensione fissa,
+     * decifrabili in parallelo e con memoria limitata: adatto a vault molto grandi.
+     */
+    SEGMENTED((byte) 3);
+
+    private final byte id;
+
+    VaultFormat(byte id) {
+        this.id = id;
+    }
+
+    /**
+     * @return l'identificativo del formato scritto nell'intestazione del file
+     */
+    byte id() {
+        return id;
+    }
+
+    /**
+     * Restituisce il formato corrispondente all'identificativo letto dall'intestazione.
+     *
+     * @param id identificativo del formato
+     * @return il formato corrispondente, o null se sconosciuto
+     */
+    static VaultFormat fromId(byte id) {
+        for (VaultFormat format : values()) {
+            if (format.id == id) return format;
+        }
+        return null;
+    }
+}
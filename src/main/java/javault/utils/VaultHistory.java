@@ -0,0 +1,542 @@
+package javault.utils;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.crypto.SecretKey;
+
+import javault.model.HistoryStore;
+import javault.model.PasswordVersion;
+import javault.model.VaultData;
+
+/**
+ * Archivio su disco della cronologia delle password, accanto al file del vault.
+ * Il file contiene un indice cifrato con, per ogni login, data di sostituzione e dimensione
+ * di ogni versione, seguito dai record delle versioni, ciascuno cifrato con AES-GCM
+ * con IV e tag propri come nel formato {@link SealedVaultFormat}.
+ * I record di un login sono contigui, dalla versione più recente.
+ * <p>
+ * Ogni versione è codificata come differenza rispetto alla successiva, più recente:
+ * lunghezza del prefisso e del suffisso in comune e caratteri centrali, in varint.
+ * Una rotazione che cambia pochi caratteri occupa quindi pochi byte oltre a IV e tag.
+ * Nell'indice le date sono scritte come differenze dalla versione precedente.
+ * <p>
+ * L'apertura del vault non legge il file: l'indice viene decifrato alla prima richiesta
+ * di una cronologia, e di ogni login vengono letti e decifrati solo i suoi record.
+ */
+final class VaultHistory implements HistoryStore {
+
+    private static final String HISTORY_PATH = "vault/vault.hist";
+    private static final String TEMP_PATH = "vault/vault.hist.tmp";
+
+    private final CipherEngine engine;
+    private FileChannel channel;
+    private Map<String, Location> index;
+
+    /**
+     * Crea un archivio che legge il file della cronologia con la chiave indicata.
+     * Il file viene aperto solo alla prima lettura.
+     *
+     * @param key la chiave AES del vault
+     */
+    VaultHistory(SecretKey key) {
+        this.engine = new CipherEngine(key);
+    }
+
+    /**
+     * @return il percorso del file della cronologia
+     */
+    static Path path() {
+        return Path.of(HISTORY_PATH);
+    }
+
+    /**
+     * Indica se il file della cronologia, se esiste, è cifrato con la chiave indicata.
+     *
+     * @param key la chiave AES
+     * @return true se il file non esiste o il suo indice si decifra con la chiave
+     * @throws IOException se il file non è leggibile
+     */
+    static boolean isEncryptedWith(SecretKey key) throws IOException {
+        Path path = path();
+        if (!Files.exists(path)) return true;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return readIndex(channel, new CipherEngine(key)) != null;
+        }
+    }
+
+    @Override
+    public synchronized Set<String> names() {
+        try {
+            return index().keySet();
+        } catch (IOException e) {
+            System.err.println("Impossibile leggere la cronologia: " + e.getMessage());
+            return Set.of();
+        }
+    }
+
+    @Override
+    public synchronized List<PasswordVersion> load(String name) {
+        try {
+            Location location = index().get(name);
+            if (location == null) return List.of();
+
+            ByteBuffer records = ByteBuffer.allocate(location.size());
+            while (records.hasRemaining()) {
+                if (channel.read(records, location.offset() + records.position()) < 0) {
+                    throw new EOFException("Cronologia troncata");
+                }
+            }
+            return decodeVersions(records.flip(), location);
+        } catch (IOException e) {
+            System.err.println("Impossibile leggere la cronologia di " + name + ": " + e.getMessage());
+            return List.of();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            if (channel != null) channel.close();
+        } catch (IOException e) {
+            System.err.println("Errore durante la chiusura della cronologia: " + e.getMessage());
+        }
+        channel = null;
+        index = null;
+    }
+
+    /**
+     * Restituisce l'indice del file, aprendolo e decifrandolo alla prima chiamata.
+     */
+    private Map<String, Location> index() throws IOException {
+        if (index != null) return index;
+
+        Path path = path();
+        if (!Files.exists(path)) {
+            index = Map.of();
+            return index;
+        }
+        FileChannel opened = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            Map<String, Location> read = readIndex(opened, engine);
+            if (read == null) {
+                throw new IOException("Indice della cronologia non decifrabile");
+            }
+            channel = opened;
+            index = read;
+            return index;
+        } finally {
+            if (channel != opened) opened.close();
+        }
+    }
+
+    /**
+     * Scrive in modo atomico la cronologia del vault e vi collega il nuovo archivio.
+     * Vengono codificate e cifrate solo le cronologie modificate dall'ultimo salvataggio:
+     * le altre sono copiate dal file precedente senza decifrarle, se cifrato con la stessa chiave,
+     * altrimenti (ad esempio dopo un cambio di chiave) lette tramite il vault e ricifrate.
+     * I limiti di conservazione del vault valgono anche per le versioni copiate.
+     * Va chiamato con uno snapshot del vault aperto, che rinvia la pulizia
+     * delle versioni scartate nel frattempo.
+     *
+     * @param vault il vault di cui salvare la cronologia
+     * @param key la chiave AES
+     * @throws IOException se la scrittura fallisce
+     */
+    static void save(VaultData vault, SecretKey key) throws IOException {
+        Map<String, List<PasswordVersion>> changed = vault.getChangedHistories();
+        CipherEngine engine = new CipherEngine(key);
+        long oldest = System.currentTimeMillis() - vault.getMaxHistoryAge().toMillis();
+        int maxVersions = vault.getMaxHistoryVersions();
+        Path path = path();
+
+        try (FileChannel previous = Files.exists(path) ? FileChannel.open(path, StandardOpenOption.READ) : null) {
+            Map<String, Location> copyable = null;
+            if (previous != null) {
+                try {
+                    copyable = readIndex(previous, engine);
+                } catch (IOException e) {
+                    System.err.println("Cronologia precedente non leggibile: " + e.getMessage());
+                }
+            }
+
+            List<Pending> pending = new ArrayList<>();
+            for (String name : vault.getHistoryNames()) {
+                List<PasswordVersion> history = changed.get(name);
+                Location location = history == null && copyable != null ? copyable.get(name) : null;
+                if (location != null) {
+                    int kept = retained(location.replacedAt(), oldest, maxVersions);
+                    if (kept > 0) pending.add(copy(name, location, kept));
+                    continue;
+                }
+
+                if (history == null) history = vault.getPasswordHistory(name);
+                long[] replacedAt = new long[history.size()];
+                for (int i = 0; i < replacedAt.length; i++) {
+                    replacedAt[i] = history.get(i).getReplacedAt().toEpochMilli();
+                }
+                int kept = retained(replacedAt, oldest, maxVersions);
+                if (kept > 0) pending.add(encode(name, history.subList(0, kept), engine));
+            }
+
+            if (pending.isEmpty()) {
+                Files.deleteIfExists(path);
+            } else {
+                writeFile(pending, previous, engine);
+            }
+        }
+        vault.setHistoryStore(new VaultHistory(key));
+        vault.historiesSaved(changed);
+    }
+
+    private static void writeFile(List<Pending> pending, FileChannel previous, CipherEngine engine) throws IOException {
+        Bytes plainIndex = new Bytes(64 * pending.size());
+        byte[] sealedIndex;
+        try {
+            plainIndex.putVarint(pending.size());
+            for (Pending entry : pending) {
+                byte[] name = entry.name().getBytes(StandardCharsets.UTF_8);
+                plainIndex.putVarint(name.length);
+                plainIndex.put(name, 0, name.length);
+                plainIndex.putVarint(entry.lengths().length);
+                long newer = 0;
+                for (int i = 0; i < entry.lengths().length; i++) {
+                    long delta = i == 0 ? entry.replacedAt()[i] : newer - entry.replacedAt()[i];
+                    plainIndex.putVarlong((delta << 1) ^ (delta >> 63)); // zigzag: l'orologio può tornare indietro
+                    plainIndex.putVarint(entry.lengths()[i]);
+                    newer = entry.replacedAt()[i];
+                }
+            }
+            sealedIndex = new byte[CipherEngine.sealedSize(plainIndex.length)];
+            engine.encryptInto(plainIndex.buffer(), ByteBuffer.wrap(sealedIndex));
+        } finally {
+            plainIndex.wipe();
+        }
+
+        Path temp = Path.of(TEMP_PATH);
+        Files.createDirectories(temp.getParent());
+        try (FileChannel out = FileChannel.open(temp,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(out, ByteBuffer.allocate(4).putInt(sealedIndex.length).flip());
+            writeFully(out, ByteBuffer.wrap(sealedIndex));
+            for (Pending entry : pending) {
+                if (entry.sealed() != null) {
+                    for (byte[] record : entry.sealed()) {
+                        writeFully(out, ByteBuffer.wrap(record));
+                    }
+                    continue;
+                }
+                long size = 0;
+                for (int length : entry.lengths()) size += length;
+                for (long copied = 0; copied < size; ) {
+                    copied += previous.transferTo(entry.offset() + copied, size - copied, out);
+                }
+            }
+            out.force(true);
+        }
+        Files.move(temp, path(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static void writeFully(FileChannel out, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    /**
+     * @return il numero di versioni iniziali (le più recenti) entro i limiti di conservazione
+     */
+    private static int retained(long[] replacedAt, long oldest, int maxVersions) {
+        int limit = Math.min(replacedAt.length, maxVersions);
+        int kept = 0;
+        while (kept < limit && replacedAt[kept] >= oldest) {
+            kept++;
+        }
+        return kept;
+    }
+
+    /**
+     * Prepara la copia dei primi {@code kept} record di un login dal file precedente.
+     * Le versioni scartate sono le più vecchie, da cui nessun'altra dipende.
+     */
+    private static Pending copy(String name, Location location, int kept) {
+        return new Pending(name,
+                Arrays.copyOf(location.replacedAt(), kept),
+                Arrays.copyOf(location.lengths(), kept),
+                location.offset(),
+                null);
+    }
+
+    /**
+     * Codifica e cifra le versioni di un login, ciascuna come differenza dalla più recente.
+     */
+    private static Pending encode(String name, List<PasswordVersion> history, CipherEngine engine) {
+        long[] replacedAt = new long[history.size()];
+        int[] lengths = new int[history.size()];
+        byte[][] sealed = new byte[history.size()][];
+        Bytes record = new Bytes(64);
+        char[] newer = new char[0];
+        try {
+            for (int i = 0; i < sealed.length; i++) {
+                PasswordVersion version = history.get(i);
+                char[] password = version.getPassword();
+                record.clear();
+                encodeDelta(password, newer, record);
+                Arrays.fill(newer, '\0');
+                newer = password;
+
+                sealed[i] = new byte[CipherEngine.sealedSize(record.length)];
+                engine.encryptInto(record.buffer(), ByteBuffer.wrap(sealed[i]));
+                replacedAt[i] = version.getReplacedAt().toEpochMilli();
+                lengths[i] = sealed[i].length;
+            }
+        } finally {
+            Arrays.fill(newer, '\0');
+            record.wipe();
+        }
+        return new Pending(name, replacedAt, lengths, 0, sealed);
+    }
+
+    /**
+     * Scrive la password come differenza dalla versione più recente.
+     */
+    private static void encodeDelta(char[] password, char[] newer, Bytes out) {
+        int common = Math.min(password.length, newer.length);
+        int prefix = 0;
+        while (prefix < common && password[prefix] == newer[prefix]) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < common - prefix
+                && password[password.length - 1 - suffix] == newer[newer.length - 1 - suffix]) {
+            suffix++;
+        }
+
+        out.putVarint(prefix);
+        out.putVarint(suffix);
+        out.putVarint(password.length - prefix - suffix);
+        for (int i = prefix; i < password.length - suffix; i++) {
+            out.putVarint(password[i]);
+        }
+    }
+
+    /**
+     * Decifra e ricostruisce le versioni di un login a partire dalla più recente.
+     */
+    private List<PasswordVersion> decodeVersions(ByteBuffer records, Location location) throws IOException {
+        List<PasswordVersion> versions = new ArrayList<>(location.lengths().length);
+        char[] newer = new char[0];
+        byte[] plaintext = new byte[0];
+        try {
+            for (int i = 0; i < location.lengths().length; i++) {
+                ByteBuffer sealed = records.slice(records.position(), location.lengths()[i]);
+                records.position(records.position() + location.lengths()[i]);
+                Arrays.fill(plaintext, (byte) 0);
+                plaintext = new byte[Math.max(0, sealed.remaining() - CipherEngine.IV_SIZE - CipherEngine.TAG_SIZE)];
+                int length = engine.decryptInto(sealed, ByteBuffer.wrap(plaintext));
+                if (length < 0) {
+                    throw new IOException("Versione non decifrabile");
+                }
+
+                char[] password = decodeDelta(ByteBuffer.wrap(plaintext, 0, length), newer);
+                Arrays.fill(newer, '\0');
+                newer = password;
+                versions.add(new PasswordVersion(location.replacedAt()[i], password));
+            }
+            return versions;
+        } catch (IOException | RuntimeException e) {
+            versions.forEach(PasswordVersion::clear);
+            throw e instanceof IOException io ? io : new IOException("Cronologia corrotta", e);
+        } finally {
+            Arrays.fill(newer, '\0');
+            Arrays.fill(plaintext, (byte) 0); // Pulizia dati sensibili dalla RAM
+        }
+    }
+
+    /**
+     * Ricostruisce una password scritta con {@link #encodeDelta(char[], char[], Bytes)}.
+     */
+    private static char[] decodeDelta(ByteBuffer in, char[] newer) throws IOException {
+        int prefix = getVarint(in);
+        int suffix = getVarint(in);
+        int middle = getVarint(in);
+        if (prefix + suffix > newer.length || middle > in.remaining()) {
+            throw new IOException("Versione corrotta");
+        }
+
+        char[] password = new char[prefix + middle + suffix];
+        System.arraycopy(newer, 0, password, 0, prefix);
+        for (int i = 0; i < middle; i++) {
+            password[prefix + i] = (char) getVarint(in);
+        }
+        System.arraycopy(newer, newer.length - suffix, password, prefix + middle, suffix);
+        return password;
+    }
+
+    /**
+     * Legge e decifra l'indice dall'inizio del file.
+     *
+     * @return l'indice, o null se non può essere decifrato con la chiave del motore
+     */
+    private static Map<String, Location> readIndex(FileChannel channel, CipherEngine engine) throws IOException {
+        ByteBuffer size = ByteBuffer.allocate(4);
+        readFully(channel, size, 0);
+        int sealedSize = size.flip().getInt();
+        if (sealedSize < CipherEngine.IV_SIZE + CipherEngine.TAG_SIZE || sealedSize > channel.size() - 4) {
+            throw new IOException("Indice della cronologia non valido");
+        }
+        ByteBuffer sealed = ByteBuffer.allocate(sealedSize);
+        readFully(channel, sealed, 4);
+
+        byte[] plaintext = new byte[sealedSize - CipherEngine.IV_SIZE - CipherEngine.TAG_SIZE];
+        try {
+            if (engine.decryptInto(sealed.flip(), ByteBuffer.wrap(plaintext)) < 0) return null;
+
+            ByteBuffer in = ByteBuffer.wrap(plaintext);
+            int count = getVarint(in);
+            Map<String, Location> index = new HashMap<>(count * 2);
+            long offset = 4L + sealedSize;
+            for (int i = 0; i < count; i++) {
+                byte[] name = new byte[getVarint(in)];
+                in.get(name);
+                int versions = getVarint(in);
+                long[] replacedAt = new long[versions];
+                int[] lengths = new int[versions];
+                int total = 0;
+                for (int j = 0; j < versions; j++) {
+                    long zigzag = getVarlong(in);
+                    long delta = (zigzag >>> 1) ^ -(zigzag & 1);
+                    replacedAt[j] = j == 0 ? delta : replacedAt[j - 1] - delta;
+                    lengths[j] = getVarint(in);
+                    total = Math.addExact(total, lengths[j]);
+                }
+                index.put(new String(name, StandardCharsets.UTF_8), new Location(offset, replacedAt, lengths, total));
+                offset += total;
+            }
+            if (offset > channel.size()) {
+                throw new IOException("Cronologia troncata");
+            }
+            return index;
+        } catch (BufferUnderflowException | ArithmeticException | NegativeArraySizeException e) {
+            throw new IOException("Indice della cronologia corrotto", e);
+        } finally {
+            Arrays.fill(plaintext, (byte) 0);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Cronologia troncata");
+            }
+        }
+    }
+
+    private static int getVarint(ByteBuffer in) throws IOException {
+        long value = getVarlong(in);
+        if (value < 0 || value > Integer.MAX_VALUE) {
+            throw new IOException("Valore non valido nella cronologia");
+        }
+        return (int) value;
+    }
+
+    private static long getVarlong(ByteBuffer in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+        throw new IOException("Valore non valido nella cronologia");
+    }
+
+    /**
+     * Posizione e versioni della cronologia di un login nel file.
+     *
+     * @param offset posizione del primo record nel file
+     * @param replacedAt date di sostituzione, dalla versione più recente
+     * @param lengths dimensione di ogni record cifrato
+     * @param size dimensione totale dei record
+     */
+    private record Location(long offset, long[] replacedAt, int[] lengths, int size) {
+    }
+
+    /**
+     * Cronologia di un login da scrivere: record appena cifrati, oppure da copiare
+     * dal file precedente a partire da {@code offset} se {@code sealed} è null.
+     */
+    private record Pending(String name, long[] replacedAt, int[] lengths, long offset, byte[][] sealed) {
+    }
+
+    /**
+     * Buffer di byte a dimensione crescente per i dati in chiaro, azzerato quando viene ingrandito.
+     */
+    private static final class Bytes {
+
+        private byte[] data;
+        private int length;
+
+        Bytes(int capacity) {
+            data = new byte[Math.max(capacity, 16)];
+        }
+
+        void put(byte[] bytes, int offset, int count) {
+            ensure(count);
+            System.arraycopy(bytes, offset, data, length, count);
+            length += count;
+        }
+
+        void putVarint(int value) {
+            putVarlong(value & 0xFFFFFFFFL);
+        }
+
+        void putVarlong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                data[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            data[length++] = (byte) value;
+        }
+
+        /**
+         * @return una vista sui byte scritti, senza copiarli
+         */
+        ByteBuffer buffer() {
+            return ByteBuffer.wrap(data, 0, length);
+        }
+
+        void clear() {
+            Arrays.fill(data, 0, length, (byte) 0);
+            length = 0;
+        }
+
+        void wipe() {
+            Arrays.fill(data, (byte) 0); // Pulizia dati sensibili dalla RAM
+            length = 0;
+        }
+
+        private void ensure(int count) {
+            if (length + count <= data.length) return;
+            byte[] larger = Arrays.copyOf(data, Math.max(data.length * 2, length + count));
+            Arrays.fill(data, (byte) 0);
+            data = larger;
+        }
+    }
+}
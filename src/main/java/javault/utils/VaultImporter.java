@@ -0,0 +1,452 @@
+package javault.utils;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import javault.exception.InvalidPasswordException;
+import javault.exception.VaultException;
+import javault.model.LoginEntry;
+import javault.model.VaultData;
+
+/**
+ * Importazione massiva di credenziali esportate da altri password manager, in CSV o JSON.
+ * <p>
+ * Il file viene letto in streaming: le righe vengono raccolte in lotti e ogni lotto viene
+ * validato e trasformato in {@link LoginEntry} in parallelo sul pool fork-join comune,
+ * mentre la lettura prosegue. Al termine tutte le entry valide vengono inserite nel vault
+ * con un'unica operazione; il salvataggio resta a carico del chiamante, che lo esegue una volta sola.
+ * <p>
+ * Le colonne (o chiavi JSON) vengono riconosciute per nome, coprendo i formati di esportazione
+ * più comuni: nome/titolo del login, username ed eventuale URL, usato come nome se il titolo manca.
+ * Nel CSV username e password vengono letti direttamente in char[], senza passare per String.
+ */
+public final class VaultImporter {
+
+    private static final int BATCH_SIZE = 2048;
+    private static final int MAX_NAME_LENGTH = 256;
+
+    private static final List<String> NAME_KEYS = List.of("name", "title", "account", "nome");
+    private static final List<String> URL_KEYS = List.of("url", "login_uri", "web site", "website", "uri");
+    private static final List<String> USERNAME_KEYS = List.of("username", "login_username", "login name", "user", "email", "login");
+    private static final List<String> PASSWORD_KEYS = List.of("password", "login_password");
+
+    /**
+     * Esito di un'importazione.
+     *
+     * @param imported numero di login aggiunti al vault
+     * @param skipped numero di righe scartate perché non valide o con un nome già presente
+     */
+    public record Result(int imported, int skipped) {
+    }
+
+    private VaultImporter() {
+    }
+
+    /**
+     * Importa un file CSV o JSON, scegliendo il formato in base all'estensione.
+     *
+     * @param file il file da importare
+     * @param vault il vault in cui aggiungere i login
+     * @return l'esito dell'importazione
+     * @throws VaultException se il file non può essere letto o non è nel formato atteso
+     */
+    public static Result importFile(Path file, VaultData vault) throws VaultException {
+        boolean json = file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".json");
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return json ? importJson(reader, vault) : importCsv(reader, vault);
+        } catch (IOException e) {
+            throw new VaultException("Impossibile leggere il file da importare", e);
+        }
+    }
+
+    /**
+     * Importa i login da un file prodotto da {@link VaultExporter#exportEncrypted(VaultData, Path, char[])}.
+     * Cartella e tag dei login vengono mantenuti.
+     *
+     * @param file il file esportato
+     * @param password la password dell'esportazione, azzerata al termine
+     * @param vault il vault in cui aggiungere i login
+     * @return l'esito dell'importazione
+     * @throws InvalidPasswordException se la password è errata o il file è stato alterato
+     * @throws VaultException se il file non è un'esportazione valida
+     */
+    public static Result importEncrypted(Path file, char[] password, VaultData vault)
+            throws InvalidPasswordException, VaultException {
+        VaultData exported = VaultExporter.readEncrypted(file, password);
+        Map<String, LoginEntry> entries = new LinkedHashMap<>();
+        for (String name : exported.getAllLogins()) {
+            LoginEntry entry = exported.getLogin(name);
+            char[] username = entry.getUsername();
+            char[] secret = entry.getPassword();
+            entries.put(name, new LoginEntry(username, secret, entry.getFolder(), entry.getTags()));
+            Arrays.fill(username, '\0');
+            Arrays.fill(secret, '\0');
+        }
+        exported.clearAll();
+
+        int imported = vault.addAllLogins(entries);
+        return new Result(imported, entries.size() - imported);
+    }
+
+    /**
+     * Importa login da un CSV con riga di intestazione (RFC 4180: campi tra virgolette,
+     * virgolette raddoppiate, a capo all'interno dei campi).
+     *
+     * @param in il contenuto CSV
+     * @param vault il vault in cui aggiungere i login
+     * @return l'esito dell'importazione
+     * @throws VaultException se il contenuto non è un CSV valido o manca la colonna password
+     */
+    public static Result importCsv(Reader in, VaultData vault) throws VaultException {
+        CsvParser parser = new CsvParser(in);
+        Batches batches = new Batches();
+        try {
+            List<char[]> header = parser.readRow();
+            if (header == null) return new Result(0, 0);
+            int[] columns = {-1, -1, -1, -1};
+            for (int i = 0; i < header.size(); i++) {
+                String column = new String(header.get(i)).replace("\uFEFF", "").trim().toLowerCase(Locale.ROOT);
+                assignColumn(columns, column, i);
+            }
+            if (columns[3] < 0) {
+                throw new VaultException("Colonna password non trovata nel CSV");
+            }
+
+            List<char[]> row;
+            while ((row = parser.readRow()) != null) {
+                try {
+                    batches.add(new RawLogin(
+                            name(field(row, columns[0]), field(row, columns[1])),
+                            copy(field(row, columns[2])),
+                            copy(field(row, columns[3]))));
+                } finally {
+                    wipe(row);
+                }
+            }
+        } catch (IOException e) {
+            batches.discard();
+            throw new VaultException("CSV non valido", e);
+        } finally {
+            parser.wipe();
+        }
+        return batches.insertInto(vault);
+    }
+
+    /**
+     * Importa login da un JSON generico: un array di oggetti, oppure un oggetto che contiene
+     * uno o più array di oggetti (ad esempio {@code "items"}). Gli oggetti annidati, come
+     * {@code "login": {"username": ..., "password": ...}}, vengono letti come se fossero piatti.
+     * Gson legge i valori come String, quindi qui le password passano anche per String.
+     *
+     * @param in il contenuto JSON
+     * @param vault il vault in cui aggiungere i login
+     * @return l'esito dell'importazione
+     * @throws VaultException se il contenuto non è un JSON valido
+     */
+    public static Result importJson(Reader in, VaultData vault) throws VaultException {
+        Batches batches = new Batches();
+        try (JsonReader reader = new JsonReader(in)) {
+            if (reader.peek() == JsonToken.BEGIN_ARRAY) {
+                readJsonLogins(reader, batches);
+            } else {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    reader.nextName();
+                    if (reader.peek() == JsonToken.BEGIN_ARRAY) {
+                        readJsonLogins(reader, batches);
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            }
+        } catch (IOException | IllegalStateException e) {
+            batches.discard();
+            throw new VaultException("JSON non valido", e);
+        }
+        return batches.insertInto(vault);
+    }
+
+    private static void readJsonLogins(JsonReader reader, Batches batches) throws IOException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                reader.skipValue();
+                continue;
+            }
+            Map<String, String> fields = new LinkedHashMap<>();
+            readJsonFields(reader, fields);
+            batches.add(new RawLogin(
+                    name(chars(firstValue(fields, NAME_KEYS)), chars(firstValue(fields, URL_KEYS))),
+                    chars(firstValue(fields, USERNAME_KEYS)),
+                    chars(firstValue(fields, PASSWORD_KEYS))));
+        }
+        reader.endArray();
+    }
+
+    /**
+     * Legge i valori semplici di un oggetto JSON, appiattendo gli oggetti annidati.
+     * Se una chiave compare più volte vale la prima occorrenza; gli array vengono ignorati.
+     */
+    private static void readJsonFields(JsonReader reader, Map<String, String> fields) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String key = reader.nextName().trim().toLowerCase(Locale.ROOT);
+            switch (reader.peek()) {
+                case BEGIN_OBJECT -> readJsonFields(reader, fields);
+                case STRING, NUMBER -> fields.putIfAbsent(key, reader.nextString());
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Associa una colonna CSV al campo che rappresenta, se non è già stato associato.
+     * Le posizioni sono nell'ordine nome, URL, username, password.
+     */
+    private static void assignColumn(int[] columns, String column, int index) {
+        List<List<String>> keys = List.of(NAME_KEYS, URL_KEYS, USERNAME_KEYS, PASSWORD_KEYS);
+        for (int k = 0; k < keys.size(); k++) {
+            if (columns[k] < 0 && keys.get(k).contains(column)) {
+                columns[k] = index;
+                return;
+            }
+        }
+    }
+
+    private static String firstValue(Map<String, String> fields, List<String> keys) {
+        for (String key : keys) {
+            String value = fields.get(key);
+            if (value != null) return value;
+        }
+        return null;
+    }
+
+    private static char[] field(List<char[]> row, int column) {
+        return column >= 0 && column < row.size() ? row.get(column) : null;
+    }
+
+    private static char[] copy(char[] value) {
+        return value != null ? Arrays.copyOf(value, value.length) : null;
+    }
+
+    private static char[] chars(String value) {
+        return value != null ? value.toCharArray() : null;
+    }
+
+    /**
+     * Il nome del login è il titolo, o l'URL se il titolo manca. Il nome non è un dato segreto.
+     */
+    private static String name(char[] title, char[] url) {
+        String name = title != null ? new String(title).trim() : "";
+        if (name.isEmpty() && url != null) name = new String(url).trim();
+        return name;
+    }
+
+    private static void wipe(List<char[]> row) {
+        for (char[] field : row) {
+            Arrays.fill(field, '\0'); // Pulizia dati sensibili dalla RAM
+        }
+    }
+
+    /**
+     * Una riga letta dal file, non ancora validata.
+     */
+    private record RawLogin(String name, char[] username, char[] password) {
+
+        void wipe() {
+            if (username != null) Arrays.fill(username, '\0');
+            if (password != null) Arrays.fill(password, '\0');
+        }
+    }
+
+    /**
+     * Raccoglie le righe in lotti e ne affida la validazione al pool fork-join
+     * man mano che i lotti si riempiono.
+     */
+    private static final class Batches {
+
+        private final List<CompletableFuture<Map<String, LoginEntry>>> futures = new ArrayList<>();
+        private List<RawLogin> current = new ArrayList<>(BATCH_SIZE);
+        private int rows;
+
+        void add(RawLogin login) {
+            current.add(login);
+            rows++;
+            if (current.size() == BATCH_SIZE) submit();
+        }
+
+        private void submit() {
+            List<RawLogin> batch = current;
+            current = new ArrayList<>(BATCH_SIZE);
+            futures.add(CompletableFuture.supplyAsync(() -> build(batch), ForkJoinPool.commonPool()));
+        }
+
+        /**
+         * Valida un lotto e costruisce le entry, azzerando le righe originali.
+         * All'interno del lotto vale la prima riga con un dato nome.
+         */
+        private static Map<String, LoginEntry> build(List<RawLogin> batch) {
+            Map<String, LoginEntry> entries = new LinkedHashMap<>();
+            for (RawLogin login : batch) {
+                try {
+                    if (login.name().isEmpty() || login.name().length() > MAX_NAME_LENGTH
+                            || login.password() == null || login.password().length == 0
+                            || entries.containsKey(login.name())) {
+                        continue;
+                    }
+                    char[] username = login.username() != null ? login.username() : new char[0];
+                    entries.put(login.name(), new LoginEntry(username, login.password()));
+                } finally {
+                    login.wipe();
+                }
+            }
+            return entries;
+        }
+
+        /**
+         * Attende tutti i lotti e inserisce le entry nel vault con un'unica operazione.
+         */
+        Result insertInto(VaultData vault) throws VaultException {
+            if (!current.isEmpty()) submit();
+
+            Map<String, LoginEntry> entries = new LinkedHashMap<>();
+            try {
+                for (CompletableFuture<Map<String, LoginEntry>> future : futures) {
+                    for (Map.Entry<String, LoginEntry> entry : future.join().entrySet()) {
+                        LoginEntry previous = entries.putIfAbsent(entry.getKey(), entry.getValue());
+                        if (previous != null) entry.getValue().clear();
+                    }
+                }
+            } catch (CompletionException e) {
+                discard();
+                entries.values().forEach(LoginEntry::clear);
+                throw new VaultException("Importazione non riuscita", e.getCause());
+            }
+
+            int imported = vault.addAllLogins(entries);
+            return new Result(imported, rows - imported);
+        }
+
+        /**
+         * Interrompe l'importazione, azzerando le righe e le entry già costruite.
+         */
+        void discard() {
+            current.forEach(RawLogin::wipe);
+            current.clear();
+            for (CompletableFuture<Map<String, LoginEntry>> future : futures) {
+                try {
+                    future.join().values().forEach(LoginEntry::clear);
+                } catch (CompletionException e) {
+                    // Il lotto non ha prodotto entry da azzerare
+                }
+            }
+            futures.clear();
+        }
+    }
+
+    /**
+     * Lettore CSV incrementale. I campi vengono accumulati in un buffer di caratteri
+     * riusato e restituiti come char[], così i valori segreti non diventano mai String.
+     */
+    private static final class CsvParser {
+
+        private final Reader in;
+        private final char[] buffer = new char[VaultStreams.BUFFER_SIZE];
+        private char[] field = new char[256];
+        private int fieldLength;
+        private int position;
+        private int limit;
+
+        CsvParser(Reader in) {
+            this.in = in;
+        }
+
+        /**
+         * Legge la riga successiva, saltando le righe vuote.
+         *
+         * @return i campi della riga, o null a fine file
+         */
+        List<char[]> readRow() throws IOException {
+            List<char[]> row = new ArrayList<>();
+            int c = read();
+            while (c == '\r' || c == '\n') c = read();
+            if (c < 0) return null;
+
+            boolean quoted = false;
+            while (true) {
+                if (quoted) {
+                    if (c < 0) throw new IOException("Campo tra virgolette non terminato");
+                    if (c == '"') {
+                        c = read();
+                        if (c != '"') {
+                            quoted = false;
+                            continue;
+                        }
+                    }
+                    append((char) c);
+                } else if (c == '"' && fieldLength == 0) {
+                    quoted = true;
+                } else if (c == ',') {
+                    row.add(takeField());
+                } else if (c == '\r' || c == '\n' || c < 0) {
+                    row.add(takeField());
+                    return row;
+                } else {
+                    append((char) c);
+                }
+                c = read();
+            }
+        }
+
+        private int read() throws IOException {
+            if (position == limit) {
+                Arrays.fill(buffer, 0, limit, '\0');
+                limit = in.read(buffer, 0, buffer.length);
+                position = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    return -1;
+                }
+            }
+            return buffer[position++];
+        }
+
+        private void append(char c) {
+            if (fieldLength == field.length) {
+                char[] larger = Arrays.copyOf(field, field.length * 2);
+                Arrays.fill(field, '\0');
+                field = larger;
+            }
+            field[fieldLength++] = c;
+        }
+
+        private char[] takeField() {
+            char[] value = Arrays.copyOf(field, fieldLength);
+            Arrays.fill(field, 0, fieldLength, '\0');
+            fieldLength = 0;
+            return value;
+        }
+
+        void wipe() {
+            Arrays.fill(buffer, '\0'); // Pulizia dati sensibili dalla RAM
+            Arrays.fill(field, '\0');
+        }
+    }
+}
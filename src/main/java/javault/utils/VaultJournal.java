@@ -0,0 +1,675 @@
+package javault.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.crypto.SecretKey;
+
+import javault.exception.InvalidPasswordException;
+import javault.exception.VaultException;
+import javault.model.LoginEntry;
+import javault.model.VaultBatch;
+import javault.model.VaultData;
+import javault.model.VaultSnapshot;
+
+/**
+ * Journal append-only delle modifiche al vault.
+ * Ogni aggiunta, rimozione o modifica di cartella e tag viene cifrata singolarmente
+ * con AES-GCM e accodata al file di journal, evitando di riscrivere l'intero vault a ogni modifica;
+ * le modifiche di un {@link VaultBatch} formano un unico record.
+ * Al caricamento il journal viene riapplicato sopra il file base; quando supera
+ * una soglia di dimensione il {@link VaultSaver} lo compatta in un nuovo file base.
+ * <p>
+ * Ogni record è preceduto dalla lunghezza, con il bit più alto impostato, e da un numero di sequenza
+ * che prosegue tra journal ruotato e journal corrente; il numero di sequenza è autenticato come
+ * dato associato di AES-GCM, quindi record duplicati o riordinati e record mancanti tra due record
+ * presenti vengono riconosciuti. Il file base nel formato {@link VaultFormat#SEALED} registra
+ * nel suo indice autenticato il numero di sequenza del primo record non contenuto nello snapshot:
+ * anche la rimozione dei primi record del journal viene riconosciuta. La rimozione di record
+ * interi in coda, scritti dopo l'ultimo salvataggio completo, non è invece riconoscibile:
+ * equivale a riportare il vault a uno stato precedente.
+ * I record senza il bit impostato, scritti dalle versioni precedenti, non hanno numero di sequenza.
+ * <p>
+ * Ogni record viene scritto nel file prima che la modifica sia applicata o confermata, quindi
+ * sopravvive alla chiusura improvvisa del programma; la sincronizzazione su disco non avviene
+ * per ogni record ma con {@link #sync()}, che il {@link VaultSaver} esegue sul proprio thread
+ * una volta per tutti i record accodati in un breve intervallo: chi modifica il vault
+ * (tipicamente il thread della GUI) non attende mai il disco. Un crash del sistema operativo
+ * prima della sincronizzazione può perdere solo le modifiche di quell'intervallo.
+ * Un crash durante la scrittura lascia al più un record finale incompleto, che viene troncato
+ * alla rilettura successiva prima di accodare nuovi record.
+ */
+public class VaultJournal {
+
+    private static final String JOURNAL_PATH = "vault/vault.journal";
+    private static final String ROTATED_PATH = "vault/vault.journal.old";
+    private static final long COMPACTION_THRESHOLD = 1L << 20; // 1 MiB
+
+    private static final byte OP_ADD = 1;
+    private static final byte OP_REMOVE = 2;
+    private static final byte OP_CLEAR = 3;
+    private static final byte OP_LABELS = 4;
+    private static final byte OP_BATCH = 5;
+    /** Aggiunta con l'istante della modifica; i record {@link #OP_ADD} delle versioni precedenti non lo hanno. */
+    private static final byte OP_ADD_AT = 6;
+
+    /** Bit della lunghezza che indica un record con numero di sequenza. */
+    private static final int SEQUENCED = 0x80000000;
+    private static final int MIN_RECORD_SIZE = CipherEngine.IV_SIZE + CipherEngine.TAG_SIZE;
+
+    private static final Object lock = new Object();
+    /**
+     * Tenuto in lettura da chi accoda un record fino alla pubblicazione della modifica nel vault,
+     * in scrittura da {@link #rotate(VaultData)}: uno snapshot non vede mai un record già accodato
+     * al journal ruotato ma non ancora pubblicato.
+     */
+    private static final ReentrantReadWriteLock publishLock = new ReentrantReadWriteLock();
+    private static FileChannel journalChannel;
+    /** Indica se sono stati accodati record non ancora sincronizzati su disco. */
+    private static boolean unsynced;
+    /** Numero di sequenza del prossimo record, proseguito dall'ultimo record riapplicato. */
+    private static long nextSequence;
+
+    /**
+     * Accoda al journal l'aggiunta del login specificato, già presente nel vault.
+     *
+     * @param vault il vault che contiene il login appena aggiunto
+     * @param name nome del login aggiunto
+     * @param key la chiave AES usata per cifrare il record
+     * @throws VaultException se il record non può essere scritto
+     */
+    public static void appendAdd(VaultData vault, String name, SecretKey key) throws VaultException {
+        LoginEntry entry = vault.getLogin(name);
+        if (entry == null) {
+            throw new VaultException("Login non presente nel vault: " + name);
+        }
+
+        char[] username;
+        char[] password;
+        synchronized (entry) {
+            try {
+                username = entry.getUsername();
+                password = entry.getPassword();
+            } catch (IllegalStateException e) {
+                throw new VaultException("Login rimosso prima della registrazione: " + name);
+            }
+        }
+        byte[] payload = encodeAdd(name, System.currentTimeMillis(), username, password);
+        Arrays.fill(username, '\0');
+        Arrays.fill(password, '\0');
+        try {
+            append(payload, key);
+        } finally {
+            Arrays.fill(payload, (byte) 0); // Pulizia dati sensibili dalla RAM
+        }
+    }
+
+    /**
+     * Accoda al journal la rimozione del login specificato.
+     *
+     * @param name nome del login rimosso
+     * @param key la chiave AES usata per cifrare il record
+     * @throws VaultException se il record non può essere scritto
+     */
+    public static void appendRemove(String name, SecretKey key) throws VaultException {
+        append(encodeRemove(name), key);
+    }
+
+    /**
+     * Accoda al journal cartella e tag attuali del login specificato.
+     *
+     * @param vault il vault che contiene il login appena etichettato
+     * @param name nome del login
+     * @param key la chiave AES usata per cifrare il record
+     * @throws VaultException se il login non esiste o il record non può essere scritto
+     */
+    public static void appendLabels(VaultData vault, String name, SecretKey key) throws VaultException {
+        LoginEntry entry = vault.peekLogin(name);
+        if (entry == null) {
+            throw new VaultException("Login non presente nel vault: " + name);
+        }
+
+        append(encodeLabels(name, entry.getFolder(), entry.getTags()), key);
+    }
+
+    /**
+     * Accoda al journal tutte le modifiche di un batch in un unico record, riapplicato per intero
+     * o per niente: un batch interrotto da un crash lascia un record troncato, che viene ignorato.
+     * Da usare come {@link VaultBatch.Writer}, prima che il batch venga applicato al vault.
+     *
+     * @param batch il batch da registrare
+     * @param key la chiave AES usata per cifrare il record
+     * @throws VaultException se il record non può essere scritto
+     */
+    public static void appendBatch(VaultBatch batch, SecretKey key) throws VaultException {
+        List<byte[]> records = new ArrayList<>(batch.size());
+        try {
+            int size = 1 + 4;
+            for (VaultBatch.Operation operation : batch.getOperations()) {
+                byte[] record = switch (operation.kind()) {
+                    case ADD, UPDATE -> {
+                        char[] username = operation.entry().getUsername();
+                        char[] password = operation.entry().getPassword();
+                        try {
+                            yield encodeAdd(operation.name(), batch.getTimestamp(), username, password);
+                        } finally {
+                            Arrays.fill(username, '\0');
+                            Arrays.fill(password, '\0');
+                        }
+                    }
+                    case REMOVE -> encodeRemove(operation.name());
+                    case LABELS -> encodeLabels(operation.name(), operation.folder(), operation.tags());
+                };
+                records.add(record);
+                size += record.length;
+            }
+
+            byte[] payload = new byte[size];
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(payload);
+                buffer.put(OP_BATCH);
+                buffer.putInt(records.size());
+                for (byte[] record : records) {
+                    buffer.put(record);
+                }
+                append(payload, key);
+            } finally {
+                Arrays.fill(payload, (byte) 0); // Pulizia dati sensibili dalla RAM
+            }
+        } finally {
+            for (byte[] record : records) {
+                Arrays.fill(record, (byte) 0);
+            }
+        }
+    }
+
+    /**
+     * Registra nel journal tutte le modifiche di un batch con {@link #appendBatch(VaultBatch, SecretKey)}
+     * e le applica al vault, senza che un salvataggio completo ruoti il journal tra le due operazioni.
+     *
+     * @param batch il batch da registrare e applicare
+     * @param key la chiave AES usata per cifrare il record
+     * @return il numero di login modificati
+     * @throws IllegalStateException se una modifica non è applicabile: il vault resta invariato
+     * @throws VaultException se il record non può essere scritto: il vault resta invariato
+     */
+    public static int commit(VaultBatch batch, SecretKey key) throws VaultException {
+        publishLock.readLock().lock();
+        try {
+            return batch.commit(b -> appendBatch(b, key));
+        } finally {
+            publishLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Registra nel journal la cancellazione di tutti i login e poi svuota il vault,
+     * senza che un salvataggio completo ruoti il journal tra le due operazioni.
+     *
+     * @param vault il vault da svuotare
+     * @param key la chiave AES usata per cifrare il record
+     * @throws VaultException se il record non può essere scritto: il vault resta invariato
+     */
+    public static void clear(VaultData vault, SecretKey key) throws VaultException {
+        publishLock.readLock().lock();
+        try {
+            appendClear(key);
+            vault.clearAll();
+        } finally {
+            publishLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Accoda al journal la cancellazione di tutti i login.
+     *
+     * @param key la chiave AES usata per cifrare il record
+     * @throws VaultException se il record non può essere scritto
+     */
+    public static void appendClear(SecretKey key) throws VaultException {
+        append(new byte[] {OP_CLEAR}, key);
+    }
+
+    /**
+     * Indica se il journal ha superato la soglia oltre la quale conviene
+     * riscrivere il file base.
+     *
+     * @return true se il journal va compattato
+     */
+    public static boolean needsCompaction() {
+        synchronized (lock) {
+            try {
+                return journalChannel != null && journalChannel.size() >= COMPACTION_THRESHOLD;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Riapplica al vault le modifiche registrate nel journal, nell'ordine in cui sono state scritte.
+     * Viene letto prima l'eventuale journal ruotato da un salvataggio non concluso, poi quello corrente.
+     * <p>
+     * Un record incompleto (scrittura interrotta da un crash) o non autentico segna la fine dei dati validi:
+     * il file viene troncato all'ultimo record valido, così che i record accodati in seguito
+     * restino leggibili; i byte scartati di un record non autentico vengono conservati
+     * in un file con estensione {@code .corrupt}. Vale anche per il primo record, perché la chiave
+     * è già stata verificata dal file base; solo se il file base non esiste la chiave è verificabile
+     * soltanto dal journal, e un primo record non autentico indica una chiave errata.
+     * <p>
+     * Se il file base indica il numero di sequenza del primo record che non contiene, i record precedenti
+     * (rimasti nel journal ruotato se il salvataggio si è interrotto prima di eliminarlo) vengono saltati
+     * e il primo record successivo deve avere esattamente quel numero.
+     * Le password sostituite da un record riapplicato entrano nella cronologia con la data della modifica
+     * registrata nel record; solo i record delle versioni precedenti, che non la contengono,
+     * usano la data della riapplicazione.
+     *
+     * @param vault il vault caricato dal file base
+     * @param key la chiave AES usata per decifrare i record
+     * @param firstSequence il numero di sequenza del primo record non contenuto nel file base, -1 se non è noto
+     * @param keyVerified true se la chiave ha già aperto il file base
+     * @throws InvalidPasswordException se la chiave non verificata è errata o la sequenza dei record è stata alterata
+     */
+    static void replay(VaultData vault, SecretKey key, long firstSequence, boolean keyVerified)
+            throws InvalidPasswordException {
+        synchronized (lock) {
+            try {
+                closeChannel();
+            } catch (IOException e) {
+                System.err.println("Errore durante la chiusura del journal: " + e.getMessage());
+            }
+            nextSequence = Math.max(firstSequence, 0);
+            long sequence = replayFile(Path.of(ROTATED_PATH), vault, key, firstSequence, keyVerified);
+            replayFile(Path.of(JOURNAL_PATH), vault, key, sequence, keyVerified);
+        }
+    }
+
+    /**
+     * Da chiamare per iniziare un salvataggio completo: i record scritti finora vengono spostati
+     * nel journal ruotato, che verrà eliminato solo quando il nuovo file base sarà su disco,
+     * e viene aperto lo snapshot del vault da salvare. Lo snapshot contiene tutte le modifiche
+     * del journal ruotato e nessuna di quelle accodate in seguito, che finiscono in un nuovo journal
+     * e restano valide anche se il salvataggio fallisce.
+     * Se esiste già un journal ruotato (salvataggio precedente non concluso)
+     * i nuovi record vengono accodati a quello.
+     *
+     * @param vault il vault da salvare
+     * @return lo snapshot da salvare e il numero di sequenza del primo record non contenuto, da chiudere
+     * @throws VaultException se il journal non può essere ruotato
+     */
+    static Rotation rotate(VaultData vault) throws VaultException {
+        publishLock.writeLock().lock();
+        try {
+            rotateFile();
+            synchronized (lock) {
+                return new Rotation(vault.snapshot(), nextSequence);
+            }
+        } finally {
+            publishLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Snapshot del vault aperto da {@link #rotate(VaultData)}.
+     *
+     * @param snapshot lo snapshot da salvare
+     * @param nextSequence il numero di sequenza del primo record non contenuto nello snapshot
+     */
+    record Rotation(VaultSnapshot snapshot, long nextSequence) implements AutoCloseable {
+        @Override
+        public void close() {
+            snapshot.close();
+        }
+    }
+
+    private static void rotateFile() throws VaultException {
+        synchronized (lock) {
+            Path journal = Path.of(JOURNAL_PATH);
+            Path rotated = Path.of(ROTATED_PATH);
+            try {
+                closeChannel();
+                if (!Files.exists(journal)) return;
+                if (Files.exists(rotated)) {
+                    try (FileChannel source = FileChannel.open(journal, StandardOpenOption.READ);
+                         FileChannel target = FileChannel.open(rotated, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                        long position = 0;
+                        long size = source.size();
+                        while (position < size) {
+                            position += source.transferTo(position, size - position, target);
+                        }
+                        target.force(false);
+                    }
+                    Files.delete(journal);
+                } else {
+                    Files.move(journal, rotated);
+                }
+            } catch (IOException e) {
+                throw new VaultException("Impossibile ruotare il journal", e);
+            }
+        }
+    }
+
+    /**
+     * Da chiamare quando il nuovo file base è su disco: elimina il journal ruotato,
+     * le cui modifiche sono ormai contenute nel file base.
+     *
+     * @throws VaultException se il journal ruotato non può essere eliminato
+     */
+    static void discardRotated() throws VaultException {
+        synchronized (lock) {
+            try {
+                Files.deleteIfExists(Path.of(ROTATED_PATH));
+            } catch (IOException e) {
+                throw new VaultException("Impossibile eliminare il journal ruotato", e);
+            }
+        }
+    }
+
+    /**
+     * Sincronizza su disco i record accodati dall'ultima sincronizzazione, con un'unica scrittura
+     * per tutti. Il lock del journal non viene tenuto durante la sincronizzazione,
+     * quindi chi accoda nuovi record nel frattempo non attende.
+     *
+     * @throws VaultException se la sincronizzazione fallisce
+     */
+    static void sync() throws VaultException {
+        FileChannel channel;
+        synchronized (lock) {
+            if (!unsynced || journalChannel == null) return;
+            channel = journalChannel;
+            unsynced = false;
+        }
+        try {
+            channel.force(false);
+        } catch (ClosedChannelException e) {
+            // Il canale è stato chiuso nel frattempo: la chiusura sincronizza i record prima di chiudere
+        } catch (IOException e) {
+            synchronized (lock) {
+                unsynced = true;
+            }
+            throw new VaultException("Impossibile sincronizzare il journal", e);
+        }
+    }
+
+    /**
+     * Sincronizza e chiude il canale del journal. I record già scritti restano su disco.
+     */
+    public static void close() {
+        synchronized (lock) {
+            try {
+                closeChannel();
+            } catch (IOException e) {
+                System.err.println("Errore durante la chiusura del journal: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Cifra il record con il prossimo numero di sequenza e lo accoda al journal,
+     * preceduto da lunghezza e numero di sequenza. La sincronizzazione su disco
+     * è lasciata a {@link #sync()}. Se la scrittura fallisce il file viene riportato alla dimensione precedente
+     * e il numero di sequenza non viene consumato.
+     */
+    private static void append(byte[] payload, SecretKey key) throws VaultException {
+        int sealedSize = CipherEngine.sealedSize(payload.length);
+        ByteBuffer record = ByteBuffer.allocate(4 + 8 + sealedSize);
+        CipherEngine engine = new CipherEngine(key);
+
+        synchronized (lock) {
+            long sequence = nextSequence;
+            record.putInt(sealedSize | SEQUENCED).putLong(sequence);
+            engine.encryptInto(ByteBuffer.wrap(payload), record, sequenceData(sequence));
+            record.flip();
+
+            FileChannel channel = null;
+            long start = -1;
+            try {
+                channel = openChannel();
+                start = channel.size();
+                while (record.hasRemaining()) {
+                    channel.write(record);
+                }
+                nextSequence = sequence + 1;
+                unsynced = true;
+            } catch (IOException e) {
+                if (start >= 0) {
+                    try {
+                        channel.truncate(start);
+                    } catch (IOException suppressed) {
+                        e.addSuppressed(suppressed);
+                        closeQuietly();
+                    }
+                }
+                throw new VaultException("Impossibile scrivere il journal", e);
+            }
+        }
+    }
+
+    /**
+     * Riapplica i record di un file e lo tronca all'ultimo record valido.
+     * Aggiorna {@link #nextSequence} oltre l'ultimo record valido.
+     *
+     * @param previous il numero di sequenza del prossimo record atteso, -1 se non è noto
+     * @param keyVerified true se la chiave è già stata verificata
+     * @return il numero di sequenza del prossimo record, -1 se non è noto
+     * @throws InvalidPasswordException se la chiave non verificata non decifra il primo record
+     *         o la sequenza è stata alterata
+     */
+    private static long replayFile(Path path, VaultData vault, SecretKey key, long previous, boolean keyVerified)
+            throws InvalidPasswordException {
+        long expected = previous;
+        if (!Files.exists(path)) return expected;
+
+        byte[] journal;
+        try {
+            journal = Files.readAllBytes(path);
+        } catch (IOException e) {
+            System.err.println("Errore durante la lettura del journal: " + e.getMessage());
+            return expected;
+        }
+
+        CipherEngine engine = new CipherEngine(key);
+        ByteBuffer buffer = ByteBuffer.wrap(journal);
+        int valid = 0;
+        int applied = 0;
+        boolean authentic = true;
+        while (buffer.hasRemaining()) {
+            if (buffer.remaining() < 4) break;
+            int header = buffer.getInt();
+            boolean sequenced = (header & SEQUENCED) != 0;
+            int length = header & ~SEQUENCED;
+            if (length < MIN_RECORD_SIZE || length > buffer.remaining() - (sequenced ? 8 : 0)) break;
+
+            long sequence = sequenced ? buffer.getLong() : -1;
+            byte[] sealed = new byte[length];
+            buffer.get(sealed);
+
+            byte[] payload = sequenced ? engine.open(sealed, sequenceData(sequence)) : engine.open(sealed);
+            if (payload == null) {
+                if (valid == 0 && !keyVerified) {
+                    throw new InvalidPasswordException("Master password errata o journal corrotto");
+                }
+                authentic = false;
+                break;
+            }
+            try {
+                if (sequenced && expected >= 0 && sequence != expected) {
+                    // Una rotazione interrotta può aver già copiato l'inizio di questo file nel journal ruotato
+                    if (!(applied == 0 && sequence < expected)) {
+                        throw new InvalidPasswordException("Journal alterato: record mancanti o riordinati");
+                    }
+                } else {
+                    if (sequenced) {
+                        expected = sequence + 1;
+                        nextSequence = Math.max(nextSequence, expected);
+                    }
+                    applyRecord(ByteBuffer.wrap(payload), vault);
+                    applied++;
+                }
+            } finally {
+                Arrays.fill(payload, (byte) 0); // Pulizia dati sensibili dalla RAM
+            }
+            valid = buffer.position();
+        }
+
+        if (valid < journal.length) {
+            truncate(path, journal, valid, authentic);
+        }
+        // Dopo un record non autentico i numeri di sequenza successivi sono andati persi con esso
+        return authentic ? expected : -1;
+    }
+
+    /**
+     * Tronca il file del journal all'ultimo record valido. I byte scartati di un record
+     * non autentico vengono prima copiati accanto al journal per un eventuale recupero.
+     */
+    private static void truncate(Path path, byte[] journal, int valid, boolean authentic) {
+        try {
+            if (authentic) {
+                System.err.println("Record finale del journal incompleto, rimosso.");
+            } else {
+                Path corrupt = path.resolveSibling(path.getFileName() + ".corrupt");
+                Files.write(corrupt, Arrays.copyOfRange(journal, valid, journal.length));
+                System.err.println("Record del journal non autentico: i dati successivi sono stati spostati in " + corrupt);
+            }
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                channel.truncate(valid);
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            System.err.println("Impossibile troncare il journal: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Restituisce il numero di sequenza di un record come dato associato di AES-GCM.
+     */
+    private static byte[] sequenceData(long sequence) {
+        return ByteBuffer.allocate(8).putLong(sequence).array();
+    }
+
+    private static void applyRecord(ByteBuffer payload, VaultData vault) {
+        byte op = payload.get();
+        if (op == OP_CLEAR) {
+            vault.clearAll();
+            return;
+        }
+        if (op == OP_BATCH) {
+            for (int count = payload.getInt(); count > 0; count--) {
+                applyRecord(payload, vault);
+            }
+            return;
+        }
+
+        byte[] nameBytes = new byte[payload.getInt()];
+        payload.get(nameBytes);
+        String name = new String(nameBytes, StandardCharsets.UTF_8);
+
+        if (op == OP_ADD || op == OP_ADD_AT) {
+            long changedAt = op == OP_ADD_AT ? payload.getLong() : System.currentTimeMillis();
+            char[] username = SealedVaultFormat.getChars(payload);
+            char[] password = SealedVaultFormat.getChars(payload);
+            vault.addLogin(name, username, password, changedAt); // addLogin azzera gli array
+        } else if (op == OP_REMOVE) {
+            vault.removeLogin(name);
+        } else if (op == OP_LABELS) {
+            String folder = getString(payload);
+            List<String> tags = new ArrayList<>();
+            for (int count = payload.getInt(); count > 0; count--) {
+                tags.add(getString(payload));
+            }
+            vault.setLabels(name, folder, tags);
+        }
+    }
+
+    private static byte[] encodeAdd(String name, long changedAt, char[] username, char[] password) {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        byte[] payload = new byte[1 + 4 + nameBytes.length + 8 + 4 + username.length * 2 + 4 + password.length * 2];
+        ByteBuffer buffer = ByteBuffer.wrap(payload);
+        buffer.put(OP_ADD_AT);
+        buffer.putInt(nameBytes.length).put(nameBytes);
+        buffer.putLong(changedAt);
+        SealedVaultFormat.putChars(buffer, username);
+        SealedVaultFormat.putChars(buffer, password);
+        return payload;
+    }
+
+    private static byte[] encodeRemove(String name) {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 4 + nameBytes.length);
+        buffer.put(OP_REMOVE);
+        buffer.putInt(nameBytes.length).put(nameBytes);
+        return buffer.array();
+    }
+
+    private static byte[] encodeLabels(String name, String folder, Collection<String> tags) {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        byte[] folderBytes = folder.getBytes(StandardCharsets.UTF_8);
+        List<byte[]> tagBytes = new ArrayList<>();
+        int size = 1 + 4 + nameBytes.length + 4 + folderBytes.length + 4;
+        for (String tag : tags) {
+            byte[] encoded = tag.getBytes(StandardCharsets.UTF_8);
+            tagBytes.add(encoded);
+            size += 4 + encoded.length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.put(OP_LABELS);
+        buffer.putInt(nameBytes.length).put(nameBytes);
+        buffer.putInt(folderBytes.length).put(folderBytes);
+        buffer.putInt(tagBytes.size());
+        for (byte[] tag : tagBytes) {
+            buffer.putInt(tag.length).put(tag);
+        }
+        return buffer.array();
+    }
+
+    private static String getString(ByteBuffer payload) {
+        byte[] encoded = new byte[payload.getInt()];
+        payload.get(encoded);
+        return new String(encoded, StandardCharsets.UTF_8);
+    }
+
+    private static FileChannel openChannel() throws IOException {
+        if (journalChannel == null || !journalChannel.isOpen()) {
+            Files.createDirectories(Path.of(JOURNAL_PATH).getParent());
+            journalChannel = FileChannel.open(Path.of(JOURNAL_PATH),
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND);
+        }
+        return journalChannel;
+    }
+
+    private static void closeQuietly() {
+        try {
+            closeChannel();
+        } catch (IOException e) {
+            // Il canale è comunque chiuso: verrà riaperto dalla prossima scrittura
+        }
+    }
+
+    private static void closeChannel() throws IOException {
+        FileChannel channel = journalChannel;
+        journalChannel = null;
+        unsynced = false;
+        if (channel != null && channel.isOpen()) {
+            try {
+                channel.force(false);
+            } finally {
+                channel.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package javault.utils;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.crypto.SecretKey;
+
+import javault.exception.VaultException;
+import javault.model.VaultData;
+
+/**
+ * Salvataggio differito del vault su un thread in background.
+ * Le modifiche segnano il vault come da salvare; il thread di salvataggio attende
+ * un breve intervallo per raggruppare le modifiche ravvicinate e poi esegue
+ * un unico salvataggio atomico con {@link VaultUtils#saveVault(VaultData, SecretKey)}.
+ * Chi modifica il vault (tipicamente il thread della GUI) non attende mai la scrittura su disco.
+ * Sullo stesso thread viene sincronizzato su disco il {@link VaultJournal}: i record accodati
+ * in un intervallo di {@link #SYNC_DELAY_MS} millisecondi condividono un'unica sincronizzazione.
+ * Dopo un salvataggio riuscito, se l'ultimo backup è più vecchio di {@link #BACKUP_INTERVAL_MS},
+ * lo stesso thread copia il file del vault in un backup con data e ora.
+ */
+public class VaultSaver {
+
+    private static final long COALESCE_DELAY_MS = 200;
+    private static final long SYNC_DELAY_MS = 50;
+    private static final long BACKUP_INTERVAL_MS = 60 * 60 * 1000;
+
+    private final VaultData vault;
+    private final SecretKey key;
+    private final AtomicBoolean dirty = new AtomicBoolean();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final AtomicBoolean syncScheduled = new AtomicBoolean();
+    private long lastBackup;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "javault-saver");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * Crea il salvataggio differito per il vault indicato.
+     *
+     * @param vault il vault da salvare
+     * @param key la chiave AES utilizzata per cifrare il contenuto
+     */
+    public VaultSaver(VaultData vault, SecretKey key) {
+        this.vault = vault;
+        this.key = key;
+    }
+
+    /**
+     * Segna il vault come da salvare e programma un salvataggio in background,
+     * se non ne è già programmato uno. Ritorna subito.
+     */
+    public void markDirty() {
+        dirty.set(true);
+        if (scheduled.compareAndSet(false, true)) {
+            executor.schedule(this::saveInBackground, COALESCE_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Programma la sincronizzazione su disco dei record appena accodati al journal,
+     * se non ne è già programmata una. Ritorna subito.
+     */
+    public void syncJournal() {
+        if (syncScheduled.compareAndSet(false, true)) {
+            executor.schedule(this::syncInBackground, SYNC_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Esegue subito il salvataggio, se ci sono modifiche non ancora salvate,
+     * sincronizza su disco il journal e attende che sia concluso.
+     *
+     * @throws VaultException se il salvataggio fallisce
+     */
+    public void flush() throws VaultException {
+        Future<?> pending = executor.submit(() -> {
+            saveIfDirty();
+            VaultJournal.sync();
+            return null;
+        });
+        try {
+            pending.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof VaultException vaultException) throw vaultException;
+            throw new VaultException("Impossibile salvare il vault", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new VaultException("Salvataggio del vault interrotto", e);
+        }
+    }
+
+    /**
+     * Salva le modifiche in sospeso e arresta il thread di salvataggio.
+     *
+     * @throws VaultException se il salvataggio finale fallisce
+     */
+    public void close() throws VaultException {
+        try {
+            flush();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private void saveInBackground() {
+        scheduled.set(false);
+        try {
+            saveIfDirty();
+        } catch (VaultException e) {
+            // Il vault resta da salvare: ci riproverà il prossimo salvataggio o la chiusura
+            System.err.println("Salvataggio in background fallito: " + e.getMessage());
+        }
+    }
+
+    private void syncInBackground() {
+        syncScheduled.set(false);
+        try {
+            VaultJournal.sync();
+        } catch (VaultException e) {
+            // Un salvataggio completo rende persistenti anche le modifiche non sincronizzate
+            System.err.println("Sincronizzazione del journal fallita: " + e.getMessage());
+            markDirty();
+        }
+    }
+
+    private void saveIfDirty() throws VaultException {
+        if (!dirty.getAndSet(false)) return;
+        try {
+            VaultUtils.saveVault(vault, key);
+        } catch (VaultException | RuntimeException e) {
+            dirty.set(true);
+            throw e;
+        }
+        backupIfDue();
+    }
+
+    /**
+     * Crea un backup del vault appena salvato se dall'ultimo è passato abbastanza tempo.
+     * Un backup fallito non fa fallire il salvataggio: verrà ritentato al salvataggio successivo.
+     */
+    private void backupIfDue() {
+        long now = System.currentTimeMillis();
+        if (lastBackup != 0 && now - lastBackup < BACKUP_INTERVAL_MS) return;
+        try {
+            VaultUtils.snapshotVault();
+            lastBackup = now;
+        } catch (VaultException e) {
+            System.err.println("Backup del vault fallito: " + e.getMessage());
+        }
+    }
+}
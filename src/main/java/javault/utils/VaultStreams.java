@@ -0,0 +1,193 @@
+package javault.utils;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Stream di supporto per salvare e caricare il vault senza materializzarlo in memoria.
+ * I buffer hanno dimensione fissa, vengono riusati e sono azzerati alla chiusura,
+ * così i dati in chiaro non restano in RAM più del necessario.
+ */
+final class VaultStreams {
+
+    static final int BUFFER_SIZE = 8192;
+
+    private VaultStreams() {
+    }
+
+    /**
+     * Restituisce uno stream che inoltra le scritture ma alla chiusura fa solo flush,
+     * lasciando aperto lo stream sottostante (ad esempio un FileChannel da sincronizzare).
+     *
+     * @param out lo stream da proteggere
+     * @return lo stream che non chiude quello sottostante
+     */
+    static OutputStream nonClosing(OutputStream out) {
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        };
+    }
+
+    /**
+     * Writer che codifica in UTF-8 usando un buffer di byte fisso e riusato.
+     */
+    static final class Utf8Writer extends Writer {
+
+        private final OutputStream out;
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private final char[] chars = new char[BUFFER_SIZE];
+        private final byte[] bytes = new byte[BUFFER_SIZE * 3];
+        private int count;
+
+        Utf8Writer(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            while (len > 0) {
+                int n = Math.min(len, chars.length - count);
+                System.arraycopy(cbuf, off, chars, count, n);
+                count += n;
+                off += n;
+                len -= n;
+                if (count == chars.length) {
+                    encode(false);
+                }
+            }
+        }
+
+        @Override
+        public void write(String str, int off, int len) throws IOException {
+            while (len > 0) {
+                int n = Math.min(len, chars.length - count);
+                str.getChars(off, off + n, chars, count);
+                count += n;
+                off += n;
+                len -= n;
+                if (count == chars.length) {
+                    encode(false);
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            encode(false);
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                encode(true);
+                out.close();
+            } finally {
+                Arrays.fill(chars, '\0'); // Pulizia dati sensibili dalla RAM
+                Arrays.fill(bytes, (byte) 0);
+            }
+        }
+
+        /**
+         * Codifica i caratteri accumulati. Un surrogato alto finale viene
+         * trattenuto fino alla scrittura successiva.
+         */
+        private void encode(boolean endOfInput) throws IOException {
+            CharBuffer in = CharBuffer.wrap(chars, 0, count);
+            ByteBuffer target = ByteBuffer.wrap(bytes);
+            encoder.encode(in, target, endOfInput);
+            if (endOfInput) {
+                encoder.flush(target);
+                encoder.reset();
+            }
+            out.write(bytes, 0, target.position());
+
+            int left = in.remaining();
+            System.arraycopy(chars, in.position(), chars, 0, left);
+            Arrays.fill(chars, left, count, '\0');
+            count = left;
+        }
+    }
+
+    /**
+     * Reader che decodifica UTF-8 usando un buffer di byte fisso e riusato.
+     */
+    static final class Utf8Reader extends Reader {
+
+        private final InputStream in;
+        private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private final byte[] bytes = new byte[BUFFER_SIZE];
+        private final ByteBuffer source = ByteBuffer.wrap(bytes).limit(0);
+        private boolean endOfInput;
+
+        Utf8Reader(InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            if (len == 0) return 0;
+
+            CharBuffer target = CharBuffer.wrap(cbuf, off, len);
+            while (target.position() == off) {
+                CoderResult result = decoder.decode(source, target, endOfInput);
+                if (result.isOverflow() || target.position() > off) break;
+                if (endOfInput) {
+                    decoder.flush(target);
+                    break;
+                }
+                fill();
+            }
+
+            int read = target.position() - off;
+            return read == 0 && endOfInput ? -1 : read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                in.close();
+            } finally {
+                Arrays.fill(bytes, (byte) 0); // Pulizia dati sensibili dalla RAM
+            }
+        }
+
+        /**
+         * Sposta in testa i byte non ancora decodificati e legge altri dati dallo stream.
+         */
+        private void fill() throws IOException {
+            source.compact();
+            int n = in.read(bytes, source.position(), source.remaining());
+            if (n < 0) {
+                endOfInput = true;
+            } else {
+                source.position(source.position() + n);
+            }
+            source.flip();
+        }
+    }
+}
@@ -2,22 +2,43 @@ package javault.utils;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 
 import javault.exception.InvalidPasswordException;
 import javault.exception.UnknownErrorException;
 import javault.exception.VaultException;
+import javault.model.LoginEntry;
 import javault.model.VaultData;
+import javault.model.VaultSnapshot;
+import javax.crypto.BadPaddingException;
 import javax.crypto.SecretKey;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
 import java.nio.charset.StandardCharsets;
-import java.io.ByteArrayInputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 
 /**
  * Utility per la gestione sicura del file vault:
@@ -26,12 +47,40 @@ import java.io.InputStreamReader;
 public class VaultUtils {
 
     private static final String VAULT_PATH = "vault/vault.bin";
+    private static final String TEMP_PATH = "vault/vault.bin.tmp";
+    private static final String INDEX_PATH = "vault/vault.idx";
+    private static final String INDEX_TEMP_PATH = "vault/vault.idx.tmp";
     private static final String LOCK_PATH = "vault/vault.lock";
+    private static final String BACKUP_DIR = "vault/backups";
+    private static final int MAX_BACKUPS = 10;
+    private static final DateTimeFormatter BACKUP_NAME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
 
-    private static final Gson gson = new GsonBuilder().create();
+    private static final byte[] MAGIC = {'J', 'V', 'L', 'T'};
+    private static final byte HEADER_VERSION = 1;
+    private static final int HEADER_SIZE = MAGIC.length + 2;
+
+    private static final String JSON_ENTRIES = "passwordMap";
+
+    private static final Gson gson = new GsonBuilder()
+            .registerTypeAdapter(LoginEntry.class, new LoginEntryAdapter())
+            .create();
+    private static volatile VaultFormat vaultFormat = VaultFormat.SEALED;
+    private static volatile VaultCodec vaultCodec = VaultCodec.BINARY;
+    private static final Object saveLock = new Object();
     private static FileChannel lockChannel;
     private static FileLock vaultLock;
 
+    /**
+     * @return true se su disco esiste già un vault, anche solo come journal o intestazione KDF
+     */
+    public static boolean vaultExists() {
+        try {
+            return Files.exists(Path.of(VAULT_PATH)) || KdfHeader.load() != null;
+        } catch (VaultException e) {
+            return true; // un'intestazione illeggibile appartiene comunque a un vault esistente
+        }
+    }
+
     /**
      * Acquisisce un lock sul file del vault per evitare accessi concorrenti
      * da più istanze del programma (prevenzione race condition).
@@ -73,29 +122,348 @@ public class VaultUtils {
     }
 
     /**
-     * Salva il contenuto cifrato del vault su disco.
+     * Salva il contenuto cifrato del vault su disco in modo atomico.
+     * Viene serializzato uno snapshot del vault ({@link VaultData#snapshot()}), quindi
+     * le modifiche concorrenti non attendono la fine del salvataggio.
+     * Lo snapshot viene serializzato e cifrato in streaming su un file temporaneo,
+     * sincronizzato su disco e poi rinominato sopra il file del vault:
+     * un crash durante il salvataggio lascia intatto il vault precedente.
+     * Il journal viene ruotato prima della serializzazione ed eliminato solo
+     * quando il nuovo file base è su disco.
+     * Accanto al vault viene salvato, cifrato con la stessa chiave, l'indice di ricerca,
+     * così che all'apertura non vada ricostruito: può contenere modifiche successive allo snapshot,
+     * che all'apertura vengono riallineate dal journal.
+     * La cronologia delle password ({@link VaultHistory}) viene scritta prima di sostituire il vault:
+     * se il salvataggio si interrompe tra i due file, la rilettura del journal non duplica le versioni.
+     * Di norma viene chiamato dal thread del {@link VaultSaver}.
      *
      * @param vault i dati del vault da salvare
      * @param key la chiave AES utilizzata per cifrare il contenuto
      * @throws VaultException se si verifica un errore durante il salvataggio
      */
     public static void saveVault(VaultData vault, SecretKey key) throws VaultException {
-        String json = gson.toJson(vault);
-        if(json == null) throw new VaultException("Impossibile ottenere il file vault");
-        byte[] jsonBytes = json.getBytes(StandardCharsets.UTF_8);
-        byte[] encryptedVault = EncryptionUtils.encrypt(key, jsonBytes);
+        synchronized (saveLock) {
+            Path vaultPath = Path.of(VAULT_PATH);
+            Path tempPath = Path.of(TEMP_PATH);
+            byte[] searchIndex;
+            try {
+                Files.createDirectories(vaultPath.getParent());
+                try (FileChannel channel = FileChannel.open(tempPath,
+                        StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING)) {
+                    // Ogni modifica è nello snapshot oppure nel nuovo journal
+                    try (VaultJournal.Rotation rotation = VaultJournal.rotate(vault)) {
+                        writeVault(rotation.snapshot(), key, channel, rotation.nextSequence());
+                        VaultHistory.save(vault, key);
+                    }
+                    searchIndex = vault.encodeSearchIndex();
+                    channel.force(true);
+                }
+                Files.move(tempPath, vaultPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                saveSearchIndex(searchIndex, key);
+            } catch (IOException e) {
+                throw new VaultException("Impossibile salvare il vault", e);
+            }
+            VaultJournal.discardRotated();
+        }
+    }
+
+    /**
+     * Cifra e scrive in modo atomico l'indice di ricerca. Se l'indice non esiste
+     * viene eliminato quello precedente, che non corrisponderebbe più al vault.
+     * Un indice mancante o non allineato viene comunque ricostruito alla prima ricerca.
+     */
+    private static void saveSearchIndex(byte[] searchIndex, SecretKey key) throws IOException {
+        Path indexPath = Path.of(INDEX_PATH);
+        if (searchIndex == null) {
+            Files.deleteIfExists(indexPath);
+            return;
+        }
+
+        byte[] sealed;
+        try {
+            sealed = new CipherEngine(key).seal(searchIndex);
+        } finally {
+            Arrays.fill(searchIndex, (byte) 0);
+        }
+        Path tempPath = Path.of(INDEX_TEMP_PATH);
+        try (FileChannel channel = FileChannel.open(tempPath,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(sealed);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(tempPath, indexPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
 
+    /**
+     * Ripristina nel vault appena letto l'indice di ricerca salvato, se presente e valido.
+     * Va chiamato prima di riapplicare il journal, che aggiorna l'indice come ogni modifica.
+     */
+    private static void loadSearchIndex(VaultData vault, SecretKey key) {
+        Path indexPath = Path.of(INDEX_PATH);
+        if (!Files.exists(indexPath)) return;
+
+        byte[] searchIndex = null;
         try {
-			Files.createDirectories(Path.of("vault"));
-			Files.write(Path.of(VAULT_PATH), encryptedVault);
-		} catch (IOException e) {
-			throw new VaultException("Impossibile salvare il vault");
-		}
-        
+            searchIndex = new CipherEngine(key).open(Files.readAllBytes(indexPath));
+            if (searchIndex == null || !vault.restoreSearchIndex(searchIndex)) {
+                System.err.println("Indice di ricerca non valido: verrà ricostruito");
+            }
+        } catch (IOException e) {
+            System.err.println("Impossibile leggere l'indice di ricerca: " + e.getMessage());
+        } finally {
+            if (searchIndex != null) Arrays.fill(searchIndex, (byte) 0);
+        }
+    }
+
+    /**
+     * Copia il file del vault, la cronologia delle password e l'intestazione KDF in una
+     * cartella di backup con data e ora, conservando solo gli ultimi {@value #MAX_BACKUPS} backup.
+     * I file sono già cifrati, quindi la copia non decifra nulla e non tocca i dati in memoria.
+     * Il backup non include il journal: contiene lo stato dell'ultimo salvataggio completo.
+     *
+     * @throws VaultException se il backup non può essere scritto
+     */
+    static void snapshotVault() throws VaultException {
+        synchronized (saveLock) {
+            Path vaultPath = Path.of(VAULT_PATH);
+            if (!Files.exists(vaultPath)) return;
+
+            Path backups = Path.of(BACKUP_DIR);
+            Path snapshot = backups.resolve(LocalDateTime.now().format(BACKUP_NAME));
+            Path temp = backups.resolve(snapshot.getFileName() + ".tmp");
+            try {
+                Files.createDirectories(temp);
+                Files.copy(vaultPath, temp.resolve(vaultPath.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+                for (Path file : List.of(Path.of(KdfHeader.HEADER_PATH), VaultHistory.path())) {
+                    if (Files.exists(file)) {
+                        Files.copy(file, temp.resolve(file.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+                    }
+                }
+                Files.move(temp, snapshot, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                pruneBackups(backups);
+            } catch (IOException e) {
+                throw new VaultException("Impossibile creare il backup del vault", e);
+            }
+        }
+    }
+
+    /**
+     * Elimina i backup più vecchi oltre il numero massimo. I nomi con data e ora
+     * sono ordinati cronologicamente anche in ordine alfabetico.
+     */
+    private static void pruneBackups(Path backups) throws IOException {
+        List<Path> snapshots;
+        try (Stream<Path> children = Files.list(backups)) {
+            snapshots = children
+                    .filter(path -> !path.getFileName().toString().endsWith(".tmp"))
+                    .sorted()
+                    .toList();
+        }
+        for (int i = 0; i < snapshots.size() - MAX_BACKUPS; i++) {
+            try (Stream<Path> files = Files.list(snapshots.get(i))) {
+                for (Path file : files.toList()) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(snapshots.get(i));
+        }
+    }
+
+    /**
+     * Crea un nuovo vault: salva l'intestazione KDF e subito dopo il primo file base, prima che
+     * qualunque record del journal venga cifrato con la chiave derivata dall'intestazione.
+     * Se il salvataggio fallisce l'intestazione viene eliminata, così che il vault continui a non esistere
+     * e nessun file resti cifrato con una chiave il cui salt non è su disco.
+     *
+     * @param vault il vault appena creato, di norma vuoto
+     * @param key la chiave derivata da {@code header}
+     * @param header l'intestazione KDF del nuovo vault
+     * @throws VaultException se intestazione o file base non possono essere scritti
+     */
+    public static void createVault(VaultData vault, SecretKey key, KdfHeader header) throws VaultException {
+        synchronized (saveLock) {
+            header.save();
+            try {
+                saveVault(vault, key);
+            } catch (VaultException e) {
+                try {
+                    Files.deleteIfExists(Path.of(KdfHeader.HEADER_PATH));
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Ricifra il vault con una nuova chiave derivata dalla nuova intestazione KDF.
+     * Il journal, cifrato con la vecchia chiave, viene prima consolidato nel file base;
+     * poi i record delle entry vengono ricifrati a lotti, senza decifrare tutto il vault in memoria
+     * (vedi {@link SealedVaultFormat#reseal(VaultData, SecretKey, SecretKey)}). La nuova intestazione viene salvata come in attesa e resa effettiva solo dopo
+     * che vault e cronologia ricifrati sono entrambi su disco. Se il processo si interrompe a metà,
+     * all'apertura successiva funziona la vecchia intestazione oppure quella in attesa,
+     * e la cronologia rimasta sull'altra chiave viene riallineata con {@link #reconcileHistoryKey}.
+     *
+     * @param vault i dati del vault
+     * @param oldKey la chiave attuale del vault
+     * @param newKey la nuova chiave, derivata da {@code header}
+     * @param header la nuova intestazione KDF
+     * @throws VaultException se una entry non è decifrabile o il salvataggio fallisce
+     */
+    public static void rekeyVault(VaultData vault, SecretKey oldKey, SecretKey newKey, KdfHeader header)
+            throws VaultException {
+        synchronized (saveLock) {
+            saveVault(vault, oldKey);
+            if (!SealedVaultFormat.reseal(vault, oldKey, newKey)) {
+                throw new VaultException("Impossibile decifrare tutte le entry del vault");
+            }
+            header.savePending();
+            saveVault(vault, newKey);
+            KdfHeader.promotePending();
+        }
+    }
+
+    /**
+     * Riporta sulla chiave del vault la cronologia rimasta cifrata con l'altra chiave
+     * di un cambio di chiave interrotto: vault e cronologia sono due file distinti
+     * e un crash tra le due scritture può lasciarli su chiavi diverse.
+     * Va chiamato dopo aver caricato il vault e prima di rendere effettiva
+     * o scartare l'intestazione KDF in attesa, che serve a derivare l'altra chiave.
+     *
+     * @param vault il vault appena caricato con {@code key}
+     * @param key la chiave con cui il vault è stato caricato
+     * @param otherKey l'altra chiave del cambio di chiave interrotto
+     * @throws VaultException se la cronologia non può essere riscritta
+     */
+    public static void reconcileHistoryKey(VaultData vault, SecretKey key, SecretKey otherKey) throws VaultException {
+        synchronized (saveLock) {
+            try {
+                if (VaultHistory.isEncryptedWith(key) || !VaultHistory.isEncryptedWith(otherKey)) return;
+
+                // Appena caricato, il vault non ha altri lettori: non serve uno snapshot
+                vault.setHistoryStore(new VaultHistory(otherKey));
+                VaultHistory.save(vault, key);
+            } catch (IOException e) {
+                vault.setHistoryStore(new VaultHistory(key));
+                throw new VaultException("Impossibile ricifrare la cronologia delle password", e);
+            }
+        }
+    }
+
+    /**
+     * Elimina il file della cronologia delle password, ad esempio dopo aver svuotato il vault.
+     * Il vault non deve avere più un archivio della cronologia collegato (vedi {@link VaultData#clearAll()}).
+     *
+     * @throws VaultException se il file non può essere eliminato
+     */
+    public static void deleteHistory() throws VaultException {
+        synchronized (saveLock) {
+            try {
+                Files.deleteIfExists(VaultHistory.path());
+            } catch (IOException e) {
+                throw new VaultException("Impossibile eliminare la cronologia delle password", e);
+            }
+        }
+    }
+
+    /**
+     * Imposta il formato usato dai salvataggi successivi.
+     * Il caricamento riconosce comunque qualsiasi formato supportato.
+     *
+     * @param format il formato su disco da usare
+     */
+    public static void setVaultFormat(VaultFormat format) {
+        vaultFormat = format;
+    }
+
+    /**
+     * Scrive intestazione e contenuto cifrato del vault sul canale, nel formato corrente.
+     * Solo il formato {@link VaultFormat#SEALED} registra il numero di sequenza del primo record
+     * del journal non contenuto nello snapshot.
+     */
+    private static void writeVault(VaultSnapshot vault, SecretKey key, WritableByteChannel channel, long journalSequence)
+            throws VaultException, IOException {
+        VaultFormat format = vaultFormat;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE)
+                .put(MAGIC)
+                .put(HEADER_VERSION)
+                .put(format.id())
+                .flip();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+
+        OutputStream out = VaultStreams.nonClosing(Channels.newOutputStream(channel));
+        switch (format) {
+            case SEALED -> SealedVaultFormat.write(vault, key, channel, journalSequence);
+            case SEGMENTED -> writeBody(vault, new SegmentedAead.Encryptor(key, out));
+            default -> writeBody(vault, EncryptionUtils.encryptingStream(key, out));
+        }
+    }
+
+    /**
+     * Imposta la codifica del contenuto usata dai salvataggi successivi
+     * nei formati {@link VaultFormat#SINGLE_BLOCK} e {@link VaultFormat#SEGMENTED}.
+     *
+     * @param codec la codifica da usare
+     */
+    public static void setVaultCodec(VaultCodec codec) {
+        vaultCodec = codec;
     }
 
     /**
-     * Carica il vault da disco e ne decifra il contenuto.
+     * Serializza l'intero vault sullo stream cifrante indicato, con la codifica corrente.
+     */
+    private static void writeBody(VaultSnapshot vault, OutputStream encrypting) throws VaultException, IOException {
+        if (vaultCodec == VaultCodec.BINARY) {
+            BinaryVaultCodec.write(vault, encrypting);
+        } else {
+            writeJson(vault, encrypting);
+        }
+    }
+
+    /**
+     * Serializza l'intero vault in JSON sullo stream cifrante indicato, nel formato
+     * {@code {"passwordMap":{"nome":{"username":[...],"password":[...]}}}} dei vault precedenti.
+     * I token JSON passano per un writer UTF-8 a buffer fisso e per il cifrario
+     * direttamente verso il canale, senza stringhe o array intermedi grandi quanto il vault.
+     * Le entry ancora cifrate vengono decifrate prima della serializzazione.
+     */
+    private static void writeJson(VaultSnapshot vault, OutputStream encrypting) throws VaultException, IOException {
+        List<String> names = vault.names();
+        for (String name : names) {
+            if (vault.getLogin(name) == null) {
+                encrypting.close();
+                throw new VaultException("Impossibile leggere il login " + name);
+            }
+        }
+
+        try (JsonWriter writer = new JsonWriter(new VaultStreams.Utf8Writer(encrypting))) {
+            writer.beginObject().name(JSON_ENTRIES).beginObject();
+            for (String name : names) {
+                writer.name(name);
+                gson.toJson(vault.getLogin(name), LoginEntry.class, writer);
+            }
+            writer.endObject().endObject();
+        } catch (JsonIOException e) {
+            throw new VaultException("Impossibile ottenere il file vault", e);
+        }
+    }
+
+    /**
+     * Carica il vault da disco e ne decifra il contenuto,
+     * riapplicando poi le modifiche registrate nel journal.
+     * La cronologia delle password non viene letta: il vault la legge dal suo archivio
+     * solo per i login di cui viene richiesta.
+     * Il file viene letto in streaming, senza caricarlo interamente in memoria.
      *
      * @param key la chiave AES utilizzata per decifrare il contenuto
      * @return un oggetto {@link VaultData} con i dati decifrati,
@@ -106,28 +474,156 @@ public class VaultUtils {
     public static VaultData loadVault(SecretKey key) throws InvalidPasswordException, UnknownErrorException{
         File vaultFile = new File(VAULT_PATH);
         if (!vaultFile.exists()) {
-            return new VaultData();
+            VaultData vault = new VaultData();
+            vault.setHistoryStore(new VaultHistory(key));
+            VaultJournal.replay(vault, key, -1, false);
+            return vault;
         }
 
-        byte[] encryptedVault = null;
-        try {
-            encryptedVault = Files.readAllBytes(vaultFile.toPath());
+        VaultData vault;
+        long journalSequence = -1;
+        try (FileChannel channel = FileChannel.open(vaultFile.toPath(), StandardOpenOption.READ)) {
+            VaultFormat format = readHeader(channel);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    Channels.newInputStream(channel), VaultStreams.BUFFER_SIZE));
+
+            vault = switch (format) {
+                case SEALED -> {
+                    SealedVaultFormat.Contents contents = SealedVaultFormat.read(in, key);
+                    journalSequence = contents.journalSequence();
+                    yield contents.vault();
+                }
+                case SEGMENTED -> readBody(new SegmentedAead.Decryptor(key, channel));
+                default -> readBody(EncryptionUtils.decryptingStream(key, in));
+            };
         } catch (IOException e) {
             System.err.println("Errore durante la lettura del vault: " + e.getMessage());
+            throw new UnknownErrorException(e);
         }
 
-        byte[] decryptedJson = EncryptionUtils.decrypt(key, encryptedVault);
-        if (decryptedJson == null) {
-            throw new InvalidPasswordException("Master password errata, VaultUtils"); // Master password errata o vault corrotto
+        loadSearchIndex(vault, key);
+        vault.setHistoryStore(new VaultHistory(key));
+        VaultJournal.replay(vault, key, journalSequence, true);
+        return vault;
+    }
+
+    /**
+     * Legge l'intestazione del file vault e posiziona il canale all'inizio del contenuto.
+     * I vault salvati prima dell'introduzione dell'intestazione sono trattati come blocco unico
+     * e il canale viene riportato all'inizio del file.
+     *
+     * @param channel il canale aperto sul file vault
+     * @return il formato del vault
+     * @throws IOException se la lettura fallisce
+     * @throws UnknownErrorException se il formato indicato non è supportato
+     */
+    private static VaultFormat readHeader(FileChannel channel) throws IOException, UnknownErrorException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (header.hasRemaining()) {
+            if (channel.read(header) < 0) break;
+        }
+
+        byte[] magic = new byte[MAGIC.length];
+        header.get(0, magic);
+        if (header.hasRemaining()
+                || !Arrays.equals(magic, MAGIC)
+                || header.get(MAGIC.length) != HEADER_VERSION) {
+            channel.position(0);
+            return VaultFormat.SINGLE_BLOCK;
+        }
+
+        VaultFormat format = VaultFormat.fromId(header.get(MAGIC.length + 1));
+        if (format == null) {
+            System.err.println("Formato del vault non supportato");
+            throw new UnknownErrorException();
+        }
+        return format;
+    }
+
+    /**
+     * Deserializza il vault dallo stream decifrante indicato, riconoscendo la codifica
+     * dal primo byte: i vault JSON salvati in precedenza vengono letti con Gson.
+     */
+    private static VaultData readBody(InputStream decrypting)
+            throws InvalidPasswordException, UnknownErrorException {
+        PushbackInputStream in = new PushbackInputStream(decrypting, 1);
+        int first;
+        try {
+            first = in.read();
+            if (first >= 0) in.unread(first);
+        } catch (IOException e) {
+            throw readFailure(e);
         }
 
-        try (InputStreamReader reader = new InputStreamReader(
-                new ByteArrayInputStream(decryptedJson), StandardCharsets.UTF_8)) {
-            return gson.fromJson(reader, VaultData.class);
+        if (!BinaryVaultCodec.isVersion(first)) {
+            return readJson(in);
+        }
+        try {
+            return BinaryVaultCodec.read(in);
         } catch (IOException e) {
+            throw readFailure(e);
+        }
+    }
+
+    /**
+     * Deserializza in streaming un vault JSON leggendo dallo stream decifrante indicato.
+     */
+    private static VaultData readJson(InputStream decrypting)
+            throws InvalidPasswordException, UnknownErrorException {
+        try (JsonReader reader = new JsonReader(new VaultStreams.Utf8Reader(decrypting))) {
+            Map<String, LoginEntry> entries = new LinkedHashMap<>();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (!reader.nextName().equals(JSON_ENTRIES)) {
+                    reader.skipValue();
+                    continue;
+                }
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String name = reader.nextName();
+                    LoginEntry entry = gson.fromJson(reader, LoginEntry.class);
+                    if (entry != null) entries.put(name, entry);
+                }
+                reader.endObject();
+            }
+            reader.endObject();
+
+            VaultData vault = new VaultData();
+            vault.addAllLogins(entries);
+            return vault;
+        } catch (IllegalStateException | JsonParseException e) {
+            if (isAuthenticationFailure(e)) {
+                // Il tag GCM non corrisponde: master password errata o vault corrotto
+                throw new InvalidPasswordException("Master password errata, VaultUtils", e);
+            }
             System.err.println("Errore durante il parsing del vault: " + e.getMessage());
+            throw new UnknownErrorException(e);
+        } catch (IOException e) {
+            throw readFailure(e);
         }
+    }
 
-        throw new UnknownErrorException();
+    /**
+     * Traduce un errore di lettura del contenuto nell'eccezione appropriata.
+     *
+     * @throws InvalidPasswordException se l'errore deriva dalla verifica del tag AES-GCM
+     */
+    private static UnknownErrorException readFailure(IOException e) throws InvalidPasswordException {
+        if (isAuthenticationFailure(e)) {
+            // Il tag GCM non corrisponde: master password errata o vault corrotto
+            throw new InvalidPasswordException("Master password errata, VaultUtils", e);
+        }
+        System.err.println("Errore durante il parsing del vault: " + e.getMessage());
+        return new UnknownErrorException(e);
+    }
+
+    /**
+     * Verifica se l'errore deriva dal fallimento della verifica del tag AES-GCM.
+     */
+    static boolean isAuthenticationFailure(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof BadPaddingException) return true;
+        }
+        return false;
     }
-}
\ No newline at end of file
+}
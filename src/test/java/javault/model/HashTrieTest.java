@@ -0,0 +1,80 @@
+package javault.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test di {@link HashTrie}: confronto con una {@link HashMap}, collisioni e versioni precedenti.
+ */
+class HashTrieTest {
+
+    private static <K, V> Map<K, V> toMap(HashTrie<K, V> trie) {
+        Map<K, V> map = new HashMap<>();
+        trie.forEach(map::put);
+        return map;
+    }
+
+    @Test
+    void matchesHashMapUnderRandomChanges() {
+        Random random = new Random(42);
+        Map<Integer, Integer> expected = new HashMap<>();
+        HashTrie<Integer, Integer> trie = HashTrie.empty();
+        for (int i = 0; i < 20_000; i++) {
+            int key = random.nextInt(5_000);
+            if (random.nextInt(3) == 0) {
+                expected.remove(key);
+                trie = trie.remove(key);
+            } else {
+                expected.put(key, i);
+                trie = trie.put(key, i);
+            }
+        }
+
+        assertEquals(expected.size(), trie.size());
+        assertEquals(expected, toMap(trie));
+        for (int key = 0; key < 5_000; key++) {
+            assertEquals(expected.get(key), trie.get(key));
+        }
+    }
+
+    @Test
+    void collidingKeysAreKeptApart() {
+        // "Aa" e "BB" hanno lo stesso hashCode
+        HashTrie<String, String> trie = HashTrie.<String, String>empty().put("Aa", "uno").put("BB", "due");
+
+        assertEquals(2, trie.size());
+        assertEquals("uno", trie.get("Aa"));
+        assertEquals("due", trie.get("BB"));
+
+        HashTrie<String, String> removed = trie.remove("Aa");
+        assertEquals(1, removed.size());
+        assertNull(removed.get("Aa"));
+        assertEquals("due", removed.get("BB"));
+        assertEquals(Map.of("BB", "due"), toMap(removed));
+    }
+
+    @Test
+    void previousVersionsAreUnchanged() {
+        HashTrie<String, String> first = HashTrie.<String, String>empty().put("email", "v1").put("banca", "v1");
+        HashTrie<String, String> second = first.put("email", "v2").remove("banca").put("social", "v1");
+
+        assertEquals(Map.of("email", "v1", "banca", "v1"), toMap(first));
+        assertEquals(Map.of("email", "v2", "social", "v1"), toMap(second));
+    }
+
+    @Test
+    void unchangedUpdatesReturnSameMap() {
+        String value = "v1";
+        HashTrie<String, String> trie = HashTrie.<String, String>empty().put("email", value);
+
+        assertSame(trie, trie.put("email", value));
+        assertSame(trie, trie.remove("assente"));
+    }
+}
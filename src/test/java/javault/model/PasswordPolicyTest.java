@@ -0,0 +1,124 @@
+package javault.model;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import javault.model.PasswordPolicy.CharClass;
+
+/**
+ * Test di {@link PasswordPolicy} e delle password che {@link PasswordGenerator} genera secondo la politica.
+ */
+class PasswordPolicyTest {
+
+    private static final int SAMPLES = 500;
+
+    private static int count(char[] password, char[] characters) {
+        int count = 0;
+        for (char c : password) {
+            if (Arrays.binarySearch(characters, c) >= 0) count++;
+        }
+        return count;
+    }
+
+    @Test
+    void policiesAreImmutable() {
+        PasswordPolicy base = PasswordPolicy.of(true, true, false, false);
+        PasswordPolicy derived = base.withMinimum(CharClass.DIGITS, 3).without(CharClass.UPPERCASE);
+
+        assertTrue(base.isEnabled(CharClass.UPPERCASE));
+        assertFalse(base.isEnabled(CharClass.DIGITS));
+        assertEquals(2, base.getMinimumLength());
+        assertFalse(derived.isEnabled(CharClass.UPPERCASE));
+        assertEquals(3, derived.getMinimum(CharClass.DIGITS));
+        assertEquals(4, derived.getMinimumLength());
+    }
+
+    @Test
+    void invalidSettingsAreRejected() {
+        PasswordPolicy policy = PasswordPolicy.of(true, false, false, true);
+
+        assertThrows(IllegalArgumentException.class, () -> policy.withMinimum(CharClass.LOWERCASE, -1));
+        assertThrows(IllegalArgumentException.class, () -> policy.withMaxRepeat(-1));
+        assertThrows(IllegalArgumentException.class, () -> policy.withSymbols(""));
+        assertThrows(IllegalArgumentException.class, () -> policy.withSymbols("#a"));
+        assertThrows(IllegalArgumentException.class, () -> policy.withSymbols("# "));
+        assertEquals("#-", policy.withSymbols("-#-").getSymbols());
+    }
+
+    @Test
+    void lookAlikesAreExcluded() {
+        PasswordPolicy policy = PasswordPolicy.of(true, true, true, false).excludingLookAlikes(true);
+        for (CharClass charClass : CharClass.values()) {
+            for (char c : policy.characters(charClass)) {
+                assertTrue(PasswordPolicy.LOOK_ALIKES.indexOf(c) < 0, "carattere confondibile: " + c);
+            }
+        }
+        assertArrayEquals("23456789".toCharArray(), policy.characters(CharClass.DIGITS));
+    }
+
+    @Test
+    void generatedPasswordsMeetMinimums() {
+        PasswordPolicy policy = PasswordPolicy.of(true, true, false, false)
+                .withMinimum(CharClass.DIGITS, 3)
+                .withMinimum(CharClass.SYMBOLS, 2)
+                .withSymbols("#!");
+        PasswordGenerator generator = new PasswordGenerator(policy);
+        for (int i = 0; i < SAMPLES; i++) {
+            char[] password = generator.generatePassword(8);
+            assertEquals(8, password.length);
+            assertTrue(count(password, policy.characters(CharClass.LOWERCASE)) >= 1);
+            assertTrue(count(password, policy.characters(CharClass.UPPERCASE)) >= 1);
+            assertTrue(count(password, policy.characters(CharClass.DIGITS)) >= 3);
+            assertTrue(count(password, policy.characters(CharClass.SYMBOLS)) >= 2);
+        }
+        assertThrows(IllegalArgumentException.class, () -> generator.generatePassword(6));
+    }
+
+    @Test
+    void generatedPasswordsRespectMaxRepeat() {
+        PasswordGenerator generator = new PasswordGenerator(PasswordPolicy.of(false, false, true, false).withMaxRepeat(1));
+        char[] buffer = new char[SAMPLES * 16];
+        generator.generate(SAMPLES, 16, buffer);
+        for (int i = 0; i < SAMPLES; i++) {
+            for (int j = 1; j < 16; j++) {
+                assertTrue(buffer[i * 16 + j] != buffer[i * 16 + j - 1], "ripetizione nella password " + i);
+            }
+        }
+    }
+
+    @Test
+    void entropyIsEstimatedConservatively() {
+        double log2 = Math.log(2);
+        PasswordGenerator digits = new PasswordGenerator(PasswordPolicy.of(false, false, true, false));
+        assertEquals(12 * Math.log(10) / log2, digits.entropyBits(12), 1e-9);
+        PasswordGenerator noRepeat = new PasswordGenerator(PasswordPolicy.of(false, false, true, false).withMaxRepeat(1));
+        assertEquals(12 * Math.log(9) / log2, noRepeat.entropyBits(12), 1e-9);
+
+        // Due simboli obbligatori su due soli disponibili: 1 bit ciascuno, non log2(28)
+        PasswordGenerator mixed = new PasswordGenerator(PasswordPolicy.of(true, false, true, true)
+                .withMinimum(CharClass.SYMBOLS, 2)
+                .withSymbols("#!"));
+        double expected = (Math.log(26) + Math.log(10) + 2 * Math.log(2) + 12 * Math.log(3 * 2)) / log2;
+        assertEquals(expected, mixed.entropyBits(16), 1e-9);
+        assertTrue(mixed.entropyBits(16) < 16 * Math.log(38) / log2);
+        assertEquals(0.0, mixed.entropyBits(3), 1e-9);
+    }
+
+    @Test
+    void classWithoutCharactersIsRejected() {
+        PasswordPolicy onlyLookAlikes = PasswordPolicy.of(false, false, false, true)
+                .withSymbols("|")
+                .excludingLookAlikes(true);
+
+        assertThrows(IllegalArgumentException.class, () -> new PasswordGenerator(onlyLookAlikes));
+        assertThrows(IllegalStateException.class,
+                () -> new PasswordGenerator(PasswordPolicy.of(false, false, false, false)).generatePassword(8));
+    }
+}
@@ -0,0 +1,98 @@
+package javault.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test di {@link RoaringBitmap}: confronto con {@link BitSet}, con blocchi sia ad array sia a bitmap.
+ */
+class RoaringBitmapTest {
+
+    private record Sample(RoaringBitmap bitmap, BitSet expected) {
+    }
+
+    /**
+     * @return una bitmap e il BitSet equivalente: un blocco denso (bitmap) e alcuni sparsi (array)
+     */
+    private static Sample random(long seed) {
+        Random random = new Random(seed);
+        RoaringBitmap bitmap = new RoaringBitmap();
+        BitSet expected = new BitSet();
+        for (int i = 0; i < 10_000; i++) {
+            int value = random.nextInt(3) == 0 ? random.nextInt(4 << 16) : random.nextInt(20_000);
+            bitmap.add(value);
+            expected.set(value);
+        }
+        return new Sample(bitmap, expected);
+    }
+
+    private static void assertSameValues(BitSet expected, RoaringBitmap bitmap) {
+        List<Integer> values = new ArrayList<>();
+        bitmap.forEach(values::add);
+        assertEquals(expected.stream().boxed().toList(), values);
+        assertEquals(expected.cardinality(), bitmap.cardinality());
+        assertEquals(expected.isEmpty(), bitmap.isEmpty());
+    }
+
+    @Test
+    void addRemoveAndContains() {
+        Sample sample = random(1);
+        RoaringBitmap bitmap = sample.bitmap();
+        BitSet expected = sample.expected();
+        assertSameValues(expected, bitmap);
+
+        // Svuota quasi tutto il blocco denso: torna sotto la soglia dell'array
+        for (int value = 0; value < 19_000; value++) {
+            bitmap.remove(value);
+            expected.clear(value);
+        }
+        assertSameValues(expected, bitmap);
+        assertFalse(bitmap.contains(10));
+        for (int value = expected.nextSetBit(0); value >= 0; value = expected.nextSetBit(value + 1)) {
+            assertTrue(bitmap.contains(value));
+        }
+    }
+
+    @Test
+    void setOperationsMatchBitSet() {
+        Sample left = random(2);
+        Sample right = random(3);
+        RoaringBitmap a = left.bitmap();
+        RoaringBitmap b = right.bitmap();
+
+        BitSet and = (BitSet) left.expected().clone();
+        and.and(right.expected());
+        BitSet or = (BitSet) left.expected().clone();
+        or.or(right.expected());
+        BitSet andNot = (BitSet) left.expected().clone();
+        andNot.andNot(right.expected());
+
+        assertSameValues(and, a.and(b));
+        assertSameValues(or, a.or(b));
+        assertSameValues(andNot, a.andNot(b));
+        // Gli operandi non vengono modificati
+        assertSameValues(left.expected(), a);
+        assertSameValues(right.expected(), b);
+    }
+
+    @Test
+    void emptyBitmap() {
+        RoaringBitmap empty = new RoaringBitmap();
+        RoaringBitmap other = new RoaringBitmap();
+        other.add(7);
+
+        assertTrue(empty.isEmpty());
+        assertTrue(empty.and(other).isEmpty());
+        assertSameValues(BitSet.valueOf(new long[] {1L << 7}), empty.or(other));
+        empty.remove(7);
+        assertEquals(0, empty.cardinality());
+    }
+}
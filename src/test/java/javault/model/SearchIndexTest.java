@@ -0,0 +1,117 @@
+package javault.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test di {@link SearchIndex}: sottostringhe, refusi, abbreviazioni, rimozioni e codifica.
+ */
+class SearchIndexTest {
+
+    private static SearchIndex sample() {
+        SearchIndex index = new SearchIndex();
+        index.add("GitLab prod", "deploy@example.com");
+        index.add("GitHub", "mario.rossi");
+        index.add("Gmail personale", "mario.rossi@gmail.com");
+        index.add("Banca Intesa", "cliente42");
+        return index;
+    }
+
+    @Test
+    void findsSubstringsAndTypos() {
+        SearchIndex index = sample();
+
+        assertEquals("GitLab prod", index.search("gitlab", 10).get(0));
+        assertEquals("Banca Intesa", index.search("intesa", 10).get(0));
+        assertEquals("Banca Intesa", index.search("bnaca intesa", 10).get(0));
+        assertTrue(index.search("zzzzqqq", 10).isEmpty());
+    }
+
+    @Test
+    void findsAbbreviations() {
+        assertEquals("GitLab prod", sample().search("gtlbprd", 10).get(0));
+    }
+
+    @Test
+    void findsByUsername() {
+        List<String> results = sample().search("mario rossi", 10);
+
+        assertTrue(results.containsAll(List.of("GitHub", "Gmail personale")), results.toString());
+        assertFalse(results.contains("Banca Intesa"));
+    }
+
+    @Test
+    void prefixMatchesRankFirstAndLimitApplies() {
+        SearchIndex index = new SearchIndex();
+        index.add("vecchio server", null);
+        index.add("server", null);
+        index.add("server di backup", null);
+
+        assertEquals(List.of("server", "server di backup"), index.search("server", 2));
+    }
+
+    @Test
+    void shortQueryHasNoGrams() {
+        assertNull(sample().search("g", 10));
+    }
+
+    @Test
+    void removedAndReplacedLoginsAreUpdated() {
+        SearchIndex index = sample();
+        index.remove("GitHub");
+        index.add("Banca Intesa", "nuovo-utente");
+
+        assertFalse(index.search("github", 10).contains("GitHub"));
+        assertFalse(index.search("cliente42", 10).contains("Banca Intesa"));
+        assertEquals("Banca Intesa", index.search("nuovo utente", 10).get(0));
+        assertEquals(3, index.size());
+        assertFalse(index.contains("GitHub"));
+    }
+
+    @Test
+    void manyRemovalsTriggerCompaction() {
+        SearchIndex index = new SearchIndex();
+        for (int i = 0; i < 3000; i++) {
+            index.add("login" + i, null);
+        }
+        for (int i = 0; i < 2900; i++) {
+            index.remove("login" + i);
+        }
+
+        assertEquals(100, index.size());
+        assertEquals("login2999", index.search("login2999", 1).get(0));
+    }
+
+    @Test
+    void encodeDecodeRoundTrip() {
+        SearchIndex index = sample();
+        index.remove("GitHub");
+        assertThrows(IllegalStateException.class, index::encode);
+        index.compact();
+
+        SearchIndex decoded = SearchIndex.decode(index.encode());
+        assertEquals(3, decoded.size());
+        assertEquals("GitLab prod", decoded.search("gtlbprd", 10).get(0));
+        assertEquals(index.search("mario", 10), decoded.search("mario", 10));
+    }
+
+    @Test
+    void invalidDataIsNotDecoded() {
+        SearchIndex index = sample();
+        byte[] encoded = index.encode();
+
+        assertNull(SearchIndex.decode(new byte[0]));
+        assertNull(SearchIndex.decode(Arrays.copyOf(encoded, encoded.length - 1)));
+        byte[] version = encoded.clone();
+        version[0] = 99;
+        assertNull(SearchIndex.decode(version));
+    }
+}
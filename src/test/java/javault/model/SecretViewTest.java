@@ -0,0 +1,37 @@
+package javault.model;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test di {@link SecretView}: lettura durante l'accesso, segnaposto al posto del contenuto e invalidazione.
+ */
+class SecretViewTest {
+
+    @Test
+    void readsDuringBorrowAndNeverShowsContent() {
+        LoginEntry entry = new LoginEntry("utente".toCharArray(), "segreta".toCharArray());
+
+        String shown = entry.borrow((username, password) -> {
+            char[] copy = new char[3];
+            password.getChars(2, 5, copy, 0);
+            assertArrayEquals("gre".toCharArray(), copy);
+            assertEquals('s', password.charAt(0));
+            assertEquals("********", password.subSequence(0, 3).toString());
+            return "password: " + password;
+        });
+        assertEquals("password: ********", shown);
+    }
+
+    @Test
+    void viewIsInvalidAfterBorrow() {
+        LoginEntry entry = new LoginEntry("utente".toCharArray(), "segreta".toCharArray());
+
+        CharSequence leaked = entry.borrow((username, password) -> password.subSequence(1, 4));
+        assertThrows(IllegalStateException.class, () -> leaked.charAt(0));
+        assertEquals("********", leaked.toString());
+    }
+}
@@ -0,0 +1,123 @@
+package javault.model;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test di {@link VaultBatch}: applicazione atomica, fallimenti senza effetti e isolamento degli snapshot.
+ */
+class VaultBatchTest {
+
+    private static VaultData vault() {
+        VaultData vault = new VaultData();
+        vault.addLogin("email", "utente".toCharArray(), "vecchia".toCharArray());
+        vault.addLogin("banca", "cliente".toCharArray(), "segreta".toCharArray());
+        return vault;
+    }
+
+    @Test
+    void commitAppliesAllChanges() {
+        VaultData vault = vault();
+        try (VaultBatch batch = vault.beginBatch()) {
+            batch.add("social", "io".toCharArray(), "nuova".toCharArray())
+                    .update("email", "utente".toCharArray(), "ruotata".toCharArray())
+                    .remove("banca")
+                    .setLabels("email", "personale", List.of("posta"));
+            assertEquals(4, batch.size());
+            assertEquals(3, batch.commit(b -> { }));
+        }
+
+        assertEquals(Set.of("email", "social"), vault.getAllLogins());
+        assertArrayEquals("ruotata".toCharArray(), vault.getLogin("email").getPassword());
+        assertEquals("personale", vault.getLogin("email").getFolder());
+        assertEquals(List.of("email"), vault.filter("posta"));
+        assertEquals(1, vault.getPasswordHistory("email").size());
+    }
+
+    @Test
+    void inapplicableChangeLeavesVaultUnchanged() {
+        VaultData vault = vault();
+        try (VaultBatch batch = vault.beginBatch()) {
+            batch.remove("email").add("banca", "altro".toCharArray(), "altra".toCharArray());
+            assertThrows(IllegalStateException.class, () -> batch.commit(b -> { }));
+        }
+
+        assertEquals(Set.of("email", "banca"), vault.getAllLogins());
+        assertArrayEquals("segreta".toCharArray(), vault.getLogin("banca").getPassword());
+    }
+
+    @Test
+    void failedWriteLeavesVaultUnchanged() {
+        VaultData vault = vault();
+        try (VaultBatch batch = vault.beginBatch()) {
+            batch.update("email", "utente".toCharArray(), "ruotata".toCharArray())
+                    .setLabels("banca", "lavoro", List.of())
+                    .remove("banca");
+            assertThrows(IOException.class, () -> batch.commit(b -> {
+                throw new IOException("disco pieno");
+            }));
+            assertThrows(IllegalStateException.class, () -> batch.commit(b -> { }));
+        }
+
+        assertEquals(Set.of("email", "banca"), vault.getAllLogins());
+        assertArrayEquals("vecchia".toCharArray(), vault.getLogin("email").getPassword());
+        assertEquals("", vault.getLogin("banca").getFolder());
+        assertTrue(vault.getPasswordHistory("email").isEmpty());
+    }
+
+    @Test
+    void writerSeesVerifiedChangesBeforeTheyArePublished() {
+        VaultData vault = vault();
+        try (VaultBatch batch = vault.beginBatch()) {
+            batch.update("email", "utente".toCharArray(), "ruotata".toCharArray());
+            batch.commit(b -> {
+                assertEquals(VaultBatch.Kind.UPDATE, b.getOperations().get(0).kind());
+                assertArrayEquals("vecchia".toCharArray(), vault.getLogin("email").getPassword());
+            });
+        }
+        assertArrayEquals("ruotata".toCharArray(), vault.getLogin("email").getPassword());
+    }
+
+    @Test
+    void snapshotDoesNotSeeLaterChanges() {
+        VaultData vault = vault();
+        try (VaultSnapshot snapshot = vault.snapshot()) {
+            try (VaultBatch batch = vault.beginBatch()) {
+                batch.update("email", "utente".toCharArray(), "ruotata".toCharArray())
+                        .remove("banca")
+                        .setLabels("email", "personale", List.of());
+                batch.commit(b -> { });
+            }
+
+            assertEquals(List.of("banca", "email"), snapshot.names().stream().sorted().toList());
+            assertTrue(snapshot.borrow("email", (username, password) -> CharSequence.compare(password, "vecchia") == 0));
+            assertTrue(snapshot.borrow("banca", (username, password) -> CharSequence.compare(password, "segreta") == 0));
+            assertEquals("", snapshot.peekLogin("email").getFolder());
+        }
+        assertEquals(Set.of("email"), vault.getAllLogins());
+        assertArrayEquals("ruotata".toCharArray(), vault.getLogin("email").getPassword());
+    }
+
+    @Test
+    void relabelingKeepsSnapshotLabelsAndHistory() {
+        VaultData vault = vault();
+        try (VaultSnapshot snapshot = vault.snapshot()) {
+            assertTrue(vault.setLabels("email", "personale", List.of("posta")));
+
+            assertEquals("", snapshot.peekLogin("email").getFolder());
+            assertEquals("personale", vault.getLogin("email").getFolder());
+        }
+        assertFalse(vault.setLabels("assente", "x", List.of()));
+        assertTrue(vault.getPasswordHistory("email").isEmpty());
+        assertArrayEquals("vecchia".toCharArray(), vault.getLogin("email").getPassword());
+    }
+}
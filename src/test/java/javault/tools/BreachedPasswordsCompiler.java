@@ -0,0 +1,30 @@
+package javault.tools;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import javault.utils.BreachedPasswords;
+
+/**
+ * Strumento di compilazione dell'elenco delle password compromesse: legge l'elenco di testo ordinato
+ * per hash distribuito da Have I Been Pwned e scrive il file binario letto da {@link BreachedPasswords}.
+ */
+public final class BreachedPasswordsCompiler {
+
+    private BreachedPasswordsCompiler() {
+    }
+
+    /**
+     * Compila l'elenco di testo indicato nel formato binario.
+     *
+     * @param args l'elenco di testo ordinato per hash e il file binario di destinazione
+     * @throws IOException se un file non può essere letto o scritto, o l'elenco non è ordinato
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Uso: BreachedPasswordsCompiler <elenco.txt> <elenco.bin>");
+            return;
+        }
+        System.out.println("Hash: " + BreachedPasswords.build(Path.of(args[0]), Path.of(args[1])));
+    }
+}
@@ -0,0 +1,57 @@
+package javault.tools;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import javault.model.WordList;
+
+/**
+ * Strumento di compilazione dell'elenco di parole delle passphrase: legge un elenco di testo
+ * e scrive la risorsa binaria letta da {@link WordList}.
+ * <p>
+ * Le righe vuote e quelle che iniziano con {@code #} vengono ignorate; di ogni altra riga viene presa
+ * l'ultima parola, così che si possano usare direttamente gli elenchi Diceware con i dadi davanti.
+ */
+public final class WordListCompiler {
+
+    private WordListCompiler() {
+    }
+
+    /**
+     * Legge le parole di un elenco di testo.
+     *
+     * @param source il file di testo di origine
+     * @return le parole, nell'ordine del file
+     * @throws IOException se il file non può essere letto
+     */
+    public static List<String> read(Path source) throws IOException {
+        List<String> words = new ArrayList<>();
+        for (String line : Files.readAllLines(source, StandardCharsets.UTF_8)) {
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) continue;
+            String[] tokens = trimmed.split("\\s+");
+            words.add(tokens[tokens.length - 1]);
+        }
+        return words;
+    }
+
+    /**
+     * Compila un elenco di testo nel formato binario.
+     *
+     * @param args il file di testo di origine e il file binario di destinazione
+     * @throws IOException se un file non può essere letto o scritto
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Uso: WordListCompiler <elenco.txt> <elenco.bin>");
+            return;
+        }
+        List<String> words = read(Path.of(args[0]));
+        Files.write(Path.of(args[1]), WordList.encode(words));
+        System.out.println("Parole: " + words.size());
+    }
+}
@@ -0,0 +1,53 @@
+package javault.tools;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import javault.model.PassphraseGenerator;
+import javault.model.WordList;
+
+/**
+ * Verifica che l'elenco di parole incluso nell'applicazione sia compilato dal testo nei sorgenti di test.
+ */
+class WordListCompilerTest {
+
+    private static List<String> sourceWords() throws IOException, URISyntaxException {
+        return WordListCompiler.read(Path.of(WordListCompilerTest.class.getResource("wordlist.txt").toURI()));
+    }
+
+    @Test
+    void bundledListMatchesSource() throws Exception {
+        List<String> words = sourceWords();
+        assertEquals(7776, words.size());
+        assertEquals(words.size(), new HashSet<>(words).size());
+
+        try (InputStream bundled = WordList.class.getResourceAsStream("wordlist.bin")) {
+            assertNotNull(bundled);
+            assertArrayEquals(WordList.encode(words), bundled.readAllBytes());
+        }
+    }
+
+    @Test
+    void passphrasesUseListedWords() throws Exception {
+        HashSet<String> words = new HashSet<>(sourceWords());
+        PassphraseGenerator generator = new PassphraseGenerator('-', false);
+
+        for (int i = 0; i < 100; i++) {
+            for (String word : new String(generator.generatePassphrase(5)).split("-")) {
+                assertTrue(words.contains(word), word);
+            }
+        }
+        assertEquals(5 * Math.log(7776) / Math.log(2), generator.entropyBits(5), 1e-9);
+    }
+}
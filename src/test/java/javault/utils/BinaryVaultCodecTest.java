@@ -0,0 +1,110 @@
+package javault.utils;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import javault.model.VaultData;
+import javault.model.VaultSnapshot;
+
+/**
+ * Test di {@link BinaryVaultCodec}: codifica e lettura, versione precedente, contenuti troncati o non validi.
+ */
+class BinaryVaultCodecTest {
+
+    private static byte[] write(VaultData vault) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (VaultSnapshot snapshot = vault.snapshot()) {
+            BinaryVaultCodec.write(snapshot, out);
+        }
+        return out.toByteArray();
+    }
+
+    private static VaultData read(byte[] content) throws IOException {
+        return BinaryVaultCodec.read(new ByteArrayInputStream(content));
+    }
+
+    @Test
+    void roundTripKeepsCredentialsAndLabels() throws Exception {
+        char[] longPassword = new char[5000]; // oltre i buffer iniziali e quello di lettura
+        Arrays.fill(longPassword, 'é');
+        VaultData vault = new VaultData();
+        vault.addLogin("email", "utente@example.com".toCharArray(), "pässwörd€𝄞".toCharArray());
+        vault.addLogin("lunga", "u".toCharArray(), longPassword.clone());
+        vault.addLogin("vuota", new char[0], new char[0]);
+        vault.setLabels("email", "personale", List.of("posta", "importante"));
+
+        byte[] content = write(vault);
+        assertEquals(BinaryVaultCodec.VERSION, content[0]);
+        VaultData loaded = read(content);
+
+        assertEquals(Set.of("email", "lunga", "vuota"), loaded.getAllLogins());
+        assertArrayEquals("pässwörd€𝄞".toCharArray(), loaded.getLogin("email").getPassword());
+        assertArrayEquals(longPassword, loaded.getLogin("lunga").getPassword());
+        assertArrayEquals(new char[0], loaded.getLogin("vuota").getUsername());
+        assertEquals("personale", loaded.getLogin("email").getFolder());
+        assertEquals(Set.of("posta", "importante"), loaded.getLogin("email").getTags());
+        assertEquals(List.of("email"), loaded.filter("posta"));
+    }
+
+    @Test
+    void manyEntriesRoundTrip() throws Exception {
+        VaultData vault = new VaultData();
+        for (int i = 0; i < 2000; i++) {
+            vault.addLogin("login" + i, ("utente" + i).toCharArray(), ("password" + i).toCharArray());
+        }
+
+        VaultData loaded = read(write(vault));
+        assertEquals(2000, loaded.getAllLogins().size());
+        assertArrayEquals("password1999".toCharArray(), loaded.getLogin("login1999").getPassword());
+    }
+
+    @Test
+    void readsVersionWithoutLabels() throws Exception {
+        // Versione 1: numero di entry, poi nome, username e password
+        byte[] content = {1, 1, 3, 'a', 'b', 'c', 1, 'u', 2, 'p', 'w'};
+
+        VaultData loaded = read(content);
+        assertEquals(Set.of("abc"), loaded.getAllLogins());
+        assertArrayEquals("pw".toCharArray(), loaded.getLogin("abc").getPassword());
+        assertEquals("", loaded.getLogin("abc").getFolder());
+    }
+
+    @Test
+    void truncatedContentIsRejected() throws Exception {
+        VaultData vault = new VaultData();
+        vault.addLogin("email", "utente".toCharArray(), "password".toCharArray());
+        byte[] content = write(vault);
+
+        for (int length = 0; length < content.length; length++) {
+            byte[] truncated = Arrays.copyOf(content, length);
+            assertThrows(IOException.class, () -> read(truncated));
+        }
+    }
+
+    @Test
+    void invalidContentIsRejected() {
+        assertThrows(IOException.class, () -> read(new byte[] {9, 0}));
+        // Sequenza UTF-8 non valida nel nome
+        assertThrows(IOException.class, () -> read(new byte[] {2, 1, 1, (byte) 0xFF, 0, 0, 0, 0}));
+        // Lunghezza oltre i 32 bit
+        assertThrows(IOException.class, () -> read(new byte[] {2, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x7F}));
+    }
+
+    @Test
+    void jsonIsNotMistakenForBinary() {
+        assertFalse(BinaryVaultCodec.isVersion('{'));
+        assertTrue(BinaryVaultCodec.isVersion(BinaryVaultCodec.VERSION));
+    }
+}
@@ -0,0 +1,143 @@
+package javault.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Test di {@link BreachedPasswords}: compilazione di un elenco in formato HIBP e ricerca.
+ */
+class BreachedPasswordsTest {
+
+    private static final List<String> BREACHED = List.of("password", "123456", "qwerty", "letmein", "àèìòù€");
+
+    @TempDir
+    Path directory;
+
+    private static String sha1(String password) throws NoSuchAlgorithmException {
+        byte[] hash = MessageDigest.getInstance("SHA-1").digest(password.getBytes(StandardCharsets.UTF_8));
+        return HexFormat.of().withUpperCase().formatHex(hash);
+    }
+
+    /**
+     * Scrive l'elenco di testo ordinato per hash, con le occorrenze come negli elenchi HIBP, e lo compila.
+     */
+    private BreachedPasswords build(List<String> passwords) throws IOException, NoSuchAlgorithmException {
+        List<String> lines = new ArrayList<>();
+        for (String password : passwords) {
+            lines.add(sha1(password) + ":" + password.length());
+        }
+        lines.sort(null);
+        Path source = directory.resolve("breached.txt");
+        Path binary = directory.resolve("breached.bin");
+        Files.write(source, lines, StandardCharsets.US_ASCII);
+
+        assertEquals(passwords.size(), BreachedPasswords.build(source, binary));
+        return BreachedPasswords.open(binary);
+    }
+
+    @Test
+    void findsListedPasswords() throws Exception {
+        BreachedPasswords breached = build(BREACHED);
+
+        assertTrue(breached.isAvailable());
+        assertEquals(BREACHED.size(), breached.size());
+        for (String password : BREACHED) {
+            assertTrue(breached.isBreached(password.toCharArray()), password);
+        }
+        assertFalse(breached.isBreached("k9#Vq2!mZ7@pL4$x".toCharArray()));
+        assertFalse(breached.isBreached("Password".toCharArray()));
+    }
+
+    @Test
+    void checksPartOfABufferWithoutCopying() throws Exception {
+        BreachedPasswords breached = build(BREACHED);
+        String buffer = "xxqwertyxx";
+
+        assertTrue(breached.isBreached(buffer.subSequence(2, 8)));
+        assertFalse(breached.isBreached(buffer.subSequence(2, 9)));
+    }
+
+    @Test
+    void unsortedListIsRejected() throws Exception {
+        List<String> lines = new ArrayList<>(List.of(sha1("a"), sha1("b")));
+        lines.sort(null);
+        Files.write(directory.resolve("unsorted.txt"), lines.reversed(), StandardCharsets.US_ASCII);
+
+        assertThrows(IOException.class,
+                () -> BreachedPasswords.build(directory.resolve("unsorted.txt"), directory.resolve("unsorted.bin")));
+    }
+
+    @Test
+    void failedBuildKeepsPreviousList() throws Exception {
+        build(BREACHED);
+        Path source = directory.resolve("breached.txt");
+        Path binary = directory.resolve("breached.bin");
+        Files.write(source, List.of("non-esadecimale-0123456789"), StandardCharsets.US_ASCII);
+
+        assertThrows(IOException.class, () -> BreachedPasswords.build(source, binary));
+        assertFalse(Files.exists(directory.resolve("breached.bin.tmp")));
+        assertEquals(BREACHED.size(), BreachedPasswords.open(binary).size());
+    }
+
+    @Test
+    void filterFunctionsFollowBitsPerHash() throws Exception {
+        Path source = directory.resolve("large.txt");
+        Path binary = directory.resolve("large.bin");
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++) {
+            lines.add(String.format("%016X%024X", mix(i), 0));
+        }
+        lines.sort(null);
+        Files.write(source, lines, StandardCharsets.US_ASCII);
+
+        assertEquals(100_000, BreachedPasswords.build(source, binary));
+        ByteBuffer header = ByteBuffer.wrap(Files.readAllBytes(binary));
+        assertEquals(20, header.getInt(16)); // 2^20 bit, 10,5 per hash
+        assertEquals(7, header.getInt(20));
+
+        // Con pochi hash il filtro minimo ha molti bit per hash: più funzioni, fino al limite
+        build(BREACHED);
+        assertEquals(16, ByteBuffer.wrap(Files.readAllBytes(directory.resolve("breached.bin"))).getInt(20));
+    }
+
+    @Test
+    void previousVersionIsStillRead() throws Exception {
+        build(BREACHED);
+        Path binary = directory.resolve("breached.bin");
+        byte[] file = Files.readAllBytes(binary);
+        ByteBuffer.wrap(file).putInt(4, 1);
+        Files.write(binary, file);
+
+        assertTrue(BreachedPasswords.open(binary).isBreached("letmein".toCharArray()));
+    }
+
+    /** Hash pseudocasuali distinti per gli elenchi di prova. */
+    private static long mix(long value) {
+        long z = value * 0x9E3779B97F4A7C15L;
+        return z ^ (z >>> 29);
+    }
+
+    @Test
+    void invalidFileIsRejected() throws Exception {
+        Path file = directory.resolve("invalid.bin");
+        Files.write(file, new byte[64]);
+
+        assertThrows(IOException.class, () -> BreachedPasswords.open(file));
+    }
+}
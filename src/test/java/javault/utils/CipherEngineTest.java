@@ -0,0 +1,112 @@
+package javault.utils;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test di {@link CipherEngine}: cifratura e decifratura, dati associati e record alterati.
+ */
+class CipherEngineTest {
+
+    private static final byte[] PLAINTEXT = "credenziali di prova".getBytes(StandardCharsets.UTF_8);
+
+    static SecretKey newKey() throws GeneralSecurityException {
+        KeyGenerator generator = KeyGenerator.getInstance("AES");
+        generator.init(256);
+        return generator.generateKey();
+    }
+
+    @Test
+    void sealAndOpenRoundTrip() throws GeneralSecurityException {
+        CipherEngine engine = new CipherEngine(newKey());
+        byte[] sealed = engine.seal(PLAINTEXT);
+
+        assertEquals(CipherEngine.sealedSize(PLAINTEXT.length), sealed.length);
+        assertArrayEquals(PLAINTEXT, engine.open(sealed));
+    }
+
+    @Test
+    void byteBufferRoundTrip() throws GeneralSecurityException {
+        CipherEngine engine = new CipherEngine(newKey());
+        ByteBuffer sealed = ByteBuffer.allocate(CipherEngine.sealedSize(PLAINTEXT.length));
+        assertEquals(sealed.capacity(), engine.encryptInto(ByteBuffer.wrap(PLAINTEXT), sealed));
+
+        ByteBuffer plain = ByteBuffer.allocate(PLAINTEXT.length);
+        assertEquals(PLAINTEXT.length, engine.decryptInto(sealed.flip(), plain));
+        assertArrayEquals(PLAINTEXT, plain.array());
+    }
+
+    @Test
+    void tamperedRecordIsRejected() throws GeneralSecurityException {
+        CipherEngine engine = new CipherEngine(newKey());
+        byte[] sealed = engine.seal(PLAINTEXT);
+        for (int position : new int[] {0, CipherEngine.IV_SIZE, sealed.length - 1}) {
+            byte[] tampered = sealed.clone();
+            tampered[position] ^= 1;
+            assertNull(engine.open(tampered), "byte alterato in posizione " + position);
+        }
+    }
+
+    @Test
+    void truncatedRecordIsRejected() throws GeneralSecurityException {
+        CipherEngine engine = new CipherEngine(newKey());
+        byte[] sealed = engine.seal(PLAINTEXT);
+
+        assertNull(engine.open(Arrays.copyOf(sealed, sealed.length - 1)));
+        assertNull(engine.open(new byte[CipherEngine.IV_SIZE]));
+    }
+
+    @Test
+    void wrongKeyIsRejected() throws GeneralSecurityException {
+        byte[] sealed = new CipherEngine(newKey()).seal(PLAINTEXT);
+
+        assertNull(new CipherEngine(newKey()).open(sealed));
+    }
+
+    @Test
+    void associatedDataMustMatch() throws GeneralSecurityException {
+        CipherEngine engine = new CipherEngine(newKey());
+        byte[] sealed = engine.seal(PLAINTEXT, new byte[] {0, 1});
+
+        assertArrayEquals(PLAINTEXT, engine.open(sealed, new byte[] {0, 1}));
+        assertNull(engine.open(sealed, new byte[] {0, 2}));
+        assertNull(engine.open(sealed));
+    }
+
+    @Test
+    void sealAllAndOpenAllKeepOrder() throws GeneralSecurityException {
+        CipherEngine engine = new CipherEngine(newKey());
+        byte[][] plaintexts = new byte[100][]; // oltre la soglia della cifratura in parallelo
+        byte[][] aads = new byte[plaintexts.length][];
+        for (int i = 0; i < plaintexts.length; i++) {
+            plaintexts[i] = ("record " + i).getBytes(StandardCharsets.UTF_8);
+            aads[i] = new byte[] {(byte) i};
+        }
+
+        byte[][] sealed = engine.sealAll(plaintexts, aads);
+        byte[][] opened = engine.openAll(sealed, aads);
+        for (int i = 0; i < plaintexts.length; i++) {
+            assertArrayEquals(plaintexts[i], opened[i]);
+        }
+
+        // Record scambiati: i dati associati non corrispondono più
+        byte[] first = sealed[0];
+        sealed[0] = sealed[1];
+        sealed[1] = first;
+        opened = engine.openAll(sealed, aads);
+        assertNull(opened[0]);
+        assertNull(opened[1]);
+        assertArrayEquals(plaintexts[2], opened[2]);
+    }
+}
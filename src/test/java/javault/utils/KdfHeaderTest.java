@@ -0,0 +1,146 @@
+package javault.utils;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javault.exception.VaultException;
+
+/**
+ * Test di {@link KdfHeader}: codifica, validazione dei parametri, salt storico e aggiornamento in attesa.
+ * L'intestazione usa percorsi relativi alla directory di lavoro, impostata dal pom sotto {@code target}.
+ */
+class KdfHeaderTest {
+
+    private static final Path HEADER = Path.of(KdfHeader.HEADER_PATH);
+    private static final Path PENDING = Path.of("vault/vault.hdr.new");
+    private static final Path LEGACY_SALT = Path.of("vault/salt.bin");
+    /** Posizione del numero di iterazioni: magic, versione, lunghezza e nome dell'algoritmo. */
+    private static final int ITERATIONS_OFFSET = 4 + 1 + 1 + "PBKDF2WithHmacSHA256".length();
+
+    private static final char[] PASSWORD = "master-password".toCharArray();
+
+    @BeforeEach
+    @AfterEach
+    void deleteFiles() throws IOException {
+        for (Path path : List.of(HEADER, PENDING, LEGACY_SALT)) {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    private static byte[] encoded(KdfHeader header) {
+        ByteBuffer buffer = header.encode();
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    @Test
+    void encodeDecodeKeepsKeyDerivation() throws Exception {
+        KdfHeader header = KdfHeader.calibrate(1);
+        KdfHeader decoded = KdfHeader.decode(header.encode());
+
+        assertEquals(header.getIterations(), decoded.getIterations());
+        assertArrayEquals(header.deriveKey(PASSWORD).getEncoded(), decoded.deriveKey(PASSWORD).getEncoded());
+        assertFalse(decoded.needsUpgrade());
+    }
+
+    @Test
+    void calibrationNeverGoesBelowLegacyIterations() {
+        KdfHeader header = KdfHeader.calibrate(1);
+
+        assertTrue(header.getIterations() >= 65536);
+        assertFalse(header.needsUpgrade());
+        // Salt casuale: due intestazioni derivano chiavi diverse dalla stessa password
+        assertNotEquals(Arrays.toString(header.deriveKey(PASSWORD).getEncoded()),
+                Arrays.toString(KdfHeader.calibrate(1).deriveKey(PASSWORD).getEncoded()));
+    }
+
+    @Test
+    void tamperedParametersAreRejected() {
+        byte[] valid = encoded(KdfHeader.calibrate(1));
+
+        byte[] zeroIterations = valid.clone();
+        ByteBuffer.wrap(zeroIterations).putInt(ITERATIONS_OFFSET, 0);
+        assertThrows(VaultException.class, () -> KdfHeader.decode(ByteBuffer.wrap(zeroIterations)));
+
+        byte[] hugeIterations = valid.clone();
+        ByteBuffer.wrap(hugeIterations).putInt(ITERATIONS_OFFSET, Integer.MAX_VALUE);
+        assertThrows(VaultException.class, () -> KdfHeader.decode(ByteBuffer.wrap(hugeIterations)));
+
+        byte[] keySize = valid.clone();
+        ByteBuffer.wrap(keySize).putShort(ITERATIONS_OFFSET + 4, (short) 64);
+        assertThrows(VaultException.class, () -> KdfHeader.decode(ByteBuffer.wrap(keySize)));
+
+        byte[] noSalt = Arrays.copyOf(valid, ITERATIONS_OFFSET + 4 + 2 + 1);
+        noSalt[noSalt.length - 1] = 0;
+        assertThrows(VaultException.class, () -> KdfHeader.decode(ByteBuffer.wrap(noSalt)));
+
+        byte[] magic = valid.clone();
+        magic[0] = 'X';
+        assertThrows(VaultException.class, () -> KdfHeader.decode(ByteBuffer.wrap(magic)));
+    }
+
+    @Test
+    void truncatedHeaderIsRejected() {
+        byte[] valid = encoded(KdfHeader.calibrate(1));
+
+        for (int length = 0; length < valid.length; length++) {
+            byte[] truncated = Arrays.copyOf(valid, length);
+            assertThrows(VaultException.class, () -> KdfHeader.decode(ByteBuffer.wrap(truncated)));
+        }
+    }
+
+    @Test
+    void legacySaltUsesHistoricParameters() throws Exception {
+        assertNull(KdfHeader.load());
+        Files.createDirectories(LEGACY_SALT.getParent());
+        Files.write(LEGACY_SALT, new byte[16]);
+
+        KdfHeader legacy = KdfHeader.load();
+        assertEquals(65536, legacy.getIterations());
+        assertTrue(legacy.needsUpgrade());
+    }
+
+    @Test
+    void pendingHeaderBecomesEffectiveOnlyWhenPromoted() throws Exception {
+        Files.createDirectories(LEGACY_SALT.getParent());
+        Files.write(LEGACY_SALT, new byte[16]);
+        KdfHeader upgraded = KdfHeader.calibrate(1);
+        upgraded.savePending();
+
+        assertTrue(KdfHeader.load().needsUpgrade());
+        assertEquals(upgraded.getIterations(), KdfHeader.loadPending().getIterations());
+
+        KdfHeader.promotePending();
+        assertNull(KdfHeader.loadPending());
+        assertFalse(Files.exists(LEGACY_SALT));
+        assertArrayEquals(upgraded.deriveKey(PASSWORD).getEncoded(), KdfHeader.load().deriveKey(PASSWORD).getEncoded());
+    }
+
+    @Test
+    void discardedPendingHeaderIsRemoved() throws Exception {
+        KdfHeader current = KdfHeader.calibrate(1);
+        current.save();
+        KdfHeader.calibrate(1).savePending();
+
+        KdfHeader.discardPending();
+        assertNull(KdfHeader.loadPending());
+        assertArrayEquals(current.deriveKey(PASSWORD).getEncoded(), KdfHeader.load().deriveKey(PASSWORD).getEncoded());
+    }
+}
@@ -0,0 +1,101 @@
+package javault.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javault.model.VaultData;
+
+/**
+ * Test di {@link PasswordAudit}: password riutilizzate, ricalcolo dei soli login modificati
+ * e ricerca nell'elenco delle password compromesse.
+ */
+class PasswordAuditTest {
+
+    @TempDir
+    Path directory;
+
+    private static void add(VaultData vault, String name, String password) {
+        vault.addLogin(name, "utente".toCharArray(), password.toCharArray());
+    }
+
+    @Test
+    void reusedPasswordsAreGrouped() throws Exception {
+        VaultData vault = new VaultData();
+        add(vault, "email", "condivisa");
+        add(vault, "forum", "condivisa");
+        add(vault, "banca", "condivisa");
+        add(vault, "lavoro", "àèìòù");
+        add(vault, "casa", "àèìòù");
+        add(vault, "unica", "diversa");
+
+        PasswordAudit.Result result = new PasswordAudit(CipherEngineTest.newKey()).audit(vault);
+        assertEquals(List.of(List.of("banca", "email", "forum"), List.of("casa", "lavoro")), result.reused());
+        assertEquals(6, result.audited());
+        assertEquals(6, result.rehashed());
+    }
+
+    @Test
+    void onlyChangedLoginsAreRehashed() throws Exception {
+        VaultData vault = new VaultData();
+        for (int i = 0; i < 100; i++) {
+            add(vault, "login" + i, "password" + i);
+        }
+        PasswordAudit audit = new PasswordAudit(CipherEngineTest.newKey());
+        assertTrue(audit.audit(vault).reused().isEmpty());
+
+        add(vault, "login7", "password3");
+        vault.removeLogin("login50");
+        PasswordAudit.Result result = audit.audit(vault);
+        assertEquals(List.of(List.of("login3", "login7")), result.reused());
+        assertEquals(99, result.audited());
+        assertEquals(1, result.rehashed());
+    }
+
+    @Test
+    void undecryptableLoginsAreSkipped() throws Exception {
+        VaultData vault = new VaultData();
+        add(vault, "email", "condivisa");
+        add(vault, "forum", "condivisa");
+        vault.addSealedLogin("danneggiato", new byte[32]);
+        vault.setUnsealer(sealed -> null);
+
+        PasswordAudit.Result result = new PasswordAudit(CipherEngineTest.newKey()).audit(vault);
+        assertEquals(List.of(List.of("email", "forum")), result.reused());
+        assertEquals(2, result.audited());
+    }
+
+    @Test
+    void breachedPasswordsAreFound() throws Exception {
+        Path source = directory.resolve("breached.txt");
+        Path binary = directory.resolve("breached.bin");
+        MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+        List<String> lines = List.of("password", "123456").stream()
+                .map(password -> HexFormat.of().withUpperCase()
+                        .formatHex(sha1.digest(password.getBytes(StandardCharsets.UTF_8))) + ":1")
+                .sorted()
+                .toList();
+        Files.write(source, lines, StandardCharsets.US_ASCII);
+        BreachedPasswords.build(source, binary);
+        BreachedPasswords breached = BreachedPasswords.open(binary);
+
+        VaultData vault = new VaultData();
+        add(vault, "email", "password");
+        add(vault, "forum", "123456");
+        add(vault, "banca", "Tr0ub4dor&3-non-compromessa");
+        PasswordAudit audit = new PasswordAudit(CipherEngineTest.newKey());
+        assertEquals(List.of("email", "forum"), audit.breached(vault, breached));
+
+        add(vault, "email", "nuova-password-sicura");
+        assertEquals(List.of("forum"), audit.breached(vault, breached));
+    }
+}
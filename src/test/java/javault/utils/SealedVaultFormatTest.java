@@ -0,0 +1,161 @@
+package javault.utils;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import javax.crypto.SecretKey;
+
+import org.junit.jupiter.api.Test;
+
+import javault.exception.InvalidPasswordException;
+import javault.model.VaultData;
+import javault.model.VaultSnapshot;
+
+/**
+ * Test di {@link SealedVaultFormat}: scrittura e lettura, record scambiati o alterati.
+ */
+class SealedVaultFormatTest {
+
+    private static byte[] write(VaultData vault, SecretKey key) throws Exception {
+        return write(vault, key, 0);
+    }
+
+    private static byte[] write(VaultData vault, SecretKey key, long journalSequence) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (VaultSnapshot snapshot = vault.snapshot()) {
+            SealedVaultFormat.write(snapshot, key, Channels.newChannel(out), journalSequence);
+        }
+        return out.toByteArray();
+    }
+
+    private static SealedVaultFormat.Contents readContents(byte[] file, SecretKey key) throws Exception {
+        return SealedVaultFormat.read(new DataInputStream(new ByteArrayInputStream(file)), key);
+    }
+
+    private static VaultData read(byte[] file, SecretKey key) throws Exception {
+        return readContents(file, key).vault();
+    }
+
+    /**
+     * @return un vault con due login di credenziali della stessa lunghezza, quindi record della stessa dimensione
+     */
+    private static VaultData twoLogins() {
+        VaultData vault = new VaultData();
+        vault.addLogin("uno", "utente1".toCharArray(), "password1".toCharArray());
+        vault.addLogin("due", "utente2".toCharArray(), "password2".toCharArray());
+        vault.setLabels("due", "lavoro/server", List.of("prod"));
+        return vault;
+    }
+
+    @Test
+    void roundTripKeepsCredentialsAndLabels() throws Exception {
+        SecretKey key = CipherEngineTest.newKey();
+        VaultData loaded = read(write(twoLogins(), key), key);
+
+        assertEquals(Set.of("uno", "due"), loaded.getAllLogins());
+        assertEquals(List.of("due"), loaded.filter("prod"));
+        assertArrayEquals("utente1".toCharArray(), loaded.getLogin("uno").getUsername());
+        assertArrayEquals("password2".toCharArray(), loaded.getLogin("due").getPassword());
+        assertEquals("lavoro/server", loaded.getLogin("due").getFolder());
+    }
+
+    @Test
+    void resealMovesRecordsToNewKeyWithoutOpeningEntries() throws Exception {
+        SecretKey oldKey = CipherEngineTest.newKey();
+        SecretKey newKey = CipherEngineTest.newKey();
+        VaultData vault = new VaultData();
+        for (int i = 0; i < 600; i++) { // più lotti
+            vault.addLogin("login" + i, "utente".toCharArray(), ("password" + i).toCharArray());
+        }
+        vault.setLabels("login7", "lavoro", List.of("prod"));
+        VaultData loaded = read(write(vault, oldKey), oldKey);
+        loaded.getLogin("login1"); // una entry già aperta, con il record ancora sulla vecchia chiave
+
+        assertTrue(SealedVaultFormat.reseal(loaded, oldKey, newKey));
+        assertTrue(loaded.peekLogin("login599").isSealed());
+        assertArrayEquals("password599".toCharArray(), loaded.getLogin("login599").getPassword());
+        assertEquals(List.of("login7"), loaded.filter("prod"));
+
+        VaultData reloaded = read(write(loaded, newKey), newKey);
+        assertArrayEquals("password1".toCharArray(), reloaded.getLogin("login1").getPassword());
+        assertArrayEquals("password0".toCharArray(), reloaded.getLogin("login0").getPassword());
+        assertThrows(InvalidPasswordException.class, () -> read(write(loaded, newKey), oldKey));
+    }
+
+    @Test
+    void failedResealLeavesVaultUnchanged() throws Exception {
+        SecretKey key = CipherEngineTest.newKey();
+        VaultData loaded = read(write(twoLogins(), key), key);
+
+        assertFalse(SealedVaultFormat.reseal(loaded, CipherEngineTest.newKey(), CipherEngineTest.newKey()));
+        assertArrayEquals("password2".toCharArray(), loaded.getLogin("due").getPassword());
+        assertEquals(Set.of("uno", "due"), read(write(loaded, key), key).getAllLogins());
+    }
+
+    @Test
+    void journalSequenceIsStoredInIndex() throws Exception {
+        SecretKey key = CipherEngineTest.newKey();
+
+        assertEquals(42, readContents(write(twoLogins(), key, 42), key).journalSequence());
+        assertEquals(-1, readContents(write(new VaultData(), key, -1), key).journalSequence());
+    }
+
+    @Test
+    void sealedRecordsAreRewrittenUnchanged() throws Exception {
+        SecretKey key = CipherEngineTest.newKey();
+        byte[] first = write(twoLogins(), key);
+        VaultData loaded = read(first, key);
+
+        // Le entry mai decifrate vengono riscritte senza ricifrarle: i record restano identici
+        byte[] second = write(loaded, key);
+        int indexEnd = 4 + ByteBuffer.wrap(first).getInt();
+        assertEquals(first.length, second.length);
+        assertArrayEquals(Arrays.copyOfRange(first, indexEnd, first.length),
+                Arrays.copyOfRange(second, 4 + ByteBuffer.wrap(second).getInt(), second.length));
+        assertArrayEquals("password1".toCharArray(), read(second, key).getLogin("uno").getPassword());
+    }
+
+    @Test
+    void swappedRecordsAreRejected() throws Exception {
+        SecretKey key = CipherEngineTest.newKey();
+        byte[] file = write(twoLogins(), key);
+        int indexEnd = 4 + ByteBuffer.wrap(file).getInt();
+        int recordSize = (file.length - indexEnd) / 2;
+        assertEquals(file.length, indexEnd + 2 * recordSize);
+
+        byte[] swapped = file.clone();
+        System.arraycopy(file, indexEnd, swapped, indexEnd + recordSize, recordSize);
+        System.arraycopy(file, indexEnd + recordSize, swapped, indexEnd, recordSize);
+
+        InvalidPasswordException e = assertThrows(InvalidPasswordException.class, () -> read(swapped, key));
+        assertTrue(e.getMessage().contains("alterato"));
+    }
+
+    @Test
+    void tamperedRecordIsRejected() throws Exception {
+        SecretKey key = CipherEngineTest.newKey();
+        byte[] file = write(twoLogins(), key);
+        file[file.length - 1] ^= 1;
+
+        assertThrows(InvalidPasswordException.class, () -> read(file, key));
+    }
+
+    @Test
+    void wrongKeyIsRejected() throws Exception {
+        byte[] file = write(twoLogins(), CipherEngineTest.newKey());
+
+        assertThrows(InvalidPasswordException.class, () -> read(file, CipherEngineTest.newKey()));
+    }
+}
@@ -0,0 +1,118 @@
+package javault.utils;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.crypto.SecretKey;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Test di {@link SegmentedAead}: cifratura e lettura parallela, segmenti alterati, scambiati o mancanti.
+ */
+class SegmentedAeadTest {
+
+    /** Dimensione su disco di un segmento completo, tag compreso. */
+    private static final int SEALED_SEGMENT = SegmentedAead.SEGMENT_SIZE + 16;
+    /** Dimensione di dimensione dei segmenti e prefisso dei nonce. */
+    private static final int HEADER = 4 + 7;
+
+    @TempDir
+    Path directory;
+
+    private static byte[] content(int length) {
+        byte[] content = new byte[length];
+        new Random(length).nextBytes(content);
+        return content;
+    }
+
+    private static byte[] encrypt(byte[] content, SecretKey key) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (SegmentedAead.Encryptor encryptor = new SegmentedAead.Encryptor(key, out)) {
+            // Scritture di dimensione diversa dai segmenti
+            for (int offset = 0; offset < content.length; offset += 10_000) {
+                encryptor.write(content, offset, Math.min(10_000, content.length - offset));
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private byte[] decrypt(byte[] file, SecretKey key) throws IOException {
+        Path path = directory.resolve("vault.seg");
+        Files.write(path, file);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+             InputStream in = new SegmentedAead.Decryptor(key, channel)) {
+            return in.readAllBytes();
+        }
+    }
+
+    @Test
+    void roundTripAcrossSegments() throws Exception {
+        SecretKey key = CipherEngineTest.newKey();
+        byte[] content = content(SegmentedAead.SEGMENT_SIZE * 5 / 2);
+        byte[] file = encrypt(content, key);
+
+        assertEquals(HEADER + 2 * SEALED_SEGMENT + content.length - 2 * SegmentedAead.SEGMENT_SIZE + 16, file.length);
+        assertArrayEquals(content, decrypt(file, key));
+    }
+
+    @Test
+    void emptyAndExactContentRoundTrip() throws Exception {
+        SecretKey key = CipherEngineTest.newKey();
+
+        assertArrayEquals(new byte[0], decrypt(encrypt(new byte[0], key), key));
+        byte[] exact = content(SegmentedAead.SEGMENT_SIZE * 2);
+        assertArrayEquals(exact, decrypt(encrypt(exact, key), key));
+    }
+
+    @Test
+    void tamperedSegmentIsRejected() throws Exception {
+        SecretKey key = CipherEngineTest.newKey();
+        byte[] file = encrypt(content(SegmentedAead.SEGMENT_SIZE * 3), key);
+        file[HEADER + SEALED_SEGMENT + 100] ^= 1;
+
+        assertThrows(IOException.class, () -> decrypt(file, key));
+    }
+
+    @Test
+    void swappedSegmentsAreRejected() throws Exception {
+        SecretKey key = CipherEngineTest.newKey();
+        byte[] file = encrypt(content(SegmentedAead.SEGMENT_SIZE * 3), key);
+        byte[] swapped = file.clone();
+        System.arraycopy(file, HEADER, swapped, HEADER + SEALED_SEGMENT, SEALED_SEGMENT);
+        System.arraycopy(file, HEADER + SEALED_SEGMENT, swapped, HEADER, SEALED_SEGMENT);
+
+        assertThrows(IOException.class, () -> decrypt(swapped, key));
+    }
+
+    @Test
+    void truncationAtSegmentBoundaryIsRejected() throws Exception {
+        SecretKey key = CipherEngineTest.newKey();
+        byte[] file = encrypt(content(SegmentedAead.SEGMENT_SIZE * 5 / 2), key);
+
+        // Senza l'ultimo segmento il penultimo non ha il flag di ultimo segmento
+        byte[] truncated = Arrays.copyOf(file, HEADER + 2 * SEALED_SEGMENT);
+        assertThrows(IOException.class, () -> decrypt(truncated, key));
+        assertThrows(IOException.class, () -> decrypt(Arrays.copyOf(file, file.length - 1), key));
+        assertThrows(IOException.class, () -> decrypt(Arrays.copyOf(file, HEADER - 1), key));
+    }
+
+    @Test
+    void wrongKeyIsRejected() throws Exception {
+        byte[] file = encrypt(content(1000), CipherEngineTest.newKey());
+
+        assertThrows(IOException.class, () -> decrypt(file, CipherEngineTest.newKey()));
+    }
+}
@@ -0,0 +1,90 @@
+package javault.utils;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test di {@link StrengthEstimator}: password comuni, schemi prevedibili e password casuali.
+ */
+class StrengthEstimatorTest {
+
+    private static StrengthEstimator.Estimate estimate(String password) {
+        return StrengthEstimator.estimate(password.toCharArray());
+    }
+
+    @Test
+    void commonPasswordsAreWeak() {
+        for (String password : new String[] {"password", "123456", "qwerty", "Password1"}) {
+            StrengthEstimator.Estimate estimate = estimate(password);
+            assertTrue(estimate.score() <= 1, password + ": punteggio " + estimate.score());
+            assertFalse(estimate.feedback().isEmpty());
+        }
+    }
+
+    @Test
+    void predictablePatternsAreWeak() {
+        for (String password : new String[] {"aaaaaaaaaa", "abcdefgh", "qwertyuiop", "12345678"}) {
+            assertTrue(estimate(password).score() <= 1, password);
+        }
+    }
+
+    /**
+     * Password di almeno 10 caratteri con tutte le classi, che superano il controllo sulla lunghezza
+     * di {@code isStrongPassword}: devono restare sotto il punteggio accettato per la master password.
+     */
+    @Test
+    void commonWordsWithSuffixesAreNotStrong() {
+        for (String password : new String[] {"Password1!", "Welcome123!", "Qwerty123!", "Iloveyou1!", "Summer2024!",
+                "M0nkey123!", "Juventus1897!", "Forzanapoli1926", "Amore123!!", "Tivogliobene!"}) {
+            StrengthEstimator.Estimate estimate = estimate(password);
+            assertTrue(estimate.score() < StrengthEstimator.STRONG_SCORE, password + ": punteggio " + estimate.score());
+            assertFalse(estimate.feedback().isEmpty());
+        }
+    }
+
+    @Test
+    void leetSubstitutionsAreRecognized() {
+        for (String password : new String[] {"P@ssw0rd", "dr4g0n", "m0nk3y", "5unsh1ne", "Tiv0glio8ene", "drowssap"}) {
+            assertTrue(estimate(password).score() <= 1, password);
+        }
+        assertTrue(estimate("n4p0l1").feedback().startsWith("Sostituzioni prevedibili"));
+    }
+
+    @Test
+    void randomPasswordsAreStrong() {
+        StrengthEstimator.Estimate estimate = estimate("k9#Vq2!mZ7@pL4$x");
+
+        assertEquals(4, estimate.score());
+        assertEquals("", estimate.feedback());
+    }
+
+    @Test
+    void longerPasswordsNeedMoreGuesses() {
+        double shorter = estimate("tramonto").guessesLog10();
+        double longer = estimate("tramonto#Q7z").guessesLog10();
+
+        assertTrue(longer > shorter);
+    }
+
+    @Test
+    void passwordIsNotModified() {
+        char[] password = "Segreta!2024".toCharArray();
+        StrengthEstimator.estimate(password);
+
+        assertArrayEquals("Segreta!2024".toCharArray(), password);
+    }
+
+    @Test
+    void scoresFollowThresholds() {
+        assertEquals(0, StrengthEstimator.scoreOf(2.9));
+        assertEquals(1, StrengthEstimator.scoreOf(3));
+        assertEquals(2, StrengthEstimator.scoreOf(6));
+        assertEquals(3, StrengthEstimator.scoreOf(8));
+        assertEquals(4, StrengthEstimator.scoreOf(10));
+        assertEquals(StrengthEstimator.describe(4), StrengthEstimator.describe(7));
+    }
+}
@@ -0,0 +1,126 @@
+package javault.utils;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javault.exception.InvalidPasswordException;
+import javault.exception.VaultException;
+import javault.model.VaultData;
+
+/**
+ * Test di {@link VaultExporter}: esportazione cifrata e reimportazione, file alterati o troncati, CSV in chiaro.
+ */
+class VaultExporterTest {
+
+    private static final String PASSWORD = "password-esportazione";
+
+    @TempDir
+    Path directory;
+
+    private VaultData vault;
+    private Path exported;
+
+    @BeforeEach
+    void setUp() {
+        vault = new VaultData();
+        vault.addLogin("email", "utente@example.com".toCharArray(), "segreta, con \"virgolette\"".toCharArray());
+        vault.addLogin("banca", "mario".toCharArray(), "riga1\nriga2".toCharArray());
+        vault.setLabels("banca", "finanza", List.of("importante"));
+        exported = directory.resolve("vault.jvx");
+    }
+
+    private VaultData importEncrypted(String password) throws Exception {
+        VaultData target = new VaultData();
+        VaultImporter.importEncrypted(exported, password.toCharArray(), target);
+        return target;
+    }
+
+    @Test
+    void encryptedExportRoundTrip() throws Exception {
+        char[] password = PASSWORD.toCharArray();
+        VaultExporter.exportEncrypted(vault, exported, password);
+        assertArrayEquals(new char[password.length], password); // password azzerata
+
+        VaultData imported = importEncrypted(PASSWORD);
+        assertEquals(Set.of("email", "banca"), imported.getAllLogins());
+        assertArrayEquals("riga1\nriga2".toCharArray(), imported.getLogin("banca").getPassword());
+        assertEquals("finanza", imported.getLogin("banca").getFolder());
+        assertEquals(List.of("banca"), imported.filter("importante"));
+        assertFalse(Files.exists(directory.resolve("vault.jvx.tmp")));
+    }
+
+    @Test
+    void wrongPasswordIsRejected() throws Exception {
+        VaultExporter.exportEncrypted(vault, exported, PASSWORD.toCharArray());
+
+        assertThrows(InvalidPasswordException.class, () -> importEncrypted("altra-password"));
+    }
+
+    @Test
+    void tamperedExportIsRejected() throws Exception {
+        VaultExporter.exportEncrypted(vault, exported, PASSWORD.toCharArray());
+        byte[] file = Files.readAllBytes(exported);
+        file[file.length - 20] ^= 1;
+        Files.write(exported, file);
+
+        VaultData target = new VaultData();
+        assertThrows(InvalidPasswordException.class,
+                () -> VaultImporter.importEncrypted(exported, PASSWORD.toCharArray(), target));
+        assertTrue(target.getAllLogins().isEmpty());
+    }
+
+    @Test
+    void truncatedExportIsRejected() throws Exception {
+        VaultExporter.exportEncrypted(vault, exported, PASSWORD.toCharArray());
+        byte[] file = Files.readAllBytes(exported);
+
+        Files.write(exported, Arrays.copyOf(file, file.length - 1));
+        assertThrows(InvalidPasswordException.class, () -> importEncrypted(PASSWORD));
+
+        // Troncato nell'intestazione KDF
+        Files.write(exported, Arrays.copyOf(file, 12));
+        assertThrows(VaultException.class, () -> importEncrypted(PASSWORD));
+    }
+
+    @Test
+    void otherFilesAreRejected() throws Exception {
+        Files.writeString(exported, "name,username,password\r\n", StandardCharsets.UTF_8);
+
+        assertThrows(VaultException.class, () -> importEncrypted(PASSWORD));
+    }
+
+    @Test
+    void csvExportIsReadableByImport() throws Exception {
+        Path csv = directory.resolve("vault.csv");
+
+        assertEquals(2, VaultExporter.exportCsv(vault, csv));
+        assertTrue(Files.readString(csv, StandardCharsets.UTF_8).startsWith("name,username,password\r\nbanca,"));
+
+        VaultData imported = new VaultData();
+        assertEquals(2, VaultImporter.importFile(csv, imported).imported());
+        assertArrayEquals("segreta, con \"virgolette\"".toCharArray(), imported.getLogin("email").getPassword());
+        assertArrayEquals("riga1\nriga2".toCharArray(), imported.getLogin("banca").getPassword());
+    }
+
+    @Test
+    void failedExportLeavesNoFile() {
+        Path missing = directory.resolve("mancante").resolve("vault.csv");
+
+        assertThrows(VaultException.class, () -> VaultExporter.exportCsv(vault, missing));
+        assertFalse(Files.exists(missing));
+    }
+}
@@ -0,0 +1,169 @@
+package javault.utils;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+
+import javax.crypto.SecretKey;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javault.model.PasswordVersion;
+import javault.model.VaultData;
+import javault.model.VaultSnapshot;
+
+/**
+ * Test di {@link VaultHistory}: salvataggio e lettura delle versioni, copia senza ricifratura,
+ * limiti di conservazione e chiave errata.
+ * La cronologia usa percorsi relativi alla directory di lavoro, impostata dal pom sotto {@code target}.
+ */
+class VaultHistoryTest {
+
+    private SecretKey key;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        key = CipherEngineTest.newKey();
+        Files.deleteIfExists(VaultHistory.path());
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        Files.deleteIfExists(VaultHistory.path());
+    }
+
+    private VaultData newVault(SecretKey key) {
+        VaultData vault = new VaultData();
+        vault.setHistoryStore(new VaultHistory(key));
+        return vault;
+    }
+
+    /** Salva come {@link VaultUtils}: con uno snapshot aperto, che rinvia la pulizia delle versioni. */
+    @SuppressWarnings("try")
+    private void save(VaultData vault) throws IOException {
+        try (VaultSnapshot snapshot = vault.snapshot()) {
+            VaultHistory.save(vault, key);
+        }
+    }
+
+    private static void rotate(VaultData vault, String name, String... passwords) {
+        for (String password : passwords) {
+            vault.addLogin(name, "utente".toCharArray(), password.toCharArray());
+        }
+    }
+
+    private static void assertVersions(List<PasswordVersion> history, String... expected) {
+        assertEquals(expected.length, history.size());
+        for (int i = 0; i < expected.length; i++) {
+            assertArrayEquals(expected[i].toCharArray(), history.get(i).getPassword());
+        }
+    }
+
+    @Test
+    void savedVersionsAreReadBack() throws Exception {
+        VaultData vault = newVault(key);
+        rotate(vault, "email", "password-1", "password-2", "password-3!");
+        rotate(vault, "banca", "àèìòù-1", "àèìòù-2");
+        List<PasswordVersion> saved = vault.getPasswordHistory("email");
+        save(vault);
+
+        VaultData reopened = newVault(key);
+        assertEquals(Set.of("email", "banca"), reopened.getHistoryNames());
+        List<PasswordVersion> history = reopened.getPasswordHistory("email");
+        assertVersions(history, "password-2", "password-1");
+        assertEquals(saved.get(0).getReplacedAt(), history.get(0).getReplacedAt());
+        assertEquals(saved.get(1).getReplacedAt(), history.get(1).getReplacedAt());
+        assertVersions(reopened.getPasswordHistory("banca"), "àèìòù-1");
+    }
+
+    @Test
+    void unchangedHistoriesAreCopiedOnLaterSaves() throws Exception {
+        VaultData vault = newVault(key);
+        rotate(vault, "email", "prima", "seconda");
+        rotate(vault, "banca", "uno", "due");
+        save(vault);
+
+        VaultData reopened = newVault(key);
+        rotate(reopened, "banca", "due", "tre");
+        assertTrue(reopened.getChangedHistories().containsKey("banca"));
+        assertFalse(reopened.getChangedHistories().containsKey("email"));
+        save(reopened);
+
+        VaultData again = newVault(key);
+        assertVersions(again.getPasswordHistory("email"), "prima");
+        assertVersions(again.getPasswordHistory("banca"), "due", "uno");
+    }
+
+    @Test
+    void retentionLimitsApplyToSavedVersions() throws Exception {
+        VaultData vault = newVault(key);
+        rotate(vault, "email", "v1", "v2", "v3", "v4");
+        save(vault);
+
+        VaultData limited = newVault(key);
+        limited.setHistoryLimits(1, Duration.ofDays(365));
+        rotate(limited, "banca", "a", "b");
+        save(limited);
+        assertVersions(newVault(key).getPasswordHistory("email"), "v3");
+
+        VaultData disabled = newVault(key);
+        disabled.setHistoryLimits(0, Duration.ofDays(365));
+        save(disabled);
+        assertFalse(Files.exists(VaultHistory.path()));
+    }
+
+    @Test
+    void removedLoginLosesItsHistory() throws Exception {
+        VaultData vault = newVault(key);
+        rotate(vault, "email", "prima", "seconda");
+        rotate(vault, "banca", "uno", "due");
+        save(vault);
+
+        // Riaperto: il login è di nuovo nel vault, la sua cronologia solo nell'archivio
+        VaultData reopened = newVault(key);
+        rotate(reopened, "email", "seconda");
+        assertTrue(reopened.removeLogin("email"));
+        assertTrue(reopened.getPasswordHistory("email").isEmpty());
+        save(reopened);
+
+        VaultData again = newVault(key);
+        assertEquals(Set.of("banca"), again.getHistoryNames());
+        assertTrue(again.getPasswordHistory("email").isEmpty());
+    }
+
+    @Test
+    void otherKeyCannotReadHistory() throws Exception {
+        VaultData vault = newVault(key);
+        rotate(vault, "email", "prima", "seconda");
+        save(vault);
+
+        SecretKey other = CipherEngineTest.newKey();
+        assertTrue(VaultHistory.isEncryptedWith(key));
+        assertFalse(VaultHistory.isEncryptedWith(other));
+        assertTrue(newVault(other).getPasswordHistory("email").isEmpty());
+    }
+
+    @Test
+    void tamperedVersionIsNotReturned() throws Exception {
+        VaultData vault = newVault(key);
+        rotate(vault, "email", "prima", "seconda");
+        save(vault);
+
+        Path path = VaultHistory.path();
+        byte[] file = Files.readAllBytes(path);
+        file[file.length - 1] ^= 1;
+        Files.write(path, file);
+
+        assertTrue(newVault(key).getPasswordHistory("email").isEmpty());
+    }
+}
@@ -0,0 +1,129 @@
+package javault.utils;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javault.exception.VaultException;
+import javault.model.VaultData;
+
+/**
+ * Test di {@link VaultImporter}: CSV e JSON dei formati più comuni, righe scartate e file non validi.
+ */
+class VaultImporterTest {
+
+    @TempDir
+    Path directory;
+
+    private static void assertLogin(VaultData vault, String name, String username, String password) {
+        assertArrayEquals(username.toCharArray(), vault.getLogin(name).getUsername());
+        assertArrayEquals(password.toCharArray(), vault.getLogin(name).getPassword());
+    }
+
+    @Test
+    void csvWithQuotedFields() throws Exception {
+        String csv = "\uFEFFName,URL,Username,Password\r\n"
+                + "email,https://mail.example.com,utente,semplice\r\n"
+                + "\"banca, conto\",,\"mario \"\"rossi\"\"\",\"riga1\nriga2\"\r\n"
+                + ",https://solo-url.example.com,anonimo,pw\n";
+        VaultData vault = new VaultData();
+
+        VaultImporter.Result result = VaultImporter.importCsv(new StringReader(csv), vault);
+        assertEquals(new VaultImporter.Result(3, 0), result);
+        assertLogin(vault, "email", "utente", "semplice");
+        assertLogin(vault, "banca, conto", "mario \"rossi\"", "riga1\nriga2");
+        assertLogin(vault, "https://solo-url.example.com", "anonimo", "pw");
+    }
+
+    @Test
+    void invalidAndDuplicateRowsAreSkipped() throws Exception {
+        String csv = "title,login,password\n"
+                + "email,utente,prima\n"
+                + "email,utente,seconda\n" // nome ripetuto: vale la prima riga
+                + "vuota,utente,\n"         // senza password
+                + ",utente,pw\n"            // senza nome
+                + "esistente,utente,pw\n";
+        VaultData vault = new VaultData();
+        vault.addLogin("esistente", "u".toCharArray(), "originale".toCharArray());
+
+        VaultImporter.Result result = VaultImporter.importCsv(new StringReader(csv), vault);
+        assertEquals(new VaultImporter.Result(1, 4), result);
+        assertLogin(vault, "email", "utente", "prima");
+        assertLogin(vault, "esistente", "u", "originale");
+    }
+
+    @Test
+    void csvWithoutPasswordColumnIsRejected() {
+        VaultData vault = new VaultData();
+
+        assertThrows(VaultException.class,
+                () -> VaultImporter.importCsv(new StringReader("name,username\nemail,utente\n"), vault));
+        assertThrows(VaultException.class,
+                () -> VaultImporter.importCsv(new StringReader("name,password\n\"non chiuso,pw\n"), vault));
+        assertTrue(vault.getAllLogins().isEmpty());
+    }
+
+    @Test
+    void manyRowsSpanSeveralBatches() throws Exception {
+        StringBuilder csv = new StringBuilder("name,username,password\n");
+        for (int i = 0; i < 5000; i++) {
+            csv.append("login").append(i).append(",utente,password").append(i).append('\n');
+        }
+        VaultData vault = new VaultData();
+
+        assertEquals(new VaultImporter.Result(5000, 0), VaultImporter.importCsv(new StringReader(csv.toString()), vault));
+        assertLogin(vault, "login4999", "utente", "password4999");
+    }
+
+    @Test
+    void jsonArrayAndNestedObjects() throws Exception {
+        String json = "{\"encrypted\": false, \"items\": ["
+                + "{\"name\": \"email\", \"login\": {\"username\": \"utente\", \"password\": \"segreta\"}},"
+                + "{\"title\": \"pin\", \"user\": \"u\", \"password\": 1234},"
+                + "{\"name\": \"senza password\"},"
+                + "\"ignorato\""
+                + "]}";
+        VaultData vault = new VaultData();
+
+        assertEquals(new VaultImporter.Result(2, 1), VaultImporter.importJson(new StringReader(json), vault));
+        assertLogin(vault, "email", "utente", "segreta");
+        assertLogin(vault, "pin", "u", "1234");
+
+        VaultData plain = new VaultData();
+        VaultImporter.importJson(new StringReader("[{\"url\": \"example.com\", \"password\": \"pw\"}]"), plain);
+        assertEquals(Set.of("example.com"), plain.getAllLogins());
+    }
+
+    @Test
+    void invalidJsonIsRejected() {
+        VaultData vault = new VaultData();
+
+        assertThrows(VaultException.class,
+                () -> VaultImporter.importJson(new StringReader("[{\"name\": \"email\", \"password\": "), vault));
+        assertTrue(vault.getAllLogins().isEmpty());
+    }
+
+    @Test
+    void fileFormatFollowsExtension() throws Exception {
+        Path csv = directory.resolve("logins.csv");
+        Path json = directory.resolve("logins.JSON");
+        Files.writeString(csv, "name,password\nemail,pw\n", StandardCharsets.UTF_8);
+        Files.writeString(json, "[{\"name\": \"banca\", \"password\": \"pw\"}]", StandardCharsets.UTF_8);
+        VaultData vault = new VaultData();
+
+        assertEquals(1, VaultImporter.importFile(csv, vault).imported());
+        assertEquals(1, VaultImporter.importFile(json, vault).imported());
+        assertEquals(Set.of("email", "banca"), vault.getAllLogins());
+        assertThrows(VaultException.class, () -> VaultImporter.importFile(directory.resolve("mancante.csv"), vault));
+    }
+}
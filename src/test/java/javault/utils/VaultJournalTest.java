@@ -0,0 +1,310 @@
+package javault.utils;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import javax.crypto.SecretKey;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javault.exception.InvalidPasswordException;
+import javault.exception.VaultException;
+import javault.model.PasswordVersion;
+import javault.model.VaultBatch;
+import javault.model.VaultData;
+
+/**
+ * Test di {@link VaultJournal}: riapplicazione, rotazione, record finali incompleti o alterati.
+ * Il journal usa percorsi relativi alla directory di lavoro, impostata dal pom sotto {@code target}.
+ */
+class VaultJournalTest {
+
+    private static final Path JOURNAL = Path.of("vault/vault.journal");
+    private static final Path ROTATED = Path.of("vault/vault.journal.old");
+    private static final Path CORRUPT = Path.of("vault/vault.journal.corrupt");
+
+    private SecretKey key;
+
+    @BeforeEach
+    void setUp() throws GeneralSecurityException, IOException, InvalidPasswordException {
+        key = CipherEngineTest.newKey();
+        deleteFiles();
+        VaultJournal.replay(new VaultData(), key, -1, true); // riparte dal numero di sequenza 0
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        deleteFiles();
+    }
+
+    private static void deleteFiles() throws IOException {
+        VaultJournal.close();
+        for (Path path : List.of(JOURNAL, ROTATED, CORRUPT)) {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    private void add(VaultData vault, String name, String password) throws VaultException {
+        vault.addLogin(name, "utente".toCharArray(), password.toCharArray());
+        VaultJournal.appendAdd(vault, name, key);
+    }
+
+    private VaultData replay() throws InvalidPasswordException {
+        return replay(-1);
+    }
+
+    private VaultData replay(long firstSequence) throws InvalidPasswordException {
+        VaultData vault = new VaultData();
+        VaultJournal.replay(vault, key, firstSequence, true);
+        return vault;
+    }
+
+    private static void assertPassword(VaultData vault, String name, String expected) {
+        assertArrayEquals(expected.toCharArray(), vault.getLogin(name).getPassword());
+    }
+
+    @Test
+    void replayAppliesRecordsInOrder() throws Exception {
+        VaultData vault = new VaultData();
+        add(vault, "email", "prima");
+        add(vault, "banca", "segreta");
+        add(vault, "email", "seconda");
+        vault.removeLogin("banca");
+        VaultJournal.appendRemove("banca", key);
+        vault.setLabels("email", "lavoro", List.of("posta"));
+        VaultJournal.appendLabels(vault, "email", key);
+
+        VaultData replayed = replay();
+        assertEquals(Set.of("email"), replayed.getAllLogins());
+        assertPassword(replayed, "email", "seconda");
+        assertEquals("lavoro", replayed.getLogin("email").getFolder());
+        assertEquals(1, replayed.getPasswordHistory("email").size());
+    }
+
+    @Test
+    void replayAppliesBatchesAndClear() throws Exception {
+        VaultData vault = new VaultData();
+        add(vault, "vecchio", "password");
+        VaultJournal.appendClear(key);
+        try (VaultBatch batch = vault.beginBatch()) {
+            batch.add("uno", "u".toCharArray(), "p1".toCharArray())
+                    .add("due", "u".toCharArray(), "p2".toCharArray())
+                    .setLabels("due", null, List.of("prod"));
+            batch.commit(b -> VaultJournal.appendBatch(b, key));
+        }
+
+        VaultData replayed = replay();
+        assertEquals(Set.of("uno", "due"), replayed.getAllLogins());
+        assertPassword(replayed, "due", "p2");
+        assertEquals(List.of("due"), replayed.filter("prod"));
+    }
+
+    @Test
+    void replayedHistoryKeepsTimeOfChange() throws Exception {
+        VaultData vault = new VaultData();
+        try (VaultBatch batch = vault.beginBatch()) {
+            batch.add("email", "utente".toCharArray(), "prima".toCharArray());
+            batch.commit(b -> VaultJournal.appendBatch(b, key));
+        }
+        for (String password : List.of("seconda", "terza")) {
+            Thread.sleep(2);
+            try (VaultBatch batch = vault.beginBatch()) {
+                batch.update("email", "utente".toCharArray(), password.toCharArray());
+                batch.commit(b -> VaultJournal.appendBatch(b, key));
+            }
+        }
+        List<PasswordVersion> original = vault.getPasswordHistory("email");
+        Thread.sleep(5);
+
+        List<PasswordVersion> replayed = replay().getPasswordHistory("email");
+        assertEquals(2, replayed.size());
+        assertEquals(original.get(0).getReplacedAt(), replayed.get(0).getReplacedAt());
+        assertEquals(original.get(1).getReplacedAt(), replayed.get(1).getReplacedAt());
+    }
+
+    @Test
+    void recordsAreWrittenBeforeSync() throws Exception {
+        VaultData vault = new VaultData();
+        add(vault, "email", "password");
+        long written = Files.size(JOURNAL);
+        assertTrue(written > 0);
+
+        VaultJournal.sync();
+        VaultJournal.sync(); // nessun record nuovo: non fa nulla
+        VaultJournal.close();
+        VaultJournal.sync(); // canale chiuso: non fa nulla
+        assertEquals(written, Files.size(JOURNAL));
+        assertEquals(Set.of("email"), replay().getAllLogins());
+    }
+
+    @Test
+    void wrongKeyIsRejectedWithoutBaseFile() throws Exception {
+        add(new VaultData(), "email", "password");
+        VaultJournal.close();
+
+        assertThrows(InvalidPasswordException.class,
+                () -> VaultJournal.replay(new VaultData(), CipherEngineTest.newKey(), -1, false));
+        assertFalse(Files.exists(CORRUPT));
+    }
+
+    @Test
+    void tamperedFirstRecordIsMovedAside() throws Exception {
+        VaultData vault = new VaultData();
+        add(vault, "email", "password");
+        add(vault, "banca", "segreta");
+        VaultJournal.close();
+
+        byte[] journal = Files.readAllBytes(JOURNAL);
+        journal[20] ^= 1;
+        Files.write(JOURNAL, journal);
+
+        VaultData replayed = replay();
+        assertTrue(replayed.getAllLogins().isEmpty());
+        assertEquals(0, Files.size(JOURNAL));
+        assertEquals(journal.length, Files.size(CORRUPT));
+
+        add(replayed, "social", "nuova");
+        VaultJournal.close();
+        assertEquals(Set.of("social"), replay().getAllLogins());
+    }
+
+    @Test
+    void tornTailIsTruncatedAndLaterRecordsStayReadable() throws Exception {
+        VaultData vault = new VaultData();
+        add(vault, "email", "password");
+        add(vault, "banca", "segreta");
+        VaultJournal.close();
+        long valid = Files.size(JOURNAL);
+
+        // Record interrotto da un crash: intestazione completa, dati cifrati a metà
+        ByteBuffer torn = ByteBuffer.allocate(4 + 8 + 10).putInt(64 | 0x80000000).putLong(2);
+        Files.write(JOURNAL, torn.array(), StandardOpenOption.APPEND);
+
+        VaultData replayed = replay();
+        assertEquals(Set.of("email", "banca"), replayed.getAllLogins());
+        assertEquals(valid, Files.size(JOURNAL));
+        assertFalse(Files.exists(CORRUPT));
+
+        add(replayed, "social", "nuova");
+        VaultJournal.close();
+        VaultData again = replay();
+        assertEquals(Set.of("email", "banca", "social"), again.getAllLogins());
+        assertPassword(again, "social", "nuova");
+    }
+
+    @Test
+    void tamperedTailIsMovedAside() throws Exception {
+        VaultData vault = new VaultData();
+        add(vault, "email", "password");
+        long valid = Files.size(JOURNAL);
+        add(vault, "banca", "segreta");
+        VaultJournal.close();
+
+        byte[] journal = Files.readAllBytes(JOURNAL);
+        journal[journal.length - 1] ^= 1;
+        Files.write(JOURNAL, journal);
+
+        VaultData replayed = replay();
+        assertEquals(Set.of("email"), replayed.getAllLogins());
+        assertEquals(valid, Files.size(JOURNAL));
+        assertEquals(journal.length - valid, Files.size(CORRUPT));
+    }
+
+    @Test
+    void reorderedRecordsAreRejected() throws Exception {
+        VaultData vault = new VaultData();
+        add(vault, "uno", "password1");
+        int first = (int) Files.size(JOURNAL);
+        add(vault, "due", "password2");
+        VaultJournal.close();
+
+        // I due record hanno la stessa lunghezza: scambiarli lascia il file ben formato
+        byte[] journal = Files.readAllBytes(JOURNAL);
+        assertEquals(2 * first, journal.length);
+        byte[] swapped = new byte[journal.length];
+        System.arraycopy(journal, first, swapped, 0, first);
+        System.arraycopy(journal, 0, swapped, first, first);
+        Files.write(JOURNAL, swapped);
+
+        assertThrows(InvalidPasswordException.class, this::replay);
+    }
+
+    @Test
+    void replayReadsRotatedJournalFirst() throws Exception {
+        VaultData vault = new VaultData();
+        add(vault, "email", "prima");
+        VaultJournal.rotate(vault).close();
+        add(vault, "email", "seconda");
+        VaultJournal.close();
+        assertTrue(Files.exists(ROTATED));
+
+        VaultData replayed = replay();
+        assertPassword(replayed, "email", "seconda");
+
+        // Salvataggio concluso: il journal ruotato è nel file base e non viene più riapplicato
+        VaultJournal.discardRotated();
+        add(replayed, "banca", "segreta");
+        VaultJournal.close();
+        VaultData base = replay();
+        assertEquals(Set.of("email", "banca"), base.getAllLogins());
+        assertFalse(Files.exists(ROTATED));
+    }
+
+    @Test
+    void recordsAlreadyInBaseAreSkipped() throws Exception {
+        VaultData vault = new VaultData();
+        add(vault, "email", "prima");
+        long firstSequence;
+        try (VaultJournal.Rotation rotation = VaultJournal.rotate(vault)) {
+            firstSequence = rotation.nextSequence();
+            assertEquals(1, firstSequence);
+        }
+        add(vault, "banca", "segreta");
+        VaultJournal.close();
+
+        // Salvataggio interrotto dopo aver sostituito il file base: il journal ruotato è già nel file base
+        VaultData replayed = replay(firstSequence);
+        assertEquals(Set.of("banca"), replayed.getAllLogins());
+    }
+
+    @Test
+    void droppedLeadingRecordsAreRejected() throws Exception {
+        VaultData vault = new VaultData();
+        add(vault, "uno", "password1");
+        int first = (int) Files.size(JOURNAL);
+        add(vault, "due", "password2");
+        VaultJournal.close();
+
+        byte[] journal = Files.readAllBytes(JOURNAL);
+        Files.write(JOURNAL, Arrays.copyOfRange(journal, first, journal.length));
+
+        // Il file base indica che il journal inizia dal record 0
+        assertThrows(InvalidPasswordException.class, () -> replay(0));
+    }
+
+    @Test
+    void sequenceContinuesFromBaseWhenJournalIsEmpty() throws Exception {
+        replay(5);
+        VaultData vault = new VaultData();
+        add(vault, "email", "password");
+        VaultJournal.close();
+
+        assertEquals(Set.of("email"), replay(5).getAllLogins());
+        assertThrows(InvalidPasswordException.class, () -> replay(4));
+    }
+}